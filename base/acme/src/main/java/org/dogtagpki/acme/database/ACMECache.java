@@ -0,0 +1,208 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class provides a size-bounded cache whose entries expire after
+ * a fixed time. When the cache is full the least recently used entry
+ * is removed.
+ *
+ * To prevent a slow reader from putting a stale value into the cache
+ * after the value has been modified, the reader should get a stamp
+ * before reading the value from the database and then add the value
+ * with putIfCurrent() which will only succeed if the cache has not
+ * been invalidated in the meantime.
+ */
+public class ACMECache<V> {
+
+    private String name;
+    private long timeout; // milliseconds
+    private int maxSize;
+
+    private Map<String, CacheEntry<V>> entries;
+
+    // ReentrantLock does not pin virtual threads
+    private ReentrantLock lock = new ReentrantLock();
+
+    // incremented on each write or invalidation
+    private long stamp;
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param timeout timeout in seconds
+     * @param maxSize max number of entries
+     */
+    public ACMECache(String name, int timeout, int maxSize) {
+
+        this.name = name;
+        this.timeout = TimeUnit.SECONDS.toMillis(timeout);
+        this.maxSize = maxSize;
+
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<V>> eldest) {
+                return size() > ACMECache.this.maxSize;
+            }
+        };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return timeout > 0 && maxSize > 0;
+    }
+
+    public V get(String key) {
+
+        if (!isEnabled()) return null;
+
+        lock.lock();
+        try {
+            CacheEntry<V> entry = entries.get(key);
+
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            if (entry.expirationTime <= System.currentTimeMillis()) {
+                entries.remove(key);
+                misses.incrementAndGet();
+                return null;
+            }
+
+            hits.incrementAndGet();
+            return entry.value;
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getStamp() {
+
+        lock.lock();
+        try {
+            return stamp;
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a value written into the database. Values read from the
+     * database before this call will not be added by putIfCurrent().
+     */
+    public void put(String key, V value) {
+
+        if (!isEnabled()) return;
+
+        lock.lock();
+        try {
+            stamp++;
+            entries.put(key, new CacheEntry<>(value, System.currentTimeMillis() + timeout));
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a value read from the database unless the cache has been
+     * invalidated since the given stamp was obtained.
+     */
+    public void putIfCurrent(String key, V value, long stamp) {
+
+        if (!isEnabled()) return;
+
+        lock.lock();
+        try {
+            if (this.stamp != stamp) return;
+            entries.put(key, new CacheEntry<>(value, System.currentTimeMillis() + timeout));
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(String key) {
+
+        lock.lock();
+        try {
+            stamp++;
+            entries.remove(key);
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+
+        lock.lock();
+        try {
+            stamp++;
+            entries.clear();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void removeExpired() {
+
+        long now = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            entries.values().removeIf(entry -> entry.expirationTime <= now);
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+
+        lock.lock();
+        try {
+            return entries.size();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    static class CacheEntry<V> {
+
+        final V value;
+        final long expirationTime;
+
+        CacheEntry(V value, long expirationTime) {
+            this.value = value;
+            this.expirationTime = expirationTime;
+        }
+    }
+}
@@ -0,0 +1,505 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.dogtagpki.acme.ACMEAccount;
+import org.dogtagpki.acme.ACMEAuthorization;
+import org.dogtagpki.acme.ACMECertificate;
+import org.dogtagpki.acme.ACMEChallenge;
+import org.dogtagpki.acme.ACMEIdentifier;
+import org.dogtagpki.acme.ACMENonce;
+import org.dogtagpki.acme.ACMEOrder;
+
+/**
+ * This class provides a cache for accounts, orders, and authorizations
+ * in front of another ACME database.
+ *
+ * Records are read from the cache if available, otherwise they are
+ * read from the underlying database and added into the cache. Records
+ * are always written into the underlying database first, then into
+ * the cache. The cache stores and returns copies of the records so
+ * callers can modify the records they get without affecting the cache.
+ *
+ * Records modified by other ACME responders are removed from the cache
+ * when the underlying database sends a notification (see
+ * ACMEDatabaseListener), or otherwise when the cache entry expires.
+ */
+public class ACMECachingDatabase extends ACMEDatabase implements ACMEDatabaseListener {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMECachingDatabase.class);
+
+    public static final int DEFAULT_ACCOUNTS_TIMEOUT = 60; // seconds
+    public static final int DEFAULT_ORDERS_TIMEOUT = 60; // seconds
+    public static final int DEFAULT_AUTHORIZATIONS_TIMEOUT = 60; // seconds
+    public static final int DEFAULT_SIZE = 10000;
+
+    private ACMEDatabase database;
+
+    private ACMECache<ACMEAccount> accounts;
+    private ACMECache<ACMEOrder> orders;
+    private ACMECache<ACMEAuthorization> authorizations;
+
+    // order IDs by authorization ID and order status
+    private ACMECache<List<String>> ordersByAuthorization;
+
+    // authorization IDs by challenge ID
+    private ACMECache<String> authorizationsByChallenge;
+
+    public ACMECachingDatabase(ACMEDatabase database) {
+        this.database = database;
+    }
+
+    public ACMEDatabase getDatabase() {
+        return database;
+    }
+
+    @Override
+    public void init() throws Exception {
+
+        logger.info("Initializing ACME database cache");
+
+        int accountsTimeout = getParameter("cache.accounts.timeout", DEFAULT_ACCOUNTS_TIMEOUT);
+        int accountsSize = getParameter("cache.accounts.size", DEFAULT_SIZE);
+        logger.info("- accounts timeout (seconds): " + accountsTimeout);
+        logger.info("- accounts size: " + accountsSize);
+        accounts = new ACMECache<>("accounts", accountsTimeout, accountsSize);
+
+        int ordersTimeout = getParameter("cache.orders.timeout", DEFAULT_ORDERS_TIMEOUT);
+        int ordersSize = getParameter("cache.orders.size", DEFAULT_SIZE);
+        logger.info("- orders timeout (seconds): " + ordersTimeout);
+        logger.info("- orders size: " + ordersSize);
+        orders = new ACMECache<>("orders", ordersTimeout, ordersSize);
+        ordersByAuthorization = new ACMECache<>("ordersByAuthorization", ordersTimeout, ordersSize);
+
+        int authorizationsTimeout = getParameter("cache.authorizations.timeout", DEFAULT_AUTHORIZATIONS_TIMEOUT);
+        int authorizationsSize = getParameter("cache.authorizations.size", DEFAULT_SIZE);
+        logger.info("- authorizations timeout (seconds): " + authorizationsTimeout);
+        logger.info("- authorizations size: " + authorizationsSize);
+        authorizations = new ACMECache<>("authorizations", authorizationsTimeout, authorizationsSize);
+        authorizationsByChallenge = new ACMECache<>("authorizationsByChallenge", authorizationsTimeout, authorizationsSize);
+
+        database.addListener(this);
+    }
+
+    int getParameter(String name, int defaultValue) {
+        String value = config.getParameter(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    @Override
+    public void close() throws Exception {
+
+        database.removeListener(this);
+        invalidate();
+
+        database.close();
+    }
+
+    /**
+     * Removes all records from the cache.
+     */
+    public void invalidate() {
+
+        logger.info("Invalidating ACME database cache");
+
+        accounts.clear();
+        orders.clear();
+        ordersByAuthorization.clear();
+        authorizations.clear();
+        authorizationsByChallenge.clear();
+    }
+
+    @Override
+    public void accountModified(String accountID) {
+        logger.debug("ACMECachingDatabase: Account modified: " + accountID);
+        accounts.remove(accountID);
+        fireAccountModified(accountID);
+    }
+
+    @Override
+    public void orderModified(String orderID) {
+        logger.debug("ACMECachingDatabase: Order modified: " + orderID);
+        orders.remove(orderID);
+        ordersByAuthorization.clear();
+        fireOrderModified(orderID);
+    }
+
+    @Override
+    public void authorizationModified(String authzID) {
+        logger.debug("ACMECachingDatabase: Authorization modified: " + authzID);
+        authorizations.remove(authzID);
+        fireAuthorizationModified(authzID);
+    }
+
+    @Override
+    public void recordsModified() {
+        logger.debug("ACMECachingDatabase: Records modified");
+        invalidate();
+        fireRecordsModified();
+    }
+
+    @Override
+    public Boolean getEnabled() throws Exception {
+        return database.getEnabled();
+    }
+
+    @Override
+    public void setEnabled(Boolean enabled) throws Exception {
+        database.setEnabled(enabled);
+    }
+
+    @Override
+    public void addNonce(ACMENonce nonce) throws Exception {
+        database.addNonce(nonce);
+    }
+
+    @Override
+    public ACMENonce removeNonce(String nonceID) throws Exception {
+        return database.removeNonce(nonceID);
+    }
+
+    @Override
+    public void removeExpiredNonces(Date currentTime) throws Exception {
+        database.removeExpiredNonces(currentTime);
+    }
+
+    @Override
+    public ACMEAccount getAccount(String accountID) throws Exception {
+
+        ACMEAccount account = accounts.get(accountID);
+        if (account != null) {
+            logger.debug("ACMECachingDatabase: Using cached account " + accountID);
+            return copyAccount(account);
+        }
+
+        long stamp = accounts.getStamp();
+        account = database.getAccount(accountID);
+
+        if (account != null) {
+            accounts.putIfCurrent(accountID, copyAccount(account), stamp);
+        }
+
+        return account;
+    }
+
+    @Override
+    public void addAccount(ACMEAccount account) throws Exception {
+        database.addAccount(account);
+        accounts.put(account.getID(), copyAccount(account));
+    }
+
+    @Override
+    public void updateAccount(ACMEAccount account) throws Exception {
+
+        // remove the old record in case the update fails
+        accounts.remove(account.getID());
+
+        database.updateAccount(account);
+        accounts.put(account.getID(), copyAccount(account));
+    }
+
+    @Override
+    public ACMEOrder getOrder(String orderID) throws Exception {
+
+        ACMEOrder order = orders.get(orderID);
+        if (order != null) {
+            logger.debug("ACMECachingDatabase: Using cached order " + orderID);
+            return copyOrder(order);
+        }
+
+        long stamp = orders.getStamp();
+        order = database.getOrder(orderID);
+
+        if (order != null) {
+            orders.putIfCurrent(orderID, copyOrder(order), stamp);
+        }
+
+        return order;
+    }
+
+    @Override
+    public Collection<ACMEOrder> getOrdersByAccount(String accountID) throws Exception {
+        return database.getOrdersByAccount(accountID);
+    }
+
+    @Override
+    public Collection<ACMEOrder> getOrdersByAuthorizationAndStatus(
+            String authzID,
+            String status)
+            throws Exception {
+
+        String key = authzID + ":" + status;
+        List<String> orderIDs = ordersByAuthorization.get(key);
+
+        if (orderIDs != null) {
+            Collection<ACMEOrder> results = getOrders(orderIDs, authzID, status);
+            if (results != null) {
+                logger.debug("ACMECachingDatabase: Using cached orders for authorization " + authzID);
+                return results;
+            }
+        }
+
+        long stamp = ordersByAuthorization.getStamp();
+        long ordersStamp = orders.getStamp();
+
+        Collection<ACMEOrder> results = database.getOrdersByAuthorizationAndStatus(authzID, status);
+
+        orderIDs = new ArrayList<>();
+        for (ACMEOrder order : results) {
+            orderIDs.add(order.getID());
+            orders.putIfCurrent(order.getID(), copyOrder(order), ordersStamp);
+        }
+        ordersByAuthorization.putIfCurrent(key, orderIDs, stamp);
+
+        return results;
+    }
+
+    /**
+     * Returns the orders from the cache, or null if any of the orders
+     * is no longer in the cache or no longer matches the search.
+     */
+    Collection<ACMEOrder> getOrders(List<String> orderIDs, String authzID, String status) {
+
+        Collection<ACMEOrder> results = new ArrayList<>();
+
+        for (String orderID : orderIDs) {
+
+            ACMEOrder order = orders.get(orderID);
+            if (order == null
+                    || !status.equals(order.getStatus())
+                    || !Arrays.asList(order.getAuthzIDs()).contains(authzID)) {
+                return null;
+            }
+
+            results.add(copyOrder(order));
+        }
+
+        return results;
+    }
+
+    @Override
+    public ACMEOrder getOrderByCertificate(String certID) throws Exception {
+        return database.getOrderByCertificate(certID);
+    }
+
+    @Override
+    public void addOrder(ACMEOrder order) throws Exception {
+
+        // the new order might match the cached searches
+        ordersByAuthorization.clear();
+
+        database.addOrder(order);
+        orders.put(order.getID(), copyOrder(order));
+    }
+
+    @Override
+    public void updateOrder(ACMEOrder order) throws Exception {
+
+        // remove the old record in case the update fails
+        orders.remove(order.getID());
+        ordersByAuthorization.clear();
+
+        database.updateOrder(order);
+        orders.put(order.getID(), copyOrder(order));
+    }
+
+    @Override
+    public void removeExpiredOrders(Date currentTime) throws Exception {
+        database.removeExpiredOrders(currentTime);
+        orders.removeExpired();
+        ordersByAuthorization.clear();
+    }
+
+    @Override
+    public ACMEAuthorization getAuthorization(String authzID) throws Exception {
+
+        ACMEAuthorization authorization = authorizations.get(authzID);
+        if (authorization != null) {
+            logger.debug("ACMECachingDatabase: Using cached authorization " + authzID);
+            return copyAuthorization(authorization);
+        }
+
+        long stamp = authorizations.getStamp();
+        authorization = database.getAuthorization(authzID);
+
+        if (authorization != null) {
+            putAuthorization(authorization, stamp);
+        }
+
+        return authorization;
+    }
+
+    @Override
+    public ACMEAuthorization getAuthorizationByChallenge(String challengeID) throws Exception {
+
+        String authzID = authorizationsByChallenge.get(challengeID);
+        if (authzID != null) {
+
+            ACMEAuthorization authorization = authorizations.get(authzID);
+            if (authorization != null && authorization.getChallenge(challengeID) != null) {
+                logger.debug("ACMECachingDatabase: Using cached authorization " + authzID);
+                return copyAuthorization(authorization);
+            }
+        }
+
+        long stamp = authorizations.getStamp();
+        ACMEAuthorization authorization = database.getAuthorizationByChallenge(challengeID);
+
+        if (authorization != null) {
+            putAuthorization(authorization, stamp);
+        }
+
+        return authorization;
+    }
+
+    void putAuthorization(ACMEAuthorization authorization, long stamp) {
+        authorizations.putIfCurrent(authorization.getID(), copyAuthorization(authorization), stamp);
+        addChallenges(authorization);
+    }
+
+    void addChallenges(ACMEAuthorization authorization) {
+
+        Collection<ACMEChallenge> challenges = authorization.getChallenges();
+        if (challenges == null) return;
+
+        for (ACMEChallenge challenge : challenges) {
+            authorizationsByChallenge.put(challenge.getID(), authorization.getID());
+        }
+    }
+
+    @Override
+    public Collection<ACMEAuthorization> getRevocationAuthorizations(String accountID, Date time) throws Exception {
+        return database.getRevocationAuthorizations(accountID, time);
+    }
+
+    @Override
+    public boolean hasRevocationAuthorization(String accountID, Date time, ACMEIdentifier identifier) throws Exception {
+        return database.hasRevocationAuthorization(accountID, time, identifier);
+    }
+
+    @Override
+    public void addAuthorization(ACMEAuthorization authorization) throws Exception {
+        database.addAuthorization(authorization);
+        authorizations.put(authorization.getID(), copyAuthorization(authorization));
+        addChallenges(authorization);
+    }
+
+    @Override
+    public void updateAuthorization(ACMEAuthorization authorization) throws Exception {
+
+        // remove the old record in case the update fails
+        authorizations.remove(authorization.getID());
+
+        database.updateAuthorization(authorization);
+        authorizations.put(authorization.getID(), copyAuthorization(authorization));
+        addChallenges(authorization);
+    }
+
+    @Override
+    public void removeExpiredAuthorizations(Date currentTime) throws Exception {
+        database.removeExpiredAuthorizations(currentTime);
+        authorizations.removeExpired();
+        authorizationsByChallenge.removeExpired();
+    }
+
+    @Override
+    public ACMECertificate getCertificate(String certID) throws Exception {
+        return database.getCertificate(certID);
+    }
+
+    @Override
+    public void addCertificate(String certID, ACMECertificate certificate) throws Exception {
+        database.addCertificate(certID, certificate);
+    }
+
+    @Override
+    public void removeExpiredCertificates(Date currentTime) throws Exception {
+        database.removeExpiredCertificates(currentTime);
+    }
+
+    // The following methods copy the fields stored in the database.
+    // The URLs are not copied since they are generated for each response.
+
+    static ACMEAccount copyAccount(ACMEAccount account) {
+
+        ACMEAccount copy = new ACMEAccount();
+        copy.setID(account.getID());
+        copy.setCreationTime(account.getCreationTime());
+        copy.setStatus(account.getStatus());
+        copy.setJWK(account.getJWK());
+        copy.setTermsOfServiceAgreed(account.getTermsOfServiceAgreed());
+
+        String[] contact = account.getContact();
+        copy.setContact(contact == null ? null : contact.clone());
+
+        return copy;
+    }
+
+    static ACMEOrder copyOrder(ACMEOrder order) {
+
+        ACMEOrder copy = new ACMEOrder();
+        copy.setID(order.getID());
+        copy.setAccountID(order.getAccountID());
+        copy.setCreationTime(order.getCreationTime());
+        copy.setExpirationTime(order.getExpirationTime());
+        copy.setNotBeforeTime(order.getNotBeforeTime());
+        copy.setNotAfterTime(order.getNotAfterTime());
+        copy.setStatus(order.getStatus());
+        copy.setError(order.getError());
+        copy.setCertID(order.getCertID());
+
+        ACMEIdentifier[] identifiers = order.getIdentifiers();
+        copy.setIdentifiers(identifiers == null ? null : identifiers.clone());
+
+        String[] authzIDs = order.getAuthzIDs();
+        copy.setAuthzIDs(authzIDs == null ? null : authzIDs.clone());
+
+        return copy;
+    }
+
+    static ACMEAuthorization copyAuthorization(ACMEAuthorization authorization) {
+
+        ACMEAuthorization copy = new ACMEAuthorization();
+        copy.setID(authorization.getID());
+        copy.setAccountID(authorization.getAccountID());
+        copy.setCreationTime(authorization.getCreationTime());
+        copy.setExpirationTime(authorization.getExpirationTime());
+        copy.setStatus(authorization.getStatus());
+        copy.setIdentifier(authorization.getIdentifier());
+        copy.setWildcard(authorization.getWildcard());
+
+        Collection<ACMEChallenge> challenges = authorization.getChallenges();
+        if (challenges != null) {
+            Collection<ACMEChallenge> challengesCopy = new ArrayList<>();
+            for (ACMEChallenge challenge : challenges) {
+                challengesCopy.add(copyChallenge(challenge));
+            }
+            copy.setChallenges(challengesCopy);
+        }
+
+        return copy;
+    }
+
+    static ACMEChallenge copyChallenge(ACMEChallenge challenge) {
+
+        ACMEChallenge copy = new ACMEChallenge();
+        copy.setID(challenge.getID());
+        copy.setAuthzID(challenge.getAuthzID());
+        copy.setType(challenge.getType());
+        copy.setToken(challenge.getToken());
+        copy.setStatus(challenge.getStatus());
+        copy.setError(challenge.getError());
+        copy.setValidationTime(challenge.getValidationTime());
+
+        return copy;
+    }
+}
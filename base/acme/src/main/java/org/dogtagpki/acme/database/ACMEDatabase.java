@@ -7,6 +7,7 @@ package org.dogtagpki.acme.database;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang3.NotImplementedException;
 import org.dogtagpki.acme.ACMEAccount;
@@ -23,6 +24,8 @@ public abstract class ACMEDatabase {
 
     protected ACMEDatabaseConfig config;
 
+    protected Collection<ACMEDatabaseListener> listeners = new CopyOnWriteArrayList<>();
+
     public ACMEDatabaseConfig getConfig() {
         return config;
     }
@@ -37,6 +40,38 @@ public abstract class ACMEDatabase {
     public void close() throws Exception {
     }
 
+    public void addListener(ACMEDatabaseListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ACMEDatabaseListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void fireAccountModified(String accountID) {
+        for (ACMEDatabaseListener listener : listeners) {
+            listener.accountModified(accountID);
+        }
+    }
+
+    public void fireOrderModified(String orderID) {
+        for (ACMEDatabaseListener listener : listeners) {
+            listener.orderModified(orderID);
+        }
+    }
+
+    public void fireAuthorizationModified(String authzID) {
+        for (ACMEDatabaseListener listener : listeners) {
+            listener.authorizationModified(authzID);
+        }
+    }
+
+    public void fireRecordsModified() {
+        for (ACMEDatabaseListener listener : listeners) {
+            listener.recordsModified();
+        }
+    }
+
     public Boolean getEnabled() throws Exception {
         return null;
     }
@@ -0,0 +1,26 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.database;
+
+/**
+ * This interface receives notifications about ACME records that have
+ * been modified or removed in the database, possibly by another ACME
+ * responder in the cluster.
+ */
+public interface ACMEDatabaseListener {
+
+    void accountModified(String accountID);
+
+    void orderModified(String orderID);
+
+    void authorizationModified(String authzID);
+
+    /**
+     * Called when any record might have been modified without a
+     * notification, e.g. while the database was not monitored.
+     */
+    void recordsModified();
+}
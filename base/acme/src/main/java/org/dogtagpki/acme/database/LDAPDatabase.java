@@ -118,6 +118,7 @@ public class LDAPDatabase extends ACMEDatabase {
 
     Boolean enabled;
     LDAPConfigMonitor monitor;
+    LDAPRecordMonitor recordMonitor;
 
     @Override
     public void init() throws Exception {
@@ -240,6 +241,16 @@ public class LDAPDatabase extends ACMEDatabase {
             monitor.setDatabase(this);
 
             new Thread(monitor, "LDAPConfigMonitor").start();
+
+            // notify the ACME database cache about records modified
+            // by other ACME responders
+            if ("true".equals(config.getParameter("cache.enabled"))) {
+
+                recordMonitor = new LDAPRecordMonitor();
+                recordMonitor.setDatabase(this);
+
+                new Thread(recordMonitor, "LDAPRecordMonitor").start();
+            }
         }
     }
 
@@ -1094,5 +1105,8 @@ public class LDAPDatabase extends ACMEDatabase {
         if (monitor != null) {
             monitor.stop();
         }
+        if (recordMonitor != null) {
+            recordMonitor.stop();
+        }
     }
 }
@@ -0,0 +1,161 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.database;
+
+import java.util.Arrays;
+import java.util.List;
+
+import netscape.ldap.LDAPAttribute;
+import netscape.ldap.LDAPConnection;
+import netscape.ldap.LDAPEntry;
+import netscape.ldap.LDAPException;
+import netscape.ldap.LDAPSearchConstraints;
+import netscape.ldap.LDAPSearchResults;
+import netscape.ldap.controls.LDAPPersistSearchControl;
+
+/**
+ * This class monitors the ACME accounts, orders, authorizations, and
+ * challenges modified or removed in the database (including by other
+ * ACME responders) and notifies the database listeners such that the
+ * cached records can be invalidated.
+ *
+ * Changes made while the persistent search is not running cannot be
+ * detected, so all cached records are invalidated each time the
+ * persistent search is (re)started.
+ */
+public class LDAPRecordMonitor implements Runnable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LDAPRecordMonitor.class);
+
+    LDAPDatabase database;
+    LDAPPersistSearchControl searchControl;
+    volatile boolean running = true;
+
+    LDAPConnection conn;
+    LDAPSearchResults results;
+
+    public LDAPRecordMonitor() {
+        searchControl = new LDAPPersistSearchControl(
+                LDAPPersistSearchControl.MODIFY | LDAPPersistSearchControl.DELETE,
+                true,  // return subsequent changes only
+                true,  // return controls
+                true); // persistent search control is critical
+    }
+
+    public LDAPDatabase getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(LDAPDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public void run() {
+
+        while (running) { // restart persistent search in case it's interrupted
+
+            LDAPConnection c = null;
+            try {
+                c = database.connFactory.getConn();
+
+                LDAPSearchConstraints searchConstraints = c.getSearchConstraints();
+                searchConstraints.setServerControls(searchControl);
+                searchConstraints.setBatchSize(1);
+                searchConstraints.setServerTimeLimit(0);
+
+                logger.info("Start monitoring ACME records");
+
+                LDAPSearchResults r = c.search(
+                        database.baseDN,
+                        LDAPConnection.SCOPE_SUB,
+                        "(|(" + LDAPDatabase.ATTR_OBJECTCLASS + "=" + LDAPDatabase.OBJ_ACCOUNT +
+                            ")(" + LDAPDatabase.ATTR_OBJECTCLASS + "=" + LDAPDatabase.OBJ_ORDER +
+                            ")(" + LDAPDatabase.ATTR_OBJECTCLASS + "=" + LDAPDatabase.OBJ_AUTHORIZATION +
+                            ")(" + LDAPDatabase.ATTR_OBJECTCLASS + "=" + LDAPDatabase.OBJ_CHALLENGE + "))",
+                        new String[] {
+                            LDAPDatabase.ATTR_OBJECTCLASS,
+                            LDAPDatabase.ATTR_ACCOUNT_ID,
+                            LDAPDatabase.ATTR_ORDER_ID,
+                            LDAPDatabase.ATTR_AUTHORIZATION_ID
+                        },
+                        false, // return attribute values
+                        searchConstraints);
+
+                synchronized (this) {
+                    conn = c;
+                    results = r;
+                }
+
+                // invalidate after the search has started to not miss changes
+                database.fireRecordsModified();
+
+                while (running && r.hasMoreElements()) { // process record updates
+                    LDAPEntry entry = r.next();
+                    processEntry(entry);
+                }
+
+                logger.info("Stop monitoring ACME records");
+
+            } catch (Throwable e) {
+                if (!running) break;
+
+                logger.error("Unable to monitor ACME records: " + e.getMessage(), e);
+                try {
+                    Thread.sleep(10 * 1000); // wait 10s then restart persistent search
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+
+            } finally {
+                synchronized (this) {
+                    conn = null;
+                    results = null;
+                }
+                if (c != null) {
+                    database.connFactory.returnConn(c);
+                }
+            }
+        }
+    }
+
+    void processEntry(LDAPEntry entry) {
+
+        logger.debug("LDAPRecordMonitor: Record modified: " + entry.getDN());
+
+        LDAPAttribute attr = entry.getAttribute(LDAPDatabase.ATTR_OBJECTCLASS);
+        List<String> classes = Arrays.asList(attr.getStringValueArray());
+
+        if (classes.contains(LDAPDatabase.OBJ_ACCOUNT)) {
+            attr = entry.getAttribute(LDAPDatabase.ATTR_ACCOUNT_ID);
+            database.fireAccountModified(attr.getStringValueArray()[0]);
+
+        } else if (classes.contains(LDAPDatabase.OBJ_ORDER)) {
+            attr = entry.getAttribute(LDAPDatabase.ATTR_ORDER_ID);
+            database.fireOrderModified(attr.getStringValueArray()[0]);
+
+        } else if (classes.contains(LDAPDatabase.OBJ_AUTHORIZATION)
+                || classes.contains(LDAPDatabase.OBJ_CHALLENGE)) {
+            // challenges are stored as part of the authorization
+            attr = entry.getAttribute(LDAPDatabase.ATTR_AUTHORIZATION_ID);
+            database.fireAuthorizationModified(attr.getStringValueArray()[0]);
+        }
+    }
+
+    public synchronized void stop() throws Exception {
+
+        running = false; // terminate the loop gracefully
+
+        // stop waiting for the next change
+        if (conn != null && results != null) {
+            try {
+                conn.abandon(results);
+            } catch (LDAPException e) {
+                logger.warn("Unable to stop monitoring ACME records: " + e.getMessage(), e);
+            }
+        }
+    }
+}
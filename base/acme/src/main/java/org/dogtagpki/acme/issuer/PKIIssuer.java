@@ -23,20 +23,12 @@ import org.mozilla.jss.netscape.security.util.Utils;
 import org.mozilla.jss.netscape.security.x509.RevocationReason;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 
-import com.netscape.certsrv.ca.CACertClient;
-import com.netscape.certsrv.ca.CAClient;
+import com.netscape.certsrv.ca.CAEnrollmentClient;
 import com.netscape.certsrv.cert.CertData;
-import com.netscape.certsrv.cert.CertEnrollmentRequest;
 import com.netscape.certsrv.cert.CertRequestInfo;
-import com.netscape.certsrv.cert.CertRequestInfos;
-import com.netscape.certsrv.cert.CertReviewResponse;
 import com.netscape.certsrv.cert.CertRevokeRequest;
 import com.netscape.certsrv.client.ClientConfig;
-import com.netscape.certsrv.client.PKIClient;
 import com.netscape.certsrv.dbs.certdb.CertId;
-import com.netscape.certsrv.profile.ProfileAttribute;
-import com.netscape.certsrv.profile.ProfileInput;
-import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestStatus;
 
 /**
@@ -49,6 +41,8 @@ public class PKIIssuer extends ACMEIssuer {
     private ClientConfig clientConfig = new ClientConfig();
     private String profile;
 
+    private CAEnrollmentClient caClient;
+
     public String getProfile() {
         return profile;
     }
@@ -108,6 +102,20 @@ public class PKIIssuer extends ACMEIssuer {
 
         profile = config.getParameter("profile");
         logger.info("- profile: " + profile);
+
+        caClient = new CAEnrollmentClient(clientConfig);
+
+        String maxIdleSessions = config.getParameter("maxIdleSessions");
+        if (maxIdleSessions != null) {
+            logger.info("- max idle sessions: " + maxIdleSessions);
+            caClient.setMaxIdleSessions(Integer.parseInt(maxIdleSessions));
+        }
+
+        String templateTimeout = config.getParameter("templateTimeout");
+        if (templateTimeout != null) {
+            logger.info("- template timeout (seconds): " + templateTimeout);
+            caClient.setTemplateTimeout(Integer.parseInt(templateTimeout));
+        }
     }
 
     @Override
@@ -115,87 +123,13 @@ public class PKIIssuer extends ACMEIssuer {
 
         logger.info("Issuing certificate");
 
-        try (PKIClient pkiClient = new PKIClient(clientConfig)) {
-
-            CAClient caClient = new CAClient(pkiClient);
-
-            // Here the agent credentials are stored in the ClientConfig and will
-            // be sent to the CA automatically if any of the methods being called
-            // requires REST authentication. However, the methods being called
-            // depend on the cert profile being used.
-            //
-            // If the profile has an authenticator, the request can be completed
-            // with the following methods:
-            // - CACertClient.getEnrollmentTemplate()
-            // - CACertClient.enrollRequest()
-            //
-            // The above methods do not require REST authentication, but the
-            // profile still requires authentication, so the credentials must be
-            // provided either through the request itself (i.e. using profile
-            // authentication) or by calling CAClient.login() (i.e. using REST
-            // authentication).
-            //
-            // If the profile does not have an authenticator, the request must
-            // be reviewed and approved with the following additional methods:
-            // - CACertClient.reviewRequest()
-            // - CACertClient.approveRequest()
-            //
-            // The above methods do require REST authentication so in this case
-            // it's not actually necessary to call CAClient.login(). However, to
-            // support both types of profiles the CAClient.login() needs to be
-            // called explicitly.
-            caClient.login();
-
-            CACertClient certClient = new CACertClient(caClient);
-            CertEnrollmentRequest certEnrollmentRequest = certClient.getEnrollmentTemplate(profile);
-
-            for (ProfileInput input : certEnrollmentRequest.getInputs()) {
+        CertRequestInfo info = caClient.enroll(profile, pkcs10, null);
 
-                ProfileAttribute typeAttr = input.getAttribute("cert_request_type");
-                if (typeAttr != null) {
-                    typeAttr.setValue("pkcs10");
-                }
-
-                ProfileAttribute csrAttr = input.getAttribute("cert_request");
-                if (csrAttr != null) {
-                    csrAttr.setValue(Utils.base64encodeSingleLine(pkcs10.toByteArray()));
-                }
-            }
-
-            logger.info("Request:\n" + certEnrollmentRequest);
-
-            CertRequestInfos infos = certClient.enrollRequest(certEnrollmentRequest, null, null);
-
-            logger.info("Responses:");
-            CertRequestInfo info = infos.getEntries().iterator().next();
-
-            RequestId requestId = info.getRequestID();
-
-            logger.info("- Request ID: " + requestId.toHexString());
-            logger.info("  Type: " + info.getRequestType());
-            logger.info("  Request Status: " + info.getRequestStatus());
-            logger.info("  Operation Result: " + info.getOperationResult());
-
-            String error = info.getErrorMessage();
-            if (error != null) {
-                throw new Exception("Unable to generate certificate: " + error);
-            }
-
-            CertId id = null;
-            if (info.getRequestStatus() == RequestStatus.COMPLETE) {
-                id = info.getCertId();
-            } else {
-                CertReviewResponse reviewInfo = certClient.reviewRequest(requestId);
-                certClient.approveRequest(requestId, reviewInfo);
-
-                info = certClient.getRequest(requestId);
-                id = info.getCertId();
-            }
+        CertId id = info.getCertId();
+        logger.info("Serial number: " + id.toHexString());
 
-            logger.info("Serial number: " + id.toHexString());
-            BigInteger serialNumber = id.toBigInteger();
-            return Base64.encodeBase64URLSafeString(serialNumber.toByteArray());
-        }
+        BigInteger serialNumber = id.toBigInteger();
+        return Base64.encodeBase64URLSafeString(serialNumber.toByteArray());
     }
 
     @Override
@@ -204,10 +138,8 @@ public class PKIIssuer extends ACMEIssuer {
         CertId id = new CertId(new BigInteger(1, Base64.decodeBase64(certID)));
         logger.info("Serial number: " + id.toHexString());
 
-        try (PKIClient pkiClient = new PKIClient(clientConfig)) {
+        return caClient.execute((pkiClient, certClient) -> {
 
-            CAClient caClient = new CAClient(pkiClient);
-            CACertClient certClient = new CACertClient(caClient);
             CertData certData = certClient.getCert(id);
 
             String pkcs7Chain = certData.getPkcs7CertChain();
@@ -234,7 +166,7 @@ public class PKIIssuer extends ACMEIssuer {
             }
 
             return sw.toString();
-        }
+        });
     }
 
     @Override
@@ -263,10 +195,8 @@ public class PKIIssuer extends ACMEIssuer {
 
         logger.info("Reviewing certificate");
 
-        try (PKIClient pkiClient = new PKIClient(clientConfig)) {
+        caClient.execute((pkiClient, certClient) -> {
 
-            CAClient caClient = new CAClient(pkiClient);
-            CACertClient certClient = new CACertClient(caClient);
             CertData certData = certClient.reviewCert(certID);
 
             // Compare cert in request to cert retrieved from PKI.
@@ -302,6 +232,15 @@ public class PKIIssuer extends ACMEIssuer {
                 String error = certRequestInfo.getErrorMessage();
                 throw new Exception("Unable to revoke certificate: " + error);
             }
+
+            return null;
+        });
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (caClient != null) {
+            caClient.close();
         }
     }
 }
@@ -0,0 +1,204 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dogtagpki.acme.ValidationResult;
+
+/**
+ * This class validates challenges with a bounded number of threads.
+ *
+ * Failed validations are retried after a delay using the executor's
+ * delay queue, so no thread is blocked between attempts. Concurrent
+ * submissions of the same challenge type, identifier, and token are
+ * coalesced into a single validation, and the number of concurrent
+ * validations against the same domain is limited.
+ */
+public class ACMEChallengeExecutor {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEChallengeExecutor.class);
+
+    // delay before retrying a validation blocked by the per-domain limit
+    public static final long DOMAIN_RETRY_DELAY = 1000; // milliseconds
+
+    private ACMEValidationConfig config;
+
+    private ScheduledThreadPoolExecutor executorService;
+
+    // challenges being validated by key
+    private Map<String, ACMEChallengeProcessor> processors = new ConcurrentHashMap<>();
+
+    // number of validations in progress by domain
+    private Map<String, Integer> domainValidations = new ConcurrentHashMap<>();
+
+    // challenges waiting for validation or being validated
+    AtomicInteger queued = new AtomicInteger();
+
+    // validations in progress
+    AtomicInteger active = new AtomicInteger();
+
+    // submissions coalesced with a validation in progress
+    AtomicLong coalesced = new AtomicLong();
+
+    // submissions rejected because the queue was full
+    AtomicLong rejected = new AtomicLong();
+
+    public ACMEValidationConfig getConfig() {
+        return config;
+    }
+
+    public void setConfig(ACMEValidationConfig config) {
+        this.config = config;
+    }
+
+    public void init() throws Exception {
+
+        logger.info("Initializing ACME challenge executor");
+        logger.info("- threads: " + config.getThreads());
+        logger.info("- queue size: " + config.getQueueSize());
+        logger.info("- max per domain: " + config.getMaxPerDomain());
+        logger.info("- max attempts: " + config.getMaxAttempts());
+        logger.info("- retry delay (seconds): " + config.getRetryDelay());
+
+        executorService = new ScheduledThreadPoolExecutor(config.getThreads(), r -> {
+            Thread thread = new Thread(r, "ACMEChallengeExecutor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executorService.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Submits a challenge for validation.
+     *
+     * @return false if the same challenge is already being validated
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public boolean submit(ACMEChallengeProcessor processor) {
+
+        String key = processor.getKey();
+
+        if (processors.putIfAbsent(key, processor) != null) {
+            long count = coalesced.incrementAndGet();
+            logger.info("Challenge " + key + " is already being validated (" + count + " coalesced)");
+            return false;
+        }
+
+        if (queued.incrementAndGet() > config.getQueueSize()) {
+            queued.decrementAndGet();
+            processors.remove(key, processor);
+            long count = rejected.incrementAndGet();
+            logger.warn("Challenge queue full, rejected challenge " + key + " (" + count + " rejected)");
+            throw new RejectedExecutionException("Too many challenges waiting for validation");
+        }
+
+        logger.info("Challenge queue: " + queued.get() + " queued, " + active.get() + " active");
+
+        try {
+            schedule(processor, 0);
+
+        } catch (RejectedExecutionException e) {
+            complete(processor);
+            throw e;
+        }
+
+        return true;
+    }
+
+    void schedule(ACMEChallengeProcessor processor, long delay) {
+        executorService.schedule(() -> process(processor), delay, TimeUnit.MILLISECONDS);
+    }
+
+    void process(ACMEChallengeProcessor processor) {
+
+        String domain = processor.getDomain();
+
+        if (!acquireDomain(domain)) {
+            logger.debug("Too many validations in progress for " + domain);
+            reschedule(processor, DOMAIN_RETRY_DELAY);
+            return;
+        }
+
+        ValidationResult result;
+
+        active.incrementAndGet();
+        try {
+            result = processor.validateChallenge();
+
+        } finally {
+            active.decrementAndGet();
+            releaseDomain(domain);
+        }
+
+        if (!result.isOK() && processor.getAttempts() < config.getMaxAttempts()) {
+            logger.info("Unable to validate challenge " + processor.getChallenge().getID()
+                    + ", retrying in " + config.getRetryDelay() + " seconds");
+            reschedule(processor, TimeUnit.SECONDS.toMillis(config.getRetryDelay()));
+            return;
+        }
+
+        try {
+            processor.finalizeAuthorization(result);
+
+        } catch (Exception e) {
+            logger.error("Unable to process challenge " + processor.getChallenge().getID() + ": " + e.getMessage(), e);
+
+        } finally {
+            complete(processor);
+        }
+    }
+
+    void reschedule(ACMEChallengeProcessor processor, long delay) {
+        try {
+            schedule(processor, delay);
+
+        } catch (RejectedExecutionException e) {
+            // executor has been shut down
+            logger.warn("Unable to reschedule challenge " + processor.getChallenge().getID() + ": " + e.getMessage());
+            complete(processor);
+        }
+    }
+
+    void complete(ACMEChallengeProcessor processor) {
+        processors.remove(processor.getKey(), processor);
+        queued.decrementAndGet();
+    }
+
+    boolean acquireDomain(String domain) {
+
+        int count = domainValidations.merge(domain, 1, Integer::sum);
+        if (count <= config.getMaxPerDomain()) {
+            return true;
+        }
+
+        releaseDomain(domain);
+        return false;
+    }
+
+    void releaseDomain(String domain) {
+        domainValidations.computeIfPresent(domain, (d, count) -> count > 1 ? count - 1 : null);
+    }
+
+    public void shutdown() throws Exception {
+
+        logger.info("Shutting down ACME challenge executor");
+        logger.info("- coalesced challenges: " + coalesced.get());
+        logger.info("- rejected challenges: " + rejected.get());
+
+        List<Runnable> tasks = executorService.shutdownNow();
+        if (!tasks.isEmpty()) {
+            logger.warn("Challenges not validated: " + tasks.size());
+        }
+    }
+}
@@ -13,6 +13,7 @@ import org.dogtagpki.acme.ACMEAccount;
 import org.dogtagpki.acme.ACMEAuthorization;
 import org.dogtagpki.acme.ACMEChallenge;
 import org.dogtagpki.acme.ACMEError;
+import org.dogtagpki.acme.ACMEIdentifier;
 import org.dogtagpki.acme.ACMEOrder;
 import org.dogtagpki.acme.ValidationResult;
 import org.dogtagpki.acme.validator.ACMEValidator;
@@ -20,7 +21,7 @@ import org.dogtagpki.acme.validator.ACMEValidator;
 /**
  * @author Endi S. Dewata
  */
-public class ACMEChallengeProcessor implements Runnable {
+public class ACMEChallengeProcessor {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEChallengeProcessor.class);
 
@@ -29,6 +30,8 @@ public class ACMEChallengeProcessor implements Runnable {
     ACMEChallenge challenge;
     ACMEValidator validator;
 
+    int attempts;
+
     public ACMEChallengeProcessor(
             ACMEAccount account,
             ACMEAuthorization authorization,
@@ -41,38 +44,59 @@ public class ACMEChallengeProcessor implements Runnable {
         this.validator = validator;
     }
 
-    @Override
-    public void run() {
-        try {
-            processChallenge();
-        } catch (Exception e) {
-            logger.error("Unable to process challenge " + challenge.getID() + ": " + e.getMessage(), e);
+    public ACMEChallenge getChallenge() {
+        return challenge;
+    }
+
+    /**
+     * Returns the key to coalesce concurrent validations
+     * of the same challenge type, identifier, and token.
+     */
+    public String getKey() {
+        return challenge.getType() + ":" + getDomain() + ":" + challenge.getToken();
+    }
+
+    /**
+     * Returns the domain to be validated.
+     */
+    public String getDomain() {
+
+        ACMEIdentifier identifier = authorization.getIdentifier();
+        String domain = identifier.getValue().toLowerCase();
+
+        if (domain.startsWith("*.")) {
+            domain = domain.substring(2);
         }
+
+        return domain;
     }
 
-    public void processChallenge() throws Exception {
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Validates the challenge once.
+     */
+    public ValidationResult validateChallenge() {
 
         String challengeID = challenge.getID();
-        logger.info("Processing challenge " + challengeID);
-
-        // TODO make retry parameters configurable
-        int maxAttempts = 5;
-        int delaySeconds = 5;
-        int attempts = 0;
-        ValidationResult r = null;
-
-        while (attempts++ < maxAttempts) {
-            try {
-                r = validator.validateChallenge(authorization, challenge);
-            } catch (Exception e) {
-                ACMEError error = new ACMEError();
-                error.setType("urn:ietf:params:acme:error:serverInternal");
-                error.setDetail("Internal server error: " + e);
-                r = ValidationResult.fail(error);
-            }
-            if (r.isOK()) break;
-            Thread.sleep(delaySeconds * 1000);
+        attempts++;
+
+        logger.info("Processing challenge " + challengeID + " (attempt " + attempts + ")");
+
+        try {
+            return validator.validateChallenge(authorization, challenge);
+
+        } catch (Exception e) {
+            ACMEError error = new ACMEError();
+            error.setType("urn:ietf:params:acme:error:serverInternal");
+            error.setDetail("Internal server error: " + e);
+            return ValidationResult.fail(error);
         }
+    }
+
+    public void finalizeAuthorization(ValidationResult r) throws Exception {
 
         if (r.isOK()) {
             finalizeValidAuthorization();
@@ -6,6 +6,7 @@
 package org.dogtagpki.acme.server;
 
 import java.net.URI;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -92,8 +93,18 @@ public class ACMEChallengeService {
                     challenge,
                     validator);
 
-            // TODO: use thread pool
-            new Thread(processor).start();
+            ACMEChallengeExecutor executor = engine.getChallengeExecutor();
+            try {
+                executor.submit(processor);
+
+            } catch (RejectedExecutionException e) {
+                // let the client retry the challenge later
+                challenge.setStatus("pending");
+                engine.updateAuthorization(account, authorization);
+
+                int retryAfter = executor.getConfig().getRetryDelay();
+                throw engine.createRateLimitedException(e.getMessage(), retryAfter);
+            }
 
         } else if (challengeStatus.equals("processing")) {
             // TODO: retry the challenge
@@ -0,0 +1,56 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.security.SecureRandom;
+import java.util.Date;
+
+import org.apache.commons.codec.binary.Base64;
+import org.dogtagpki.acme.ACMENonce;
+import org.dogtagpki.acme.database.ACMEDatabase;
+
+/**
+ * This class stores the nonces in the ACME database
+ * so they can be shared by multiple ACME servers.
+ */
+public class ACMEDatabaseNonceStore extends ACMENonceStore {
+
+    ACMEDatabase database;
+    SecureRandom random;
+
+    public ACMEDatabaseNonceStore(ACMEDatabase database, SecureRandom random) {
+        this.database = database;
+        this.random = random;
+    }
+
+    @Override
+    public ACMENonce createNonce(Date creationTime, Date expirationTime) throws Exception {
+
+        // generate 128-bit nonce
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String nonceID = Base64.encodeBase64URLSafeString(bytes);
+
+        ACMENonce nonce = new ACMENonce();
+        nonce.setID(nonceID);
+        nonce.setCreationTime(creationTime);
+        nonce.setExpirationTime(expirationTime);
+
+        database.addNonce(nonce);
+
+        return nonce;
+    }
+
+    @Override
+    public ACMENonce removeNonce(String nonceID) throws Exception {
+        return database.removeNonce(nonceID);
+    }
+
+    @Override
+    public void removeExpiredNonces(Date currentTime) throws Exception {
+        database.removeExpiredNonces(currentTime);
+    }
+}
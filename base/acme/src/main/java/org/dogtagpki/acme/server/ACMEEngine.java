@@ -25,7 +25,6 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import javax.ws.rs.WebApplicationException;
@@ -47,6 +46,7 @@ import org.dogtagpki.acme.ACMEOrder;
 import org.dogtagpki.acme.ACMERevocation;
 import org.dogtagpki.acme.JWK;
 import org.dogtagpki.acme.JWS;
+import org.dogtagpki.acme.database.ACMECachingDatabase;
 import org.dogtagpki.acme.database.ACMEDatabase;
 import org.dogtagpki.acme.database.ACMEDatabaseConfig;
 import org.dogtagpki.acme.issuer.ACMEIssuer;
@@ -90,6 +90,7 @@ public class ACMEEngine {
 
     private ACMEValidatorsConfig validatorsConfig;
     private Map<String, ACMEValidator> validators = new HashMap<>();
+    private ACMEChallengeExecutor challengeExecutor;
 
     private ACMEIssuerConfig issuerConfig;
     private ACMEIssuer issuer;
@@ -98,8 +99,7 @@ public class ACMEEngine {
 
     private RealmCommon realm;
 
-    private boolean noncesPersistent;
-    private Map<String, ACMENonce> nonces = new ConcurrentHashMap<>();
+    private ACMENonceStore nonceStore;
 
     public static ACMEEngine getInstance() {
         return INSTANCE;
@@ -152,6 +152,10 @@ public class ACMEEngine {
         return validators.values();
     }
 
+    public ACMEChallengeExecutor getChallengeExecutor() {
+        return challengeExecutor;
+    }
+
     public ACMEValidator getValidator(String name) {
         return validators.get(name);
     }
@@ -209,6 +213,7 @@ public class ACMEEngine {
         logger.info("- enabled: " + config.isEnabled());
         logger.info("- base URL: " + config.getBaseURL());
         logger.info("- nonces persistent: " + config.getNoncesPersistent());
+        logger.info("- nonces stateless: " + config.getNoncesStateless());
 
         ACMEPolicyConfig policyConfig = config.getPolicyConfig();
         logger.info("- wildcard: " + policyConfig.getEnableWildcards());
@@ -273,6 +278,36 @@ public class ACMEEngine {
         database = databaseClass.getDeclaredConstructor().newInstance();
         database.setConfig(databaseConfig);
         database.init();
+
+        if ("true".equals(databaseConfig.getParameter("cache.enabled"))) {
+            ACMECachingDatabase cachingDatabase = new ACMECachingDatabase(database);
+            cachingDatabase.setConfig(databaseConfig);
+            cachingDatabase.init();
+            database = cachingDatabase;
+        }
+    }
+
+    public void initNonceStore() throws Exception {
+
+        logger.info("Initializing ACME nonce store");
+
+        // generate nonces with JSS
+        SecureRandom random = SecureRandom.getInstance("pkcs11prng", "Mozilla-JSS");
+
+        if (Boolean.TRUE.equals(config.getNoncesPersistent())) {
+            nonceStore = new ACMEDatabaseNonceStore(database, random);
+
+        } else if (Boolean.TRUE.equals(config.getNoncesStateless())) {
+            String secret = config.getNoncesSecret();
+            nonceStore = new ACMEStatelessNonceStore(
+                    random,
+                    secret == null ? null : Base64.decodeBase64(secret));
+
+        } else {
+            nonceStore = new ACMEMemoryNonceStore(random);
+        }
+
+        nonceStore.init();
     }
 
     public void initValidators(String filename) throws Exception {
@@ -309,6 +344,13 @@ public class ACMEEngine {
         }
     }
 
+    public void initChallengeExecutor() throws Exception {
+
+        challengeExecutor = new ACMEChallengeExecutor();
+        challengeExecutor.setConfig(config.getValidationConfig());
+        challengeExecutor.init();
+    }
+
     public void initIssuer(String filename) throws Exception {
 
         File issuerConfigFile = new File(filename);
@@ -453,13 +495,12 @@ public class ACMEEngine {
         logger.info("ACME configuration directory: " + acmeConfDir);
         loadConfig(acmeConfDir + File.separator + "engine.conf");
 
-        Boolean noncePersistent = config.getNoncesPersistent();
-        this.noncesPersistent =  noncePersistent != null ? noncePersistent : false;
-
         initRandomGenerator();
         initMetadata(acmeConfDir + File.separator + "metadata.conf");
         initDatabase(acmeConfDir + File.separator + "database.conf");
+        initNonceStore();
         initValidators(acmeConfDir + File.separator + "validators.conf");
+        initChallengeExecutor();
         initIssuer(acmeConfDir + File.separator + "issuer.conf");
         initScheduler(acmeConfDir + File.separator + "scheduler.conf");
         initMonitors(acmeConfDir + File.separator + "configsources.conf");
@@ -468,6 +509,13 @@ public class ACMEEngine {
         logger.info("ACME engine started");
     }
 
+    public void shutdownNonceStore() throws Exception {
+        if (nonceStore == null) return;
+
+        nonceStore.close();
+        nonceStore = null;
+    }
+
     public void shutdownDatabase() throws Exception {
         if (database == null) return;
 
@@ -484,6 +532,13 @@ public class ACMEEngine {
         validators.clear();
     }
 
+    public void shutdownChallengeExecutor() throws Exception {
+        if (challengeExecutor == null) return;
+
+        challengeExecutor.shutdown();
+        challengeExecutor = null;
+    }
+
     public void shutdownIssuer() throws Exception {
         if (issuer == null) return;
 
@@ -519,8 +574,10 @@ public class ACMEEngine {
         shutdownRealm();
         shutdownMonitors();
         shutdownScheduler();
+        shutdownChallengeExecutor();
         shutdownIssuer();
         shutdownValidators();
+        shutdownNonceStore();
         shutdownDatabase();
 
         logger.info("ACME engine stopped");
@@ -535,28 +592,9 @@ public class ACMEEngine {
     public ACMENonce createNonce() throws Exception {
 
         Date currentTime = new Date();
-        ACMENonce nonce = new ACMENonce();
-
-        // generate 128-bit nonce with JSS
-        // TODO: make it configurable
-
-        byte[] bytes = new byte[16];
-        SecureRandom random = SecureRandom.getInstance("pkcs11prng", "Mozilla-JSS");
-        random.nextBytes(bytes);
-        String nonceID = Base64.encodeBase64URLSafeString(bytes);
-
-        nonce.setID(nonceID);
-        nonce.setCreationTime(currentTime);
-
         Date expirationTime = policy.getNonceExpirationTime(currentTime);
-        nonce.setExpirationTime(expirationTime);
-
-        if (noncesPersistent) {
-            database.addNonce(nonce);
-        } else {
-            nonces.put(nonce.getID(), nonce);
-        }
 
+        ACMENonce nonce = nonceStore.createNonce(currentTime, expirationTime);
         logger.info("Created nonce: " + nonce);
 
         return nonce;
@@ -564,13 +602,7 @@ public class ACMEEngine {
 
     public void validateNonce(String value) throws Exception {
 
-        ACMENonce nonce;
-
-        if (noncesPersistent) {
-            nonce = database.removeNonce(value);
-        } else {
-            nonce = nonces.remove(value);
-        }
+        ACMENonce nonce = nonceStore.removeNonce(value);
 
         if (nonce == null) {
             // TODO: generate proper exception
@@ -590,11 +622,7 @@ public class ACMEEngine {
 
     public void removeExpiredRecords(Date currentTime) throws Exception {
 
-        if (noncesPersistent) {
-            database.removeExpiredNonces(currentTime);
-        } else {
-            nonces.values().removeIf(n -> !currentTime.before(n.getExpirationTime()));
-        }
+        nonceStore.removeExpiredNonces(currentTime);
 
         database.removeExpiredAuthorizations(currentTime);
         database.removeExpiredOrders(currentTime);
@@ -727,6 +755,23 @@ public class ACMEEngine {
         return new WebApplicationException(builder.build());
     }
 
+    public Exception createRateLimitedException(String detail, int retryAfter) {
+
+        logger.info("Rate limited: " + detail);
+
+        // 429 Too Many Requests
+        ResponseBuilder builder = Response.status(429);
+        builder.type("application/problem+json");
+        builder.header("Retry-After", retryAfter);
+
+        ACMEError error = new ACMEError();
+        error.setType("urn:ietf:params:acme:error:rateLimited");
+        error.setDetail(detail);
+        builder.entity(error);
+
+        return new WebApplicationException(builder.build());
+    }
+
     public void updateAccount(ACMEAccount account) throws Exception {
         database.updateAccount(account);
     }
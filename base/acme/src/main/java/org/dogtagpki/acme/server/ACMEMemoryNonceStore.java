@@ -0,0 +1,83 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Date;
+
+import org.apache.commons.codec.binary.Base64;
+import org.dogtagpki.acme.ACMENonce;
+
+/**
+ * This class stores the nonces in memory.
+ *
+ * The expiration time is encoded in the nonce ID together with
+ * 128 random bits, so a nonce can be found in its expiration
+ * bucket without an index, and the expired nonces can be removed
+ * a bucket at a time.
+ */
+public class ACMEMemoryNonceStore extends ACMENonceStore {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEMemoryNonceStore.class);
+
+    public static final int RANDOM_SIZE = 16; // bytes
+
+    SecureRandom random;
+    ACMENonceBuckets buckets = new ACMENonceBuckets();
+
+    public ACMEMemoryNonceStore(SecureRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public ACMENonce createNonce(Date creationTime, Date expirationTime) throws Exception {
+
+        byte[] bytes = new byte[RANDOM_SIZE];
+        random.nextBytes(bytes);
+
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + RANDOM_SIZE);
+        buffer.putLong(expirationTime.getTime());
+        buffer.put(bytes);
+
+        String nonceID = Base64.encodeBase64URLSafeString(buffer.array());
+        buckets.add(nonceID, expirationTime.getTime());
+
+        ACMENonce nonce = new ACMENonce();
+        nonce.setID(nonceID);
+        nonce.setCreationTime(creationTime);
+        nonce.setExpirationTime(expirationTime);
+
+        return nonce;
+    }
+
+    @Override
+    public ACMENonce removeNonce(String nonceID) throws Exception {
+
+        byte[] bytes = Base64.decodeBase64(nonceID);
+        if (bytes.length != Long.BYTES + RANDOM_SIZE) {
+            return null;
+        }
+
+        long expirationTime = ByteBuffer.wrap(bytes).getLong();
+
+        if (!buckets.remove(nonceID, expirationTime)) {
+            return null;
+        }
+
+        ACMENonce nonce = new ACMENonce();
+        nonce.setID(nonceID);
+        nonce.setExpirationTime(new Date(expirationTime));
+
+        return nonce;
+    }
+
+    @Override
+    public void removeExpiredNonces(Date currentTime) throws Exception {
+        buckets.removeExpired(currentTime.getTime());
+        logger.info("Nonces in memory: " + buckets.size());
+    }
+}
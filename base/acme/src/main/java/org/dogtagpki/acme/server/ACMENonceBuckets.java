@@ -0,0 +1,73 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps nonce IDs in buckets by expiration time so that
+ * the expired nonces can be removed a whole bucket at a time without
+ * scanning the nonces.
+ *
+ * Each bucket is a concurrent set, so threads adding or removing
+ * nonces do not contend on a single lock.
+ */
+public class ACMENonceBuckets {
+
+    public static final long DEFAULT_BUCKET_SIZE = TimeUnit.MINUTES.toMillis(1);
+
+    long bucketSize;
+
+    // nonce IDs by bucket number
+    ConcurrentSkipListMap<Long, Set<String>> buckets = new ConcurrentSkipListMap<>();
+
+    public ACMENonceBuckets() {
+        this(DEFAULT_BUCKET_SIZE);
+    }
+
+    public ACMENonceBuckets(long bucketSize) {
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * @return false if the nonce already exists
+     */
+    public boolean add(String nonceID, long expirationTime) {
+        Set<String> bucket = buckets.computeIfAbsent(
+                expirationTime / bucketSize,
+                k -> Collections.newSetFromMap(new ConcurrentHashMap<>()));
+        return bucket.add(nonceID);
+    }
+
+    /**
+     * @return false if the nonce does not exist
+     */
+    public boolean remove(String nonceID, long expirationTime) {
+        Set<String> bucket = buckets.get(expirationTime / bucketSize);
+        return bucket != null && bucket.remove(nonceID);
+    }
+
+    /**
+     * Removes the buckets in which all nonces have expired.
+     */
+    public void removeExpired(long currentTime) {
+        Map<Long, Set<String>> expiredBuckets = buckets.headMap(currentTime / bucketSize);
+        expiredBuckets.clear();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Set<String> bucket : buckets.values()) {
+            size += bucket.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,37 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.util.Date;
+
+import org.dogtagpki.acme.ACMENonce;
+
+/**
+ * This class stores the nonces issued by the ACME server
+ * until they are used or expired.
+ */
+public abstract class ACMENonceStore {
+
+    public void init() throws Exception {
+    }
+
+    /**
+     * Generates a new nonce.
+     */
+    public abstract ACMENonce createNonce(Date creationTime, Date expirationTime) throws Exception;
+
+    /**
+     * Removes a nonce so it cannot be used again.
+     *
+     * @return the nonce, or null if the nonce is unknown or already used
+     */
+    public abstract ACMENonce removeNonce(String nonceID) throws Exception;
+
+    public abstract void removeExpiredNonces(Date currentTime) throws Exception;
+
+    public void close() throws Exception {
+    }
+}
@@ -0,0 +1,153 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.dogtagpki.acme.ACMENonce;
+
+/**
+ * This class issues nonces that are authenticated with HMAC, so
+ * issuing a nonce does not store anything, and any ACME server
+ * sharing the same secret can verify the nonces issued by others.
+ *
+ * The nonces that have been used are remembered in memory until
+ * they expire to prevent replays. The replay protection is local
+ * to each server, so with multiple servers a nonce could be used
+ * once on each server within its (short) lifetime.
+ */
+public class ACMEStatelessNonceStore extends ACMENonceStore {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEStatelessNonceStore.class);
+
+    public static final String ALGORITHM = "HmacSHA256";
+
+    public static final int RANDOM_SIZE = 8; // bytes
+    public static final int MAC_SIZE = 16; // bytes
+    public static final int DATA_SIZE = Long.BYTES + RANDOM_SIZE;
+
+    SecureRandom random;
+    SecretKeySpec key;
+
+    // Mac is not thread-safe
+    ThreadLocal<Mac> macs;
+
+    // nonces that have been used
+    ACMENonceBuckets usedNonces = new ACMENonceBuckets();
+
+    /**
+     * @param secret HMAC secret, or null to generate a random secret
+     */
+    public ACMEStatelessNonceStore(SecureRandom random, byte[] secret) {
+
+        this.random = random;
+
+        if (secret == null) {
+            logger.info("Generating random nonce secret");
+            secret = new byte[32];
+            random.nextBytes(secret);
+        }
+
+        key = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    @Override
+    public void init() throws Exception {
+
+        // check the algorithm and the key
+        createMac();
+
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                return createMac();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    Mac createMac() throws Exception {
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(key);
+        return mac;
+    }
+
+    byte[] sign(byte[] data) {
+        Mac mac = macs.get();
+        mac.update(data, 0, DATA_SIZE);
+        return Arrays.copyOf(mac.doFinal(), MAC_SIZE);
+    }
+
+    @Override
+    public ACMENonce createNonce(Date creationTime, Date expirationTime) throws Exception {
+
+        byte[] bytes = new byte[RANDOM_SIZE];
+        random.nextBytes(bytes);
+
+        ByteBuffer buffer = ByteBuffer.allocate(DATA_SIZE + MAC_SIZE);
+        buffer.putLong(expirationTime.getTime());
+        buffer.put(bytes);
+        buffer.put(sign(buffer.array()));
+
+        ACMENonce nonce = new ACMENonce();
+        nonce.setID(Base64.encodeBase64URLSafeString(buffer.array()));
+        nonce.setCreationTime(creationTime);
+        nonce.setExpirationTime(expirationTime);
+
+        return nonce;
+    }
+
+    @Override
+    public ACMENonce removeNonce(String nonceID) throws Exception {
+
+        byte[] bytes = Base64.decodeBase64(nonceID);
+        if (bytes.length != DATA_SIZE + MAC_SIZE) {
+            return null;
+        }
+
+        // The decoder ignores invalid characters and padding and accepts
+        // both alphabets, so the same nonce could be spelled differently
+        // to bypass the replay check. Only accept the canonical encoding.
+        if (!Base64.encodeBase64URLSafeString(bytes).equals(nonceID)) {
+            logger.info("Invalid nonce encoding: " + nonceID);
+            return null;
+        }
+
+        byte[] signature = Arrays.copyOfRange(bytes, DATA_SIZE, DATA_SIZE + MAC_SIZE);
+        if (!MessageDigest.isEqual(signature, sign(bytes))) {
+            logger.info("Invalid nonce signature: " + nonceID);
+            return null;
+        }
+
+        long expirationTime = ByteBuffer.wrap(bytes).getLong();
+
+        if (expirationTime > System.currentTimeMillis()
+                && !usedNonces.add(nonceID, expirationTime)) {
+            logger.info("Nonce already used: " + nonceID);
+            return null;
+        }
+
+        ACMENonce nonce = new ACMENonce();
+        nonce.setID(nonceID);
+        nonce.setExpirationTime(new Date(expirationTime));
+
+        return nonce;
+    }
+
+    @Override
+    public void removeExpiredNonces(Date currentTime) throws Exception {
+        usedNonces.removeExpired(currentTime.getTime());
+        logger.info("Used nonces in memory: " + usedNonces.size());
+    }
+}
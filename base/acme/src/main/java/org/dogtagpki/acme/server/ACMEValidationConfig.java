@@ -0,0 +1,127 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.netscape.certsrv.util.JSONSerializer;
+
+/**
+ * This class contains the parameters of the challenge validation
+ * executor (validation.* parameters in engine.conf).
+ */
+@JsonInclude(Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown=true)
+public class ACMEValidationConfig implements JSONSerializer {
+
+    public static final int DEFAULT_THREADS = 4;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_MAX_PER_DOMAIN = 2;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final int DEFAULT_RETRY_DELAY = 5; // seconds
+
+    // number of threads validating challenges
+    private Integer threads = DEFAULT_THREADS;
+
+    // max number of challenges waiting for validation
+    private Integer queueSize = DEFAULT_QUEUE_SIZE;
+
+    // max number of concurrent validations per domain
+    private Integer maxPerDomain = DEFAULT_MAX_PER_DOMAIN;
+
+    private Integer maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private Integer retryDelay = DEFAULT_RETRY_DELAY;
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
+    public Integer getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(Integer queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public Integer getMaxPerDomain() {
+        return maxPerDomain;
+    }
+
+    public void setMaxPerDomain(Integer maxPerDomain) {
+        this.maxPerDomain = maxPerDomain;
+    }
+
+    public Integer getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(Integer maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public Integer getRetryDelay() {
+        return retryDelay;
+    }
+
+    public void setRetryDelay(Integer retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public void setProperty(String key, String value) throws Exception {
+
+        if (key.equals("threads")) {
+            threads = Integer.valueOf(value);
+
+        } else if (key.equals("queueSize")) {
+            queueSize = Integer.valueOf(value);
+
+        } else if (key.equals("maxPerDomain")) {
+            maxPerDomain = Integer.valueOf(value);
+
+        } else if (key.equals("maxAttempts")) {
+            maxAttempts = Integer.valueOf(value);
+
+        } else if (key.equals("retryDelay")) {
+            retryDelay = Integer.valueOf(value);
+        }
+    }
+
+    public static ACMEValidationConfig fromProperties(Properties props) throws Exception {
+
+        ACMEValidationConfig config = new ACMEValidationConfig();
+
+        for (Entry<Object, Object> entry : props.entrySet()) {
+            String key = entry.getKey().toString();
+            String value = entry.getValue().toString();
+            config.setProperty(key, value);
+        }
+
+        return config;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return toJSON();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) {
+        ACMEValidationConfig config = new ACMEValidationConfig();
+        System.out.println(config);
+    }
+}
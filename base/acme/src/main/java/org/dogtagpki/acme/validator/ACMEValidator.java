@@ -17,9 +17,14 @@ public abstract class ACMEValidator {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEValidator.class);
 
+    public static final int DEFAULT_TIMEOUT = 10; // seconds
+
     protected String name;
     protected String type;
 
+    // timeout for each lookup
+    protected int timeout = DEFAULT_TIMEOUT;
+
     protected ACMEValidatorConfig config;
 
     public ACMEValidator(String name, String type) {
@@ -51,7 +56,21 @@ public abstract class ACMEValidator {
         this.config = config;
     }
 
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
     public void init() throws Exception {
+
+        String timeout = config.getParameter("timeout");
+        if (timeout != null) {
+            logger.info("- timeout (seconds): " + timeout);
+            this.timeout = Integer.parseInt(timeout);
+        }
     }
 
     public void close() throws Exception {
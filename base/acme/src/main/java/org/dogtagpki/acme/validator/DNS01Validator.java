@@ -7,6 +7,7 @@ package org.dogtagpki.acme.validator;
 
 import java.security.MessageDigest;
 import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
@@ -106,8 +107,19 @@ public class DNS01Validator extends ACMEValidator {
         Hashtable<String, String> env = new Hashtable<>();
         env.put("java.naming.factory.initial", "com.sun.jndi.dns.DnsContextFactory");
 
+        // the timeout is doubled on each retry, so with 2 retries
+        // the lookup takes at most 7 times the initial timeout
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(timeout);
+        env.put("com.sun.jndi.dns.timeout.initial", Long.toString(Math.max(timeoutMillis / 7, 1)));
+        env.put("com.sun.jndi.dns.timeout.retries", "2");
+
         DirContext dirContext = new InitialDirContext(env);
-        Attributes attrs = dirContext.getAttributes(recordName, new String[] { "TXT" });
+        Attributes attrs;
+        try {
+            attrs = dirContext.getAttributes(recordName, new String[] { "TXT" });
+        } finally {
+            dirContext.close();
+        }
 
         Attribute attr = attrs.get("TXT");
         String response = (String) attr.get();
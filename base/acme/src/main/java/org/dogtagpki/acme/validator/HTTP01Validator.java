@@ -7,9 +7,11 @@ package org.dogtagpki.acme.validator;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -110,18 +112,25 @@ public class HTTP01Validator extends ACMEValidator {
 
         logger.info("Retrieving " + validationURL);
 
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        int timeoutMillis = (int) TimeUnit.SECONDS.toMillis(timeout);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .build();
+
         HttpGet httpGet = new HttpGet(validationURL);
-        CloseableHttpResponse httpResponse = httpClient.execute(httpGet);
 
         String response;
-        try {
+        try (CloseableHttpClient httpClient = HttpClients.custom()
+                    .setDefaultRequestConfig(requestConfig)
+                    .build();
+                CloseableHttpResponse httpResponse = httpClient.execute(httpGet)) {
+
             HttpEntity entity = httpResponse.getEntity();
             response = IOUtils.toString(entity.getContent(), "UTF-8").trim();
             EntityUtils.consume(entity);
-
-        } finally {
-            httpResponse.close();
         }
 
         logger.info("Response: " + response);
@@ -0,0 +1,84 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ACMECacheTest {
+
+    @Test
+    public void testPutAndGet() {
+
+        ACMECache<String> cache = new ACMECache<>("test", 60, 10);
+
+        cache.put("a", "1");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testMaxSize() {
+
+        ACMECache<String> cache = new ACMECache<>("test", 60, 2);
+
+        cache.put("a", "1");
+        cache.put("b", "2");
+
+        // use a so b becomes the least recently used entry
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    public void testDisabled() {
+
+        ACMECache<String> cache = new ACMECache<>("test", 0, 10);
+        assertFalse(cache.isEnabled());
+
+        cache.put("a", "1");
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testStaleValue() {
+
+        ACMECache<String> cache = new ACMECache<>("test", 60, 10);
+
+        // value read from the database before it was modified
+        long stamp = cache.getStamp();
+        cache.remove("a");
+        cache.putIfCurrent("a", "old", stamp);
+
+        assertNull(cache.get("a"));
+
+        // value read from the database before the cache was cleared
+        stamp = cache.getStamp();
+        cache.clear();
+        cache.putIfCurrent("a", "old", stamp);
+
+        assertNull(cache.get("a"));
+
+        // value read from the database without changes
+        stamp = cache.getStamp();
+        cache.putIfCurrent("a", "new", stamp);
+
+        assertEquals("new", cache.get("a"));
+    }
+}
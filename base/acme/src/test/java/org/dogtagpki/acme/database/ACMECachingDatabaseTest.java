@@ -0,0 +1,94 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.database;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dogtagpki.acme.ACMEAccount;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ACMECachingDatabaseTest {
+
+    static final String ACCOUNT_ID = "account1";
+
+    InMemoryDatabase database;
+    ACMECachingDatabase cachingDatabase;
+
+    @Before
+    public void setUp() throws Exception {
+
+        database = new InMemoryDatabase();
+        database.init();
+
+        cachingDatabase = new ACMECachingDatabase(database);
+        cachingDatabase.setConfig(new ACMEDatabaseConfig());
+        cachingDatabase.init();
+
+        cachingDatabase.addAccount(createAccount("valid"));
+    }
+
+    ACMEAccount createAccount(String status) {
+        ACMEAccount account = new ACMEAccount();
+        account.setID(ACCOUNT_ID);
+        account.setStatus(status);
+        return account;
+    }
+
+    @Test
+    public void testAccountModified() throws Exception {
+
+        // account deactivated by another ACME responder
+        database.addAccount(createAccount("deactivated"));
+        assertEquals("valid", cachingDatabase.getAccount(ACCOUNT_ID).getStatus());
+
+        database.fireAccountModified(ACCOUNT_ID);
+        assertEquals("deactivated", cachingDatabase.getAccount(ACCOUNT_ID).getStatus());
+    }
+
+    @Test
+    public void testRecordsModified() throws Exception {
+
+        List<String> notifications = new ArrayList<>();
+        cachingDatabase.addListener(new ACMEDatabaseListener() {
+            @Override
+            public void accountModified(String accountID) {
+                notifications.add("account " + accountID);
+            }
+            @Override
+            public void orderModified(String orderID) {
+                notifications.add("order " + orderID);
+            }
+            @Override
+            public void authorizationModified(String authzID) {
+                notifications.add("authorization " + authzID);
+            }
+            @Override
+            public void recordsModified() {
+                notifications.add("records");
+            }
+        });
+
+        // account deactivated while the database was not monitored
+        database.addAccount(createAccount("deactivated"));
+        assertEquals("valid", cachingDatabase.getAccount(ACCOUNT_ID).getStatus());
+
+        database.fireRecordsModified();
+        assertEquals("deactivated", cachingDatabase.getAccount(ACCOUNT_ID).getStatus());
+        assertEquals(List.of("records"), notifications);
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+
+        // changes to the returned record do not affect the cache
+        cachingDatabase.getAccount(ACCOUNT_ID).setStatus("deactivated");
+        assertEquals("valid", cachingDatabase.getAccount(ACCOUNT_ID).getStatus());
+    }
+}
@@ -0,0 +1,93 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import netscape.ldap.LDAPAttribute;
+import netscape.ldap.LDAPAttributeSet;
+import netscape.ldap.LDAPEntry;
+
+public class LDAPRecordMonitorTest {
+
+    LDAPDatabase database;
+    LDAPRecordMonitor monitor;
+    List<String> notifications;
+
+    @Before
+    public void setUp() {
+
+        database = new LDAPDatabase();
+        notifications = new ArrayList<>();
+
+        database.addListener(new ACMEDatabaseListener() {
+            @Override
+            public void accountModified(String accountID) {
+                notifications.add("account " + accountID);
+            }
+            @Override
+            public void orderModified(String orderID) {
+                notifications.add("order " + orderID);
+            }
+            @Override
+            public void authorizationModified(String authzID) {
+                notifications.add("authorization " + authzID);
+            }
+            @Override
+            public void recordsModified() {
+                notifications.add("records");
+            }
+        });
+
+        monitor = new LDAPRecordMonitor();
+        monitor.setDatabase(database);
+    }
+
+    LDAPEntry createEntry(String objectClass, String idAttr, String id) {
+
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        attrs.add(new LDAPAttribute(LDAPDatabase.ATTR_OBJECTCLASS, new String[] { "top", objectClass }));
+        attrs.add(new LDAPAttribute(idAttr, id));
+
+        return new LDAPEntry(idAttr + "=" + id + ",dc=acme,dc=example,dc=com", attrs);
+    }
+
+    @Test
+    public void testProcessEntry() {
+
+        monitor.processEntry(createEntry(LDAPDatabase.OBJ_ACCOUNT, LDAPDatabase.ATTR_ACCOUNT_ID, "account1"));
+        monitor.processEntry(createEntry(LDAPDatabase.OBJ_ORDER, LDAPDatabase.ATTR_ORDER_ID, "order1"));
+        monitor.processEntry(createEntry(LDAPDatabase.OBJ_AUTHORIZATION, LDAPDatabase.ATTR_AUTHORIZATION_ID, "authz1"));
+
+        // challenges are stored as part of the authorization
+        monitor.processEntry(createEntry(LDAPDatabase.OBJ_CHALLENGE, LDAPDatabase.ATTR_AUTHORIZATION_ID, "authz2"));
+
+        assertEquals(List.of(
+                "account account1",
+                "order order1",
+                "authorization authz1",
+                "authorization authz2"), notifications);
+    }
+
+    @Test
+    public void testStop() throws Exception {
+
+        // monitor stopped before the thread runs
+        monitor.stop();
+        assertFalse(monitor.running);
+
+        // the persistent search is not started
+        monitor.run();
+        assertEquals(List.of(), notifications);
+    }
+}
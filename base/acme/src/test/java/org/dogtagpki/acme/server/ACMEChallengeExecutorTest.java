@@ -0,0 +1,319 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.dogtagpki.acme.ACMEChallenge;
+import org.dogtagpki.acme.ACMEError;
+import org.dogtagpki.acme.ValidationResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ACMEChallengeExecutorTest {
+
+    /**
+     * Challenge processor that fails a number of times
+     * before the validation succeeds.
+     */
+    static class ChallengeProcessorStub extends ACMEChallengeProcessor {
+
+        String domain;
+        int failures;
+
+        // if set, the validation waits until it is released
+        CountDownLatch release;
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finalized = new CountDownLatch(1);
+        volatile ValidationResult result;
+
+        ChallengeProcessorStub(String id, String domain) {
+            super(null, null, createChallenge(id), null);
+            this.domain = domain;
+        }
+
+        static ACMEChallenge createChallenge(String id) {
+            ACMEChallenge challenge = new ACMEChallenge();
+            challenge.setID(id);
+            challenge.setType("http-01");
+            challenge.setToken(id);
+            return challenge;
+        }
+
+        @Override
+        public String getDomain() {
+            return domain;
+        }
+
+        @Override
+        public ValidationResult validateChallenge() {
+
+            attempts++;
+            started.countDown();
+
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return ValidationResult.fail(new ACMEError());
+                }
+            }
+
+            if (failures > 0) {
+                failures--;
+                return ValidationResult.fail(new ACMEError());
+            }
+
+            return ValidationResult.ok();
+        }
+
+        @Override
+        public void finalizeAuthorization(ValidationResult result) {
+            this.result = result;
+            finalized.countDown();
+        }
+    }
+
+    ACMEValidationConfig config;
+    ACMEChallengeExecutor executor;
+
+    @Before
+    public void setUp() {
+
+        config = new ACMEValidationConfig();
+        config.setThreads(2);
+        config.setQueueSize(10);
+        config.setMaxPerDomain(2);
+        config.setMaxAttempts(3);
+        config.setRetryDelay(0);
+
+        executor = new ACMEChallengeExecutor();
+        executor.setConfig(config);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    void awaitQueue(int size) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.queued.get() != size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, executor.queued.get());
+    }
+
+    @Test
+    public void testValidate() throws Exception {
+
+        executor.init();
+
+        ChallengeProcessorStub processor = new ChallengeProcessorStub("1", "example.com");
+        assertTrue(executor.submit(processor));
+
+        assertTrue(processor.finalized.await(10, TimeUnit.SECONDS));
+        assertTrue(processor.result.isOK());
+        assertEquals(1, processor.getAttempts());
+
+        awaitQueue(0);
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+
+        executor.init();
+
+        ChallengeProcessorStub processor = new ChallengeProcessorStub("1", "example.com");
+        processor.failures = 2;
+        executor.submit(processor);
+
+        assertTrue(processor.finalized.await(10, TimeUnit.SECONDS));
+        assertTrue(processor.result.isOK());
+        assertEquals(3, processor.getAttempts());
+    }
+
+    @Test
+    public void testMaxAttempts() throws Exception {
+
+        executor.init();
+
+        ChallengeProcessorStub processor = new ChallengeProcessorStub("1", "example.com");
+        processor.failures = Integer.MAX_VALUE;
+        executor.submit(processor);
+
+        assertTrue(processor.finalized.await(10, TimeUnit.SECONDS));
+        assertFalse(processor.result.isOK());
+        assertEquals(3, processor.getAttempts());
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+
+        executor.init();
+
+        ChallengeProcessorStub processor = new ChallengeProcessorStub("1", "example.com");
+        processor.release = new CountDownLatch(1);
+        assertTrue(executor.submit(processor));
+        assertTrue(processor.started.await(10, TimeUnit.SECONDS));
+
+        // the same challenge is validated only once
+        ChallengeProcessorStub duplicate = new ChallengeProcessorStub("1", "example.com");
+        assertFalse(executor.submit(duplicate));
+        assertEquals(1, executor.coalesced.get());
+
+        processor.release.countDown();
+        assertTrue(processor.finalized.await(10, TimeUnit.SECONDS));
+        awaitQueue(0);
+
+        assertEquals(0, duplicate.getAttempts());
+
+        // the challenge can be submitted again once validated
+        assertTrue(executor.submit(duplicate));
+        assertTrue(duplicate.finalized.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+
+        config.setThreads(1);
+        config.setQueueSize(1);
+        executor.init();
+
+        ChallengeProcessorStub processor = new ChallengeProcessorStub("1", "example.com");
+        processor.release = new CountDownLatch(1);
+        executor.submit(processor);
+
+        ChallengeProcessorStub rejected = new ChallengeProcessorStub("2", "example.org");
+
+        try {
+            executor.submit(rejected);
+            fail("RejectedExecutionException expected");
+
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        assertEquals(1, executor.rejected.get());
+        assertEquals(1, executor.queued.get());
+
+        processor.release.countDown();
+        assertTrue(processor.finalized.await(10, TimeUnit.SECONDS));
+        awaitQueue(0);
+
+        // the rejected challenge can be submitted again
+        assertTrue(executor.submit(rejected));
+        assertTrue(rejected.finalized.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMaxPerDomain() throws Exception {
+
+        config.setMaxPerDomain(1);
+        executor.init();
+
+        ChallengeProcessorStub first = new ChallengeProcessorStub("1", "example.com");
+        first.release = new CountDownLatch(1);
+        executor.submit(first);
+        assertTrue(first.started.await(10, TimeUnit.SECONDS));
+
+        // a free thread does not validate the same domain
+        ChallengeProcessorStub second = new ChallengeProcessorStub("2", "example.com");
+        executor.submit(second);
+
+        // but it validates another domain
+        ChallengeProcessorStub other = new ChallengeProcessorStub("3", "example.org");
+        executor.submit(other);
+        assertTrue(other.finalized.await(10, TimeUnit.SECONDS));
+
+        assertEquals(0, second.getAttempts());
+
+        // the validation is retried after the domain is released
+        first.release.countDown();
+        assertTrue(first.finalized.await(10, TimeUnit.SECONDS));
+        assertTrue(second.finalized.await(10, TimeUnit.SECONDS));
+        assertEquals(1, second.getAttempts());
+
+        awaitQueue(0);
+    }
+
+    @Test
+    public void testShutdownWithPendingRetry() throws Exception {
+
+        config.setRetryDelay(60);
+        executor.init();
+
+        ChallengeProcessorStub processor = new ChallengeProcessorStub("1", "example.com");
+        processor.failures = Integer.MAX_VALUE;
+        executor.submit(processor);
+        assertTrue(processor.started.await(10, TimeUnit.SECONDS));
+
+        // the retry is waiting in the delay queue without a thread
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.active.get() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.active.get());
+        assertEquals(1, executor.queued.get());
+
+        executor.shutdown();
+
+        // the pending retry is dropped
+        assertFalse(processor.finalized.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, processor.getAttempts());
+        assertNull(processor.result);
+    }
+
+    @Test
+    public void testShutdownDuringValidation() throws Exception {
+
+        executor.init();
+
+        ChallengeProcessorStub processor = new ChallengeProcessorStub("1", "example.com");
+        processor.failures = Integer.MAX_VALUE;
+        processor.release = new CountDownLatch(1);
+        executor.submit(processor);
+        assertTrue(processor.started.await(10, TimeUnit.SECONDS));
+
+        // the failed validation cannot be rescheduled
+        executor.shutdown();
+        awaitQueue(0);
+
+        assertNull(processor.result);
+        assertEquals(1, processor.getAttempts());
+    }
+
+    @Test
+    public void testSubmitAfterShutdown() throws Exception {
+
+        executor.init();
+        executor.shutdown();
+
+        ChallengeProcessorStub processor = new ChallengeProcessorStub("1", "example.com");
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                executor.submit(processor);
+                fail("RejectedExecutionException expected");
+
+            } catch (RejectedExecutionException e) {
+                // the challenge is not left in the queue
+                assertEquals(0, executor.queued.get());
+            }
+        }
+    }
+}
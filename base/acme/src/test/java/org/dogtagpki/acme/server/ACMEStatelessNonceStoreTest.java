@@ -0,0 +1,99 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.security.SecureRandom;
+import java.util.Date;
+
+import org.dogtagpki.acme.ACMENonce;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ACMEStatelessNonceStoreTest {
+
+    static final String ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    ACMEStatelessNonceStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new ACMEStatelessNonceStore(new SecureRandom(), null);
+        store.init();
+    }
+
+    String createNonce() throws Exception {
+        Date now = new Date();
+        Date expirationTime = new Date(now.getTime() + 300000);
+        return store.createNonce(now, expirationTime).getID();
+    }
+
+    @Test
+    public void testRemoveNonce() throws Exception {
+
+        String nonceID = createNonce();
+
+        ACMENonce nonce = store.removeNonce(nonceID);
+        assertNotNull(nonce);
+        assertEquals(nonceID, nonce.getID());
+
+        // nonce cannot be used again
+        assertNull(store.removeNonce(nonceID));
+    }
+
+    @Test
+    public void testInvalidSignature() throws Exception {
+
+        String nonceID = createNonce();
+
+        // change a character in the random part
+        int i = 12;
+        char c = nonceID.charAt(i) == 'A' ? 'B' : 'A';
+        String modifiedID = nonceID.substring(0, i) + c + nonceID.substring(i + 1);
+
+        assertNull(store.removeNonce(modifiedID));
+    }
+
+    @Test
+    public void testReplayWithAlternateEncoding() throws Exception {
+
+        String nonceID = createNonce();
+
+        // with padding
+        String paddedID = nonceID + "==";
+
+        // with characters that the decoder ignores
+        String ignoredID = nonceID.substring(0, 8) + "." + nonceID.substring(8);
+
+        // with the standard alphabet
+        String standardID = nonceID.replace('-', '+').replace('_', '/');
+
+        // with different unused bits in the last character
+        int last = ALPHABET.indexOf(nonceID.charAt(nonceID.length() - 1));
+        String unusedBitsID = nonceID.substring(0, nonceID.length() - 1) + ALPHABET.charAt(last ^ 1);
+
+        assertNotNull(store.removeNonce(nonceID));
+
+        assertNull(store.removeNonce(paddedID));
+        assertNull(store.removeNonce(ignoredID));
+        assertNull(store.removeNonce(standardID));
+        assertNull(store.removeNonce(unusedBitsID));
+    }
+
+    @Test
+    public void testAlternateEncodingBeforeUse() throws Exception {
+
+        String nonceID = createNonce();
+
+        // alternate encoding is rejected without using the nonce
+        assertNull(store.removeNonce(nonceID + "=="));
+        assertNotNull(store.removeNonce(nonceID));
+    }
+}
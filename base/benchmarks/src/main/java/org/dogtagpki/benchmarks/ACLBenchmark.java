@@ -0,0 +1,88 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.dogtagpki.server.authentication.AuthToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netscape.cms.authorization.AAclAuthz;
+import com.netscape.cms.authorization.BasicAclAuthz;
+import com.netscape.cms.evaluators.GroupAccessEvaluator;
+import com.netscape.cms.evaluators.UserAccessEvaluator;
+
+/**
+ * Measures AAclAuthz.checkPermission() with the ACLs of an agent
+ * resource. The group memberships are provided by the auth tokens,
+ * so no user database is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ACLBenchmark {
+
+    public static final String RESOURCE = "certServer.ca.certificates";
+    public static final String EXPRESSION = "group=\"Certificate Manager Agents\" || group=\"Administrators\"";
+    public static final int USERS = 100;
+
+    AAclAuthz authz;
+    AuthToken[] authTokens;
+
+    @Setup
+    public void setup() throws Exception {
+
+        BenchmarkEngine.init();
+
+        authz = new BasicAclAuthz();
+        authz.registerEvaluator("group", new GroupAccessEvaluator());
+        authz.registerEvaluator("user", new UserAccessEvaluator());
+
+        authz.addACLs("certServer.ca:read,execute:allow (read) group=\"Administrators\""
+                + ":Administrators may read the CA resources");
+        authz.addACLs(RESOURCE + ":list,revoke,import,unrevoke,hold:"
+                + "allow (list,revoke,import,unrevoke) " + EXPRESSION + ";"
+                + "deny (hold) user=anybody"
+                + ":Agents may list and revoke certificates");
+
+        authTokens = new AuthToken[USERS];
+
+        for (int i = 0; i < USERS; i++) {
+            AuthToken authToken = new AuthToken(null);
+            authToken.set(AuthToken.UID, "agent" + i);
+            authToken.set(AuthToken.USER_ID, "agent" + i);
+            authToken.set(AuthToken.GROUPS, new String[] { "Certificate Manager Agents" });
+            authTokens[i] = authToken;
+        }
+    }
+
+    @Benchmark
+    public void checkPermission() throws Exception {
+        AuthToken authToken = authTokens[ThreadLocalRandom.current().nextInt(USERS)];
+        authz.checkPermission(authToken, RESOURCE, "revoke");
+    }
+
+    @Benchmark
+    public boolean evaluateACLs() {
+        AuthToken authToken = authTokens[ThreadLocalRandom.current().nextInt(USERS)];
+        return authz.evaluateACLs(authToken, EXPRESSION);
+    }
+}
@@ -0,0 +1,97 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.benchmarks;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+import org.dogtagpki.server.ca.CAEngine;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
+import com.netscape.cmscore.apps.CMS;
+
+/**
+ * This class provides a minimal CA engine for the benchmarks.
+ *
+ * The engine is created with an in-memory configuration in a temporary
+ * directory. None of the subsystems are initialized, so the benchmarks
+ * must provide their own stand-ins for the database and the crypto tokens.
+ */
+public class BenchmarkEngine {
+
+    public static final String INSTANCE_ID = "pki-benchmarks";
+
+    /**
+     * Test certificate with a 512-bit RSA key. It is only parsed,
+     * never used to verify signatures.
+     */
+    static final byte[] CERT_DATA = new byte[] {
+            48, -126, 1, 18, 48, -127, -67, -96, 3, 2, 1, 2, 2, 1,
+            1, 48, 13, 6, 9, 42, -122, 72, -122, -9, 13, 1, 1, 4,
+            5, 0, 48, 18, 49, 16, 48, 14, 6, 3, 85, 4, 3, 19,
+            7, 116, 101, 115, 116, 105, 110, 103, 48, 30, 23, 13, 48, 55,
+            48, 55, 49, 50, 49, 55, 51, 56, 51, 52, 90, 23, 13, 48,
+            55, 49, 48, 49, 50, 49, 55, 51, 56, 51, 52, 90, 48, 18,
+            49, 16, 48, 14, 6, 3, 85, 4, 3, 19, 7, 116, 101, 115,
+            116, 105, 110, 103, 48, 92, 48, 13, 6, 9, 42, -122, 72, -122,
+            -9, 13, 1, 1, 1, 5, 0, 3, 75, 0, 48, 72, 2, 65,
+            0, -65, 121, -119, -59, 105, 66, -122, -78, -30, -64, 63, -47, 44,
+            -48, -104, 103, -47, -108, 42, -38, 46, -8, 32, 49, -29, -26, -112,
+            -29, -86, 71, 24, -104, 78, -31, -75, -128, 90, -92, -34, -51, -125,
+            -13, 80, 101, -78, 39, -119, -38, 117, 28, 67, -19, -71, -124, -85,
+            105, -53, -103, -59, -67, -38, -83, 118, 65, 2, 3, 1, 0, 1,
+            48, 13, 6, 9, 42, -122, 72, -122, -9, 13, 1, 1, 4, 5,
+            0, 3, 65, 0, -97, -62, 79, -28, 124, -81, 98, 119, -85, -49,
+            62, -81, 46, -25, -29, 78, -40, 118, -2, 114, -128, 74, -47, -68,
+            52, 11, -14, 30, -46, -95, -26, -108, -19, 110, -63, -70, 61, -75,
+            64, 74, -33, -65, -96, 120, -109, 37, 77, -76, 38, -114, 58, -80,
+            -122, -39, -65, -31, 37, -30, -126, 126, 17, -82, 92, 64,
+        };
+
+    private static File instanceDir;
+
+    /**
+     * Creates the engine if it does not exist yet.
+     *
+     * @return instance directory
+     */
+    public static synchronized File init() throws Exception {
+
+        if (CMS.getCMSEngine() != null) {
+            return instanceDir;
+        }
+
+        instanceDir = Files.createTempDirectory(INSTANCE_ID).toFile();
+        instanceDir.deleteOnExit();
+
+        // the PID is included in every log entry
+        File pidFile = new File(instanceDir, INSTANCE_ID + ".pid");
+        try (PrintWriter out = new PrintWriter(pidFile)) {
+            out.println(ProcessHandle.current().pid());
+        }
+        pidFile.deleteOnExit();
+
+        File configFile = new File(instanceDir, "CS.cfg");
+        try (PrintWriter out = new PrintWriter(configFile)) {
+            out.println("cs.type=CA");
+            out.println("instanceId=" + INSTANCE_ID);
+            out.println("instanceRoot=" + instanceDir.getAbsolutePath());
+            out.println("pidDir=" + instanceDir.getAbsolutePath());
+            out.println("authz.evaluateOrder=deny,allow");
+        }
+        configFile.deleteOnExit();
+
+        CAEngine engine = new CAEngine();
+        engine.loadConfig(configFile.getAbsolutePath());
+
+        return instanceDir;
+    }
+
+    public static X509CertImpl createCert() throws Exception {
+        return new X509CertImpl(CERT_DATA);
+    }
+}
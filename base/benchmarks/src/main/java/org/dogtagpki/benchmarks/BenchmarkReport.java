@@ -0,0 +1,130 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.benchmarks;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * This class compares two JMH reports in JSON format (e.g. the baseline
+ * of the previous release and the current results) and shows the change
+ * of each benchmark.
+ *
+ * The command exits with status 1 if a benchmark is slower than the
+ * baseline by more than the threshold (10% by default) plus the score
+ * errors of both reports.
+ *
+ * Usage: BenchmarkReport &lt;baseline&gt; &lt;results&gt; [threshold]
+ */
+public class BenchmarkReport {
+
+    public static final double DEFAULT_THRESHOLD = 10; // percent
+
+    static class Score {
+
+        final String mode;
+        final double score;
+        final double error;
+        final String unit;
+
+        Score(JsonNode result) {
+            mode = result.path("mode").asText();
+            JsonNode metric = result.path("primaryMetric");
+            score = metric.path("score").asDouble();
+            error = metric.path("scoreError").asDouble(0);
+            unit = metric.path("scoreUnit").asText();
+        }
+
+        boolean isThroughput() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    /**
+     * Loads the primary scores by benchmark name and parameters.
+     */
+    static Map<String, Score> load(File file) throws Exception {
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode results = mapper.readTree(file);
+
+        Map<String, Score> scores = new LinkedHashMap<>();
+
+        for (JsonNode result : results) {
+
+            StringBuilder sb = new StringBuilder(result.path("benchmark").asText());
+
+            JsonNode params = result.path("params");
+            Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                sb.append(sb.indexOf(":") < 0 ? ":" : ",");
+                sb.append(field.getKey()).append("=").append(field.getValue().asText());
+            }
+
+            scores.put(sb.toString(), new Score(result));
+        }
+
+        return scores;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkReport <baseline> <results> [threshold]");
+            System.exit(2);
+        }
+
+        Map<String, Score> baseline = load(new File(args[0]));
+        Map<String, Score> results = load(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+
+        boolean regression = false;
+
+        for (Map.Entry<String, Score> entry : results.entrySet()) {
+
+            String name = entry.getKey();
+            Score current = entry.getValue();
+            Score previous = baseline.get(name);
+
+            if (previous == null || previous.score == 0 || !previous.unit.equals(current.unit)) {
+                System.out.println(String.format("%-80s %14.3f %-10s (new)",
+                        name, current.score, current.unit));
+                continue;
+            }
+
+            double change = (current.score - previous.score) / previous.score * 100;
+
+            // positive improvement means faster
+            double improvement = current.isThroughput() ? change : -change;
+            double margin = threshold + (previous.error + current.error) / previous.score * 100;
+
+            String status = "";
+            if (improvement < -margin) {
+                status = "REGRESSION";
+                regression = true;
+            }
+
+            System.out.println(String.format("%-80s %14.3f %-10s %+8.1f%% %s",
+                    name, current.score, current.unit, improvement, status));
+        }
+
+        for (String name : baseline.keySet()) {
+            if (!results.containsKey(name)) {
+                System.out.println(String.format("%-80s (removed)", name));
+            }
+        }
+
+        if (regression) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.benchmarks;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLReasonExtension;
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netscape.ca.CRLEntryCache;
+
+/**
+ * Measures the encoding of the CRL entries by CRLIssuingPoint,
+ * either by encoding the whole TBSCertList with X509CRLImpl or
+ * by writing the cached encodings with CRLEntryCache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CRLEntryBenchmark {
+
+    public static final String SIGNING_ALGORITHM = "SHA256withRSA";
+
+    @Param({ "1000", "100000" })
+    int entries;
+
+    X500Name issuer;
+    AlgorithmId algorithmId;
+    Date thisUpdate;
+    Date nextUpdate;
+
+    BigInteger[] serialNumbers;
+    Hashtable<BigInteger, RevokedCertificate> revokedCerts;
+    CRLEntryCache cache;
+
+    @Setup
+    public void setup() throws Exception {
+
+        issuer = new X500Name("CN=CA Signing Certificate,O=EXAMPLE");
+        algorithmId = AlgorithmId.get(SIGNING_ALGORITHM);
+        thisUpdate = new Date();
+        nextUpdate = new Date(thisUpdate.getTime() + TimeUnit.DAYS.toMillis(1));
+
+        serialNumbers = new BigInteger[entries];
+        revokedCerts = new Hashtable<>();
+        cache = new CRLEntryCache();
+
+        for (int i = 0; i < entries; i++) {
+            // random serial numbers like the ones generated by the CA
+            serialNumbers[i] = new BigInteger(128, ThreadLocalRandom.current()).setBit(128 + i % 8);
+
+            RevokedCertificate revokedCert = createEntry(serialNumbers[i], i);
+            revokedCerts.put(serialNumbers[i], revokedCert);
+            cache.put(serialNumbers[i], revokedCert);
+        }
+    }
+
+    RevokedCertificate createEntry(BigInteger serialNumber, int i) throws Exception {
+
+        CRLExtensions entryExt = new CRLExtensions();
+        entryExt.set(CRLReasonExtension.NAME, new CRLReasonExtension(RevocationReason.KEY_COMPROMISE));
+
+        return new RevokedCertImpl(serialNumber, new Date(thisUpdate.getTime() - i * 1000L), entryExt);
+    }
+
+    @Benchmark
+    public int encodeCRL() throws Exception {
+
+        X509CRLImpl crl = new X509CRLImpl(issuer, algorithmId,
+                thisUpdate, nextUpdate, revokedCerts, new CRLExtensions());
+
+        try (DerOutputStream out = new DerOutputStream()) {
+            crl.encodeInfo(out);
+            return out.size();
+        }
+    }
+
+    @Benchmark
+    public long writeTBSCertList() throws Exception {
+        return cache.writeTBSCertList(OutputStream.nullOutputStream(),
+                issuer, algorithmId, thisUpdate, nextUpdate, new CRLExtensions());
+    }
+
+    @Benchmark
+    public RevokedCertificate updateEntry() throws Exception {
+        // replace an existing entry so the size of the cache does not change
+        int i = ThreadLocalRandom.current().nextInt(entries);
+        return cache.put(serialNumbers[i], createEntry(serialNumbers[i], i));
+    }
+}
@@ -0,0 +1,111 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.benchmarks;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.netscape.security.x509.CertificateValidity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netscape.certsrv.base.MetaInfo;
+import com.netscape.certsrv.dbs.IDBObj;
+import com.netscape.cmscore.dbs.BigIntegerMapper;
+import com.netscape.cmscore.dbs.CertDBSchema;
+import com.netscape.cmscore.dbs.CertRecord;
+import com.netscape.cmscore.dbs.DBRegistry;
+import com.netscape.cmscore.dbs.DateMapper;
+import com.netscape.cmscore.dbs.LDAPRegistry;
+import com.netscape.cmscore.dbs.MetaInfoMapper;
+import com.netscape.cmscore.dbs.RevocationInfoMapper;
+import com.netscape.cmscore.dbs.StringMapper;
+import com.netscape.cmscore.dbs.X509CertImplMapper;
+
+import netscape.ldap.LDAPAttributeSet;
+
+/**
+ * Measures the mapping of a CertRecord to and from LDAP attributes
+ * by the database registry, using the same mappers as DBSubsystem.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CertRecordMappingBenchmark {
+
+    DBRegistry registry;
+    CertRecord record;
+    LDAPAttributeSet attrs;
+
+    @Setup
+    public void setup() throws Exception {
+
+        BenchmarkEngine.init();
+
+        registry = new LDAPRegistry();
+
+        registry.registerObjectClass(CertRecord.class.getName(),
+                new String[] { CertDBSchema.LDAP_OC_TOP, CertDBSchema.LDAP_OC_CERT_RECORD });
+
+        registry.registerAttribute(CertRecord.ATTR_ID,
+                new BigIntegerMapper(CertDBSchema.LDAP_ATTR_SERIALNO));
+        registry.registerAttribute(CertRecord.ATTR_META_INFO,
+                new MetaInfoMapper(CertDBSchema.LDAP_ATTR_META_INFO));
+        registry.registerAttribute(CertRecord.ATTR_REVO_INFO,
+                new RevocationInfoMapper());
+        registry.registerAttribute(CertRecord.ATTR_X509CERT,
+                new X509CertImplMapper());
+        registry.registerAttribute(CertRecord.ATTR_CERT_STATUS,
+                new StringMapper(CertDBSchema.LDAP_ATTR_CERT_STATUS));
+        registry.registerAttribute(CertRecord.ATTR_AUTO_RENEW,
+                new StringMapper(CertDBSchema.LDAP_ATTR_AUTO_RENEW));
+        registry.registerAttribute(CertRecord.ATTR_CREATE_TIME,
+                new DateMapper(CertDBSchema.LDAP_ATTR_CREATE_TIME));
+        registry.registerAttribute(CertRecord.ATTR_MODIFY_TIME,
+                new DateMapper(CertDBSchema.LDAP_ATTR_MODIFY_TIME));
+        registry.registerAttribute(CertRecord.ATTR_ISSUED_BY,
+                new StringMapper(CertDBSchema.LDAP_ATTR_ISSUED_BY));
+        registry.registerAttribute(CertRecord.ATTR_REVOKED_BY,
+                new StringMapper(CertDBSchema.LDAP_ATTR_REVOKED_BY));
+        registry.registerAttribute(CertRecord.ATTR_REVOKED_ON,
+                new DateMapper(CertDBSchema.LDAP_ATTR_REVOKED_ON));
+        registry.registerAttribute(CertificateValidity.NOT_AFTER,
+                new DateMapper(CertDBSchema.LDAP_ATTR_NOT_AFTER));
+        registry.registerAttribute(CertificateValidity.NOT_BEFORE,
+                new DateMapper(CertDBSchema.LDAP_ATTR_NOT_BEFORE));
+
+        MetaInfo meta = new MetaInfo();
+        meta.set(CertRecord.META_REQUEST_ID, "12345");
+        meta.set(CertRecord.META_PROFILE_ID, "caUserCert");
+
+        record = new CertRecord(new BigInteger("12345"), BenchmarkEngine.createCert(), meta);
+        record.set(CertRecord.ATTR_ISSUED_BY, "caadmin");
+
+        attrs = registry.createLDAPAttributeSet(record);
+    }
+
+    @Benchmark
+    public LDAPAttributeSet createLDAPAttributeSet() throws Exception {
+        return registry.createLDAPAttributeSet(record);
+    }
+
+    @Benchmark
+    public IDBObj createObject() throws Exception {
+        // createObject() removes the object class from the attribute set
+        return registry.createObject((LDAPAttributeSet) attrs.clone());
+    }
+}
@@ -0,0 +1,70 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netscape.cmsutil.crypto.CryptoUtil;
+
+/**
+ * Measures the CryptoUtil helpers used to import and export
+ * certificates and requests in PEM format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoUtilBenchmark {
+
+    byte[] certData;
+    String base64;
+    String pem;
+
+    @Setup
+    public void setup() throws Exception {
+        certData = BenchmarkEngine.createCert().getEncoded();
+        base64 = CryptoUtil.base64Encode(certData);
+        pem = CryptoUtil.certFormat(CryptoUtil.normalizeCertStr(base64));
+    }
+
+    @Benchmark
+    public String base64Encode() throws Exception {
+        return CryptoUtil.base64Encode(certData);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return CryptoUtil.base64Decode(base64);
+    }
+
+    @Benchmark
+    public String certFormat() {
+        return CryptoUtil.certFormat(CryptoUtil.normalizeCertStr(base64));
+    }
+
+    @Benchmark
+    public String normalizeCertAndReq() {
+        return CryptoUtil.normalizeCertAndReq(pem);
+    }
+
+    @Benchmark
+    public String stripCertBrackets() {
+        return CryptoUtil.normalizeCertStr(CryptoUtil.stripCertBrackets(pem));
+    }
+}
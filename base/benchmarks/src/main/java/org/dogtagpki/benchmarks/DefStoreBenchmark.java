@@ -0,0 +1,144 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.benchmarks;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.asn1.INTEGER;
+import org.mozilla.jss.asn1.OBJECT_IDENTIFIER;
+import org.mozilla.jss.asn1.OCTET_STRING;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+import org.mozilla.jss.netscape.security.x509.X509Key;
+import org.mozilla.jss.pkix.primitive.AlgorithmIdentifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cms.ocsp.DefStore;
+import com.netscape.cmscore.dbs.CRLIssuingPointRecord;
+import com.netscape.cmsutil.ocsp.CertID;
+import com.netscape.cmsutil.ocsp.Request;
+import com.netscape.cmsutil.ocsp.SingleResponse;
+
+/**
+ * Measures the OCSP status lookup in DefStore.processRequest()
+ * with the CRL issuing point stored in memory instead of LDAP.
+ * Half of the requests are for revoked certificates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class DefStoreBenchmark {
+
+    public static final String SHA1_OID = "1.3.14.3.2.26";
+    public static final int REQUESTS = 1024;
+
+    /**
+     * DefStore that reads the CRL issuing points from memory.
+     */
+    static class InMemoryDefStore extends DefStore {
+
+        CRLIssuingPointRecord record;
+
+        InMemoryDefStore(CRLIssuingPointRecord record, boolean useFilter) {
+            this.record = record;
+            this.mUseFilter = useFilter;
+        }
+
+        @Override
+        public Enumeration<CRLIssuingPointRecord> searchCRLIssuingPointRecord(String filter, int maxSize)
+                throws EBaseException {
+            return Collections.enumeration(Collections.singletonList(record));
+        }
+    }
+
+    @Param({ "100000" })
+    int entries;
+
+    @Param({ "false", "true" })
+    boolean useFilter;
+
+    DefStore store;
+    Request[] requests;
+
+    @Setup
+    public void setup() throws Exception {
+
+        BenchmarkEngine.init();
+
+        X509CertImpl caCert = BenchmarkEngine.createCert();
+        Date now = new Date();
+
+        Hashtable<BigInteger, RevokedCertificate> crlCache = new Hashtable<>();
+        BigInteger[] revoked = new BigInteger[entries];
+
+        for (int i = 0; i < entries; i++) {
+            revoked[i] = new BigInteger(128, ThreadLocalRandom.current());
+            crlCache.put(revoked[i], new RevokedCertImpl(revoked[i], now));
+        }
+
+        CRLIssuingPointRecord record = new CRLIssuingPointRecord(
+                "MasterCRL", BigInteger.ONE, Long.valueOf(entries), now, now);
+        record.set(CRLIssuingPointRecord.ATTR_CA_CERT, caCert.getEncoded());
+        // the CRL is not decoded when the CRL cache is available
+        record.set(CRLIssuingPointRecord.ATTR_CRL, new byte[0]);
+        record.set(CRLIssuingPointRecord.ATTR_CRL_CACHE, crlCache);
+
+        store = new InMemoryDefStore(record, useFilter);
+
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        byte[] issuerNameHash = md.digest(caCert.getSubjectX500Principal().getEncoded());
+        byte[] issuerKeyHash = md.digest(((X509Key) caCert.getPublicKey()).getKey());
+
+        AlgorithmIdentifier hashAlgorithm = new AlgorithmIdentifier(new OBJECT_IDENTIFIER(SHA1_OID));
+
+        requests = new Request[REQUESTS];
+
+        for (int i = 0; i < REQUESTS; i++) {
+
+            BigInteger serialNumber = i % 2 == 0
+                    ? revoked[ThreadLocalRandom.current().nextInt(entries)]
+                    : new BigInteger(128, ThreadLocalRandom.current());
+
+            CertID certID = new CertID(
+                    hashAlgorithm,
+                    new OCTET_STRING(issuerNameHash),
+                    new OCTET_STRING(issuerKeyHash),
+                    new INTEGER(serialNumber.toByteArray()));
+
+            requests[i] = new Request(certID, null);
+        }
+    }
+
+    @Benchmark
+    public SingleResponse processRequest() throws Exception {
+        Request request = requests[ThreadLocalRandom.current().nextInt(REQUESTS)];
+        return store.processRequest(request);
+    }
+}
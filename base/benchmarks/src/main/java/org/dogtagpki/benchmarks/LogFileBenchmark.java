@@ -0,0 +1,104 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netscape.certsrv.logging.ILogger;
+import com.netscape.certsrv.logging.LogSource;
+import com.netscape.certsrv.logging.SignedAuditEvent;
+import com.netscape.cms.logging.LogFile;
+
+/**
+ * Measures the signed audit writes of LogFile to a file in a temporary
+ * directory, either in the calling threads or with the writer thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LogFileBenchmark {
+
+    public static final String EVENT_TYPE = "CERT_REQUEST_PROCESSED";
+
+    // default log.instance.SignedAudit parameters
+    public static final int BUFFER_SIZE = 512;
+    public static final int FLUSH_INTERVAL = 5; // seconds
+
+    /**
+     * Signed audit log that is not registered in the log queue.
+     */
+    static class AuditLogFile extends LogFile {
+
+        AuditLogFile(int queueSize) {
+            mOn = true;
+            mRegister = false;
+            mType = ILogger.PROP_SIGNED_AUDIT;
+            mLevel = ILogger.LL_INFO;
+            mQueueSize = queueSize;
+        }
+    }
+
+    /**
+     * Maximum number of events waiting for the writer thread,
+     * 0 to write the events in the calling threads.
+     */
+    @Param({ "0", "8192" })
+    int queueSize;
+
+    File file;
+    LogFile logFile;
+    SignedAuditEvent event;
+
+    @Setup
+    public void setup() throws Exception {
+
+        File instanceDir = BenchmarkEngine.init();
+
+        file = new File(instanceDir, "audit-" + queueSize + ".log");
+        file.deleteOnExit();
+
+        logFile = new AuditLogFile(queueSize);
+        logFile.init(file.getAbsolutePath(), BUFFER_SIZE, FLUSH_INTERVAL);
+
+        event = new SignedAuditEvent("<type=" + EVENT_TYPE + ">:[AuditEvent=" + EVENT_TYPE + "]"
+                + "[SubjectID=caadmin][Outcome=Success][ReqID=12345][CertSerialNum=12345]"
+                + " certificate request processed");
+        event.setEventType(EVENT_TYPE);
+        event.setSource(LogSource.SIGNED_AUDIT);
+        event.setLevel(ILogger.LL_SECURITY);
+        event.setMultiline(ILogger.L_SINGLELINE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        logFile.shutdown();
+        file.delete();
+    }
+
+    @Benchmark
+    public void log() throws Exception {
+        logFile.log(event);
+    }
+}
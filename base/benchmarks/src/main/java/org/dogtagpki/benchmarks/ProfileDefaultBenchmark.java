@@ -0,0 +1,81 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.netscape.security.x509.X509CertInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.cms.profile.def.EnrollDefault;
+import com.netscape.cms.profile.def.SubjectNameDefault;
+import com.netscape.cms.profile.def.ValidityDefault;
+import com.netscape.cmscore.base.ConfigStore;
+import com.netscape.cmscore.request.Request;
+
+/**
+ * Measures the population of a certificate by the enrollment
+ * profile defaults, including the request attribute patterns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileDefaultBenchmark {
+
+    EnrollDefault[] defaults;
+    Request request;
+
+    @Setup
+    public void setup() throws Exception {
+
+        BenchmarkEngine.init();
+
+        SubjectNameDefault subjectNameDefault = new SubjectNameDefault();
+        subjectNameDefault.init(null, createConfig(
+                SubjectNameDefault.CONFIG_NAME, "UID=$request.uid$,E=$request.email$,O=Example"));
+
+        ValidityDefault validityDefault = new ValidityDefault();
+        validityDefault.init(null, createConfig(
+                ValidityDefault.CONFIG_RANGE, "720",
+                ValidityDefault.CONFIG_START_TIME, "0"));
+
+        defaults = new EnrollDefault[] { subjectNameDefault, validityDefault };
+
+        request = new Request(new RequestId(1));
+        request.setExtData("uid", "testuser");
+        request.setExtData("email", "testuser@example.com");
+    }
+
+    ConfigStore createConfig(String... params) {
+        ConfigStore config = new ConfigStore();
+        for (int i = 0; i < params.length; i += 2) {
+            config.putString("params." + params[i], params[i + 1]);
+        }
+        return config;
+    }
+
+    @Benchmark
+    public X509CertInfo populate() throws Exception {
+        X509CertInfo info = new X509CertInfo();
+        for (EnrollDefault def : defaults) {
+            def.populate(request, info);
+        }
+        return info;
+    }
+}
@@ -21,9 +21,12 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Objects;
 
 import org.dogtagpki.ct.CTEngine;
 import org.dogtagpki.server.ca.CAEngine;
@@ -591,6 +594,94 @@ public class CAService implements IService {
             boolean renewal, BigInteger oldSerialNo
             ) throws EBaseException {
 
+        CAEngine engine = CAEngine.getInstance();
+        CertificateAuthority ca = engine.getCA(aid);
+
+        String algname = prepareX509Cert(aid, rid, certi, renewal, oldSerialNo);
+
+        logger.debug("CAService: issueX509Cert: About to ca.sign cert.");
+        return ca.sign(certi, algname);
+    }
+
+    /**
+     * Issue certs for enrollment. The certs that use the same signing
+     * algorithm are signed together.
+     */
+    X509CertImpl[] issueX509Certs(String rid, X509CertInfo[] certinfos)
+            throws EBaseException {
+
+        CAEngine engine = CAEngine.getInstance();
+        CertificateAuthority ca = engine.getCA(null);
+
+        String[] algnames = new String[certinfos.length];
+        for (int i = 0; i < certinfos.length; i++) {
+            algnames[i] = prepareX509Cert(null, rid, certinfos[i], false, null);
+        }
+
+        X509CertImpl[] certs = new X509CertImpl[certinfos.length];
+
+        for (List<Integer> indexes : groupByAlgorithm(algnames)) {
+
+            X509CertInfo[] batch = new X509CertInfo[indexes.size()];
+            for (int j = 0; j < batch.length; j++) {
+                batch[j] = certinfos[indexes.get(j)];
+            }
+
+            String algname = algnames[indexes.get(0)];
+
+            logger.debug("CAService: issueX509Certs: About to ca.sign " + batch.length + " cert(s).");
+            X509CertImpl[] batchCerts = ca.sign(batch, algname);
+
+            for (int j = 0; j < batch.length; j++) {
+                certs[indexes.get(j)] = batchCerts[j];
+            }
+        }
+
+        return certs;
+    }
+
+    /**
+     * Groups the certs by signing algorithm.
+     *
+     * @param algnames signing algorithm of each cert (might be null)
+     * @return indexes of the certs in each group in the original order
+     */
+    static List<List<Integer>> groupByAlgorithm(String[] algnames) {
+
+        List<List<Integer>> groups = new ArrayList<>();
+        boolean[] grouped = new boolean[algnames.length];
+
+        for (int i = 0; i < algnames.length; i++) {
+
+            if (grouped[i]) {
+                continue;
+            }
+
+            // find the certs with the same signing algorithm
+            List<Integer> indexes = new ArrayList<>();
+            for (int j = i; j < algnames.length; j++) {
+                if (!grouped[j] && Objects.equals(algnames[j], algnames[i])) {
+                    indexes.add(j);
+                    grouped[j] = true;
+                }
+            }
+
+            groups.add(indexes);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Prepares the cert info for signing.
+     *
+     * @return signing algorithm name
+     */
+    private String prepareX509Cert(
+            AuthorityID aid, String rid, X509CertInfo certi,
+            boolean renewal, BigInteger oldSerialNo
+            ) throws EBaseException {
+
         CAEngine engine = CAEngine.getInstance();
         CertificateRepository cr = engine.getCertificateRepository();
 
@@ -600,7 +691,6 @@ public class CAService implements IService {
             throw new CANotFoundException("No such CA: " + aid);
 
         String algname = null;
-        X509CertImpl cert = null;
 
         // NOTE:  In this implementation, the "oldSerialNo"
         //        parameter is NOT used!
@@ -854,9 +944,7 @@ public class CAService implements IService {
         CTEngine ctEngine = new CTEngine();
         ctEngine.process(certi, mCA, aid, algname);
 
-        logger.debug("CAService: issueX509Cert: About to ca.sign cert.");
-        cert = ca.sign(certi, algname);
-        return cert;
+        return algname;
     }
 
     void storeX509Cert(String rid, X509CertImpl cert,
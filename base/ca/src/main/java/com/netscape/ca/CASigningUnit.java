@@ -18,6 +18,7 @@
 package com.netscape.ca;
 
 import java.security.SignatureException;
+import java.util.List;
 
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.NoSuchTokenException;
@@ -37,12 +38,18 @@ import com.netscape.certsrv.ca.CAMissingKeyException;
 import com.netscape.certsrv.ca.ECAException;
 import com.netscape.certsrv.security.SigningUnitConfig;
 import com.netscape.certsrv.security.SigningUnit;
+import com.netscape.certsrv.security.TokenSignerPool;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmsutil.crypto.CryptoUtil;
 
 /**
  * CA signing unit based on JSS.
  *
+ * The signature contexts initialized with the signing key are kept
+ * in a pool for each algorithm and reused by the next signing
+ * operation, so the context setup is not repeated for every
+ * signature.
+ *
  * $Revision$ $Date$
  */
 
@@ -116,6 +123,14 @@ public final class CASigningUnit extends SigningUnit {
             mDefSigningAlgorithm = checkSigningAlgorithmFromName(mDefSigningAlgname);
             logger.debug("SigningUnit: signing algorithm: " + mDefSigningAlgorithm);
 
+            int signerPoolSize = config.getSignerPoolSize();
+            logger.debug("SigningUnit: signer pool size: " + signerPoolSize);
+
+            boolean reuseSigners = config.getReuseSigners();
+            logger.debug("SigningUnit: reuse signers: " + reuseSigners);
+
+            mSigners = new TokenSignerPool(mToken, mPrivk, signerPoolSize, reuseSigners);
+
             mInited = true;
 
         } catch (java.security.cert.CertificateException e) {
@@ -141,30 +156,9 @@ public final class CASigningUnit extends SigningUnit {
     }
 
     /**
-     * @param algname is expected to be one of JCA's algorithm names.
+     * Fails the signing operation if requested for testing.
      */
-    @Override
-    public byte[] sign(byte[] data, String algname) throws Exception {
-
-        if (!mInited) {
-            throw new EBaseException("CASigningUnit not initialized");
-        }
-
-        // XXX for now do this mapping until James changes the names
-        // to match JCA names and provide a getAlgorithm method.
-        SignatureAlgorithm signAlg = mDefSigningAlgorithm;
-
-        if (algname != null) {
-            signAlg = checkSigningAlgorithmFromName(algname);
-        }
-
-        // XXX use a pool of signers based on alg ?
-        // XXX Map algor. name to id. hack: use hardcoded define for now.
-        logger.info("CASigningUnit: Getting algorithm context for " + algname + " " + signAlg);
-        Signature signer = mToken.getSignatureContext(signAlg);
-
-        signer.initSign(mPrivk);
-        signer.update(data);
+    void checkSignatureFailure() throws Exception {
 
         /* debugging
         boolean testAutoShutdown = false;
@@ -175,14 +169,40 @@ public final class CASigningUnit extends SigningUnit {
         }
         */
 
-        logger.info("CASigningUnit: Signing Certificate");
-
         boolean testSignatureFailure = mConfig.getTestSignatureFailure();
         if (testSignatureFailure) {
             throw new SignatureException("SignatureException forced for testing");
         }
+    }
+
+    /**
+     * @param algname is expected to be one of JCA's algorithm names.
+     */
+    @Override
+    public byte[] sign(byte[] data, String algname) throws Exception {
+
+        SignatureAlgorithm signAlg = getSigningAlgorithm(algname);
+        checkSignatureFailure();
+
+        logger.info("CASigningUnit: Signing Certificate");
+        return mSigners.sign(signAlg, data);
+    }
+
+    /**
+     * Signs multiple data with the same signature context
+     * if the signature contexts can be reused.
+     *
+     * @param data list of data to be signed
+     * @param algname is expected to be one of JCA's algorithm names.
+     * @return list of signatures in the same order as the data
+     */
+    public List<byte[]> signAll(List<byte[]> data, String algname) throws Exception {
+
+        SignatureAlgorithm signAlg = getSigningAlgorithm(algname);
+        checkSignatureFailure();
 
-        return signer.sign();
+        logger.info("CASigningUnit: Signing " + data.size() + " certificates");
+        return mSigners.signAll(signAlg, data);
     }
 
     @Override
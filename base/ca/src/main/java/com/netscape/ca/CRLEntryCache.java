@@ -0,0 +1,638 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.mozilla.jss.netscape.security.util.BigInt;
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+
+/**
+ * This class keeps the entries of a full CRL as a compact map
+ * of serial numbers to DER-encoded CRL entries.
+ *
+ * The entries are stored in an immutable segment which consists of
+ * a single byte array containing the encoded entries sorted by serial
+ * number and an array of offsets. Changes are kept in a small sorted
+ * map and merged into a new segment once they exceed a fraction of the
+ * segment size, or when the CRL is generated. Since a segment is never
+ * modified it can be used as a snapshot of the CRL entries without
+ * cloning them.
+ *
+ * Each entry is encoded once when it is added to the cache. Generating
+ * a new CRL only requires encoding the entries that were added since
+ * the previous CRL; the remaining entries are copied as is into the
+ * new TBSCertList, which can be written directly into a stream.
+ *
+ * The entries are decoded on demand, so the map operations that return
+ * RevokedCertificate objects are slower than with a Hashtable. Serial
+ * numbers are assumed to be positive.
+ */
+public class CRLEntryCache extends AbstractMap<BigInteger, RevokedCertificate> {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CRLEntryCache.class);
+
+    /**
+     * Dates before 2050 are encoded as UTCTime, later dates
+     * as GeneralizedTime (RFC 5280 section 4.1.2.5).
+     */
+    public static final long YR_2050 = 2524608000000L;
+
+    /**
+     * Minimum number of changes before they are merged into the segment.
+     */
+    public static final int MIN_COMPACTION_SIZE = 10000;
+
+    /**
+     * Estimated memory used by each change besides its encoding.
+     */
+    public static final int CHANGE_OVERHEAD = 128;
+
+    static final Segment EMPTY_SEGMENT = new Segment(new byte[0], new int[] { 0 }, 0);
+
+    private Segment segment = EMPTY_SEGMENT;
+
+    /**
+     * Changes since the last compaction. A null value
+     * removes an entry from the segment.
+     */
+    private TreeMap<BigInteger, byte[]> changes = new TreeMap<>();
+
+    private int size;
+    private long encodedSize;
+    private int entriesWithExtensions;
+
+    /**
+     * Immutable list of DER-encoded CRL entries sorted by serial number.
+     */
+    static class Segment {
+
+        final byte[] data;
+        final int[] offsets;
+        final int entriesWithExtensions;
+
+        Segment(byte[] data, int[] offsets, int entriesWithExtensions) {
+            this.data = data;
+            this.offsets = offsets;
+            this.entriesWithExtensions = entriesWithExtensions;
+        }
+
+        int size() {
+            return offsets.length - 1;
+        }
+
+        int getEncodedSize() {
+            return offsets[offsets.length - 1];
+        }
+
+        byte[] getEntry(int i) {
+            return Arrays.copyOfRange(data, offsets[i], offsets[i + 1]);
+        }
+
+        int compareSerialNumber(int i, byte[] serialNumber) {
+            return CRLEntryCache.compareSerialNumber(data, offsets[i], serialNumber);
+        }
+
+        /**
+         * Returns the index of the entry with the given serial number
+         * (encoded with BigInteger.toByteArray()), or (-(insertion point) - 1)
+         * if there is no such entry.
+         */
+        int find(byte[] serialNumber) {
+
+            int low = 0;
+            int high = size() - 1;
+
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = compareSerialNumber(mid, serialNumber);
+
+                if (c < 0) {
+                    low = mid + 1;
+                } else if (c > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+
+            return -(low + 1);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+
+        if (!(key instanceof BigInteger)) {
+            return false;
+        }
+
+        BigInteger serialNumber = (BigInteger) key;
+
+        if (changes.containsKey(serialNumber)) {
+            return changes.get(serialNumber) != null;
+        }
+
+        return segment.find(serialNumber.toByteArray()) >= 0;
+    }
+
+    @Override
+    public synchronized RevokedCertificate get(Object key) {
+
+        if (!(key instanceof BigInteger)) {
+            return null;
+        }
+
+        return decode(getEncoding((BigInteger) key));
+    }
+
+    @Override
+    public synchronized RevokedCertificate put(BigInteger serialNumber, RevokedCertificate revokedCert) {
+
+        byte[] encoding = encode(revokedCert);
+
+        byte[] previous = removeEncoding(serialNumber);
+
+        changes.put(serialNumber, encoding);
+        addCounters(encoding, 1);
+
+        compactIfNeeded();
+
+        return decode(previous);
+    }
+
+    @Override
+    public synchronized RevokedCertificate remove(Object key) {
+
+        if (!(key instanceof BigInteger)) {
+            return null;
+        }
+
+        byte[] previous = removeEncoding((BigInteger) key);
+
+        compactIfNeeded();
+
+        return decode(previous);
+    }
+
+    @Override
+    public synchronized void clear() {
+        segment = EMPTY_SEGMENT;
+        changes.clear();
+        size = 0;
+        encodedSize = 0;
+        entriesWithExtensions = 0;
+    }
+
+    /**
+     * Returns the entries sorted by serial number. The entries are decoded
+     * from a snapshot of the cache, so later changes are not visible.
+     */
+    @Override
+    public Set<Map.Entry<BigInteger, RevokedCertificate>> entrySet() {
+
+        Segment snapshot = snapshot();
+
+        return new AbstractSet<>() {
+
+            @Override
+            public int size() {
+                return snapshot.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<BigInteger, RevokedCertificate>> iterator() {
+
+                return new Iterator<>() {
+
+                    int i;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < snapshot.size();
+                    }
+
+                    @Override
+                    public Map.Entry<BigInteger, RevokedCertificate> next() {
+
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        RevokedCertificate revokedCert = decode(snapshot.getEntry(i++));
+                        return new SimpleImmutableEntry<>(revokedCert.getSerialNumber(), revokedCert);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the total size of the encoded CRL entries in bytes.
+     */
+    public synchronized long getEncodedSize() {
+        return encodedSize;
+    }
+
+    /**
+     * Returns the estimated memory used by the cache in bytes.
+     */
+    public synchronized long getMemorySize() {
+
+        long memorySize = segment.data.length + 4L * segment.offsets.length;
+
+        for (byte[] encoding : changes.values()) {
+            memorySize += CHANGE_OVERHEAD;
+            if (encoding != null) {
+                memorySize += encoding.length;
+            }
+        }
+
+        return memorySize;
+    }
+
+    /**
+     * Merges the changes into the segment and returns it.
+     */
+    public synchronized Segment snapshot() {
+        compact();
+        return segment;
+    }
+
+    /**
+     * Appends the entries of other caches, e.g. of consecutive serial
+     * number ranges generated in parallel, with a single copy of the
+     * encoded entries. If the serial numbers of the caches are not in
+     * ascending order the entries are added one at a time instead.
+     */
+    public synchronized void appendAll(List<CRLEntryCache> caches) {
+
+        compact();
+
+        List<Segment> segments = new ArrayList<>();
+        segments.add(segment);
+
+        long totalSize = segment.getEncodedSize();
+        int totalEntries = segment.size();
+        int totalEntriesWithExtensions = segment.entriesWithExtensions;
+
+        Segment last = segment;
+
+        for (CRLEntryCache cache : caches) {
+
+            Segment next = cache.snapshot();
+            if (next.size() == 0) {
+                continue;
+            }
+
+            if (last.size() > 0) {
+                byte[] serialNumber = decode(next.getEntry(0)).getSerialNumber().toByteArray();
+                if (last.compareSerialNumber(last.size() - 1, serialNumber) >= 0) {
+                    logger.debug("CRLEntryCache: Entries not in ascending order, adding them individually");
+                    for (CRLEntryCache c : caches) {
+                        putAll(c);
+                    }
+                    return;
+                }
+            }
+
+            segments.add(next);
+            totalSize += next.getEncodedSize();
+            totalEntries += next.size();
+            totalEntriesWithExtensions += next.entriesWithExtensions;
+
+            last = next;
+        }
+
+        byte[] data = new byte[Math.toIntExact(totalSize)];
+        int[] offsets = new int[totalEntries + 1];
+        int count = 0;
+        int offset = 0;
+
+        for (Segment s : segments) {
+
+            System.arraycopy(s.data, 0, data, offset, s.getEncodedSize());
+
+            for (int i = 1; i <= s.size(); i++) {
+                offsets[count + i] = offset + s.offsets[i];
+            }
+
+            count += s.size();
+            offset += s.getEncodedSize();
+        }
+
+        segment = new Segment(data, offsets, totalEntriesWithExtensions);
+        size = totalEntries;
+        encodedSize = totalSize;
+        entriesWithExtensions = totalEntriesWithExtensions;
+    }
+
+    /**
+     * Writes the DER encoding of a TBSCertList containing the cached
+     * entries into the output stream. The lengths of the DER structures
+     * are computed in advance, so the TBSCertList is not built in memory.
+     * The entries are written from a snapshot, so the cache can be updated
+     * while the TBSCertList is being written.
+     *
+     * @return number of bytes written
+     */
+    public long writeTBSCertList(
+            OutputStream out,
+            X500Name issuer,
+            AlgorithmId algorithmId,
+            Date thisUpdate,
+            Date nextUpdate,
+            CRLExtensions extensions) throws IOException, CRLException {
+
+        Segment snapshot = snapshot();
+
+        try (DerOutputStream head = new DerOutputStream();
+                DerOutputStream revokedCerts = new DerOutputStream();
+                DerOutputStream tail = new DerOutputStream();
+                DerOutputStream tbsCertList = new DerOutputStream()) {
+
+            if (extensions != null || snapshot.entriesWithExtensions > 0) {
+                // v2 CRL
+                head.putInteger(new BigInt(1));
+            }
+
+            algorithmId.encode(head);
+            issuer.encode(head);
+
+            putTime(head, thisUpdate);
+            if (nextUpdate != null) {
+                putTime(head, nextUpdate);
+            }
+
+            if (snapshot.size() > 0) {
+                revokedCerts.write(DerValue.tag_Sequence);
+                revokedCerts.putLength(snapshot.getEncodedSize());
+            }
+
+            if (extensions != null) {
+                extensions.encode(tail, true);
+            }
+
+            long length = (long) head.size() + revokedCerts.size() + snapshot.getEncodedSize() + tail.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("CRL too large: " + length + " bytes");
+            }
+
+            tbsCertList.write(DerValue.tag_Sequence);
+            tbsCertList.putLength((int) length);
+
+            tbsCertList.writeTo(out);
+            head.writeTo(out);
+            revokedCerts.writeTo(out);
+            out.write(snapshot.data, 0, snapshot.getEncodedSize());
+            tail.writeTo(out);
+
+            return tbsCertList.size() + length;
+        }
+    }
+
+    byte[] getEncoding(BigInteger serialNumber) {
+
+        if (changes.containsKey(serialNumber)) {
+            return changes.get(serialNumber);
+        }
+
+        int i = segment.find(serialNumber.toByteArray());
+        return i < 0 ? null : segment.getEntry(i);
+    }
+
+    byte[] removeEncoding(BigInteger serialNumber) {
+
+        byte[] previous = getEncoding(serialNumber);
+
+        if (previous == null) {
+            return null;
+        }
+
+        if (segment.find(serialNumber.toByteArray()) >= 0) {
+            changes.put(serialNumber, null);
+        } else {
+            changes.remove(serialNumber);
+        }
+
+        addCounters(previous, -1);
+
+        return previous;
+    }
+
+    void addCounters(byte[] encoding, int delta) {
+        size += delta;
+        encodedSize += delta * encoding.length;
+        if (hasExtensions(encoding, 0)) {
+            entriesWithExtensions += delta;
+        }
+    }
+
+    void compactIfNeeded() {
+        if (changes.size() > Math.max(MIN_COMPACTION_SIZE, segment.size() / 4)) {
+            compact();
+        }
+    }
+
+    /**
+     * Merges the changes into a new segment.
+     */
+    void compact() {
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        logger.debug("CRLEntryCache: Merging " + changes.size() + " changes into " + segment.size() + " entries");
+
+        byte[] data = new byte[Math.toIntExact(encodedSize)];
+        int[] offsets = new int[size + 1];
+        int count = 0;
+        int offset = 0;
+
+        Iterator<Map.Entry<BigInteger, byte[]>> iterator = changes.entrySet().iterator();
+        Map.Entry<BigInteger, byte[]> change = iterator.next();
+        byte[] changeSerialNumber = change.getKey().toByteArray();
+
+        int i = 0;
+        int n = segment.size();
+
+        while (i < n || change != null) {
+
+            int c;
+            if (change == null) {
+                c = -1;
+            } else if (i >= n) {
+                c = 1;
+            } else {
+                c = segment.compareSerialNumber(i, changeSerialNumber);
+            }
+
+            byte[] source;
+            int start;
+            int length;
+
+            if (c < 0) {
+                // keep entry from the segment
+                source = segment.data;
+                start = segment.offsets[i];
+                length = segment.offsets[i + 1] - start;
+                i++;
+
+            } else {
+                if (c == 0) {
+                    // entry replaced or removed
+                    i++;
+                }
+
+                source = change.getValue();
+                start = 0;
+                length = source == null ? 0 : source.length;
+
+                if (iterator.hasNext()) {
+                    change = iterator.next();
+                    changeSerialNumber = change.getKey().toByteArray();
+                } else {
+                    change = null;
+                }
+
+                if (source == null) {
+                    continue;
+                }
+            }
+
+            System.arraycopy(source, start, data, offset, length);
+            offsets[count++] = offset;
+            offset += length;
+        }
+
+        offsets[count] = offset;
+
+        segment = new Segment(data, offsets, entriesWithExtensions);
+        changes.clear();
+    }
+
+    static byte[] encode(RevokedCertificate revokedCert) {
+
+        try (DerOutputStream out = new DerOutputStream()) {
+            ((RevokedCertImpl) revokedCert).encode(out);
+            return out.toByteArray();
+
+        } catch (CRLException | IOException e) {
+            throw new RuntimeException("Unable to encode CRL entry: " + e.getMessage(), e);
+        }
+    }
+
+    static RevokedCertificate decode(byte[] encoding) {
+
+        if (encoding == null) {
+            return null;
+        }
+
+        try {
+            return new RevokedCertImpl(encoding);
+
+        } catch (CRLException e) {
+            throw new RuntimeException("Unable to decode CRL entry: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the length of the header of the DER value at the offset.
+     */
+    static int headerLength(byte[] data, int offset) {
+        int b = data[offset + 1] & 0xff;
+        return b < 0x80 ? 2 : 2 + (b & 0x7f);
+    }
+
+    /**
+     * Returns the length of the content of the DER value at the offset.
+     */
+    static int contentLength(byte[] data, int offset) {
+
+        int b = data[offset + 1] & 0xff;
+        if (b < 0x80) {
+            return b;
+        }
+
+        int length = 0;
+        for (int i = 0; i < (b & 0x7f); i++) {
+            length = (length << 8) | (data[offset + 2 + i] & 0xff);
+        }
+
+        return length;
+    }
+
+    static int valueLength(byte[] data, int offset) {
+        return headerLength(data, offset) + contentLength(data, offset);
+    }
+
+    /**
+     * Compares the serial number of the CRL entry at the offset with
+     * a positive serial number encoded with BigInteger.toByteArray().
+     * For positive numbers the DER encoding is the same, so a longer
+     * encoding means a larger number.
+     */
+    static int compareSerialNumber(byte[] data, int offset, byte[] serialNumber) {
+
+        int serialOffset = offset + headerLength(data, offset);
+        int start = serialOffset + headerLength(data, serialOffset);
+        int length = contentLength(data, serialOffset);
+
+        if (length != serialNumber.length) {
+            return length < serialNumber.length ? -1 : 1;
+        }
+
+        return Arrays.compareUnsigned(data, start, start + length, serialNumber, 0, length);
+    }
+
+    /**
+     * Returns true if the CRL entry at the offset contains extensions.
+     */
+    static boolean hasExtensions(byte[] data, int offset) {
+
+        int end = offset + valueLength(data, offset);
+
+        int p = offset + headerLength(data, offset);
+        p += valueLength(data, p); // serial number
+        p += valueLength(data, p); // revocation date
+
+        return p < end;
+    }
+
+    static void putTime(DerOutputStream out, Date date) throws IOException {
+        if (date.getTime() < YR_2050) {
+            out.putUTCTime(date);
+        } else {
+            out.putGeneralizedTime(date);
+        }
+    }
+}
@@ -17,16 +17,21 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.ca;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
+import java.util.TreeMap;
 import java.util.Vector;
 
 import org.dogtagpki.server.ca.CAConfig;
@@ -179,8 +184,11 @@ public class CRLIssuingPoint implements Runnable {
 
     /**
      * CRL cache
+     *
+     * The full CRL entries are kept in a Hashtable, or in a CRLEntryCache
+     * if incremental CRL generation is enabled.
      */
-    private Hashtable<BigInteger, RevokedCertificate> mCRLCerts = new Hashtable<>();
+    private Map<BigInteger, RevokedCertificate> mCRLCerts = new Hashtable<>();
     private Hashtable<BigInteger, RevokedCertificate> mRevokedCerts = new Hashtable<>();
     private Hashtable<BigInteger, RevokedCertificate> mUnrevokedCerts = new Hashtable<>();
     private Hashtable<BigInteger, RevokedCertificate> mExpiredCerts = new Hashtable<>();
@@ -200,6 +208,16 @@ public class CRLIssuingPoint implements Runnable {
     private String mFirstUnsaved = null;
     private boolean mEnableCacheTesting = false;
 
+    /**
+     * Enable incremental generation of full CRLs from encoded CRL entries.
+     */
+    private boolean mEnableIncrementalCRL = false;
+
+    /**
+     * Number of threads used to generate full CRLs from the database.
+     */
+    private int mGenerationThreads = 1;
+
     /**
      * Last CRL cache update
      */
@@ -832,6 +850,11 @@ public class CRLIssuingPoint implements Runnable {
         mCacheUpdateInterval = MINUTE * config.getCacheUpdateInterval();
         mEnableCacheRecovery = config.getEnableCacheRecovery();
         mEnableCacheTesting = config.getEnableCacheTesting();
+        mEnableIncrementalCRL = config.getEnableIncrementalCRL();
+        mGenerationThreads = config.getGenerationThreads();
+        if (mEnableIncrementalCRL) {
+            mCRLCerts = new CRLEntryCache();
+        }
 
         // check if CRL generation is enabled
         mEnableCRLUpdates = config.getEnableCRLUpdates();
@@ -1055,7 +1078,12 @@ public class CRLIssuingPoint implements Runnable {
                                     mNextUpdate = x509crl.getNextUpdate();
                                 }
 
-                                mCRLCerts = x509crl.getListOfRevokedCertificates();
+                                if (mEnableIncrementalCRL) {
+                                    mCRLCerts.clear();
+                                    mCRLCerts.putAll(x509crl.getListOfRevokedCertificates());
+                                } else {
+                                    mCRLCerts = x509crl.getListOfRevokedCertificates();
+                                }
                                 logger.debug("CRLIssuingPoint: - CRL certs: " + mCRLCerts.size());
                             }
                             if (mFirstUnsaved != null && !mFirstUnsaved.equals(CRLIssuingPointRecord.CLEAN_CACHE)) {
@@ -2216,15 +2244,56 @@ public class CRLIssuingPoint implements Runnable {
 
         logger.info("CRLIssuingPoint: Processing revoked certs");
 
-        CertRecordProcessor cp = new CertRecordProcessor(mCRLCerts, this, mAllowExtensions);
-
         String filter = getFilter();
         logger.info("CRLIssuingPoint: - filter: " + filter);
 
         CAEngine engine = CAEngine.getInstance();
+
+        if (mGenerationThreads > 1) {
+            processRevokedCerts(filter);
+            return;
+        }
+
+        CertRecordProcessor cp = new CertRecordProcessor(mCRLCerts, this, mAllowExtensions);
         engine.certStatusUpdateTask.processRevokedCerts(cp, filter, mPageSize);
     }
 
+    /**
+     * Builds the list of revoked certificates with multiple threads.
+     * Each thread collects the entries of a serial number range into a
+     * separate map, then the maps are merged into the CRL cache in
+     * serial number order.
+     *
+     * @param filter search filter
+     * @exception EBaseException if an error occured in the database.
+     */
+    void processRevokedCerts(String filter) throws EBaseException {
+
+        CAEngine engine = CAEngine.getInstance();
+        List<CertRecordProcessor> processors = engine.certStatusUpdateTask.processRevokedCerts(
+                () -> new CertRecordProcessor(
+                        mEnableIncrementalCRL ? new CRLEntryCache() : new TreeMap<>(),
+                        this,
+                        mAllowExtensions),
+                filter,
+                mPageSize,
+                mGenerationThreads);
+
+        if (mCRLCerts instanceof CRLEntryCache) {
+            // the entries were encoded by the threads
+            List<CRLEntryCache> caches = new ArrayList<>();
+            for (CertRecordProcessor processor : processors) {
+                caches.add((CRLEntryCache) processor.getCRLCerts());
+            }
+            ((CRLEntryCache) mCRLCerts).appendAll(caches);
+            return;
+        }
+
+        for (CertRecordProcessor processor : processors) {
+            mCRLCerts.putAll(processor.getCRLCerts());
+        }
+    }
+
     /**
      * Clears CRL cache
      */
@@ -3248,16 +3317,30 @@ public class CRLIssuingPoint implements Runnable {
                 }
             }
 
-            logger.debug("CRLIssuingPoint: creating CRL object");
-            X509CRLImpl crl = new X509CRLImpl(mCA.getCRLX500Name(),
-                    AlgorithmId.get(signingAlgorithm),
-                    thisUpdate, nextUpdate, mCRLCerts, ext);
+            byte[] newCRL;
 
-            logger.debug("CRLIssuingPoint: signing CRL");
-            newX509CRL = mCA.sign(crl, signingAlgorithm);
+            if (mEnableIncrementalCRL) {
+                newCRL = generateIncrementalCRL(signingAlgorithm, thisUpdate, nextUpdate, ext);
+                newX509CRL = new X509CRLImpl(newCRL, false);
 
-            logger.debug("CRLIssuingPoint: encoding CRL");
-            byte[] newCRL = newX509CRL.getEncoded();
+            } else {
+                logger.debug("CRLIssuingPoint: creating CRL object");
+                // without incremental CRL generation the CRL cache is a Hashtable
+                Hashtable<BigInteger, RevokedCertificate> crlCerts =
+                        mCRLCerts instanceof Hashtable<BigInteger, RevokedCertificate> table
+                        ? table
+                        : new Hashtable<>(mCRLCerts);
+
+                X509CRLImpl crl = new X509CRLImpl(mCA.getCRLX500Name(),
+                        AlgorithmId.get(signingAlgorithm),
+                        thisUpdate, nextUpdate, crlCerts, ext);
+
+                logger.debug("CRLIssuingPoint: signing CRL");
+                newX509CRL = mCA.sign(crl, signingAlgorithm);
+
+                logger.debug("CRLIssuingPoint: encoding CRL");
+                newCRL = newX509CRL.getEncoded();
+            }
 
             mSplits[7] += System.currentTimeMillis();
 
@@ -3287,6 +3370,7 @@ public class CRLIssuingPoint implements Runnable {
             mSplits[8] += System.currentTimeMillis();
 
             mCRLSize = mCRLCerts.size();
+            updateCacheStats();
             mCRLNumber = mNextCRLNumber;
             mDeltaCRLNumber = mCRLNumber;
             mNextCRLNumber = mCRLNumber.add(BigInteger.ONE);
@@ -3360,6 +3444,73 @@ public class CRLIssuingPoint implements Runnable {
         }
     }
 
+    /**
+     * Publishes the size of the CRL cache through the statistics subsystem.
+     */
+    void updateCacheStats() {
+
+        CAEngine engine = CAEngine.getInstance();
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+        if (statsSub == null) {
+            return;
+        }
+
+        String prefix = "crl." + mId + ".";
+        statsSub.setGauge(prefix + "crlCerts", mCRLCerts.size());
+        statsSub.setGauge(prefix + "revokedCerts", mRevokedCerts.size());
+        statsSub.setGauge(prefix + "unrevokedCerts", mUnrevokedCerts.size());
+        statsSub.setGauge(prefix + "expiredCerts", mExpiredCerts.size());
+
+        if (mCRLCerts instanceof CRLEntryCache) {
+            CRLEntryCache crlEntryCache = (CRLEntryCache) mCRLCerts;
+            statsSub.setGauge(prefix + "cacheMemory", crlEntryCache.getMemorySize());
+        }
+    }
+
+    /**
+     * Generates a signed full CRL from the encoded CRL entries.
+     * Only the entries that changed since the previous CRL need
+     * to be encoded, unless the CRL cache has been reloaded.
+     *
+     * The TBSCertList is written directly from the encoded entries
+     * and signed as is, so the CRL is not built as an X509CRLImpl
+     * and the entries are not decoded or re-encoded.
+     *
+     * The memory used is still proportional to the number of entries:
+     * the CRL issuing point record stores the signed CRL as a single
+     * LDAP attribute, and the CRL cache keeps the encoded entries in
+     * memory to compute the delta CRLs.
+     *
+     * @return DER encoding of the signed CRL
+     */
+    byte[] generateIncrementalCRL(
+            String signingAlgorithm,
+            Date thisUpdate,
+            Date nextUpdate,
+            CRLExtensions ext) throws Exception {
+
+        CRLEntryCache crlEntryCache = (CRLEntryCache) mCRLCerts;
+
+        long encodedSize = crlEntryCache.getEncodedSize();
+        logger.debug("CRLIssuingPoint: encoding " + crlEntryCache.size() + " CRL entries"
+                + " (" + encodedSize + " bytes)");
+
+        // reserve space for the CRL header and extensions
+        ByteArrayOutputStream tbsCertList = new ByteArrayOutputStream(
+                (int) Math.min(encodedSize + 4096, Integer.MAX_VALUE - 8));
+
+        crlEntryCache.writeTBSCertList(
+                tbsCertList,
+                mCA.getCRLX500Name(),
+                AlgorithmId.get(signingAlgorithm),
+                thisUpdate,
+                nextUpdate,
+                ext);
+
+        logger.debug("CRLIssuingPoint: signing CRL");
+        return mCA.signCRL(tbsCertList.toByteArray(), signingAlgorithm);
+    }
+
     /**
      * Publishes the CRL immediately.
      *
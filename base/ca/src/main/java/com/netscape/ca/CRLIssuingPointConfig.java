@@ -129,6 +129,14 @@ public class CRLIssuingPointConfig extends ConfigStore {
         putBoolean("enableCacheRecovery", enableCacheRecovery);
     }
 
+    public boolean getEnableIncrementalCRL() throws EBaseException {
+        return getBoolean("enableIncrementalCRL", false);
+    }
+
+    public void setEnableIncrementalCRL(boolean enableIncrementalCRL) {
+        putBoolean("enableIncrementalCRL", enableIncrementalCRL);
+    }
+
     public boolean getEnableDailyUpdates() throws EBaseException {
         return getBoolean("enableDailyUpdates", false);
     }
@@ -153,6 +161,14 @@ public class CRLIssuingPointConfig extends ConfigStore {
         putBoolean("extendedNextUpdate", extendedNextUpdate);
     }
 
+    public int getGenerationThreads() throws EBaseException {
+        return getInteger("generationThreads", 1);
+    }
+
+    public void setGenerationThreads(int generationThreads) {
+        putInteger("generationThreads", generationThreads);
+    }
+
     public boolean getIncludeExpiredCerts() throws EBaseException {
         return getBoolean("includeExpiredCerts", false);
     }
@@ -19,7 +19,7 @@ package com.netscape.ca;
 
 import java.math.BigInteger;
 import java.util.Date;
-import java.util.Hashtable;
+import java.util.Map;
 import java.util.Vector;
 
 import org.mozilla.jss.netscape.security.util.BitArray;
@@ -44,7 +44,7 @@ public class CertRecordProcessor extends ElementProcessor {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CertRecordProcessor.class);
 
-    private Hashtable<BigInteger, RevokedCertificate> crlCerts;
+    private Map<BigInteger, RevokedCertificate> crlCerts;
     private boolean allowExtensions;
     private CRLIssuingPoint issuingPoint;
 
@@ -53,7 +53,7 @@ public class CertRecordProcessor extends ElementProcessor {
     private BitArray onlySomeReasons;
 
     public CertRecordProcessor(
-            Hashtable<BigInteger, RevokedCertificate> crlCerts,
+            Map<BigInteger, RevokedCertificate> crlCerts,
             CRLIssuingPoint ip,
             boolean allowExtensions) {
 
@@ -62,6 +62,10 @@ public class CertRecordProcessor extends ElementProcessor {
         this.allowExtensions = allowExtensions;
     }
 
+    public Map<BigInteger, RevokedCertificate> getCRLCerts() {
+        return crlCerts;
+    }
+
     private boolean initCRLIssuingDistPointExtension() {
 
         boolean result = false;
@@ -33,10 +33,12 @@ import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateParsingException;
 import java.security.interfaces.RSAKey;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Vector;
@@ -967,6 +969,78 @@ public class CertificateAuthority implements IAuthority, ICertificateAuthority,
         return signedcrl;
     }
 
+    /**
+     * Signs a DER-encoded TBSCertList using the specified signature
+     * algorithm. If no algorithm is specified the default algorithm
+     * of the CRL signing unit is used. The signed CRL is assembled
+     * from the TBSCertList without decoding it.
+     *
+     * @param tbsCertList the DER-encoded TBSCertList to be signed.
+     * @param algname the algorithm name to use.
+     * @return the DER encoding of the signed CRL
+     * @exception EBaseException failed to sign CRL
+     */
+    public byte[] signCRL(byte[] tbsCertList, String algname)
+            throws EBaseException {
+
+        CAEngine engine = CAEngine.getInstance();
+        ensureReady();
+
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.startTiming("signing");
+        }
+
+        try (DerOutputStream tail = new DerOutputStream();
+                DerOutputStream head = new DerOutputStream()) {
+
+            if (algname == null) {
+                algname = mCRLSigningUnit.getDefaultAlgorithm();
+            }
+
+            byte[] signature = mCRLSigningUnit.sign(tbsCertList, algname);
+
+            AlgorithmId.get(algname).encode(tail);
+            tail.putBitString(signature);
+
+            head.write(DerValue.tag_Sequence);
+            head.putLength(tbsCertList.length + tail.size());
+
+            // copy the TBSCertList only once into the signed CRL
+            byte[] crl = new byte[head.size() + tbsCertList.length + tail.size()];
+            byte[] bytes = head.toByteArray();
+            System.arraycopy(bytes, 0, crl, 0, bytes.length);
+            System.arraycopy(tbsCertList, 0, crl, bytes.length, tbsCertList.length);
+            bytes = tail.toByteArray();
+            System.arraycopy(bytes, 0, crl, crl.length - bytes.length, bytes.length);
+
+            return crl;
+
+        } catch (NoSuchAlgorithmException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CRL", e.toString(), e.getMessage()), e);
+            throw new ECAException(CMS.getUserMessage("CMS_CA_SIGNING_CRL_FAILED", e.getMessage()), e);
+
+        } catch (IOException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CRL", e.toString(), e.getMessage()), e);
+            throw new ECAException(
+                    CMS.getUserMessage("CMS_CA_SIGNING_CRL_FAILED", e.getMessage()), e);
+
+        } catch (SignatureException e) {
+            logger.error(CMS.getUserMessage("CMS_CA_SIGNING_OPERATION_FAILED", e.toString()), e);
+            engine.checkForAndAutoShutdown();
+            throw new EBaseException(e);
+
+        } catch (Exception e) {
+            logger.error("Unable to sign data: " + e.getMessage(), e);
+            throw new EBaseException(e);
+
+        } finally {
+            if (statsSub != null) {
+                statsSub.endTiming("signing");
+            }
+        }
+    }
+
     /**
      * Signs the given certificate info using specified signing algorithm
      * If no algorithm is specified the CA's default algorithm is used.
@@ -981,62 +1055,87 @@ public class CertificateAuthority implements IAuthority, ICertificateAuthority,
     public X509CertImpl sign(X509CertInfo certInfo, String algname)
             throws EBaseException {
 
+        if (certInfo == null) {
+            logger.warn(CMS.getLogMessage("CMSCORE_CA_CA_NO_CERTINFO"));
+            return null;
+        }
+
+        return sign(new X509CertInfo[] { certInfo }, algname)[0];
+    }
+
+    /**
+     * Signs the given certificate infos using the same signing algorithm.
+     * The certificates are signed with a single signature context if the
+     * signing unit can reuse the contexts.
+     * If no algorithm is specified the CA's default algorithm is used.
+     *
+     * @param certInfos the certificate infos to be signed.
+     * @param algname the signing algorithm to use. These are names defined
+     *            in JCA, such as MD5withRSA, etc. If null the CA's default
+     *            signing algorithm will be used.
+     * @return signed certificates in the same order as the certificate infos
+     * @exception EBaseException failed to sign certificates
+     */
+    public X509CertImpl[] sign(X509CertInfo[] certInfos, String algname)
+            throws EBaseException {
+
         CAEngine engine = CAEngine.getInstance();
         ensureReady();
 
-        X509CertImpl signedcert = null;
-
         IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
         if (statsSub != null) {
             statsSub.startTiming("signing");
         }
 
-        try (DerOutputStream out = new DerOutputStream();
-                DerOutputStream tmp = new DerOutputStream()) {
-
-            if (certInfo == null) {
-                logger.warn(CMS.getLogMessage("CMSCORE_CA_CA_NO_CERTINFO"));
-                return null;
-            }
-
+        try {
             if (algname == null) {
                 algname = mSigningUnit.getDefaultAlgorithm();
             }
 
-            logger.debug("sign cert get algorithm");
             AlgorithmId alg = AlgorithmId.get(algname);
 
-            // encode certificate info
-            logger.debug("sign cert encoding cert");
-            certInfo.encode(tmp);
-            byte[] rawCert = tmp.toByteArray();
+            // encode certificate infos
+            List<byte[]> rawCerts = new ArrayList<>();
+            for (X509CertInfo certInfo : certInfos) {
+                try (DerOutputStream tmp = new DerOutputStream()) {
+                    certInfo.encode(tmp);
+                    rawCerts.add(tmp.toByteArray());
+                }
+            }
 
-            // encode algorithm identifier
-            logger.debug("sign cert encoding algorithm");
-            alg.encode(tmp);
+            logger.debug("CA cert signing: signing " + rawCerts.size() + " certs");
+            List<byte[]> signatures = mSigningUnit.signAll(rawCerts, algname);
 
-            logger.debug("CA cert signing: signing cert");
-            byte[] signature = mSigningUnit.sign(rawCert, algname);
+            X509CertImpl[] signedCerts = new X509CertImpl[certInfos.length];
 
-            tmp.putBitString(signature);
+            for (int i = 0; i < certInfos.length; i++) {
+                try (DerOutputStream out = new DerOutputStream();
+                        DerOutputStream tmp = new DerOutputStream()) {
 
-            // Wrap the signed data in a SEQUENCE { data, algorithm, sig }
-            out.write(DerValue.tag_Sequence, tmp);
-            //logger.info("CertificateAuthority: done signing");
+                    tmp.write(rawCerts.get(i));
+                    alg.encode(tmp);
+                    tmp.putBitString(signatures.get(i));
 
-            switch (engine.getFastSigning()) {
-            case FASTSIGNING_DISABLED:
-                signedcert = new X509CertImpl(out.toByteArray());
-                break;
+                    // Wrap the signed data in a SEQUENCE { data, algorithm, sig }
+                    out.write(DerValue.tag_Sequence, tmp);
 
-            case FASTSIGNING_ENABLED:
-                signedcert = new X509CertImpl(out.toByteArray(), certInfo);
-                break;
+                    switch (engine.getFastSigning()) {
+                    case FASTSIGNING_DISABLED:
+                        signedCerts[i] = new X509CertImpl(out.toByteArray());
+                        break;
 
-            default:
-                break;
+                    case FASTSIGNING_ENABLED:
+                        signedCerts[i] = new X509CertImpl(out.toByteArray(), certInfos[i]);
+                        break;
+
+                    default:
+                        break;
+                    }
+                }
             }
 
+            return signedCerts;
+
         } catch (NoSuchAlgorithmException e) {
             logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CERT", e.toString(), e.getMessage()), e);
             throw new ECAException(CMS.getUserMessage("CMS_CA_SIGNING_CERT_FAILED", e.getMessage()), e);
@@ -1051,7 +1150,6 @@ public class CertificateAuthority implements IAuthority, ICertificateAuthority,
             throw new ECAException(
                     CMS.getUserMessage("CMS_CA_SIGNING_CERT_FAILED", e.getMessage()), e);
 
-
         } catch (SignatureException e) {
             logger.error(CMS.getUserMessage("CMS_CA_SIGNING_OPERATION_FAILED", e.toString()), e);
             engine.checkForAndAutoShutdown();
@@ -1066,7 +1164,6 @@ public class CertificateAuthority implements IAuthority, ICertificateAuthority,
                 statsSub.endTiming("signing");
             }
         }
-        return signedcert;
     }
 
     /**
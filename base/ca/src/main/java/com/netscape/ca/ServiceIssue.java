@@ -70,15 +70,25 @@ class ServiceIssue implements IServant {
         String challengePassword =
                 request.getExtDataInString(CAService.CHALLENGE_PHRASE);
 
-        X509CertImpl[] certs = new X509CertImpl[certinfos.length];
+        X509CertImpl[] certs;
         String rid = request.getRequestId().toString();
         int i;
 
-        for (i = 0; i < certinfos.length; i++) {
+        if (certinfos.length == 1) {
+            certs = new X509CertImpl[1];
             try {
-                certs[i] = mService.issueX509Cert(rid, certinfos[i]);
+                certs[0] = mService.issueX509Cert(rid, certinfos[0]);
             } catch (EBaseException e) {
-                logger.error(CMS.getLogMessage("CMSCORE_CA_ISSUE_ERROR", Integer.toString(i), rid, e.toString()), e);
+                logger.error(CMS.getLogMessage("CMSCORE_CA_ISSUE_ERROR", "0", rid, e.toString()), e);
+                throw e;
+            }
+
+        } else {
+            // sign multiple certs together
+            try {
+                certs = mService.issueX509Certs(rid, certinfos);
+            } catch (EBaseException e) {
+                logger.error(CMS.getLogMessage("CMSCORE_CA_ISSUE_ERROR", "0-" + (certinfos.length - 1), rid, e.toString()), e);
                 throw e;
             }
         }
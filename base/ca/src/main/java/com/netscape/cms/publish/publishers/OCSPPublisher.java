@@ -22,25 +22,33 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.math.BigInteger;
 import java.net.Socket;
 import java.net.URLEncoder;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
 import java.util.Date;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.dogtagpki.server.PKIClientSocketListener;
 import org.dogtagpki.server.ca.CAEngine;
 import org.dogtagpki.server.ca.CAEngineConfig;
 import org.mozilla.jss.netscape.security.util.Utils;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
 
+import com.netscape.ca.CRLIssuingPoint;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IExtendedPluginInfo;
+import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.ldap.ELdapException;
 import com.netscape.certsrv.publish.ILdapPublisher;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.base.ConfigStore;
+import com.netscape.cmscore.dbs.CRLIssuingPointRecord;
 import com.netscape.cmsutil.crypto.CryptoUtil;
 import com.netscape.cmsutil.http.HttpRequest;
 import com.netscape.cmsutil.http.JssSSLSocketFactory;
@@ -62,6 +70,17 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
     private static final String PROP_PATH = "path";
     private static final String PROP_NICK = "nickName";
     private static final String PROP_CLIENT_AUTH_ENABLE = "enableClientAuth";
+    private static final String PROP_DELTA_CRL_ENABLE = "enableDeltaCRL";
+    private static final String PROP_FULL_CRL_INTERVAL = "fullCRLInterval";
+
+    public static final int DEFAULT_FULL_CRL_INTERVAL = 3600; // seconds
+
+    enum Status {
+        SUCCESS,
+        FAILURE,
+        FULL_CRL_REQUIRED,
+        NOT_SUPPORTED
+    }
 
     private ConfigStore mConfig;
     private String mHost = null;
@@ -69,6 +88,18 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
     private String mPath = null;
     private String mNickname = null;
     private boolean mClientAuthEnabled = true;
+    private boolean mDeltaCRLEnabled = false;
+    private long mFullCRLInterval; // milliseconds
+
+    // false if the OCSP store cannot apply delta CRLs
+    private volatile boolean mDeltaCRLSupported = true;
+
+    // latest CRL number held by the OCSP for each issuer as reported
+    // by the OCSP, so it does not need to be stored across restarts
+    Map<String, BigInteger> mCRLNumbers = new ConcurrentHashMap<>();
+
+    // time the OCSP last stored a full CRL for each issuer
+    Map<String, Long> mFullCRLTimes = new ConcurrentHashMap<>();
 
     /**
      * Returns the implementation name.
@@ -94,6 +125,8 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
                 PROP_PATH + ";string;URI of CMS's OCSP Secure agent service",
                 PROP_NICK + ";string;Nickname of cert used for client authentication",
                 PROP_CLIENT_AUTH_ENABLE + ";boolean;Client Authentication enabled",
+                PROP_DELTA_CRL_ENABLE + ";boolean;Publish delta CRLs and only publish full CRLs when required",
+                PROP_FULL_CRL_INTERVAL + ";integer;Interval (in seconds) to publish full CRLs when delta CRLs are published",
                 IExtendedPluginInfo.HELP_TOKEN +
                         ";configuration-ldappublish-publisher-ocsppublisher",
                 IExtendedPluginInfo.HELP_TEXT +
@@ -114,6 +147,7 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
         String path = "";
         String nickname = "";
         String clientAuthEnabled = "";
+        String deltaCRLEnabled = "";
 
         try {
             host = mConfig.getString(PROP_HOST);
@@ -140,6 +174,18 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
         } catch (EBaseException e) {
         }
         v.addElement(PROP_CLIENT_AUTH_ENABLE + "=" + clientAuthEnabled);
+        try {
+            deltaCRLEnabled = mConfig.getString(PROP_DELTA_CRL_ENABLE);
+        } catch (EBaseException e) {
+        }
+        v.addElement(PROP_DELTA_CRL_ENABLE + "=" + deltaCRLEnabled);
+
+        String fullCRLInterval = "";
+        try {
+            fullCRLInterval = mConfig.getString(PROP_FULL_CRL_INTERVAL);
+        } catch (EBaseException e) {
+        }
+        v.addElement(PROP_FULL_CRL_INTERVAL + "=" + fullCRLInterval);
         return v;
     }
 
@@ -168,6 +214,8 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
         v.addElement(PROP_PATH + "=/ocsp/agent/ocsp/addCRL");
         v.addElement(PROP_CLIENT_AUTH_ENABLE + "=true");
         v.addElement(PROP_NICK + "=" + nickname);
+        v.addElement(PROP_DELTA_CRL_ENABLE + "=false");
+        v.addElement(PROP_FULL_CRL_INTERVAL + "=" + DEFAULT_FULL_CRL_INTERVAL);
         return v;
     }
 
@@ -182,6 +230,9 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
         mPath = mConfig.getString(PROP_PATH, "");
         mNickname = mConfig.getString(PROP_NICK, "");
         mClientAuthEnabled = mConfig.getBoolean(PROP_CLIENT_AUTH_ENABLE, true);
+        mDeltaCRLEnabled = mConfig.getBoolean(PROP_DELTA_CRL_ENABLE, false);
+        mFullCRLInterval = TimeUnit.SECONDS.toMillis(
+                mConfig.getInteger(PROP_FULL_CRL_INTERVAL, DEFAULT_FULL_CRL_INTERVAL));
     }
 
     @Override
@@ -218,6 +269,13 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
     /**
      * Publishs a object to the ldap directory.
      *
+     * If delta CRL publishing is enabled, the delta CRLs are sent to
+     * the OCSP, and a full CRL is only sent if the OCSP has not received
+     * a newer delta CRL, or if the OCSP cannot apply the delta CRL
+     * (e.g. some CRLs were missed). A full CRL is also sent if the OCSP
+     * has not stored one within the full CRL interval, since the entries
+     * of expired certificates are only removed by full CRLs.
+     *
      * @param conn a Ldap connection
      *            (null if LDAP publishing is not enabled)
      * @param dn dn of the ldap entry to publish cert
@@ -234,107 +292,69 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
                 return;
             }
 
-            X509CRL crl = (X509CRL) object;
-
-            // talk to agent port of CMS
+            X509CRLImpl crl = (X509CRLImpl) object;
+            String issuer = crl.getIssuerDN().getName();
+            BigInteger crlNumber = crl.getCRLNumber();
 
-            // open the connection and prepare it to POST
-            boolean secure = true;
+            if (crl.isDeltaCRL()) {
 
-            String host = mHost;
-            int port = Integer.parseInt(mPort);
-            String path = mPath;
-
-            String url = "https://" + host + ":" + port + path;
-            logger.info("OCSPPublisher: Publishing CRL to " + url);
-
-            StringBuffer query = new StringBuffer();
-            query.append("crl=");
-            query.append(URLEncoder.encode("-----BEGIN CERTIFICATE REVOCATION LIST-----\n", "UTF-8"));
-            query.append(URLEncoder.encode(Utils.base64encode(crl.getEncoded(), true), "UTF-8"));
-            query.append(URLEncoder.encode("\n-----END CERTIFICATE REVOCATION LIST-----", "UTF-8"));
-            query.append("&noui=true");
+                if (!mDeltaCRLEnabled || !mDeltaCRLSupported) {
+                    logger.info("OCSPPublisher: Delta CRL publishing is disabled");
+                    return;
+                }
 
-            Socket socket = null;
-            JssSSLSocketFactory factory;
-            PKIClientSocketListener sockListener = new PKIClientSocketListener();
+                Status status = send(crl);
 
-            if (mClientAuthEnabled) {
-                factory = new JssSSLSocketFactory(mNickname);
-            } else {
-                factory = new JssSSLSocketFactory();
-            }
-            factory.addSocketListener(sockListener);
-
-            if (mHost != null && mHost.indexOf(' ') != -1) {
-                // support failover hosts configuration
-                // host parameter can be
-                // "directory.knowledge.com:1050 people.catalog.com 199.254.1.2"
-                do {
-                    socket = Connect(mHost, secure, factory);
-                } while (socket == null);
-            } else {
-                if (secure) {
-                    socket = factory.makeSocket(host, port);
-                } else {
-                    socket = new Socket(host, port);
+                if (status == Status.NOT_SUPPORTED) {
+                    // publish full CRLs only
+                    logger.warn("OCSPPublisher: OCSP does not support delta CRLs");
+                    mDeltaCRLSupported = false;
+                    return;
                 }
-            }
 
-            if (socket == null) {
-                logger.error("OCSPPublisher: Unable to connect to " + url);
-                throw new ELdapException("Unable to connect to " + url);
-            }
-
-            // use HttpRequest and POST
-            HttpRequest httpReq = new HttpRequest();
+                if (status == Status.FULL_CRL_REQUIRED) {
+                    logger.info("OCSPPublisher: Publishing full CRL before delta CRL " + crlNumber);
 
-            httpReq.setMethod("POST");
-            httpReq.setURI(path);
-            httpReq.setHeader("Connection", "Keep-Alive");
+                    X509CRLImpl fullCRL = getFullCRL();
+                    if (fullCRL == null) {
+                        logger.warn("OCSPPublisher: Unable to find full CRL for " + issuer);
+                        return;
+                    }
 
-            httpReq.setHeader("Content-Type",
-                    "application/x-www-form-urlencoded");
-            httpReq.setHeader("Content-Transfer-Encoding", "7bit");
+                    if (send(fullCRL) != Status.SUCCESS) {
+                        return;
+                    }
 
-            httpReq.setHeader("Content-Length",
-                    Integer.toString(query.length()));
-            httpReq.setContent(query.toString());
-            OutputStream os = socket.getOutputStream();
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(os, "UTF8");
+                    mFullCRLTimes.put(issuer, System.currentTimeMillis());
 
-            logger.debug("OCSPPublisher: start sending CRL");
+                    status = send(crl);
+                }
 
-            long startTime = new Date().getTime();
-            logger.debug("OCSPPublisher: start CRL sending startTime=" + startTime);
+                if (status == Status.SUCCESS) {
+                    updateCRLNumber(issuer, crlNumber);
+                }
 
-            httpReq.write(outputStreamWriter);
+                return;
+            }
 
-            long endTime = new Date().getTime();
-            logger.debug("OCSPPublisher: done CRL sending endTime=" + endTime + " diff=" + (endTime - startTime));
+            long now = System.currentTimeMillis();
 
-            // Read the response
-            logger.debug("OCSPPublisher: start getting response");
-            BufferedReader dis = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            String nextline;
-            String error = "";
-            boolean status = false;
+            if (mDeltaCRLEnabled && mDeltaCRLSupported && crlNumber != null) {
+                BigInteger currentCRLNumber = mCRLNumbers.get(issuer);
+                Long fullCRLTime = mFullCRLTimes.get(issuer);
 
-            while ((nextline = dis.readLine()) != null) {
-                if (nextline.startsWith("status=")) {
-                    if (nextline.substring(7, nextline.length()).equals("0")) {
-                        status = true;
-                    }
-                }
-                if (nextline.startsWith("error=")) {
-                    error = nextline.substring(6, nextline.length());
+                if (currentCRLNumber != null && currentCRLNumber.compareTo(crlNumber) >= 0
+                        && fullCRLTime != null && now - fullCRLTime < mFullCRLInterval) {
+                    logger.info("OCSPPublisher: OCSP already has CRL " + currentCRLNumber + " for " + issuer);
+                    return;
                 }
             }
-            dis.close();
-            if (status) {
-                logger.debug("OCSPPublisher: successful");
-            } else {
-                logger.warn("OCSPPublisher: Unable to publish CRL: " + error);
+
+            if (send(crl) == Status.SUCCESS) {
+                mFullCRLTimes.put(issuer, now);
+                if (crlNumber != null) {
+                    updateCRLNumber(issuer, crlNumber);
+                }
             }
 
         } catch (IOException e) {
@@ -351,6 +371,165 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
         }
     }
 
+    /**
+     * Records the CRL number held by the OCSP for the issuer.
+     */
+    void updateCRLNumber(String issuer, BigInteger crlNumber) {
+        mCRLNumbers.merge(issuer, crlNumber, BigInteger::max);
+    }
+
+    /**
+     * Returns the current full CRL of the CRL issuing point being published.
+     */
+    X509CRLImpl getFullCRL() throws Exception {
+
+        SessionContext sc = SessionContext.getContext();
+        String id = (String) sc.get(CRLIssuingPoint.SC_ISSUING_POINT_ID);
+
+        if (id == null) {
+            return null;
+        }
+
+        CAEngine engine = CAEngine.getInstance();
+        CRLIssuingPointRecord record = engine.getCRLRepository().readCRLIssuingPointRecord(id);
+
+        if (record == null || record.getCRL() == null) {
+            return null;
+        }
+
+        return new X509CRLImpl(record.getCRL());
+    }
+
+    /**
+     * Sends a CRL to the OCSP.
+     */
+    Status send(X509CRL crl) throws Exception {
+        // talk to agent port of CMS
+
+        // open the connection and prepare it to POST
+        boolean secure = true;
+
+        String host = mHost;
+        int port = Integer.parseInt(mPort);
+        String path = mPath;
+
+        String url = "https://" + host + ":" + port + path;
+        logger.info("OCSPPublisher: Publishing CRL to " + url);
+
+        StringBuffer query = new StringBuffer();
+        query.append("crl=");
+        query.append(URLEncoder.encode("-----BEGIN CERTIFICATE REVOCATION LIST-----\n", "UTF-8"));
+        query.append(URLEncoder.encode(Utils.base64encode(crl.getEncoded(), true), "UTF-8"));
+        query.append(URLEncoder.encode("\n-----END CERTIFICATE REVOCATION LIST-----", "UTF-8"));
+        query.append("&noui=true");
+
+        Socket socket = null;
+        JssSSLSocketFactory factory;
+        PKIClientSocketListener sockListener = new PKIClientSocketListener();
+
+        if (mClientAuthEnabled) {
+            factory = new JssSSLSocketFactory(mNickname);
+        } else {
+            factory = new JssSSLSocketFactory();
+        }
+        factory.addSocketListener(sockListener);
+
+        if (mHost != null && mHost.indexOf(' ') != -1) {
+            // support failover hosts configuration
+            // host parameter can be
+            // "directory.knowledge.com:1050 people.catalog.com 199.254.1.2"
+            do {
+                socket = Connect(mHost, secure, factory);
+            } while (socket == null);
+        } else {
+            if (secure) {
+                socket = factory.makeSocket(host, port);
+            } else {
+                socket = new Socket(host, port);
+            }
+        }
+
+        if (socket == null) {
+            logger.error("OCSPPublisher: Unable to connect to " + url);
+            throw new ELdapException("Unable to connect to " + url);
+        }
+
+        // use HttpRequest and POST
+        HttpRequest httpReq = new HttpRequest();
+
+        httpReq.setMethod("POST");
+        httpReq.setURI(path);
+        httpReq.setHeader("Connection", "Keep-Alive");
+
+        httpReq.setHeader("Content-Type",
+                "application/x-www-form-urlencoded");
+        httpReq.setHeader("Content-Transfer-Encoding", "7bit");
+
+        httpReq.setHeader("Content-Length",
+                Integer.toString(query.length()));
+        httpReq.setContent(query.toString());
+        OutputStream os = socket.getOutputStream();
+        OutputStreamWriter outputStreamWriter = new OutputStreamWriter(os, "UTF8");
+
+        logger.debug("OCSPPublisher: start sending CRL");
+
+        long startTime = new Date().getTime();
+        logger.debug("OCSPPublisher: start CRL sending startTime=" + startTime);
+
+        httpReq.write(outputStreamWriter);
+
+        long endTime = new Date().getTime();
+        logger.debug("OCSPPublisher: done CRL sending endTime=" + endTime + " diff=" + (endTime - startTime));
+
+        // Read the response
+        logger.debug("OCSPPublisher: start getting response");
+        BufferedReader dis = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        String nextline;
+        String error = "";
+        boolean status = false;
+        boolean fullCRLRequired = false;
+        boolean deltaCRLSupported = true;
+
+        while ((nextline = dis.readLine()) != null) {
+            if (nextline.startsWith("status=")) {
+                if (nextline.substring(7, nextline.length()).equals("0")) {
+                    status = true;
+                }
+            }
+            if (nextline.startsWith("error=")) {
+                error = nextline.substring(6, nextline.length());
+            }
+            if (nextline.equals("fullCRLRequired=true")) {
+                fullCRLRequired = true;
+            }
+            if (nextline.equals("deltaCRLSupported=false")) {
+                deltaCRLSupported = false;
+            }
+            if (nextline.startsWith("crlNumber=")) {
+                // current CRL number in the OCSP
+                updateCRLNumber(crl.getIssuerDN().getName(), new BigInteger(nextline.substring(10)));
+            }
+        }
+        dis.close();
+        if (status) {
+            logger.debug("OCSPPublisher: successful");
+            return Status.SUCCESS;
+        }
+
+        if (fullCRLRequired) {
+            logger.info("OCSPPublisher: OCSP requires full CRL: " + error);
+            return Status.FULL_CRL_REQUIRED;
+        }
+
+        if (!deltaCRLSupported) {
+            logger.warn("OCSPPublisher: Unable to publish delta CRL: " + error);
+            return Status.NOT_SUPPORTED;
+        }
+
+        logger.warn("OCSPPublisher: Unable to publish CRL: " + error);
+        return Status.FAILURE;
+    }
+
     /**
      * Unpublishs a object to the ldap directory.
      *
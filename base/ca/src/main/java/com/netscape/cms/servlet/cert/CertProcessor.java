@@ -46,6 +46,7 @@ import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestStatus;
 import com.netscape.cms.profile.ProfileAuthenticator;
 import com.netscape.cms.profile.common.Profile;
+import com.netscape.cms.request.RequestScheduler;
 import com.netscape.cms.servlet.processors.CAProcessor;
 import com.netscape.cms.tomcat.ExternalPrincipal;
 import com.netscape.cmscore.apps.CMS;
@@ -220,6 +221,35 @@ public class CertProcessor extends CAProcessor {
 
     protected String submitRequests(Locale locale, Profile profile, AuthToken authToken, Request[] reqs) {
         String auditSubjectID = auditSubjectID();
+
+        CAEngine engine = CAEngine.getInstance();
+
+        // profile requests are not processed by the request queue,
+        // so they need to be admitted by the scheduler here
+        RequestScheduler scheduler = engine.getRequestQueue().getRequestScheduler();
+        Request first = reqs.length > 0 ? reqs[0] : null;
+
+        if (scheduler != null) {
+            scheduler.requestIn(first);
+        }
+
+        try {
+            return submitRequests(locale, profile, authToken, reqs, auditSubjectID);
+
+        } finally {
+            if (scheduler != null) {
+                scheduler.requestOut(first);
+            }
+        }
+    }
+
+    private String submitRequests(
+            Locale locale,
+            Profile profile,
+            AuthToken authToken,
+            Request[] reqs,
+            String auditSubjectID) {
+
         String auditRequesterID = ILogger.UNIDENTIFIED;
         String errorCode = null;
         String errorReason = null;
@@ -17,12 +17,20 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.dbs;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.dogtagpki.server.ca.CAEngine;
 
@@ -42,8 +50,20 @@ public class CertStatusUpdateTask implements Runnable {
     int pageSize = 200;
     int maxRecords = 1000000;
 
+    /**
+     * Number of serial number ranges per thread when
+     * processing revoked certificates in parallel.
+     */
+    static final int RANGES_PER_THREAD = 4;
+
     ScheduledExecutorService executorService;
 
+    /**
+     * Pool for processing revoked certificates in parallel. It is created
+     * on first use and kept for the lifetime of the task.
+     */
+    volatile ForkJoinPool revokedCertsPool;
+
     public CertStatusUpdateTask(
             CertificateRepository repository,
             int interval,
@@ -253,6 +273,183 @@ public class CertStatusUpdateTask implements Runnable {
         logger.info("CertStatusUpdateTask: Done processing revoked certs");
     }
 
+    /**
+     * Processes revoked certificates in parallel.
+     *
+     * The serial numbers of the matching records are split into ranges
+     * of equal size which are searched and processed by fork-join tasks.
+     * Each range is searched on a separate LDAP connection and processed
+     * by its own certificate record processor.
+     *
+     * This code and updateCertStatus() are mutually exclusive.
+     *
+     * @param processorFactory creates the record processor for each range
+     * @param filter search filter
+     * @param pageSize page size
+     * @param threads number of threads
+     * @return record processors of the ranges in serial number order
+     */
+    public synchronized List<CertRecordProcessor> processRevokedCerts(
+            Supplier<CertRecordProcessor> processorFactory,
+            String filter,
+            int pageSize,
+            int threads) throws EBaseException {
+
+        logger.info("CertStatusUpdateTask: Processing revoked certs with " + threads + " threads");
+
+        List<String> filters = new ArrayList<>();
+
+        // find the lowest and highest serial numbers
+        CertRecordList list = repository.findCertRecordsInList(
+                filter,
+                new String[] {
+                        CertRecord.ATTR_ID, "objectclass"
+                },
+                "serialno",
+                1);
+
+        int size = list.getSize();
+        CertRecord first = size > 0 ? list.getCertRecord(0) : null;
+        CertRecord last = size > 0 ? list.getCertRecord(size - 1) : null;
+
+        if (first == null || last == null) {
+            filters.add(filter);
+
+        } else {
+            BigInteger begin = first.getSerialNumber();
+            BigInteger end = last.getSerialNumber();
+            logger.info("CertStatusUpdateTask: - serial numbers: " + begin.toString(16) + " to " + end.toString(16));
+
+            // use more ranges than threads to balance the load
+            BigInteger ranges = BigInteger.valueOf(threads * RANGES_PER_THREAD);
+            BigInteger rangeSize = end.subtract(begin).divide(ranges).add(BigInteger.ONE);
+
+            for (BigInteger lower = begin; lower.compareTo(end) <= 0; lower = lower.add(rangeSize)) {
+                BigInteger upper = lower.add(rangeSize).subtract(BigInteger.ONE).min(end);
+                filters.add("(&" + filter +
+                        "(" + CertRecord.ATTR_ID + ">=" + lower + ")" +
+                        "(" + CertRecord.ATTR_ID + "<=" + upper + "))");
+            }
+        }
+
+        List<CertRecordProcessor> processors = new ArrayList<>();
+        for (int i = 0; i < filters.size(); i++) {
+            processors.add(processorFactory.get());
+        }
+
+        logger.info("CertStatusUpdateTask: - ranges: " + filters.size());
+
+        ForkJoinPool pool = getRevokedCertsPool(threads);
+
+        try {
+            pool.invoke(new RevokedCertsTask(filters, processors, pageSize, 0, filters.size()));
+
+        } catch (RuntimeException e) {
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof EBaseException) {
+                    throw (EBaseException) t;
+                }
+            }
+            throw e;
+        }
+
+        logger.info("CertStatusUpdateTask: Done processing revoked certs");
+
+        return processors;
+    }
+
+    /**
+     * Returns the pool for processing revoked certificates. The pool is
+     * only replaced if the number of threads has been changed or if the
+     * pool has been shut down by stop().
+     *
+     * The caller must hold the lock on this task.
+     */
+    ForkJoinPool getRevokedCertsPool(int threads) {
+
+        if (revokedCertsPool != null
+                && !revokedCertsPool.isShutdown()
+                && revokedCertsPool.getParallelism() == threads) {
+            return revokedCertsPool;
+        }
+
+        if (revokedCertsPool != null) {
+            revokedCertsPool.shutdown();
+        }
+
+        logger.info("CertStatusUpdateTask: Creating pool with " + threads + " threads");
+
+        revokedCertsPool = new ForkJoinPool(
+                threads,
+                p -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    thread.setName("CertStatusUpdateTask-" + thread.getPoolIndex());
+                    return thread;
+                },
+                null,
+                false);
+
+        return revokedCertsPool;
+    }
+
+    /**
+     * Fork-join task that processes revoked certificates
+     * in a list of serial number ranges.
+     */
+    class RevokedCertsTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        List<String> filters;
+        List<CertRecordProcessor> processors;
+        int pageSize;
+        int start;
+        int end;
+
+        RevokedCertsTask(
+                List<String> filters,
+                List<CertRecordProcessor> processors,
+                int pageSize,
+                int start,
+                int end) {
+
+            this.filters = filters;
+            this.processors = processors;
+            this.pageSize = pageSize;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                invokeAll(
+                        new RevokedCertsTask(filters, processors, pageSize, start, middle),
+                        new RevokedCertsTask(filters, processors, pageSize, middle, end));
+                return;
+            }
+
+            String filter = filters.get(start);
+            logger.debug("CertStatusUpdateTask: Processing revoked certs: " + filter);
+
+            try {
+                repository.processCertRecords(
+                        filter,
+                        new String[] {
+                                CertRecord.ATTR_ID, CertRecord.ATTR_REVO_INFO, "objectclass"
+                        },
+                        "serialno",
+                        pageSize,
+                        processors.get(start));
+
+            } catch (EBaseException e) {
+                throw new CompletionException(e);
+            }
+        }
+    }
+
     @Override
     public void run() {
         try {
@@ -266,5 +463,9 @@ public class CertStatusUpdateTask implements Runnable {
     public void stop() {
         // shutdown executorService without interrupting running task
         if (executorService != null) executorService.shutdown();
+
+        // let the pool finish the CRL being generated
+        ForkJoinPool pool = revokedCertsPool;
+        if (pool != null) pool.shutdown();
     }
 }
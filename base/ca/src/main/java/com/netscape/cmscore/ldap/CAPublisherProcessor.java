@@ -20,8 +20,19 @@ package com.netscape.cmscore.ldap;
 import java.math.BigInteger;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.dogtagpki.server.ca.CAEngine;
 import org.mozilla.jss.netscape.security.x509.X500Name;
@@ -59,10 +70,24 @@ public class CAPublisherProcessor extends PublisherProcessor {
     public final static String PROP_LOCAL_CRL = "crl";
     public final static String PROP_CERTS = "certs";
     public final static String PROP_XCERT = "xcert";
+    public final static String PROP_EXECUTOR = "executor";
 
     protected CertificateAuthority ca;
     private boolean createOwnDNEntry;
 
+    private int maxThreads;
+    private int queueSize;
+    private int timeout; // seconds
+    private int crlTimeout; // seconds
+    private int failureThreshold;
+    private int openDuration; // seconds
+
+    private Map<String, PublisherExecutor> executors = new ConcurrentHashMap<>();
+
+    // latest CRL publishing operation of each publisher and CRL
+    private Map<String, CompletableFuture<Void>> crlFutures = new HashMap<>();
+    private final ReentrantLock crlLock = new ReentrantLock();
+
     public CAPublisherProcessor(String id) {
         super(id);
     }
@@ -76,6 +101,34 @@ public class CAPublisherProcessor extends PublisherProcessor {
         this.ca = ca;
         this.createOwnDNEntry = config.getBoolean("createOwnDNEntry", false);
 
+        ConfigStore executorConfig = config.getSubStore(PROP_EXECUTOR, ConfigStore.class);
+
+        logger.info("CAPublisherProcessor: Publisher executor:");
+
+        maxThreads = executorConfig.getInteger("maxThreads", 4);
+        logger.info("CAPublisherProcessor: - max threads: " + maxThreads);
+
+        queueSize = executorConfig.getInteger("queueSize", 100);
+        logger.info("CAPublisherProcessor: - queue size: " + queueSize);
+
+        timeout = executorConfig.getInteger("timeout", 30);
+        if (timeout <= 0) {
+            timeout = 30;
+        }
+        logger.info("CAPublisherProcessor: - timeout: " + timeout + " s");
+
+        crlTimeout = executorConfig.getInteger("crlTimeout", 300);
+        if (crlTimeout <= 0) {
+            crlTimeout = 300;
+        }
+        logger.info("CAPublisherProcessor: - CRL timeout: " + crlTimeout + " s");
+
+        failureThreshold = executorConfig.getInteger("failureThreshold", 5);
+        logger.info("CAPublisherProcessor: - failure threshold: " + failureThreshold);
+
+        openDuration = executorConfig.getInteger("openDuration", 60);
+        logger.info("CAPublisherProcessor: - open duration: " + openDuration + " s");
+
         super.init(config);
     }
 
@@ -113,7 +166,35 @@ public class CAPublisherProcessor extends PublisherProcessor {
                 int savePublishingStatus = queueConfig.getInteger("saveStatus", 0);
                 logger.info("CAPublisherProcessor: - save status: " + savePublishingStatus);
 
+                int publishingBatchSize = queueConfig.getInteger("batchSize", 10);
+                logger.info("CAPublisherProcessor: - batch size: " + publishingBatchSize);
+
+                int maxPublishingRetries = queueConfig.getInteger("maxRetries", 8);
+                logger.info("CAPublisherProcessor: - max retries: " + maxPublishingRetries);
+
+                int publishingRetryDelay = queueConfig.getInteger("retryDelay", 1);
+                logger.info("CAPublisherProcessor: - retry delay: " + publishingRetryDelay + " s");
+
+                int maxPublishingRetryDelay = queueConfig.getInteger("maxRetryDelay", 60);
+                logger.info("CAPublisherProcessor: - max retry delay: " + maxPublishingRetryDelay + " s");
+
+                long retryTime = 0;
+                for (int i = 0; i < maxPublishingRetries; i++) {
+                    retryTime += Math.min((long) publishingRetryDelay << Math.min(i, 30), maxPublishingRetryDelay);
+                }
+
+                if (retryTime < openDuration) {
+                    // the request would fail on the open circuit breaker
+                    logger.warn("CAPublisherProcessor: Publishing retries end after " + retryTime
+                            + " s which is less than the executor open duration (" + openDuration + " s)");
+                }
+
                 RequestNotifier requestNotifier = engine.getRequestNotifier();
+                requestNotifier.setPublishingBatchSize(publishingBatchSize);
+                requestNotifier.setPublishingRetries(
+                        maxPublishingRetries,
+                        publishingRetryDelay,
+                        maxPublishingRetryDelay);
                 requestNotifier.setPublishingQueue(
                         isPublishingQueueEnabled,
                         publishingQueuePriorityLevel,
@@ -135,9 +216,80 @@ public class CAPublisherProcessor extends PublisherProcessor {
             engine.removeRequestListener(requestListener);
         }
 
+        for (PublisherExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+        executors.clear();
+
+        crlLock.lock();
+        try {
+            crlFutures.clear();
+        } finally {
+            crlLock.unlock();
+        }
+
         super.shutdown();
     }
 
+    /**
+     * Returns the executor of a publisher instance.
+     */
+    public PublisherExecutor getExecutor(String publisherName) {
+        return executors.computeIfAbsent(publisherName, name -> new PublisherExecutor(
+                name,
+                maxThreads,
+                queueSize,
+                TimeUnit.SECONDS.toMillis(timeout),
+                failureThreshold,
+                TimeUnit.SECONDS.toMillis(openDuration)));
+    }
+
+    /**
+     * Waits for the publishing operations started for each rule. Returns
+     * the operations that are still running after the timeout, and appends
+     * the names of the rules that failed or timed out to errorRule.
+     *
+     * @param futures publishing operations by rule name
+     * @param timeout timeout in seconds
+     * @param errorRule names of the failed rules
+     */
+    List<CompletableFuture<Void>> waitFor(
+            Map<String, CompletableFuture<Void>> futures,
+            long timeout,
+            StringBuffer errorRule) {
+
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+
+        for (Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+
+            String ruleName = entry.getKey();
+            CompletableFuture<Void> future = entry.getValue();
+
+            try {
+                future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+
+            } catch (TimeoutException e) {
+                logger.warn("CAPublisherProcessor: Rule " + ruleName + " did not complete within " + timeout + " s");
+                errorRule.append(" " + ruleName);
+                pending.add(future);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                errorRule.append(" " + ruleName);
+                pending.add(future);
+
+            } catch (ExecutionException e) {
+                // continue publishing even publisher has errors
+                Throwable cause = e.getCause();
+                logger.warn("CAPublisherProcessor: Unable to publish with rule " + ruleName + ": " + cause.getMessage(), cause);
+                errorRule.append(" " + ruleName);
+            }
+        }
+
+        return pending;
+    }
+
     /**
      * Set published flag - true when published, false when unpublished.
      * Not exist means not published.
@@ -380,6 +532,11 @@ public class CAPublisherProcessor extends PublisherProcessor {
      * Publishs regular user certificate based on the criteria
      * set in the request.
      *
+     * The publishers are called concurrently. If some publishers do
+     * not complete within the timeout, the publishing fails so the
+     * request will be retried, but the certificate is still marked
+     * as published if they complete successfully later.
+     *
      * @param cert X509 certificate to be published.
      * @param req request which provides the criteria
      * @exception ELdapException publish failed due to Ldap error.
@@ -409,6 +566,8 @@ public class CAPublisherProcessor extends PublisherProcessor {
             errorRule.append("No rules enabled");
         }
 
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+
         while (rules != null && rules.hasMoreElements()) {
             LdapRule rule = rules.nextElement();
             logger.info("CAPublisherProcessor: Publishing cert with rule " + rule.getInstanceName());
@@ -418,6 +577,10 @@ public class CAPublisherProcessor extends PublisherProcessor {
                 logger.info("CAPublisherProcessor: - publisher: " + publisherName);
                 ILdapPublisher p = getActivePublisherInstance(publisherName);
 
+                if (p == null) {
+                    throw new ELdapException("Publisher not available: " + publisherName);
+                }
+
                 String mapperName = rule.getMapper();
                 logger.info("CAPublisherProcessor: - mapper: " + mapperName);
 
@@ -426,9 +589,11 @@ public class CAPublisherProcessor extends PublisherProcessor {
                     m = getActiveMapperInstance(mapperName);
                 }
 
-                publishNow(m, p, req, cert);
-
-                logger.info("CAPublisherProcessor: Published cert using rule " + rule.getInstanceName());
+                ILdapMapper mapper = m;
+                futures.put(rule.getInstanceName(), getExecutor(publisherName).submit(() -> {
+                    publishNow(mapper, p, req, cert);
+                    logger.info("CAPublisherProcessor: Published cert using rule " + rule.getInstanceName());
+                }));
 
             } catch (Exception e) {
                 // continue publishing even publisher has errors
@@ -437,13 +602,30 @@ public class CAPublisherProcessor extends PublisherProcessor {
                 errorRule.append(" " + rule.getInstanceName());
             }
         }
-        // set the ldap published flag.
-        if (!error) {
-            setPublishedFlag(cert.getSerialNumber(), true);
-        } else {
+
+        boolean failed = error;
+        int length = errorRule.length();
+        List<CompletableFuture<Void>> pending = waitFor(futures, timeout, errorRule);
+        error = error || errorRule.length() > length;
+
+        if (error) {
+            failed = failed || futures.values().stream().anyMatch(CompletableFuture::isCompletedExceptionally);
+
+            if (!failed) {
+                // the request will be retried, but the certificate is
+                // published if the remaining publishers complete
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture[pending.size()])).thenRun(() -> {
+                    logger.info("CAPublisherProcessor: Cert " + certID.toHexString() + " published after timeout");
+                    setPublishedFlag(cert.getSerialNumber(), true);
+                });
+            }
+
             logger.error("PublishProcessor::publishCert : " + CMS.getUserMessage("CMS_LDAP_PUBLISH_FAILED", errorRule.toString()));
             throw new ELdapException(CMS.getUserMessage("CMS_LDAP_PUBLISH_FAILED", errorRule.toString()));
         }
+
+        // set the ldap published flag.
+        setPublishedFlag(cert.getSerialNumber(), true);
     }
 
     /**
@@ -519,6 +701,10 @@ public class CAPublisherProcessor extends PublisherProcessor {
      * and publishing it there. entry must be a certificate authority.
      * Note that this is used by cmsgateway/cert/UpdateDir.java
      *
+     * The publishers are called concurrently. This method waits for
+     * all publishers up to the CRL timeout so the CRLs are published
+     * in order.
+     *
      * @param crl Certificate Revocation List
      * @param crlIssuingPointId name of the issuing point.
      * @exception ELdapException publish failed due to Ldap error.
@@ -532,8 +718,7 @@ public class CAPublisherProcessor extends PublisherProcessor {
 
         logger.info("CAPublisherProcessor: Publishing CRL " + crl.getCRLNumber() + " to " + crlIssuingPointId);
 
-        boolean error = false;
-        String errorRule = "";
+        StringBuffer errorRule = new StringBuffer();
 
         // get mapper and publisher for cert type.
         Enumeration<LdapRule> rules = getRules(PROP_LOCAL_CRL);
@@ -543,72 +728,125 @@ public class CAPublisherProcessor extends PublisherProcessor {
             throw new ELdapException(CMS.getUserMessage("CMS_LDAP_NO_RULE_MATCHED", PROP_LOCAL_CRL));
         }
 
-        LDAPConnection conn = null;
-        String dn = null;
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
 
-        try {
-            if (mLdapConnModule != null) {
-                conn = mLdapConnModule.getConn();
+        logger.info("CAPublisherProcessor: Publishing rules:");
+        while (rules.hasMoreElements()) {
+
+            LdapRule rule = rules.nextElement();
+            logger.info("CAPublisherProcessor: - rule: " + rule.getInstanceName());
+
+            String publisherName = rule.getPublisher();
+            logger.info("CAPublisherProcessor:   publisher: " + publisherName);
+
+            ILdapPublisher publisher = getActivePublisherInstance(publisherName);
+
+            if (publisher == null) {
+                continue;
             }
 
-            logger.info("CAPublisherProcessor: Publishing rules:");
-            while (rules.hasMoreElements()) {
+            try {
+                futures.put(rule.getInstanceName(), submitCRL(publisherName, crlIssuingPointId,
+                        () -> publishCRLNow(rule, publisher, crl, crlIssuingPointId)));
 
-                LdapRule rule = rules.nextElement();
-                logger.info("CAPublisherProcessor: - rule: " + rule.getInstanceName());
+            } catch (ELdapException e) {
+                // continue publishing even publisher has errors
+                logger.warn("Unable to publish CRL with rule " + rule.getInstanceName() + ": " + e.getMessage(), e);
+                errorRule.append(" " + rule.getInstanceName());
+            }
+        }
 
-                ILdapMapper mapper = null;
-                dn = null;
+        // wait for all publishers to keep the CRLs in order
+        waitFor(futures, crlTimeout, errorRule);
 
-                try {
-                    String mapperName = rule.getMapper();
-                    logger.info("CAPublisherProcessor:   mapper: " + mapperName);
+        if (errorRule.length() > 0) {
+            throw new ELdapException(CMS.getUserMessage("CMS_LDAP_PUBLISH_FAILED", errorRule.toString()));
+        }
+    }
 
-                    if (mapperName != null && !mapperName.trim().equals("")) {
-                        mapper = getActiveMapperInstance(mapperName);
-                    }
+    /**
+     * Submits a CRL publishing operation unless the previous CRL of the
+     * same issuing point is still being published by the publisher after
+     * a timeout, so an older CRL cannot overwrite a newer one.
+     *
+     * @param publisherName publisher name
+     * @param crlName CRL issuing point ID or DN
+     * @param task publishing operation
+     */
+    CompletableFuture<Void> submitCRL(
+            String publisherName,
+            String crlName,
+            PublisherExecutor.Task task) throws ELdapException {
 
-                    if (mapper == null || mapper.getImplName().equals("NoMap")) {
-                        dn = ((X500Name) crl.getIssuerDN()).toLdapDNString();
+        String key = publisherName + ":" + crlName;
 
-                    } else {
-                        dn = mapper.map(conn, crl);
-                        if (!createOwnDNEntry) {
-                            if (dn == null) {
-                                logger.error("CAPublisherProcessor: " + CMS.getLogMessage("CMSCORE_LDAP_MAPPER_NOT_MAP", rule.getMapper()));
-                                throw new ELdapException(CMS.getUserMessage("CMS_LDAP_NO_MATCH", crl.getIssuerDN().toString()));
-                            }
-                        }
-                    }
+        crlLock.lock();
+        try {
+            CompletableFuture<Void> previous = crlFutures.get(key);
+
+            if (previous != null && !previous.isDone()) {
+                throw new ELdapException("Publisher " + publisherName + " is still publishing the previous CRL");
+            }
 
-                    logger.info("CAPublisherProcessor: Publishing to " + dn);
+            CompletableFuture<Void> future = getExecutor(publisherName).submit(
+                    task,
+                    TimeUnit.SECONDS.toMillis(crlTimeout));
+            crlFutures.put(key, future);
 
-                    String publisherName = rule.getPublisher();
-                    logger.info("CAPublisherProcessor: - publisher: " + publisherName);
+            return future;
 
-                    ILdapPublisher publisher = getActivePublisherInstance(publisherName);
+        } finally {
+            crlLock.unlock();
+        }
+    }
 
-                    if (publisher != null) {
+    private void publishCRLNow(
+            LdapRule rule,
+            ILdapPublisher publisher,
+            X509CRLImpl crl,
+            String crlIssuingPointId) throws ELdapException {
 
-                        if (publisher instanceof FileBasedPublisher) {
-                            ((FileBasedPublisher) publisher).setIssuingPointId(crlIssuingPointId);
-                        }
+        LDAPConnection conn = null;
+        String dn = null;
 
-                        publisher.publish(conn, dn, crl);
-                        logger.info("CAPublisherProcessor: Published CRL");
-                    }
+        try {
+            if (mLdapConnModule != null) {
+                conn = mLdapConnModule.getConn();
+            }
+
+            ILdapMapper mapper = null;
+
+            String mapperName = rule.getMapper();
+            logger.info("CAPublisherProcessor: Mapper for rule " + rule.getInstanceName() + ": " + mapperName);
+
+            if (mapperName != null && !mapperName.trim().equals("")) {
+                mapper = getActiveMapperInstance(mapperName);
+            }
 
-                    // continue publishing even publisher has errors
+            if (mapper == null || mapper.getImplName().equals("NoMap")) {
+                dn = ((X500Name) crl.getIssuerDN()).toLdapDNString();
 
-                } catch (Exception e) {
-                    logger.warn("Unable to publish CRL to " + dn + ": " + e.getMessage(), e);
-                    error = true;
-                    errorRule = errorRule + " " + rule.getInstanceName();
+            } else {
+                dn = mapper.map(conn, crl);
+                if (!createOwnDNEntry) {
+                    if (dn == null) {
+                        logger.error("CAPublisherProcessor: " + CMS.getLogMessage("CMSCORE_LDAP_MAPPER_NOT_MAP", rule.getMapper()));
+                        throw new ELdapException(CMS.getUserMessage("CMS_LDAP_NO_MATCH", crl.getIssuerDN().toString()));
+                    }
                 }
             }
 
+            logger.info("CAPublisherProcessor: Publishing to " + dn);
+
+            if (publisher instanceof FileBasedPublisher) {
+                ((FileBasedPublisher) publisher).setIssuingPointId(crlIssuingPointId);
+            }
+
+            publisher.publish(conn, dn, crl);
+            logger.info("CAPublisherProcessor: Published CRL using rule " + rule.getInstanceName());
+
         } catch (ELdapException e) {
-            logger.error("Error publishing CRL to " + dn + ": " + e.getMessage(), e);
+            logger.warn("Unable to publish CRL to " + dn + ": " + e.getMessage(), e);
             throw e;
 
         } finally {
@@ -616,10 +854,6 @@ public class CAPublisherProcessor extends PublisherProcessor {
                 mLdapConnModule.returnConn(conn);
             }
         }
-
-        if (error) {
-            throw new ELdapException(CMS.getUserMessage("CMS_LDAP_PUBLISH_FAILED", errorRule));
-        }
     }
 
     /**
@@ -633,8 +867,7 @@ public class CAPublisherProcessor extends PublisherProcessor {
      */
     public void publishCRL(String dn, X509CRL crl) throws ELdapException {
 
-        boolean error = false;
-        String errorRule = "";
+        StringBuffer errorRule = new StringBuffer();
 
         if (!isCRLPublishingEnabled()) {
             return;
@@ -649,46 +882,52 @@ public class CAPublisherProcessor extends PublisherProcessor {
                     PROP_LOCAL_CRL));
         }
 
-        LDAPConnection conn = null;
-        ILdapPublisher publisher = null;
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
 
-        try {
-            if (mLdapConnModule != null) {
-                conn = mLdapConnModule.getConn();
+        while (rules.hasMoreElements()) {
+            LdapRule rule = rules.nextElement();
+
+            logger.info("CAPublisherProcessor: publish crl dn=" + dn + " rule=" +
+                    rule.getInstanceName() + " publisher=" +
+                    rule.getPublisher());
+
+            ILdapPublisher publisher = getActivePublisherInstance(rule.getPublisher());
+
+            if (publisher == null) {
+                continue;
             }
 
-            while (rules.hasMoreElements()) {
-                LdapRule rule = rules.nextElement();
+            try {
+                futures.put(rule.getInstanceName(), submitCRL(rule.getPublisher(), dn, () -> {
+
+                    LDAPConnection conn = null;
+
+                    try {
+                        if (mLdapConnModule != null) {
+                            conn = mLdapConnModule.getConn();
+                        }
 
-                logger.info("CAPublisherProcessor: publish crl dn=" + dn + " rule=" +
-                        rule.getInstanceName() + " publisher=" +
-                        rule.getPublisher());
-                try {
-                    publisher = getActivePublisherInstance(rule.getPublisher());
-                    if (publisher != null) {
                         publisher.publish(conn, dn, crl);
                         logger.info("CAPublisherProcessor: published crl using rule=" + rule.getInstanceName());
-                    }
 
-                } catch (Exception e) {
-                    logger.warn("Error publishing CRL to " + dn + ": " + e.getMessage(), e);
-                    error = true;
-                    errorRule = errorRule + " " + rule.getInstanceName();
-                }
-            }
-
-        } catch (ELdapException e) {
-            logger.error("Error publishing CRL to " + dn + ": " + e.getMessage(), e);
-            throw e;
+                    } finally {
+                        if (conn != null) {
+                            mLdapConnModule.returnConn(conn);
+                        }
+                    }
+                }));
 
-        } finally {
-            if (conn != null) {
-                mLdapConnModule.returnConn(conn);
+            } catch (ELdapException e) {
+                logger.warn("Error publishing CRL to " + dn + ": " + e.getMessage(), e);
+                errorRule.append(" " + rule.getInstanceName());
             }
         }
 
-        if (error) {
-            throw new ELdapException(CMS.getUserMessage("CMS_LDAP_PUBLISH_FAILED", errorRule));
+        // wait for all publishers to keep the CRLs in order
+        waitFor(futures, crlTimeout, errorRule);
+
+        if (errorRule.length() > 0) {
+            throw new ELdapException(CMS.getUserMessage("CMS_LDAP_PUBLISH_FAILED", errorRule.toString()));
         }
     }
 
@@ -0,0 +1,255 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.ldap;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.netscape.certsrv.base.SessionContext;
+import com.netscape.certsrv.ldap.ELdapException;
+import com.netscape.certsrv.util.IStatsSubsystem;
+import com.netscape.cmscore.util.Histogram;
+
+/**
+ * This class runs the publishing operations of a single publisher
+ * instance in its own thread pool, so a slow or unavailable
+ * destination does not delay the other publishers.
+ *
+ * The executor also acts as a circuit breaker. After a number of
+ * consecutive failures (or calls that take longer than the timeout
+ * of the operation) the circuit is opened and the publishing operations are rejected
+ * immediately. After the open duration a single trial operation is
+ * allowed, which closes the circuit if it succeeds.
+ */
+public class PublisherExecutor {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PublisherExecutor.class);
+
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private final String name;
+    private final long timeout; // default timeout in milliseconds
+    private final int failureThreshold;
+    private final long openDuration; // milliseconds
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openUntil;
+    private final AtomicBoolean trial = new AtomicBoolean();
+
+    final LongAdder calls = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    final LongAdder slowCalls = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final Histogram latencies = new Histogram();
+
+    private final AtomicLong lastStats = new AtomicLong();
+
+    public PublisherExecutor(
+            String name,
+            int maxThreads,
+            int queueSize,
+            long timeout,
+            int failureThreshold,
+            long openDuration) {
+
+        this.name = name;
+        this.timeout = timeout;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+
+        AtomicInteger counter = new AtomicInteger();
+
+        executor = new ThreadPoolExecutor(
+                maxThreads,
+                maxThreads,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueSize, 1)),
+                r -> {
+                    Thread thread = new Thread(r, "Publisher-" + name + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isOpen() {
+        return openUntil > 0;
+    }
+
+    /**
+     * Returns true if an operation can be sent to the publisher.
+     */
+    boolean allowRequest() {
+
+        long until = openUntil;
+        if (until == 0) {
+            return true;
+        }
+
+        if (System.currentTimeMillis() < until) {
+            return false;
+        }
+
+        // allow a single trial operation
+        return trial.compareAndSet(false, true);
+    }
+
+    void recordSuccess(long millis, long timeout) {
+
+        record(millis);
+
+        if (millis > timeout) {
+            slowCalls.increment();
+            recordFailure();
+            return;
+        }
+
+        consecutiveFailures.set(0);
+
+        if (openUntil > 0) {
+            logger.info("PublisherExecutor: Publisher " + name + " is available again");
+            openUntil = 0;
+        }
+
+        trial.set(false);
+    }
+
+    void recordFailure(long millis) {
+        record(millis);
+        failures.increment();
+        recordFailure();
+    }
+
+    void recordFailure() {
+
+        int count = consecutiveFailures.incrementAndGet();
+
+        if (trial.get() || count >= failureThreshold) {
+            logger.warn("PublisherExecutor: Suspending publisher " + name
+                    + " for " + openDuration + " ms after " + count + " failure(s)");
+            openUntil = System.currentTimeMillis() + openDuration;
+            trial.set(false);
+        }
+    }
+
+    void record(long millis) {
+        calls.increment();
+        latencies.record(millis);
+    }
+
+    /**
+     * Runs the task in the publisher thread pool with the default timeout.
+     *
+     * @param task publishing operation
+     * @return future that completes when the operation is done
+     * @exception ELdapException if the publisher is suspended or too busy
+     */
+    public CompletableFuture<Void> submit(Task task) throws ELdapException {
+        return submit(task, timeout);
+    }
+
+    /**
+     * Runs the task in the publisher thread pool with a copy of the
+     * caller's session context. A successful operation that takes
+     * longer than the timeout is counted as a failure.
+     *
+     * @param task publishing operation
+     * @param timeout timeout of the operation in milliseconds
+     * @return future that completes when the operation is done
+     * @exception ELdapException if the publisher is suspended or too busy
+     */
+    public CompletableFuture<Void> submit(Task task, long timeout) throws ELdapException {
+
+        if (!allowRequest()) {
+            rejected.increment();
+            updateStats(false);
+            throw new ELdapException("Publisher " + name + " is temporarily unavailable");
+        }
+
+        SessionContext context = new SessionContext();
+        SessionContext current = SessionContext.getExistingContext();
+        if (current != null) {
+            context.putAll(current);
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        try {
+            executor.execute(() -> {
+
+                SessionContext.setContext(context);
+                long startTime = System.nanoTime();
+
+                try {
+                    task.run();
+                    recordSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), timeout);
+                    future.complete(null);
+
+                } catch (Throwable e) {
+                    recordFailure(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                    future.completeExceptionally(e);
+
+                } finally {
+                    SessionContext.releaseContext();
+                    updateStats(false);
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            // the trial operation did not run
+            trial.set(false);
+            throw new ELdapException("Publisher " + name + " is too busy", e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Publishes the publisher statistics at most once per interval
+     * unless forced.
+     */
+    public void updateStats(boolean force) {
+
+        IStatsSubsystem statsSub = Histogram.getStatsSubsystem(lastStats, force);
+        if (statsSub == null) {
+            return;
+        }
+
+        String prefix = "publisher." + name + ".";
+
+        statsSub.setGauge(prefix + "open", isOpen() ? 1 : 0);
+        statsSub.setGauge(prefix + "active", executor.getActiveCount());
+        statsSub.setGauge(prefix + "queued", executor.getQueue().size());
+        statsSub.setGauge(prefix + "calls", calls.sum());
+        statsSub.setGauge(prefix + "failures", failures.sum());
+        statsSub.setGauge(prefix + "slowCalls", slowCalls.sum());
+        statsSub.setGauge(prefix + "rejected", rejected.sum());
+
+        latencies.setGauges(statsSub, prefix + "latency", "ms");
+    }
+
+    public void shutdown() {
+        updateStats(true);
+        executor.shutdown();
+    }
+}
@@ -806,6 +806,10 @@ public class CAEngine extends CMSEngine {
         String schedulerClass = caConfig.getString("requestSchedulerClass", null);
         logger.info("CAEngine: - scheduler: " + schedulerClass);
 
+        ConfigStore schedulerConfig = caConfig.getSubStore("requestScheduler", ConfigStore.class);
+        boolean enableScheduler = schedulerConfig.getBoolean("enable", false);
+        logger.info("CAEngine: - enable scheduler: " + enableScheduler);
+
         enableAuthorityMonitor = caConfig.getBoolean("authorityMonitor.enable", enableAuthorityMonitor);
         logger.info("CAEngine: - enable AuthorityMonitor: " + enableAuthorityMonitor);
 
@@ -820,8 +824,11 @@ public class CAEngine extends CMSEngine {
                 requestNotifier,
                 pendingNotifier);
 
-        if (schedulerClass != null) {
-            RequestScheduler scheduler = (RequestScheduler) Class.forName(schedulerClass).getDeclaredConstructor().newInstance();
+        if (schedulerClass != null || enableScheduler) {
+            RequestScheduler scheduler = schedulerClass == null
+                    ? new RequestScheduler()
+                    : (RequestScheduler) Class.forName(schedulerClass).getDeclaredConstructor().newInstance();
+            scheduler.init(schedulerConfig);
             requestQueue.setRequestScheduler(scheduler);
         }
 
@@ -0,0 +1,57 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class CAServiceTest {
+
+    @Test
+    public void testGroupByAlgorithm() {
+
+        String[] algnames = {
+                "SHA256withRSA",
+                "SHA512withRSA",
+                "SHA256withRSA",
+                null,
+                "SHA512withRSA",
+                null
+        };
+
+        List<List<Integer>> groups = CAService.groupByAlgorithm(algnames);
+
+        // certs with the same algorithm are signed together
+        // in the original order
+        assertEquals(List.of(
+                List.of(0, 2),
+                List.of(1, 4),
+                List.of(3, 5)), groups);
+    }
+
+    @Test
+    public void testGroupBySameAlgorithm() {
+
+        String[] algnames = { "SHA256withRSA", "SHA256withRSA", "SHA256withRSA" };
+
+        assertEquals(
+                List.of(List.of(0, 1, 2)),
+                CAService.groupByAlgorithm(algnames));
+    }
+
+    @Test
+    public void testGroupByDifferentAlgorithms() {
+
+        String[] algnames = { "SHA256withRSA", "SHA384withRSA", "SHA512withRSA" };
+
+        assertEquals(
+                List.of(List.of(0), List.of(1), List.of(2)),
+                CAService.groupByAlgorithm(algnames));
+    }
+}
@@ -0,0 +1,259 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLReasonExtension;
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+public class CRLEntryCacheTest {
+
+    static final String ALGORITHM = "SHA256withRSA";
+
+    // DER time values have a resolution of one second
+    static final Date REVOCATION_DATE = new Date(1600000000000L);
+    static final Date THIS_UPDATE = new Date(1700000000000L);
+    static final Date NEXT_UPDATE = new Date(1700086400000L);
+
+    static RevokedCertificate createEntry(long serialNumber, boolean withReason) throws Exception {
+
+        if (!withReason) {
+            return new RevokedCertImpl(BigInteger.valueOf(serialNumber), REVOCATION_DATE);
+        }
+
+        CRLExtensions exts = new CRLExtensions();
+        CRLReasonExtension reason = new CRLReasonExtension(RevocationReason.KEY_COMPROMISE);
+        exts.set(CRLReasonExtension.NAME, reason);
+
+        return new RevokedCertImpl(BigInteger.valueOf(serialNumber), REVOCATION_DATE, exts);
+    }
+
+    static byte[] writeTBSCertList(CRLEntryCache cache) throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long length = cache.writeTBSCertList(
+                out,
+                new X500Name("CN=CA Signing Certificate,O=EXAMPLE"),
+                AlgorithmId.get(ALGORITHM),
+                THIS_UPDATE,
+                NEXT_UPDATE,
+                null);
+
+        assertEquals(out.size(), length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Wraps a TBSCertList with a dummy signature so it can be parsed
+     * by X509CRLImpl.
+     */
+    static X509CRLImpl parse(byte[] tbsCertList) throws Exception {
+
+        try (DerOutputStream tmp = new DerOutputStream();
+                DerOutputStream out = new DerOutputStream()) {
+
+            tmp.write(tbsCertList);
+            AlgorithmId.get(ALGORITHM).encode(tmp);
+            tmp.putBitString(new byte[] { 0 });
+            out.write(DerValue.tag_Sequence, tmp);
+
+            return new X509CRLImpl(out.toByteArray());
+        }
+    }
+
+    @Test
+    public void testMapOperations() throws Exception {
+
+        CRLEntryCache cache = new CRLEntryCache();
+
+        for (long i = 1; i <= 100; i++) {
+            cache.put(BigInteger.valueOf(i), createEntry(i, i % 10 == 0));
+        }
+
+        assertEquals(100, cache.size());
+        assertTrue(cache.containsKey(BigInteger.valueOf(50)));
+        assertFalse(cache.containsKey(BigInteger.valueOf(101)));
+
+        RevokedCertificate entry = cache.get(BigInteger.valueOf(50));
+        assertNotNull(entry);
+        assertEquals(BigInteger.valueOf(50), entry.getSerialNumber());
+        assertTrue(entry.hasExtensions());
+
+        // merge the changes into the segment, then modify the segment
+        cache.snapshot();
+
+        assertNotNull(cache.remove(BigInteger.valueOf(50)));
+        assertNull(cache.remove(BigInteger.valueOf(50)));
+        assertFalse(cache.containsKey(BigInteger.valueOf(50)));
+        assertEquals(99, cache.size());
+
+        cache.put(BigInteger.valueOf(20), createEntry(20, false));
+        assertFalse(cache.get(BigInteger.valueOf(20)).hasExtensions());
+        assertEquals(99, cache.size());
+
+        // entries are returned in serial number order
+        BigInteger previous = BigInteger.ZERO;
+        for (Map.Entry<BigInteger, RevokedCertificate> e : cache.entrySet()) {
+            assertTrue(e.getKey().compareTo(previous) > 0);
+            assertEquals(e.getKey(), e.getValue().getSerialNumber());
+            previous = e.getKey();
+        }
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEncodedSize());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+
+        CRLEntryCache cache = new CRLEntryCache();
+        int count = CRLEntryCache.MIN_COMPACTION_SIZE * 2 + 1;
+
+        // add entries in descending order so each compaction
+        // has to merge the changes into the existing segment
+        for (long i = count; i >= 1; i--) {
+            cache.put(BigInteger.valueOf(i), createEntry(i, false));
+        }
+
+        assertEquals(count, cache.size());
+
+        for (long i = 1; i <= count; i += 1000) {
+            assertEquals(BigInteger.valueOf(i), cache.get(BigInteger.valueOf(i)).getSerialNumber());
+        }
+    }
+
+    @Test
+    public void testTBSCertList() throws Exception {
+
+        CRLEntryCache cache = new CRLEntryCache();
+        Map<BigInteger, RevokedCertificate> expected = new TreeMap<>();
+
+        for (long i = 1; i <= 1000; i++) {
+            RevokedCertificate entry = createEntry(i * 7, i % 3 == 0);
+            cache.put(entry.getSerialNumber(), entry);
+            expected.put(entry.getSerialNumber(), entry);
+        }
+
+        X509CRLImpl crl = parse(writeTBSCertList(cache));
+
+        assertEquals(2, crl.getVersion());
+        assertEquals(THIS_UPDATE, crl.getThisUpdate());
+        assertEquals(NEXT_UPDATE, crl.getNextUpdate());
+
+        Set<RevokedCertificate> revokedCerts = crl.getRevokedCertificates();
+        assertEquals(expected.size(), revokedCerts.size());
+
+        for (RevokedCertificate revokedCert : revokedCerts) {
+            RevokedCertificate entry = expected.get(revokedCert.getSerialNumber());
+            assertNotNull(entry);
+            assertEquals(entry.getRevocationDate(), revokedCert.getRevocationDate());
+            assertEquals(entry.hasExtensions(), revokedCert.hasExtensions());
+        }
+    }
+
+    @Test
+    public void testEmptyTBSCertList() throws Exception {
+
+        X509CRLImpl crl = parse(writeTBSCertList(new CRLEntryCache()));
+
+        assertEquals(1, crl.getVersion());
+        assertNull(crl.getRevokedCertificates());
+    }
+
+    /**
+     * Verifies that a CRL generated from an updated cache is identical
+     * to a CRL generated from a cache built from scratch.
+     */
+    @Test
+    public void testIncrementalTBSCertList() throws Exception {
+
+        CRLEntryCache cache = new CRLEntryCache();
+        CRLEntryCache expected = new CRLEntryCache();
+
+        for (long i = 1; i <= 5000; i++) {
+            cache.put(BigInteger.valueOf(i), createEntry(i, false));
+        }
+
+        writeTBSCertList(cache);
+
+        // unrevoke some certificates and revoke some new ones
+        for (long i = 1; i <= 5000; i += 100) {
+            cache.remove(BigInteger.valueOf(i));
+        }
+
+        for (long i = 5001; i <= 5050; i++) {
+            cache.put(BigInteger.valueOf(i), createEntry(i, true));
+        }
+
+        for (long i = 1; i <= 5050; i++) {
+            if (i <= 5000 && i % 100 == 1) continue;
+            expected.put(BigInteger.valueOf(i), createEntry(i, i > 5000));
+        }
+
+        assertEquals(expected.size(), cache.size());
+        assertEquals(expected.getEncodedSize(), cache.getEncodedSize());
+        assertArrayEquals(writeTBSCertList(expected), writeTBSCertList(cache));
+    }
+
+    @Test
+    public void testAppendAll() throws Exception {
+
+        CRLEntryCache cache = new CRLEntryCache();
+        CRLEntryCache expected = new CRLEntryCache();
+
+        // consecutive serial number ranges as generated in parallel
+        List<CRLEntryCache> ranges = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            CRLEntryCache range = new CRLEntryCache();
+            for (long i = r * 100 + 1; i <= (r + 1) * 100; i++) {
+                range.put(BigInteger.valueOf(i), createEntry(i, i % 2 == 0));
+                expected.put(BigInteger.valueOf(i), createEntry(i, i % 2 == 0));
+            }
+            ranges.add(range);
+        }
+
+        cache.appendAll(ranges);
+
+        assertEquals(400, cache.size());
+        assertArrayEquals(writeTBSCertList(expected), writeTBSCertList(cache));
+
+        // ranges that are not in ascending order are added individually
+        CRLEntryCache reversed = new CRLEntryCache();
+        List<CRLEntryCache> reversedRanges = new ArrayList<>(ranges);
+        Collections.reverse(reversedRanges);
+        reversed.appendAll(reversedRanges);
+
+        assertEquals(400, reversed.size());
+        assertArrayEquals(writeTBSCertList(expected), writeTBSCertList(reversed));
+    }
+}
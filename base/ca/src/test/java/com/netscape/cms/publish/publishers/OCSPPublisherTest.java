@@ -0,0 +1,213 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.publish.publishers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLNumberExtension;
+import org.mozilla.jss.netscape.security.x509.DeltaCRLIndicatorExtension;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+import com.netscape.cmscore.base.ConfigStore;
+
+public class OCSPPublisherTest {
+
+    static final String ISSUER = "CN=CA Signing Certificate,O=EXAMPLE";
+
+    /**
+     * OCSP publisher that sends the CRLs to an in-memory OCSP
+     * that behaves like AddCRLServlet with DefStore.
+     */
+    static class OCSPPublisherStub extends OCSPPublisher {
+
+        // current CRL number in the OCSP
+        BigInteger ocspCRLNumber;
+        boolean deltaCRLSupported = true;
+
+        X509CRLImpl fullCRL;
+        Map<BigInteger, BigInteger> baseCRLNumbers = new HashMap<>();
+        List<String> sent = new ArrayList<>();
+
+        @Override
+        X509CRLImpl getFullCRL() {
+            return fullCRL;
+        }
+
+        @Override
+        Status send(X509CRL crl) throws Exception {
+
+            X509CRLImpl crlImpl = (X509CRLImpl) crl;
+            String issuer = crlImpl.getIssuerDN().getName();
+            BigInteger crlNumber = crlImpl.getCRLNumber();
+
+            if (crlImpl.isDeltaCRL()) {
+                sent.add("delta " + crlNumber);
+
+                if (!deltaCRLSupported) {
+                    return Status.NOT_SUPPORTED;
+                }
+
+                BigInteger baseCRLNumber = baseCRLNumbers.get(crlNumber);
+
+                if (ocspCRLNumber == null || ocspCRLNumber.compareTo(baseCRLNumber) < 0) {
+                    if (ocspCRLNumber != null) {
+                        updateCRLNumber(issuer, ocspCRLNumber);
+                    }
+                    return Status.FULL_CRL_REQUIRED;
+                }
+
+                ocspCRLNumber = ocspCRLNumber.max(crlNumber);
+                return Status.SUCCESS;
+            }
+
+            sent.add("full " + crlNumber);
+
+            if (ocspCRLNumber != null && ocspCRLNumber.compareTo(crlNumber) > 0) {
+                // OCSP has a newer CRL
+                updateCRLNumber(issuer, ocspCRLNumber);
+                return Status.FAILURE;
+            }
+
+            // full CRL replaces the current CRL
+            ocspCRLNumber = crlNumber;
+            return Status.SUCCESS;
+        }
+    }
+
+    OCSPPublisherStub publisher;
+
+    @Before
+    public void setUp() throws Exception {
+        createPublisher(OCSPPublisher.DEFAULT_FULL_CRL_INTERVAL);
+    }
+
+    void createPublisher(int fullCRLInterval) throws Exception {
+
+        ConfigStore config = new ConfigStore();
+        config.putBoolean("enableDeltaCRL", true);
+        config.putInteger("fullCRLInterval", fullCRLInterval);
+
+        publisher = new OCSPPublisherStub();
+        publisher.init(config);
+    }
+
+    X509CRLImpl createCRL(long crlNumber, Long baseCRLNumber) throws Exception {
+
+        CRLExtensions exts = new CRLExtensions();
+        exts.set(CRLNumberExtension.NAME,
+                new CRLNumberExtension(Boolean.FALSE, BigInteger.valueOf(crlNumber)));
+
+        if (baseCRLNumber != null) {
+            exts.set(DeltaCRLIndicatorExtension.NAME,
+                    new DeltaCRLIndicatorExtension(Boolean.TRUE, BigInteger.valueOf(baseCRLNumber)));
+            publisher.baseCRLNumbers.put(BigInteger.valueOf(crlNumber), BigInteger.valueOf(baseCRLNumber));
+        }
+
+        Date thisUpdate = new Date();
+        Date nextUpdate = new Date(thisUpdate.getTime() + 86400000L);
+
+        return new X509CRLImpl(
+                new X500Name(ISSUER),
+                AlgorithmId.get("SHA256withRSA"),
+                thisUpdate,
+                nextUpdate,
+                new Hashtable<>(),
+                exts);
+    }
+
+    @Test
+    public void testDeltaCRL() throws Exception {
+
+        publisher.ocspCRLNumber = BigInteger.valueOf(1);
+
+        // delta CRL is published before the full CRL with the same number,
+        // the first full CRL is still published to synchronize the OCSP
+        publisher.publish(null, null, createCRL(2, 1L));
+        publisher.publish(null, null, createCRL(2, null));
+
+        // the next full CRL is skipped within the full CRL interval
+        publisher.publish(null, null, createCRL(3, 1L));
+        publisher.publish(null, null, createCRL(3, null));
+
+        assertEquals(List.of("delta 2", "full 2", "delta 3"), publisher.sent);
+        assertEquals(BigInteger.valueOf(3), publisher.ocspCRLNumber);
+    }
+
+    @Test
+    public void testFullCRLRequired() throws Exception {
+
+        // OCSP has missed the base CRL
+        publisher.ocspCRLNumber = null;
+        publisher.fullCRL = createCRL(1, null);
+
+        publisher.publish(null, null, createCRL(2, 1L));
+        publisher.publish(null, null, createCRL(2, null));
+
+        assertEquals(List.of("delta 2", "full 1", "delta 2"), publisher.sent);
+        assertEquals(BigInteger.valueOf(2), publisher.ocspCRLNumber);
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+
+        // publisher does not know the CRL number in the OCSP after a restart
+        publisher.ocspCRLNumber = BigInteger.valueOf(2);
+
+        X509CRLImpl crl = createCRL(2, null);
+        publisher.publish(null, null, crl);
+        publisher.publish(null, null, crl);
+
+        // the full CRL is published once to synchronize the OCSP
+        assertEquals(List.of("full 2"), publisher.sent);
+        assertEquals(BigInteger.valueOf(2), publisher.mCRLNumbers.get(crl.getIssuerDN().getName()));
+    }
+
+    @Test
+    public void testFullCRLInterval() throws Exception {
+
+        // full CRL is published on each update
+        createPublisher(0);
+        publisher.ocspCRLNumber = BigInteger.valueOf(1);
+
+        publisher.publish(null, null, createCRL(2, 1L));
+        publisher.publish(null, null, createCRL(2, null));
+
+        publisher.publish(null, null, createCRL(3, 1L));
+        publisher.publish(null, null, createCRL(3, null));
+
+        assertEquals(List.of("delta 2", "full 2", "delta 3", "full 3"), publisher.sent);
+        assertEquals(BigInteger.valueOf(3), publisher.ocspCRLNumber);
+    }
+
+    @Test
+    public void testDeltaCRLNotSupported() throws Exception {
+
+        publisher.deltaCRLSupported = false;
+
+        publisher.publish(null, null, createCRL(2, 1L));
+        publisher.publish(null, null, createCRL(2, null));
+
+        // only full CRLs are published afterwards
+        publisher.publish(null, null, createCRL(3, 2L));
+        publisher.publish(null, null, createCRL(3, null));
+
+        assertEquals(List.of("delta 2", "full 2", "full 3"), publisher.sent);
+    }
+}
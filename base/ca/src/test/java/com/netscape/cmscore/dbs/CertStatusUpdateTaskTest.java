@@ -0,0 +1,177 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.netscape.ca.CertRecordProcessor;
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.DBVirtualList;
+
+public class CertStatusUpdateTaskTest {
+
+    /**
+     * Certificate repository with revoked certificates from
+     * serial number 1 to 100 that records the processed ranges.
+     */
+    static class CertificateRepositoryStub extends CertificateRepository {
+
+        Set<String> filters = ConcurrentHashMap.newKeySet();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        String failingRange;
+        EBaseException exception = new EBaseException("Search failed");
+
+        CertificateRepositoryStub() {
+            super(null);
+        }
+
+        @Override
+        public CertRecordList findCertRecordsInList(
+                String filter,
+                String[] attrs,
+                String sortKey,
+                int pageSize) throws EBaseException {
+
+            return new CertRecordList(new DBVirtualList<>() {
+                @Override
+                public int getSize() {
+                    return 2;
+                }
+
+                @Override
+                public CertRecord getElementAt(int index) {
+                    return new CertRecord(BigInteger.valueOf(index == 0 ? 1 : 100), null, null);
+                }
+            });
+        }
+
+        @Override
+        public void processCertRecords(
+                String filter,
+                String[] attrs,
+                String sortKey,
+                int pageSize,
+                ElementProcessor ep) throws EBaseException {
+
+            if (failingRange != null && filter.contains(failingRange)) {
+                throw exception;
+            }
+
+            filters.add(filter);
+            threads.add(Thread.currentThread().getName());
+        }
+    }
+
+    List<CertRecordProcessor> process(CertStatusUpdateTask task, int threads) throws Exception {
+        return task.processRevokedCerts(
+                () -> new CertRecordProcessor(new TreeMap<>(), null, false),
+                "(certStatus=REVOKED)",
+                100,
+                threads);
+    }
+
+    @Test
+    public void testProcessRevokedCerts() throws Exception {
+
+        CertificateRepositoryStub repository = new CertificateRepositoryStub();
+        CertStatusUpdateTask task = new CertStatusUpdateTask(repository, 0, 100, 1000);
+
+        List<CertRecordProcessor> processors = process(task, 2);
+
+        int ranges = 2 * CertStatusUpdateTask.RANGES_PER_THREAD;
+        assertEquals(ranges, processors.size());
+        assertEquals(ranges, repository.filters.size());
+
+        for (String thread : repository.threads) {
+            assertTrue(thread.startsWith("CertStatusUpdateTask-"));
+        }
+
+        task.stop();
+    }
+
+    @Test
+    public void testPoolReuse() throws Exception {
+
+        CertificateRepositoryStub repository = new CertificateRepositoryStub();
+        CertStatusUpdateTask task = new CertStatusUpdateTask(repository, 0, 100, 1000);
+
+        process(task, 2);
+        ForkJoinPool pool = task.revokedCertsPool;
+
+        // the pool is kept between CRL generations
+        process(task, 2);
+        assertSame(pool, task.revokedCertsPool);
+        assertEquals(2, pool.getParallelism());
+
+        // the pool is replaced when the number of threads changes
+        process(task, 3);
+        assertNotSame(pool, task.revokedCertsPool);
+        assertTrue(pool.isShutdown());
+        assertEquals(3, task.revokedCertsPool.getParallelism());
+
+        task.stop();
+        assertTrue(task.revokedCertsPool.isShutdown());
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+
+        CertificateRepositoryStub repository = new CertificateRepositoryStub();
+        CertStatusUpdateTask task = new CertStatusUpdateTask(repository, 0, 100, 1000);
+
+        process(task, 2);
+        ForkJoinPool pool = task.revokedCertsPool;
+
+        task.stop();
+        assertTrue(pool.isShutdown());
+
+        // a new pool is created when the task is used again after stop()
+        List<CertRecordProcessor> processors = process(task, 2);
+
+        assertNotSame(pool, task.revokedCertsPool);
+        assertFalse(task.revokedCertsPool.isShutdown());
+        assertEquals(2 * CertStatusUpdateTask.RANGES_PER_THREAD, processors.size());
+
+        task.stop();
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+
+        CertificateRepositoryStub repository = new CertificateRepositoryStub();
+        repository.failingRange = "(" + CertRecord.ATTR_ID + ">=1)";
+
+        CertStatusUpdateTask task = new CertStatusUpdateTask(repository, 0, 100, 1000);
+
+        try {
+            process(task, 2);
+            fail("EBaseException expected");
+
+        } catch (EBaseException e) {
+            assertSame(repository.exception, e);
+        }
+
+        // the pool remains usable after a failure
+        repository.failingRange = null;
+        process(task, 2);
+
+        task.stop();
+    }
+}
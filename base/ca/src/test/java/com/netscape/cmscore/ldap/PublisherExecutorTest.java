@@ -0,0 +1,138 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import com.netscape.certsrv.base.SessionContext;
+import com.netscape.certsrv.ldap.ELdapException;
+
+public class PublisherExecutorTest {
+
+    void publish(PublisherExecutor executor, boolean success) throws Exception {
+
+        CompletableFuture<Void> future = executor.submit(() -> {
+            if (!success) {
+                throw new ELdapException("Publishing failed");
+            }
+        });
+
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            // ignore
+        }
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+
+        PublisherExecutor executor = new PublisherExecutor("test", 1, 10, 1000, 2, 100);
+
+        publish(executor, false);
+        assertFalse(executor.isOpen());
+
+        publish(executor, false);
+        assertTrue(executor.isOpen());
+
+        try {
+            publish(executor, true);
+            fail("Publisher should be suspended");
+        } catch (ELdapException e) {
+            // expected
+        }
+
+        assertEquals(2, executor.calls.sum());
+        assertEquals(2, executor.failures.sum());
+        assertEquals(1, executor.rejected.sum());
+
+        // allow a trial operation after the open duration
+        Thread.sleep(150);
+
+        publish(executor, true);
+        assertFalse(executor.isOpen());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFailedTrial() throws Exception {
+
+        PublisherExecutor executor = new PublisherExecutor("test", 1, 10, 1000, 1, 100);
+
+        publish(executor, false);
+        assertTrue(executor.isOpen());
+
+        Thread.sleep(150);
+
+        // a failed trial suspends the publisher again
+        publish(executor, false);
+        assertTrue(executor.isOpen());
+        assertFalse(executor.allowRequest());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSlowCall() throws Exception {
+
+        PublisherExecutor executor = new PublisherExecutor("test", 1, 10, 50, 1, 1000);
+
+        // a successful call that exceeds the default timeout is a failure
+        executor.submit(() -> Thread.sleep(100)).get();
+
+        assertEquals(1, executor.slowCalls.sum());
+        assertTrue(executor.isOpen());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTaskTimeout() throws Exception {
+
+        PublisherExecutor executor = new PublisherExecutor("test", 1, 10, 50, 1, 1000);
+
+        // a long operation (e.g. CRL) within its own timeout is a success
+        executor.submit(() -> Thread.sleep(100), 1000).get();
+
+        assertEquals(0, executor.slowCalls.sum());
+        assertFalse(executor.isOpen());
+
+        // but not if it exceeds its own timeout
+        executor.submit(() -> Thread.sleep(100), 80).get();
+
+        assertEquals(1, executor.slowCalls.sum());
+        assertTrue(executor.isOpen());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSessionContext() throws Exception {
+
+        SessionContext.getContext().put("issuingPointId", "MasterCRL");
+
+        PublisherExecutor executor = new PublisherExecutor("test", 1, 10, 1000, 5, 100);
+        String[] value = new String[1];
+
+        executor.submit(() -> {
+            value[0] = (String) SessionContext.getContext().get("issuingPointId");
+        }).get();
+
+        assertEquals("MasterCRL", value[0]);
+
+        SessionContext.releaseContext();
+        executor.shutdown();
+    }
+}
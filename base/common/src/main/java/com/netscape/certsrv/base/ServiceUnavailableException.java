@@ -6,6 +6,9 @@ public class ServiceUnavailableException extends PKIException {
 
     private static final long serialVersionUID = -9160776882517621347L;
 
+    // number of seconds after which the client may retry
+    private Integer retryAfter;
+
     public ServiceUnavailableException(String message) {
         super(Response.Status.SERVICE_UNAVAILABLE, message);
     }
@@ -14,4 +17,13 @@ public class ServiceUnavailableException extends PKIException {
         super(Response.Status.SERVICE_UNAVAILABLE, message, cause);
     }
 
+    public ServiceUnavailableException(String message, int retryAfter) {
+        super(Response.Status.SERVICE_UNAVAILABLE, message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Integer getRetryAfter() {
+        return retryAfter;
+    }
+
 }
@@ -0,0 +1,413 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.ca;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.Response;
+
+import org.mozilla.jss.netscape.security.pkcs.PKCS10;
+import org.mozilla.jss.netscape.security.util.Utils;
+
+import com.netscape.certsrv.base.PKIException;
+import com.netscape.certsrv.cert.CertEnrollmentRequest;
+import com.netscape.certsrv.cert.CertRequestInfo;
+import com.netscape.certsrv.cert.CertRequestInfos;
+import com.netscape.certsrv.cert.CertReviewResponse;
+import com.netscape.certsrv.client.ClientConfig;
+import com.netscape.certsrv.client.PKIClient;
+import com.netscape.certsrv.profile.ProfileAttribute;
+import com.netscape.certsrv.profile.ProfileInput;
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.certsrv.request.RequestStatus;
+
+/**
+ * This class provides a long-lived client for services that issue
+ * certificates with a CA on behalf of their own clients (e.g. ACME
+ * and EST).
+ *
+ * The underlying PKIClient is not thread-safe, so each caller gets
+ * its own authenticated session from a pool. The sessions are kept
+ * open after use so the next caller can reuse the TLS connection
+ * and the CA session without logging in again.
+ *
+ * The enrollment templates are cached by profile ID since they only
+ * change when the profile is modified. A template is removed from
+ * the cache when it expires, when an enrollment with the template
+ * fails, or when it is invalidated explicitly.
+ */
+public class CAEnrollmentClient implements AutoCloseable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CAEnrollmentClient.class);
+
+    public static final int DEFAULT_MAX_IDLE_SESSIONS = 8;
+    public static final int DEFAULT_TEMPLATE_TIMEOUT = 300; // seconds
+
+    ClientConfig config;
+
+    int maxIdleSessions = DEFAULT_MAX_IDLE_SESSIONS;
+    long templateTimeout = TimeUnit.SECONDS.toMillis(DEFAULT_TEMPLATE_TIMEOUT);
+
+    ConcurrentLinkedDeque<Session> idleSessions = new ConcurrentLinkedDeque<>();
+    AtomicInteger idleSessionCount = new AtomicInteger();
+
+    // enrollment templates in XML by profile ID
+    Map<String, CachedTemplate> templates = new ConcurrentHashMap<>();
+
+    volatile boolean closed;
+
+    public CAEnrollmentClient(ClientConfig config) {
+        this.config = config;
+    }
+
+    public ClientConfig getConfig() {
+        return config;
+    }
+
+    public int getMaxIdleSessions() {
+        return maxIdleSessions;
+    }
+
+    public void setMaxIdleSessions(int maxIdleSessions) {
+        this.maxIdleSessions = maxIdleSessions;
+    }
+
+    /**
+     * @return template timeout in seconds
+     */
+    public int getTemplateTimeout() {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(templateTimeout);
+    }
+
+    /**
+     * @param templateTimeout template timeout in seconds, 0 to disable the cache
+     */
+    public void setTemplateTimeout(int templateTimeout) {
+        this.templateTimeout = TimeUnit.SECONDS.toMillis(templateTimeout);
+    }
+
+    /**
+     * Runs an operation with a session from the pool. If the CA
+     * rejects the session (e.g. the session has expired on the CA),
+     * the operation is retried once with a new session, so it should
+     * consist of a single call or calls that can be safely repeated.
+     */
+    public <T> T execute(Operation<T> operation) throws Exception {
+
+        Session session = getSession();
+
+        try {
+            T result = call(session, operation);
+            releaseSession(session);
+            return result;
+
+        } catch (Exception e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a single call with the given session. If the CA rejects a
+     * reused session, the session logs in again and only this call is
+     * retried, so the calls that have completed are not repeated.
+     */
+    <T> T call(Session session, Operation<T> call) throws Exception {
+
+        try {
+            return call.execute(session.pkiClient, session.certClient);
+
+        } catch (PKIException e) {
+
+            if (!session.reused || e.getCode() != Response.Status.UNAUTHORIZED.getStatusCode()) {
+                throw e;
+            }
+
+            logger.info("CAEnrollmentClient: Session rejected by CA, creating a new session");
+        }
+
+        session.close();
+        session.replace(createSession());
+
+        return call.execute(session.pkiClient, session.certClient);
+    }
+
+    /**
+     * Submits a PKCS #10 request with the given profile. If the request
+     * is not completed by the profile it is reviewed and approved in the
+     * same session.
+     *
+     * @return the completed request
+     */
+    public CertRequestInfo enroll(String profileID, PKCS10 pkcs10, AuthorityID aid) throws Exception {
+
+        Session session = getSession();
+
+        try {
+            CertRequestInfo info = enroll(session, profileID, pkcs10, aid);
+            releaseSession(session);
+            return info;
+
+        } catch (Exception e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    CertRequestInfo enroll(Session session, String profileID, PKCS10 pkcs10, AuthorityID aid) throws Exception {
+
+        CertEnrollmentRequest certEnrollmentRequest = call(session,
+                (pkiClient, certClient) -> getEnrollmentTemplate(certClient, profileID));
+
+        for (ProfileInput input : certEnrollmentRequest.getInputs()) {
+
+            ProfileAttribute typeAttr = input.getAttribute("cert_request_type");
+            if (typeAttr != null) {
+                typeAttr.setValue("pkcs10");
+            }
+
+            ProfileAttribute csrAttr = input.getAttribute("cert_request");
+            if (csrAttr != null) {
+                csrAttr.setValue(Utils.base64encodeSingleLine(pkcs10.toByteArray()));
+            }
+        }
+
+        logger.info("Request:\n" + certEnrollmentRequest);
+
+        CertRequestInfo info;
+        try {
+            CertRequestInfos infos = call(session,
+                    (pkiClient, certClient) -> certClient.enrollRequest(certEnrollmentRequest, aid, null));
+            info = infos.getEntries().iterator().next();
+
+        } catch (Exception e) {
+            // the profile might have been modified
+            invalidateTemplate(profileID);
+            throw e;
+        }
+
+        RequestId id = info.getRequestID();
+        if (id == null) {
+            // Older versions of Dogtag lack the RequestID field.
+            // In that case, call .getRequestId() which derives the
+            // ID from the request URL field.
+            id = info.getRequestId();
+        }
+        RequestId requestId = id;
+
+        logger.info("Responses:");
+        logger.info("- Request ID: " + requestId.toHexString());
+        logger.info("  Type: " + info.getRequestType());
+        logger.info("  Request Status: " + info.getRequestStatus());
+        logger.info("  Operation Result: " + info.getOperationResult());
+
+        String error = info.getErrorMessage();
+        if (error != null) {
+            invalidateTemplate(profileID);
+            throw new PKIException("Unable to generate certificate: " + error);
+        }
+
+        if (info.getRequestStatus() == RequestStatus.COMPLETE) {
+            return info;
+        }
+
+        // The request has been created, so from here on a rejected
+        // session only repeats the failed call with the same request.
+
+        CertReviewResponse reviewInfo = call(session,
+                (pkiClient, certClient) -> certClient.reviewRequest(requestId));
+
+        call(session, (pkiClient, certClient) -> {
+            certClient.approveRequest(requestId, reviewInfo);
+            return null;
+        });
+
+        return call(session, (pkiClient, certClient) -> certClient.getRequest(requestId));
+    }
+
+    /**
+     * Returns a copy of the enrollment template of the given profile
+     * which can be modified by the caller.
+     */
+    public CertEnrollmentRequest getEnrollmentTemplate(CACertClient certClient, String profileID) throws Exception {
+
+        long now = System.currentTimeMillis();
+        CachedTemplate template = templates.get(profileID);
+
+        if (template != null && template.expirationTime > now) {
+            logger.debug("CAEnrollmentClient: Using cached template for " + profileID);
+            return CertEnrollmentRequest.fromXML(template.xml);
+        }
+
+        logger.info("CAEnrollmentClient: Getting enrollment template for " + profileID);
+        CertEnrollmentRequest certEnrollmentRequest = certClient.getEnrollmentTemplate(profileID);
+
+        if (templateTimeout > 0) {
+            template = new CachedTemplate(certEnrollmentRequest.toXML(), now + templateTimeout);
+            templates.put(profileID, template);
+        }
+
+        return certEnrollmentRequest;
+    }
+
+    public void invalidateTemplate(String profileID) {
+        logger.info("CAEnrollmentClient: Invalidating enrollment template for " + profileID);
+        templates.remove(profileID);
+    }
+
+    public void invalidateTemplates() {
+        logger.info("CAEnrollmentClient: Invalidating enrollment templates");
+        templates.clear();
+    }
+
+    Session getSession() throws Exception {
+
+        if (closed) {
+            throw new PKIException("CA client closed");
+        }
+
+        Session session = idleSessions.pollFirst();
+
+        if (session == null) {
+            return createSession();
+        }
+
+        idleSessionCount.decrementAndGet();
+        session.reused = true;
+
+        return session;
+    }
+
+    Session createSession() throws Exception {
+
+        logger.info("CAEnrollmentClient: Creating session for " + config.getServerURL());
+
+        PKIClient pkiClient = new PKIClient(config);
+
+        try {
+            CAClient caClient = new CAClient(pkiClient);
+
+            // Here the agent credentials are stored in the ClientConfig and will
+            // be sent to the CA automatically if any of the methods being called
+            // requires REST authentication. However, the methods being called
+            // depend on the cert profile being used.
+            //
+            // If the profile has an authenticator, the request can be completed
+            // with the following methods:
+            // - CACertClient.getEnrollmentTemplate()
+            // - CACertClient.enrollRequest()
+            //
+            // The above methods do not require REST authentication, but the
+            // profile still requires authentication, so the credentials must be
+            // provided either through the request itself (i.e. using profile
+            // authentication) or by calling CAClient.login() (i.e. using REST
+            // authentication).
+            //
+            // If the profile does not have an authenticator, the request must
+            // be reviewed and approved with the following additional methods:
+            // - CACertClient.reviewRequest()
+            // - CACertClient.approveRequest()
+            //
+            // The above methods do require REST authentication so in this case
+            // it's not actually necessary to call CAClient.login(). However, to
+            // support both types of profiles the CAClient.login() needs to be
+            // called explicitly. The session is kept so the login is done only
+            // once per session.
+            caClient.login();
+
+            return new Session(pkiClient, new CACertClient(caClient));
+
+        } catch (Exception e) {
+            pkiClient.close();
+            throw e;
+        }
+    }
+
+    void releaseSession(Session session) {
+
+        if (closed || idleSessionCount.incrementAndGet() > maxIdleSessions) {
+            idleSessionCount.decrementAndGet();
+            session.close();
+            return;
+        }
+
+        // reuse the most recently used sessions first
+        idleSessions.offerFirst(session);
+
+        if (closed && idleSessions.remove(session)) {
+            idleSessionCount.decrementAndGet();
+            session.close();
+        }
+    }
+
+    @Override
+    public void close() {
+
+        closed = true;
+
+        Session session;
+        while ((session = idleSessions.pollFirst()) != null) {
+            idleSessionCount.decrementAndGet();
+            session.close();
+        }
+
+        templates.clear();
+    }
+
+    /**
+     * Operation to run with a CA session.
+     */
+    public interface Operation<T> {
+        T execute(PKIClient pkiClient, CACertClient certClient) throws Exception;
+    }
+
+    static class Session {
+
+        PKIClient pkiClient;
+        CACertClient certClient;
+
+        // whether the session has been used before
+        boolean reused;
+
+        Session(PKIClient pkiClient, CACertClient certClient) {
+            this.pkiClient = pkiClient;
+            this.certClient = certClient;
+        }
+
+        /**
+         * Replaces the connection of this session with the connection
+         * of a new session after this session has been closed.
+         */
+        void replace(Session session) {
+            pkiClient = session.pkiClient;
+            certClient = session.certClient;
+            reused = false;
+        }
+
+        void close() {
+            try {
+                pkiClient.close();
+            } catch (Exception e) {
+                logger.warn("CAEnrollmentClient: Unable to close session: " + e.getMessage());
+            }
+        }
+    }
+
+    static class CachedTemplate {
+
+        final String xml;
+        final long expirationTime;
+
+        CachedTemplate(String xml, long expirationTime) {
+            this.xml = xml;
+            this.expirationTime = expirationTime;
+        }
+    }
+}
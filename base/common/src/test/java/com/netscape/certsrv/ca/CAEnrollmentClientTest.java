@@ -0,0 +1,213 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.ca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+
+import com.netscape.certsrv.base.PKIException;
+import com.netscape.certsrv.cert.CertEnrollmentRequest;
+import com.netscape.certsrv.cert.CertRequestInfo;
+import com.netscape.certsrv.cert.CertRequestInfos;
+import com.netscape.certsrv.cert.CertReviewResponse;
+import com.netscape.certsrv.client.ClientConfig;
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.certsrv.request.RequestStatus;
+
+public class CAEnrollmentClientTest {
+
+    static final RequestId REQUEST_ID = new RequestId(1);
+
+    /**
+     * CA cert client that records the calls and rejects the
+     * session after a number of calls.
+     */
+    static class CACertClientStub extends CACertClient {
+
+        List<String> calls;
+        int remainingCalls;
+
+        CACertClientStub(List<String> calls, int remainingCalls) throws Exception {
+            super(null, "ca");
+            this.calls = calls;
+            this.remainingCalls = remainingCalls;
+        }
+
+        @Override
+        public void init() {
+        }
+
+        void call(String name) {
+            if (remainingCalls-- <= 0) {
+                throw new PKIException(Response.Status.UNAUTHORIZED);
+            }
+            calls.add(name);
+        }
+
+        @Override
+        public CertEnrollmentRequest getEnrollmentTemplate(String id) {
+            call("getEnrollmentTemplate");
+            return new CertEnrollmentRequest();
+        }
+
+        @Override
+        public CertRequestInfos enrollRequest(
+                CertEnrollmentRequest data, AuthorityID aid, X500Name adn) {
+
+            call("enrollRequest");
+
+            CertRequestInfo info = new CertRequestInfo();
+            info.setRequestID(REQUEST_ID);
+            info.setRequestStatus(RequestStatus.PENDING);
+
+            CertRequestInfos infos = new CertRequestInfos();
+            infos.addEntry(info);
+            return infos;
+        }
+
+        @Override
+        public CertReviewResponse reviewRequest(RequestId id) {
+            call("reviewRequest " + id.toHexString());
+            return new CertReviewResponse();
+        }
+
+        @Override
+        public void approveRequest(RequestId id, CertReviewResponse data) {
+            call("approveRequest " + id.toHexString());
+        }
+
+        @Override
+        public CertRequestInfo getRequest(RequestId id) {
+            call("getRequest " + id.toHexString());
+
+            CertRequestInfo info = new CertRequestInfo();
+            info.setRequestID(id);
+            info.setRequestStatus(RequestStatus.COMPLETE);
+            return info;
+        }
+    }
+
+    static class SessionStub extends CAEnrollmentClient.Session {
+
+        SessionStub(CACertClient certClient) {
+            super(null, certClient);
+        }
+
+        @Override
+        void close() {
+        }
+    }
+
+    /**
+     * CA enrollment client that creates sessions with the
+     * CA cert clients provided by the test.
+     */
+    static class CAEnrollmentClientStub extends CAEnrollmentClient {
+
+        List<CACertClient> certClients = new ArrayList<>();
+        int sessions;
+
+        CAEnrollmentClientStub() {
+            super(new ClientConfig());
+            setTemplateTimeout(0);
+        }
+
+        @Override
+        Session createSession() {
+            sessions++;
+            return new SessionStub(certClients.remove(0));
+        }
+    }
+
+    CAEnrollmentClientStub client;
+    List<String> calls;
+
+    @Before
+    public void setUp() {
+        client = new CAEnrollmentClientStub();
+        calls = new ArrayList<>();
+    }
+
+    @Test
+    public void testEnroll() throws Exception {
+
+        client.certClients.add(new CACertClientStub(calls, Integer.MAX_VALUE));
+
+        CertRequestInfo info = client.enroll("caServerCert", null, null);
+
+        assertEquals(RequestStatus.COMPLETE, info.getRequestStatus());
+        assertEquals(1, client.sessions);
+        assertEquals(List.of(
+                "getEnrollmentTemplate",
+                "enrollRequest",
+                "reviewRequest 0x1",
+                "approveRequest 0x1",
+                "getRequest 0x1"), calls);
+    }
+
+    @Test
+    public void testSessionRejectedAfterEnrollment() throws Exception {
+
+        // session expires on the CA after the request is submitted
+        client.certClients.add(new CACertClientStub(calls, 2));
+        client.certClients.add(new CACertClientStub(calls, Integer.MAX_VALUE));
+
+        // reuse the first session
+        client.releaseSession(client.createSession());
+
+        CertRequestInfo info = client.enroll("caServerCert", null, null);
+
+        // only the rejected call is repeated with the same request
+        assertEquals(REQUEST_ID, info.getRequestID());
+        assertEquals(2, client.sessions);
+        assertEquals(List.of(
+                "getEnrollmentTemplate",
+                "enrollRequest",
+                "reviewRequest 0x1",
+                "approveRequest 0x1",
+                "getRequest 0x1"), calls);
+    }
+
+    @Test
+    public void testNewSessionRejected() throws Exception {
+
+        client.certClients.add(new CACertClientStub(calls, 0));
+
+        // a new session is not retried
+        try {
+            client.enroll("caServerCert", null, null);
+            throw new AssertionError("Enrollment should fail");
+
+        } catch (PKIException e) {
+            assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), e.getCode());
+        }
+
+        assertEquals(1, client.sessions);
+        assertEquals(List.of(), calls);
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+
+        CACertClientStub certClient = new CACertClientStub(calls, Integer.MAX_VALUE);
+        client.certClients.add(certClient);
+
+        CACertClient result = client.execute((pkiClient, c) -> c);
+
+        // session is returned to the pool
+        assertSame(certClient, result);
+        assertEquals(1, client.idleSessionCount.get());
+    }
+}
@@ -14,27 +14,17 @@ import org.mozilla.jss.netscape.security.pkcs.PKCS10;
 import org.mozilla.jss.netscape.security.x509.CertificateChain;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 import org.mozilla.jss.netscape.security.util.Cert;
-import org.mozilla.jss.netscape.security.util.Utils;
 
 import com.netscape.certsrv.authority.AuthorityClient;
 import com.netscape.certsrv.authority.AuthorityResource;
 import com.netscape.certsrv.base.BadRequestException;
 import com.netscape.certsrv.base.PKIException;
 import com.netscape.certsrv.ca.AuthorityID;
-import com.netscape.certsrv.ca.CACertClient;
-import com.netscape.certsrv.ca.CAClient;
+import com.netscape.certsrv.ca.CAEnrollmentClient;
 import com.netscape.certsrv.cert.CertData;
-import com.netscape.certsrv.cert.CertEnrollmentRequest;
 import com.netscape.certsrv.cert.CertRequestInfo;
-import com.netscape.certsrv.cert.CertRequestInfos;
-import com.netscape.certsrv.cert.CertReviewResponse;
 import com.netscape.certsrv.client.ClientConfig;
-import com.netscape.certsrv.client.PKIClient;
 import com.netscape.certsrv.dbs.certdb.CertId;
-import com.netscape.certsrv.profile.ProfileAttribute;
-import com.netscape.certsrv.profile.ProfileInput;
-import com.netscape.certsrv.request.RequestId;
-import com.netscape.certsrv.request.RequestStatus;
 
 /**
  * EST backend that acts as RA for a Dogtag CA subsystem
@@ -49,6 +39,8 @@ public class DogtagRABackend extends ESTBackend {
 
     private String profile;
 
+    private CAEnrollmentClient caClient;
+
     @Override
     public void start() throws Throwable {
         logger.info("Initializing Dogtag RA backend");
@@ -104,15 +96,37 @@ public class DogtagRABackend extends ESTBackend {
         if (profile == null) {
             throw new RuntimeException("DogtagRABackend: 'password' property missing");
         }
+
+        caClient = new CAEnrollmentClient(clientConfig);
+
+        String maxIdleSessions = config.getParameter("maxIdleSessions");
+        if (maxIdleSessions != null) {
+            logger.info("- max idle sessions: " + maxIdleSessions);
+            caClient.setMaxIdleSessions(Integer.parseInt(maxIdleSessions));
+        }
+
+        String templateTimeout = config.getParameter("templateTimeout");
+        if (templateTimeout != null) {
+            logger.info("- template timeout (seconds): " + templateTimeout);
+            caClient.setTemplateTimeout(Integer.parseInt(templateTimeout));
+        }
     }
 
     @Override
-    public CertificateChain cacerts(Optional<String> label) throws PKIException {
-        try (PKIClient pkiClient = new PKIClient(clientConfig)) {
-            AuthorityClient authorityClient = new AuthorityClient(pkiClient, "ca");
+    public void stop() throws Throwable {
+        if (caClient != null) {
+            caClient.close();
+        }
+    }
 
+    @Override
+    public CertificateChain cacerts(Optional<String> label) throws PKIException {
+        try {
             String authorityID = label.orElse(AuthorityResource.HOST_AUTHORITY);
-            String pkcs7pem = authorityClient.getChainPEM(authorityID);
+            String pkcs7pem = caClient.execute((pkiClient, certClient) -> {
+                AuthorityClient authorityClient = new AuthorityClient(pkiClient, "ca");
+                return authorityClient.getChainPEM(authorityID);
+            });
             logger.debug("Cert chain:\n" + pkcs7pem);
 
             PKCS7 pkcs7 = new PKCS7(pkcs7pem);
@@ -159,86 +173,12 @@ public class DogtagRABackend extends ESTBackend {
             }
         }
 
-        try (PKIClient pkiClient = new PKIClient(clientConfig)) {
-            CAClient caClient = new CAClient(pkiClient);
-
-            // Here the agent credentials are stored in the ClientConfig and will
-            // be sent to the CA automatically if any of the methods being called
-            // requires REST authentication. However, the methods being called
-            // depend on the cert profile being used.
-            //
-            // If the profile has an authenticator, the request can be completed
-            // with the following methods:
-            // - CACertClient.getEnrollmentTemplate()
-            // - CACertClient.enrollRequest()
-            //
-            // The above methods do not require REST authentication, but the
-            // profile still requires authentication, so the credentials must be
-            // provided either through the request itself (i.e. using profile
-            // authentication) or by calling CAClient.login() (i.e. using REST
-            // authentication).
-            //
-            // If the profile does not have an authenticator, the request must
-            // be reviewed and approved with the following additional methods:
-            // - CACertClient.reviewRequest()
-            // - CACertClient.approveRequest()
-            //
-            // The above methods do require REST authentication so in this case
-            // it's not actually necessary to call CAClient.login(). However, to
-            // support both types of profiles the CAClient.login() needs to be
-            // called explicitly.
-            caClient.login();
-
-            CACertClient certClient = new CACertClient(caClient);
-            CertEnrollmentRequest certEnrollmentRequest = certClient.getEnrollmentTemplate(profile);
-
-            for (ProfileInput input : certEnrollmentRequest.getInputs()) {
-                ProfileAttribute typeAttr = input.getAttribute("cert_request_type");
-                if (typeAttr != null) {
-                    typeAttr.setValue("pkcs10");
-                }
-
-                ProfileAttribute csrAttr = input.getAttribute("cert_request");
-                if (csrAttr != null) {
-                    csrAttr.setValue(Utils.base64encodeSingleLine(pkcs10.toByteArray()));
-                }
-            }
-
-            logger.info("Request:\n" + certEnrollmentRequest);
-            CertRequestInfos infos = certClient.enrollRequest(certEnrollmentRequest, aid, null);
-
-            logger.info("Responses:");
-            CertRequestInfo info = infos.getEntries().iterator().next();
-
-            RequestId requestId = info.getRequestID();
-            if (requestId == null) {
-                // Older versions of Dogtag lack the RequestID field.
-                // In that case, call .getRequestId() which derives the
-                // ID from the request URL field.
-                requestId = info.getRequestId();
-            }
-            logger.info("- Request ID: " + requestId.toHexString());
-            logger.info("  Type: " + info.getRequestType());
-            logger.info("  Request Status: " + info.getRequestStatus());
-            logger.info("  Operation Result: " + info.getOperationResult());
-
-            String error = info.getErrorMessage();
-            if (error != null) {
-                throw new PKIException("Unable to generate certificate: " + error);
-            }
-
-            CertId id = null;
-            if (info.getRequestStatus() == RequestStatus.COMPLETE) {
-                id = info.getCertId();
-            } else {
-                CertReviewResponse reviewInfo = certClient.reviewRequest(requestId);
-                certClient.approveRequest(requestId, reviewInfo);
-                info = certClient.getRequest(requestId);
-                id = info.getCertId();
-            }
+        try {
+            CertRequestInfo info = caClient.enroll(profile, pkcs10, aid);
 
+            CertId id = info.getCertId();
             logger.info("Serial number: " + id.toHexString());
-            CertData certData = certClient.getCert(id);
+            CertData certData = caClient.execute((pkiClient, certClient) -> certClient.getCert(id));
             String certPem = certData.getEncoded();
             return Cert.mapCert(certPem);
         } catch (PKIException e) {
@@ -58,7 +58,8 @@ public class KeyStatusUpdateTask implements Runnable {
 
     public void updateKeyStatus() throws Exception {
 
-        synchronized(keyRepository) {
+        keyRepository.lock.lock();
+        try {
             logger.debug("About to start checkRanges");
 
             logger.debug("Starting key checkRanges");
@@ -68,6 +69,8 @@ public class KeyStatusUpdateTask implements Runnable {
             logger.debug("Starting request checkRanges");
             requestRepository.checkRanges();
             logger.debug("request checkRanges done");
+        } finally {
+            keyRepository.lock.unlock();
         }
     }
 
@@ -409,13 +409,19 @@ public class KeyRecoveryAuthority implements IAuthority, IKeyRecoveryAuthority {
         String schedulerClass =
                 mConfig.getString("requestSchedulerClass", null);
 
-        if (schedulerClass != null) {
+        ConfigStore schedulerConfig = mConfig.getSubStore("requestScheduler", ConfigStore.class);
+        boolean enableScheduler = schedulerConfig.getBoolean("enable", false);
+
+        if (schedulerClass != null || enableScheduler) {
             try {
-                RequestScheduler scheduler = (RequestScheduler) Class.forName(schedulerClass).getDeclaredConstructor().newInstance();
+                RequestScheduler scheduler = schedulerClass == null
+                        ? new RequestScheduler()
+                        : (RequestScheduler) Class.forName(schedulerClass).getDeclaredConstructor().newInstance();
 
+                scheduler.init(schedulerConfig);
                 requestQueue.setRequestScheduler(scheduler);
             } catch (Exception e) {
-                // do nothing here
+                logger.warn("KeyRecoveryAuthority: Unable to initialize request scheduler: " + e.getMessage(), e);
             }
         }
         initNotificationListeners();
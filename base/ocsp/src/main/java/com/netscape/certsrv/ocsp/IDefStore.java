@@ -91,6 +91,25 @@ public interface IDefStore extends IOCSPStore {
      */
     public void updateCRL(X509CRL crl) throws EBaseException;
 
+    /**
+     * This method returns true if the store can apply delta CRLs.
+     *
+     * @return boolean true or false
+     */
+    public boolean isDeltaCRLSupported();
+
+    /**
+     * This method applies the specified delta CRL to the current
+     * revocation information of the issuer.
+     * <P>
+     *
+     * @param deltaCRL the delta CRL to be applied
+     * @return false if the current revocation information is older
+     *         than the base CRL of the delta CRL, so a full CRL is required
+     * @exception EBaseException occurs when the delta CRL cannot be applied
+     */
+    public boolean updateDeltaCRL(X509CRL deltaCRL) throws EBaseException;
+
     /**
      * This method attempts to read the CRL issuing point.
      * <P>
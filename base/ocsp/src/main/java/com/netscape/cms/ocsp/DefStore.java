@@ -17,20 +17,30 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.ocsp;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.commons.codec.binary.Hex;
 import org.mozilla.jss.asn1.GeneralizedTime;
 import org.mozilla.jss.asn1.INTEGER;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLReasonExtension;
+import org.mozilla.jss.netscape.security.x509.DeltaCRLIndicatorExtension;
+import org.mozilla.jss.netscape.security.x509.Extension;
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
 import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
 import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
@@ -87,13 +97,20 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
     private static final String PROP_NOT_FOUND_GOOD = "notFoundAsGood";
     private static final String PROP_INCLUDE_NEXT_UPDATE =
             "includeNextUpdate";
+    private static final String PROP_RESPONSE_CACHE_SIZE = "responseCacheSize";
+    private static final String PROP_USE_FILTER = "useRevokedSerialFilter";
+    private static final String PROP_FILTER_BITS = "revokedSerialFilterBits";
+    private static final String PROP_RESPONSE_CACHE_PRE_GENERATE = "responseCachePreGenerate";
 
-    protected Hashtable<String, Long> mReqCounts = new Hashtable<>();
+    protected ConcurrentHashMap<String, LongAdder> mReqCounts = new ConcurrentHashMap<>();
     protected boolean mNotFoundGood = true;
     protected boolean mUseCache = true;
     protected boolean mByName = true;
     protected boolean mIncludeNextUpdate = false;
-    protected Hashtable<String, CRLIPContainer> mCacheCRLIssuingPoints = new Hashtable<>();
+    protected ConcurrentHashMap<String, CRLIPContainer> mCacheCRLIssuingPoints = new ConcurrentHashMap<>();
+    protected OCSPResponseCache mResponseCache;
+    protected boolean mUseFilter = false;
+    protected int mFilterBits = RevokedSerialFilter.DEFAULT_BITS_PER_ENTRY;
     private ConfigStore mConfig;
     private String mId = null;
     private DBSubsystem dbSubsystem;
@@ -156,6 +173,20 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
         mIncludeNextUpdate = mConfig.getBoolean(PROP_INCLUDE_NEXT_UPDATE,
                     false);
 
+        // Bloom filter of revoked serial numbers to answer most
+        // requests for good certificates without a lookup
+        mUseFilter = mConfig.getBoolean(PROP_USE_FILTER, false);
+        mFilterBits = mConfig.getInteger(PROP_FILTER_BITS, RevokedSerialFilter.DEFAULT_BITS_PER_ENTRY);
+
+        // Signed responses for single certificates can be cached until
+        // the next CRL update (disabled by default)
+        int responseCacheSize = mConfig.getInteger(PROP_RESPONSE_CACHE_SIZE, 0);
+        if (responseCacheSize > 0) {
+            int preGenerate = mConfig.getInteger(PROP_RESPONSE_CACHE_PRE_GENERATE, 0);
+            logger.info("DefStore: Response cache size: " + responseCacheSize);
+            mResponseCache = new OCSPResponseCache(responseCacheSize, preGenerate);
+        }
+
         // init web gateway.
         initWebGateway();
 
@@ -201,18 +232,35 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
         return mNotFoundGood;
     }
 
+    /**
+     * Returns the cache of signed responses, or null if disabled.
+     */
+    public OCSPResponseCache getResponseCache() {
+        return mResponseCache;
+    }
+
     @Override
     public long getReqCount(String id) {
-        Long c = mReqCounts.get(id);
+        LongAdder c = mReqCounts.get(id);
 
         if (c == null)
             return 0;
         else
-            return c.longValue();
+            return c.sum();
     }
 
     public void incReqCount(String id) {
-        mReqCounts.put(id, Long.valueOf(getReqCount(id) + 1));
+        mReqCounts.computeIfAbsent(id, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Discards the cached CRL issuing points and responses.
+     */
+    public void clearCache() {
+        mCacheCRLIssuingPoints.clear();
+        if (mResponseCache != null) {
+            mResponseCache.invalidate();
+        }
     }
 
     /**
@@ -288,13 +336,16 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
                 DEF_REFRESH_IN_SEC);
         if (refresh > 0) {
             DefStoreCRLUpdater updater =
-                    new DefStoreCRLUpdater(mCacheCRLIssuingPoints, refresh);
+                    new DefStoreCRLUpdater(this, refresh);
             updater.start();
         }
     }
 
     @Override
     public void shutdown() {
+        if (mResponseCache != null) {
+            mResponseCache.shutdown();
+        }
     }
 
     public ConfigStore getConfigStore() {
@@ -314,6 +365,15 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
      */
     @Override
     public SingleResponse processRequest(Request req) throws Exception {
+        return processRequest(req, true);
+    }
+
+    /**
+     * Check against the database for status.
+     *
+     * @param countRequest true to count the request for the CRL issuing point
+     */
+    public SingleResponse processRequest(Request req, boolean countRequest) throws Exception {
         // need to find the right CA
 
         CertID cid = req.getCertID();
@@ -324,6 +384,7 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
         X509CertImpl theCert = null;
         X509CRLImpl theCRL = null;
         CRLIssuingPointRecord theRec = null;
+        RevokedSerialFilter theFilter = null;
         byte keyhsh[] = cid.getIssuerKeyHash().toByteArray();
         logger.info("DefStore: Issuer key hash: " + new String(Hex.encodeHex(keyhsh)));
 
@@ -363,7 +424,9 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
 
                 theCert = cert;
                 theRec = rec;
-                incReqCount(theRec.getId());
+                if (countRequest) {
+                    incReqCount(theRec.getId());
+                }
 
                 byte crldata[] = rec.getCRL();
                 logger.info("DefStore: CRL: " + crldata);
@@ -385,8 +448,12 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
                     logger.debug("DefStore: using crl cache");
                 }
 
+                if (mUseFilter) {
+                    theFilter = createRevokedSerialFilter(theRec, theCRL);
+                }
+
                 logger.info("DefStore: Adding CRL issuing point container for " + new String(Hex.encodeHex(digest)));
-                mCacheCRLIssuingPoints.put(new String(digest), new CRLIPContainer(theRec, theCert, theCRL));
+                mCacheCRLIssuingPoints.put(new String(digest), new CRLIPContainer(theRec, theCert, theCRL, theFilter));
                 break;
             }
 
@@ -394,7 +461,10 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
             theCert = matched.getX509CertImpl();
             theRec = matched.getCRLIssuingPointRecord();
             theCRL = matched.getX509CRLImpl();
-            incReqCount(theRec.getId());
+            theFilter = matched.getRevokedSerialFilter();
+            if (countRequest) {
+                incReqCount(theRec.getId());
+            }
         }
 
         logger.info("DefStore: Issuer: " + theCert);
@@ -451,7 +521,10 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
             logger.debug("DefStore: evaluating crl cache");
             Hashtable<BigInteger, RevokedCertificate> cache = theRec.getCRLCacheNoClone();
             if (cache != null) {
-                RevokedCertificate rc = cache.get(new BigInteger(serialNo.toString()));
+                RevokedCertificate rc = null;
+                if (theFilter == null || theFilter.mightContain(serialNo)) {
+                    rc = cache.get(serialNo);
+                }
                 if (rc == null) {
                     if (isNotFoundGood()) {
                         certStatus = new GoodInfo();
@@ -471,7 +544,10 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
         }
 
         logger.debug("DefStore: evaluating x509 crl impl");
-        X509CRLEntry crlentry = theCRL.getRevokedCertificate(new BigInteger(serialNo.toString()));
+        X509CRLEntry crlentry = null;
+        if (theFilter == null || theFilter.mightContain(serialNo)) {
+            crlentry = theCRL.getRevokedCertificate(serialNo);
+        }
 
         if (crlentry == null) {
             // good or unknown
@@ -490,6 +566,32 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
                 nextUpdate);
     }
 
+    /**
+     * Creates a filter of the serial numbers in the CRL, or in the CRL
+     * cache if the CRL is not decoded. Returns null if neither is available.
+     */
+    RevokedSerialFilter createRevokedSerialFilter(CRLIssuingPointRecord rec, X509CRLImpl crl) {
+
+        Map<BigInteger, RevokedCertificate> revokedCerts;
+
+        if (crl != null) {
+            revokedCerts = crl.getListOfRevokedCertificates();
+            if (revokedCerts == null) {
+                revokedCerts = Collections.emptyMap();
+            }
+        } else {
+            revokedCerts = rec.getCRLCacheNoClone();
+            if (revokedCerts == null) {
+                return null;
+            }
+        }
+
+        RevokedSerialFilter filter = new RevokedSerialFilter(revokedCerts.keySet(), mFilterBits);
+        logger.info("DefStore: Created filter for " + revokedCerts.size() + " revoked certs: " + filter.getSize() + " bytes");
+
+        return filter;
+    }
+
     private String transformDN(String dn) {
         String newdn = dn;
 
@@ -782,11 +884,13 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
                 mods.add(CRLIssuingPointRecord.ATTR_NEXT_UPDATE,
                         Modification.MOD_REPLACE, crl.getNextUpdate());
             if (mUseCache) {
-                if (((X509CRLImpl) crl).getListOfRevokedCertificates() != null) {
-                    mods.add(CRLIssuingPointRecord.ATTR_CRL_CACHE,
-                            Modification.MOD_REPLACE,
-                            ((X509CRLImpl) crl).getListOfRevokedCertificates());
-                }
+                Hashtable<BigInteger, RevokedCertificate> revokedCerts =
+                        ((X509CRLImpl) crl).getListOfRevokedCertificates();
+                // store an empty cache for an empty CRL so that
+                // delta CRLs can be applied to it
+                mods.add(CRLIssuingPointRecord.ATTR_CRL_CACHE,
+                        Modification.MOD_REPLACE,
+                        revokedCerts == null ? new Hashtable<>() : revokedCerts);
             }
             if (((X509CRLImpl) crl).getNumberOfRevokedCertificates() < 0) {
                 mods.add(CRLIssuingPointRecord.ATTR_CRL_SIZE,
@@ -817,7 +921,7 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
                     crl.getIssuerDN().getName());
 
             // update cache
-            mCacheCRLIssuingPoints.clear();
+            clearCache();
 
             logger.info("DefStore: Finish Committing CRL." +
                     " thisUpdate=" + crl.getThisUpdate() +
@@ -828,6 +932,197 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
         }
     }
 
+    @Override
+    public synchronized boolean updateDeltaCRL(X509CRL crl) throws EBaseException {
+        try {
+            mStateCount++;
+
+            X509CRLImpl deltaCRL = (X509CRLImpl) crl;
+            String name = deltaCRL.getIssuerDN().getName();
+
+            BigInteger deltaCRLNumber = deltaCRL.getCRLNumber();
+            BigInteger baseCRLNumber = getBaseCRLNumber(deltaCRL);
+            logger.info("DefStore: Updating " + name + " with delta CRL " + deltaCRLNumber + " against CRL " + baseCRLNumber);
+
+            if (!mUseCache) {
+                logger.info("DefStore: CRL cache is disabled, full CRL required");
+                return false;
+            }
+
+            if (deltaCRLNumber == null || baseCRLNumber == null) {
+                logger.warn("DefStore: Missing delta CRL number, full CRL required");
+                return false;
+            }
+
+            CRLIssuingPointRecord rec = readCRLIssuingPoint(name);
+            BigInteger crlNumber = rec.getCRLNumber();
+            Hashtable<BigInteger, RevokedCertificate> revokedCerts = getRevokedCerts(rec);
+
+            if (crlNumber == null || crlNumber.signum() < 0 || revokedCerts == null) {
+                logger.info("DefStore: No current CRL, full CRL required");
+                return false;
+            }
+
+            if (crlNumber.compareTo(baseCRLNumber) < 0) {
+                // some CRLs were missed, the delta CRL does not include all changes
+                logger.warn("DefStore: Current CRL " + crlNumber + " is older than base CRL " + baseCRLNumber
+                        + ", full CRL required");
+                return false;
+            }
+
+            if (crlNumber.compareTo(deltaCRLNumber) >= 0) {
+                logger.info("DefStore: Current CRL " + crlNumber + " is up to date");
+                return true;
+            }
+
+            try {
+                if (!deltaCRL.areEntriesIncluded())
+                    deltaCRL = new X509CRLImpl(deltaCRL.getEncoded());
+            } catch (Exception e) {
+                logger.warn("DefStore: " + e.getMessage(), e);
+            }
+
+            // the delta CRL contains all changes since the base CRL,
+            // so it can be applied to any later CRL
+            Hashtable<BigInteger, RevokedCertificate> changes = deltaCRL.getListOfRevokedCertificates();
+            int added = 0;
+            int removed = 0;
+
+            if (changes != null) {
+                for (RevokedCertificate entry : changes.values()) {
+                    if (isRemovedFromCRL(entry)) {
+                        if (revokedCerts.remove(entry.getSerialNumber()) != null) {
+                            removed++;
+                        }
+                    } else if (revokedCerts.put(entry.getSerialNumber(), entry) == null) {
+                        added++;
+                    }
+                }
+            }
+
+            logger.info("DefStore: Added " + added + " and removed " + removed + " revoked certs");
+
+            ModificationSet mods = new ModificationSet();
+
+            if (deltaCRL.getThisUpdate() != null)
+                mods.add(CRLIssuingPointRecord.ATTR_THIS_UPDATE,
+                        Modification.MOD_REPLACE, deltaCRL.getThisUpdate());
+            if (deltaCRL.getNextUpdate() != null)
+                mods.add(CRLIssuingPointRecord.ATTR_NEXT_UPDATE,
+                        Modification.MOD_REPLACE, deltaCRL.getNextUpdate());
+            mods.add(CRLIssuingPointRecord.ATTR_CRL_CACHE,
+                    Modification.MOD_REPLACE, revokedCerts);
+            mods.add(CRLIssuingPointRecord.ATTR_CRL_SIZE,
+                    Modification.MOD_REPLACE, Long.valueOf(revokedCerts.size()));
+            mods.add(CRLIssuingPointRecord.ATTR_CRL_NUMBER,
+                    Modification.MOD_REPLACE, deltaCRLNumber);
+
+            modifyCRLIssuingPointRecord(name, mods);
+
+            // update cache
+            clearCache();
+
+            logger.info("DefStore: Finish Committing delta CRL." +
+                    " thisUpdate=" + deltaCRL.getThisUpdate() +
+                    " nextUpdate=" + deltaCRL.getNextUpdate());
+
+            return true;
+
+        } finally {
+            mStateCount--;
+        }
+    }
+
+    @Override
+    public boolean isDeltaCRLSupported() {
+        return true;
+    }
+
+    /**
+     * Returns a copy of the revoked certificates of the current CRL.
+     *
+     * The CRL cache is not stored for empty CRLs published before the
+     * delta CRL support, or if the cache was disabled, so in that case
+     * the revoked certificates are read from the stored CRL if it is
+     * still the current CRL (i.e. no delta CRL has been applied to it).
+     */
+    Hashtable<BigInteger, RevokedCertificate> getRevokedCerts(CRLIssuingPointRecord rec) {
+
+        Hashtable<BigInteger, RevokedCertificate> revokedCerts = rec.getCRLCache();
+        if (revokedCerts != null) {
+            return revokedCerts;
+        }
+
+        Long crlSize = rec.getCRLSize();
+        if (crlSize != null && crlSize.longValue() == 0) {
+            return new Hashtable<>();
+        }
+
+        byte[] crlData = rec.getCRL();
+        if (crlData == null) {
+            return null;
+        }
+
+        try {
+            X509CRLImpl crl = new X509CRLImpl(crlData);
+            if (crl.getCRLNumber() == null || !crl.getCRLNumber().equals(rec.getCRLNumber())) {
+                return null;
+            }
+
+            revokedCerts = crl.getListOfRevokedCertificates();
+            return revokedCerts == null ? new Hashtable<>() : new Hashtable<>(revokedCerts);
+
+        } catch (Exception e) {
+            logger.warn("DefStore: Unable to decode CRL: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the CRL number in the delta CRL indicator extension.
+     */
+    static BigInteger getBaseCRLNumber(X509CRLImpl deltaCRL) {
+
+        CRLExtensions crlExtensions = deltaCRL.getExtensions();
+        if (crlExtensions == null) {
+            return null;
+        }
+
+        Enumeration<Extension> e = crlExtensions.getElements();
+        while (e.hasMoreElements()) {
+            Extension ext = e.nextElement();
+            if (!(ext instanceof DeltaCRLIndicatorExtension)) {
+                continue;
+            }
+            try {
+                return (BigInteger) ((DeltaCRLIndicatorExtension) ext).get(DeltaCRLIndicatorExtension.NUMBER);
+            } catch (IOException ex) {
+                logger.warn("DefStore: Unable to get base CRL number: " + ex.getMessage(), ex);
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    static boolean isRemovedFromCRL(RevokedCertificate entry) {
+
+        CRLExtensions entryExtensions = entry.getExtensions();
+        if (entryExtensions == null) {
+            return false;
+        }
+
+        Enumeration<Extension> e = entryExtensions.getElements();
+        while (e.hasMoreElements()) {
+            Extension ext = e.nextElement();
+            if (ext instanceof CRLReasonExtension) {
+                return ((CRLReasonExtension) ext).getReason() == RevocationReason.REMOVE_FROM_CRL;
+            }
+        }
+
+        return false;
+    }
+
     @Override
     public int getStateCount() {
         return mStateCount;
@@ -855,11 +1150,13 @@ class CRLIPContainer {
     private CRLIssuingPointRecord mRec = null;
     private X509CertImpl mCert = null;
     private X509CRLImpl mCRL = null;
+    private RevokedSerialFilter mFilter = null;
 
-    public CRLIPContainer(CRLIssuingPointRecord rec, X509CertImpl cert, X509CRLImpl crl) {
+    public CRLIPContainer(CRLIssuingPointRecord rec, X509CertImpl cert, X509CRLImpl crl, RevokedSerialFilter filter) {
         mRec = rec;
         mCert = cert;
         mCRL = crl;
+        mFilter = filter;
     }
 
     public CRLIssuingPointRecord getCRLIssuingPointRecord() {
@@ -873,17 +1170,21 @@ class CRLIPContainer {
     public X509CRLImpl getX509CRLImpl() {
         return mCRL;
     }
+
+    public RevokedSerialFilter getRevokedSerialFilter() {
+        return mFilter;
+    }
 }
 
 class DefStoreCRLUpdater extends Thread {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DefStoreCRLUpdater.class);
 
-    private Hashtable<String, CRLIPContainer> mCache = null;
+    private DefStore mStore = null;
     private int mSec = 0;
 
-    public DefStoreCRLUpdater(Hashtable<String, CRLIPContainer> cache, int sec) {
-        mCache = cache;
+    public DefStoreCRLUpdater(DefStore store, int sec) {
+        mStore = store;
         mSec = sec;
     }
 
@@ -892,7 +1193,7 @@ class DefStoreCRLUpdater extends Thread {
         while (true) {
             try {
                 logger.debug("DefStore: CRLUpdater invoked");
-                mCache.clear();
+                mStore.clearCache();
                 sleep(mSec * 1000); // turn sec into millis-sec
             } catch (Exception e) {
                 // ignore
@@ -22,11 +22,13 @@ import java.security.MessageDigest;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Locale;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mozilla.jss.asn1.GeneralizedTime;
 import org.mozilla.jss.asn1.INTEGER;
@@ -85,6 +87,8 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
     private final static String PROP_NOT_FOUND_GOOD = "notFoundAsGood";
     private final static String PROP_INCLUDE_NEXT_UPDATE =
             "includeNextUpdate";
+    private final static String PROP_USE_FILTER = "useRevokedSerialFilter";
+    private final static String PROP_FILTER_BITS = "revokedSerialFilterBits";
 
     private ConfigStore mConfig;
     private String mId = null;
@@ -93,6 +97,9 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
     private String mCACertAttr = null;
     protected Hashtable<String, Long> mReqCounts = new Hashtable<>();
     private Hashtable<X509CertImpl, X509CRLImpl> mCRLs = new Hashtable<>();
+    private ConcurrentHashMap<X509CertImpl, RevokedSerialFilter> mFilters = new ConcurrentHashMap<>();
+    private boolean mUseFilter = false;
+    private int mFilterBits = RevokedSerialFilter.DEFAULT_BITS_PER_ENTRY;
 
     /**
      * Constructs the default store.
@@ -140,6 +147,8 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
                     DEF_CA_CERT_ATTR);
         mByName = mConfig.getBoolean(PROP_BY_NAME, true);
 
+        mUseFilter = mConfig.getBoolean(PROP_USE_FILTER, false);
+        mFilterBits = mConfig.getInteger(PROP_FILTER_BITS, RevokedSerialFilter.DEFAULT_BITS_PER_ENTRY);
     }
 
     /**
@@ -250,8 +259,22 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
                 return; // no update
             }
         }
+        if (mUseFilter) {
+            Hashtable<BigInteger, RevokedCertificate> revokedCerts = crl.getListOfRevokedCertificates();
+            RevokedSerialFilter filter = new RevokedSerialFilter(
+                    revokedCerts == null ? Collections.emptySet() : revokedCerts.keySet(),
+                    mFilterBits);
+            logger.info("LDAPStore: Created filter for '" + caCert.getSubjectName() + "': " + filter.getSize() + " bytes");
+
+            // the filter is replaced first, so it is never older than the CRL
+            mFilters.put(caCert, filter);
+            mCRLs.put(caCert, crl);
+
+        } else {
+            mCRLs.put(caCert, crl);
+        }
+
         logger.debug("Added '" + caCert.getSubjectName() + "' into CRL hash");
-        mCRLs.put(caCert, crl);
     }
 
     @Override
@@ -332,6 +355,17 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
         throw new EBaseException("NOT SUPPORTED");
     }
 
+    @Override
+    public boolean isDeltaCRLSupported() {
+        // the CRLs are read from the directory
+        return false;
+    }
+
+    @Override
+    public boolean updateDeltaCRL(X509CRL deltaCRL) throws EBaseException {
+        throw new EBaseException("NOT SUPPORTED");
+    }
+
     @Override
     public CRLIssuingPointRecord readCRLIssuingPoint(String name)
             throws EBaseException {
@@ -459,8 +493,12 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
         }
 
         CertStatus certStatus = null;
-        X509CRLEntry entry = theCRL.getRevokedCertificate(
-                cid.getSerialNumber());
+        X509CRLEntry entry = null;
+
+        RevokedSerialFilter filter = mFilters.get(theCert);
+        if (filter == null || filter.mightContain(serialNo)) {
+            entry = theCRL.getRevokedCertificate(serialNo);
+        }
 
         if (entry == null) {
             if (isNotFoundGood1()) {
@@ -0,0 +1,293 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.ocsp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.mozilla.jss.asn1.ASN1Util;
+
+import com.netscape.cmsutil.ocsp.CertID;
+import com.netscape.cmsutil.ocsp.OCSPResponse;
+import com.netscape.cmsutil.ocsp.Request;
+
+/**
+ * This class keeps signed OCSP responses for single certificates
+ * so that repeated requests can be answered without looking up the
+ * revocation information and signing a new response.
+ *
+ * The responses are keyed by the DER encoding of the CertID, which
+ * contains the hash algorithm, the issuer name and key hashes, and
+ * the serial number. Lookups do not acquire any lock. The responses
+ * are stored in a generation which is replaced atomically when the
+ * revocation information changes, so a response that was built from
+ * the previous CRL is never added to the new generation.
+ *
+ * Within a generation the responses are kept in two maps. New
+ * responses are added to the recent map. When it is full it becomes
+ * the older map and the previous older map is discarded. A response
+ * found in the older map is moved back to the recent map, so the
+ * responses that are still requested are kept and the others are
+ * evicted, similar to an LRU cache but without a lock on lookups.
+ *
+ * When a generation is replaced, the most requested certificates of
+ * the previous generation can be signed again in the background.
+ */
+public class OCSPResponseCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(OCSPResponseCache.class);
+
+    /**
+     * Generates a signed response for a single request. The
+     * response is added into the cache by the caller, and it
+     * should not be counted in the request statistics.
+     */
+    public interface ResponseGenerator {
+        OCSPResponse generate(Request request) throws Exception;
+    }
+
+    static class Entry {
+
+        final Request request;
+        final OCSPResponse response;
+        final LongAdder hits = new LongAdder();
+
+        Entry(Request request, OCSPResponse response) {
+            this.request = request;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Responses built from the same revocation information.
+     */
+    public static class Generation {
+
+        final int maxRecent;
+
+        volatile ConcurrentHashMap<ByteBuffer, Entry> recent = new ConcurrentHashMap<>();
+        volatile ConcurrentHashMap<ByteBuffer, Entry> older = new ConcurrentHashMap<>();
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        Generation(int maxRecent) {
+            this.maxRecent = maxRecent;
+        }
+
+        Entry get(ByteBuffer key) {
+
+            Entry entry = recent.get(key);
+            if (entry != null) {
+                return entry;
+            }
+
+            ConcurrentHashMap<ByteBuffer, Entry> older = this.older;
+            entry = older.get(key);
+            if (entry == null) {
+                return null;
+            }
+
+            // keep the response since it is still requested
+            if (older.remove(key, entry)) {
+                add(key, entry);
+            }
+
+            return entry;
+        }
+
+        void add(ByteBuffer key, Entry entry) {
+
+            if (recent.size() >= maxRecent) {
+                rotate();
+            }
+
+            recent.putIfAbsent(key, entry);
+        }
+
+        /**
+         * Discards the older responses and starts a new recent map.
+         */
+        void rotate() {
+
+            lock.lock();
+            try {
+                // another thread might have rotated the maps already
+                if (recent.size() < maxRecent) {
+                    return;
+                }
+
+                logger.debug("OCSPResponseCache: Evicting " + older.size() + " responses");
+
+                older = recent;
+                recent = new ConcurrentHashMap<>();
+
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<Entry> getEntries() {
+            List<Entry> entries = new ArrayList<>(recent.values());
+            entries.addAll(older.values());
+            return entries;
+        }
+
+        int size() {
+            return recent.size() + older.size();
+        }
+    }
+
+    private int maxSize;
+    private int preGenerate;
+
+    private AtomicReference<Generation> generation;
+
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+
+    private ResponseGenerator generator;
+    private ExecutorService executorService;
+
+    /**
+     * @param maxSize maximum number of responses
+     * @param preGenerate number of responses to sign again after the
+     *        revocation information has changed, or 0 to disable
+     */
+    public OCSPResponseCache(int maxSize, int preGenerate) {
+        this.maxSize = maxSize;
+        this.preGenerate = preGenerate;
+        this.generation = new AtomicReference<>(createGeneration());
+    }
+
+    Generation createGeneration() {
+        // the recent and the older maps share the maximum size
+        return new Generation(Math.max(1, maxSize / 2));
+    }
+
+    public void setResponseGenerator(ResponseGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Returns the current generation. It should be obtained before
+     * looking up the revocation information for a new response.
+     */
+    public Generation getGeneration() {
+        return generation.get();
+    }
+
+    static ByteBuffer createKey(CertID certID) {
+        return ByteBuffer.wrap(ASN1Util.encode(certID));
+    }
+
+    /**
+     * Returns the cached response for a certificate, or null
+     * if there is none.
+     */
+    public OCSPResponse get(CertID certID) {
+
+        Entry entry = generation.get().get(createKey(certID));
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        entry.hits.increment();
+        return entry.response;
+    }
+
+    /**
+     * Adds a response to a generation. If the generation has been
+     * replaced in the meantime the response will not be used. If
+     * the generation is full the least recently requested responses
+     * are evicted.
+     */
+    public void put(Generation g, Request request, OCSPResponse response) {
+        g.add(createKey(request.getCertID()), new Entry(request, response));
+    }
+
+    /**
+     * Discards all responses and signs the most requested
+     * responses again if enabled.
+     */
+    public void invalidate() {
+
+        Generation previous = generation.getAndSet(createGeneration());
+        logger.info("OCSPResponseCache: Discarding " + previous.size() + " responses");
+
+        if (preGenerate <= 0 || generator == null || previous.size() == 0) {
+            return;
+        }
+
+        List<Entry> entries = previous.getEntries();
+        entries.sort(Comparator.comparingLong((Entry e) -> e.hits.sum()).reversed());
+
+        List<Request> requests = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (requests.size() >= preGenerate || entry.hits.sum() == 0) {
+                break;
+            }
+            requests.add(entry.request);
+        }
+
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        logger.info("OCSPResponseCache: Generating " + requests.size() + " responses");
+
+        synchronized (this) {
+            if (executorService == null) {
+                executorService = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "OCSPResponseCache");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+
+        executorService.submit(() -> {
+            for (Request request : requests) {
+                try {
+                    // obtain the generation before looking up the revocation information
+                    Generation g = generation.get();
+                    put(g, request, generator.generate(request));
+                } catch (Exception e) {
+                    logger.warn("OCSPResponseCache: Unable to generate response: " + e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    public int size() {
+        return generation.get().size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public synchronized void shutdown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.ocsp;
+
+import java.math.BigInteger;
+import java.util.Collection;
+
+/**
+ * This class is a Bloom filter of the serial numbers of revoked
+ * certificates of an issuer.
+ *
+ * If mightContain() returns false the certificate is definitely not
+ * in the CRL, so the exact lookup can be skipped. If it returns true
+ * the certificate is probably revoked and has to be looked up. With
+ * 10 bits per entry about 1% of the good certificates are looked up.
+ *
+ * The filter is immutable once built. Queries do not allocate objects.
+ */
+public class RevokedSerialFilter {
+
+    public static final int DEFAULT_BITS_PER_ENTRY = 10;
+
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashes;
+
+    public RevokedSerialFilter(Collection<BigInteger> serialNumbers, int bitsPerEntry) {
+
+        int entries = Math.max(serialNumbers.size(), 1);
+        bitsPerEntry = Math.max(bitsPerEntry, 1);
+
+        long size = Math.max((long) entries * bitsPerEntry, Long.SIZE);
+        bits = new long[Math.toIntExact((size + Long.SIZE - 1) / Long.SIZE)];
+        numBits = (long) bits.length * Long.SIZE;
+
+        // optimal number of hash functions: bits per entry * ln 2
+        numHashes = Math.max(1, (int) Math.round(bitsPerEntry * Math.log(2)));
+
+        for (BigInteger serialNumber : serialNumbers) {
+            long h1 = hash1(serialNumber);
+            long h2 = hash2(serialNumber);
+            for (int i = 0; i < numHashes; i++) {
+                long index = Math.floorMod(h1 + i * h2, numBits);
+                bits[(int) (index >>> 6)] |= 1L << index;
+            }
+        }
+    }
+
+    public boolean mightContain(BigInteger serialNumber) {
+
+        long h1 = hash1(serialNumber);
+        long h2 = hash2(serialNumber);
+
+        for (int i = 0; i < numHashes; i++) {
+            long index = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the memory used by the filter in bytes.
+     */
+    public long getSize() {
+        return bits.length * (long) Long.BYTES;
+    }
+
+    static long hash1(BigInteger serialNumber) {
+        // lowest 64 bits of the serial number
+        return mix(serialNumber.longValue());
+    }
+
+    static long hash2(BigInteger serialNumber) {
+        // covers all bits of the serial number, must be odd
+        return mix(serialNumber.hashCode() + 0x9E3779B97F4A7C15L) | 1;
+    }
+
+    /**
+     * 64-bit finalizer of MurmurHash3.
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -315,6 +315,29 @@ public class AddCRLServlet extends CMSServlet {
             }
             logger.info("AddCRLServlet: CRL Issuer DN " + crl.getIssuerDN().getName());
 
+            if (crl.isDeltaCRL() && !defStore.isDeltaCRLSupported()) {
+
+                logger.warn("AddCRLServlet: no update, " + CMS.getUserMessage("CMS_GW_DELTA_CRL_NOT_SUPPORTED"));
+
+                if (noUI) {
+                    try {
+                        // tell the publisher to stop sending delta CRLs
+                        resp.setContentType("application/text");
+                        resp.getOutputStream().write("status=1\n".getBytes());
+                        resp.getOutputStream().write(
+                                "error=Delta CRL is not supported.\n".getBytes());
+                        resp.getOutputStream().write("deltaCRLSupported=false\n".getBytes());
+                        resp.getOutputStream().flush();
+                        cmsReq.setStatus(CMSRequest.SUCCESS);
+
+                        return;
+                    } catch (Exception e) {
+                    }
+                } else {
+                    throw new ECMSGWException(CMS.getUserMessage("CMS_GW_DELTA_CRL_NOT_SUPPORTED"));
+                }
+            }
+
             CRLIssuingPointRecord pt = null;
 
             try {
@@ -405,9 +428,28 @@ public class AddCRLServlet extends CMSServlet {
                 }
             }
 
-            if ((pt.getThisUpdate() != null) &&
-                    (pt.getThisUpdate().getTime() >=
-                    crl.getThisUpdate().getTime())) {
+            // current CRL number in the OCSP, returned to the publisher
+            BigInteger currentCRLNumber = pt.getCRLNumber();
+            if (currentCRLNumber != null && currentCRLNumber.signum() < 0) {
+                currentCRLNumber = null;
+            }
+
+            // Delta CRLs are ordered by CRL number in updateDeltaCRL().
+            // A full CRL replaces the current CRL unless it is older, even
+            // if delta CRLs with the same number have been applied, since
+            // it also drops the entries of expired certificates which are
+            // not included in delta CRLs.
+            BigInteger crlNumber = crl.getCRLNumber();
+            boolean older;
+
+            if (currentCRLNumber != null && crlNumber != null) {
+                older = crlNumber.compareTo(currentCRLNumber) < 0;
+            } else {
+                older = pt.getThisUpdate() != null &&
+                        pt.getThisUpdate().getTime() >= crl.getThisUpdate().getTime();
+            }
+
+            if (!crl.isDeltaCRL() && older) {
 
                 logger.warn("AddCRLServlet: no update, received CRL is older than current CRL");
 
@@ -417,6 +459,10 @@ public class AddCRLServlet extends CMSServlet {
                         resp.getOutputStream().write("status=1\n".getBytes());
                         resp.getOutputStream().write(
                                 "error=Sent CRL is older than the current CRL\n".getBytes());
+                        if (currentCRLNumber != null) {
+                            resp.getOutputStream().write(
+                                    ("crlNumber=" + currentCRLNumber + "\n").getBytes());
+                        }
                         resp.getOutputStream().flush();
                         cmsReq.setStatus(CMSRequest.SUCCESS);
 
@@ -443,56 +489,70 @@ public class AddCRLServlet extends CMSServlet {
 
             if (crl.isDeltaCRL()) {
 
-                logger.warn("AddCRLServlet: no update, " + CMS.getUserMessage("CMS_GW_DELTA_CRL_NOT_SUPPORTED"));
-
-                if (noUI) {
-                    try {
-                        resp.setContentType("application/text");
-                        resp.getOutputStream().write("status=1\n".getBytes());
-                        resp.getOutputStream().write(
-                                "error=Delta CRLs are not supported.\n".getBytes());
-                        resp.getOutputStream().flush();
-                        cmsReq.setStatus(CMSRequest.SUCCESS);
-
-                        return;
-                    } catch (Exception e) {
+                logger.info("AddCRLServlet: Applying delta CRL");
+
+                if (!defStore.updateDeltaCRL(crl)) {
+
+                    logger.warn("AddCRLServlet: no update, " + CMS.getUserMessage("CMS_GW_DELTA_CRL_FULL_CRL_REQUIRED"));
+
+                    if (noUI) {
+                        try {
+                            // tell the publisher to send the full CRL
+                            resp.setContentType("application/text");
+                            resp.getOutputStream().write("status=1\n".getBytes());
+                            resp.getOutputStream().write(
+                                    "error=Full CRL is required.\n".getBytes());
+                            resp.getOutputStream().write("fullCRLRequired=true\n".getBytes());
+                            if (currentCRLNumber != null) {
+                                resp.getOutputStream().write(
+                                        ("crlNumber=" + currentCRLNumber + "\n").getBytes());
+                            }
+                            resp.getOutputStream().flush();
+                            cmsReq.setStatus(CMSRequest.SUCCESS);
+
+                            return;
+                        } catch (Exception e) {
+                        }
+                    } else {
+                        throw new ECMSGWException(CMS.getUserMessage("CMS_GW_DELTA_CRL_FULL_CRL_REQUIRED"));
                     }
-                } else {
-                    throw new ECMSGWException(CMS.getUserMessage("CMS_GW_DELTA_CRL_NOT_SUPPORTED"));
                 }
-            }
 
-            logger.info("AddCRLServlet: Start Committing CRL");
+                logger.info("AddCRLServlet: Applied delta CRL " + crl.getCRLNumber());
 
-            // *****************************************************
-            // The commit transaction may take long time and
-            // there may have a system crash during the transaction
-            // *****************************************************
+            } else {
+                logger.info("AddCRLServlet: Start Committing CRL");
 
-            RepositoryRecord repRec = defStore.createRepositoryRecord();
+                // *****************************************************
+                // The commit transaction may take long time and
+                // there may have a system crash during the transaction
+                // *****************************************************
 
-            repRec.set(RepositoryRecord.ATTR_SERIALNO,
-                    new BigInteger(Long.toString(crl.getThisUpdate().getTime())));
-            try {
-                defStore.addRepository(
-                        crl.getIssuerDN().getName(),
-                        Long.toString(crl.getThisUpdate().getTime()),
-                        repRec);
-                logger.info("AddCRLServlet: Added CRL Updated " + Long.toString(crl.getThisUpdate().getTime()));
-            } catch (Exception e) {
-                logger.warn("AddCRLServlet: add repository: " + e.getMessage(), e);
-            }
+                RepositoryRecord repRec = defStore.createRepositoryRecord();
 
-            logger.info("AddCRLServlet: Created CRL Repository " + Long.toString(crl.getThisUpdate().getTime()));
+                repRec.set(RepositoryRecord.ATTR_SERIALNO,
+                        new BigInteger(Long.toString(crl.getThisUpdate().getTime())));
+                try {
+                    defStore.addRepository(
+                            crl.getIssuerDN().getName(),
+                            Long.toString(crl.getThisUpdate().getTime()),
+                            repRec);
+                    logger.info("AddCRLServlet: Added CRL Updated " + Long.toString(crl.getThisUpdate().getTime()));
+                } catch (Exception e) {
+                    logger.warn("AddCRLServlet: add repository: " + e.getMessage(), e);
+                }
 
-            if (defStore.waitOnCRLUpdate()) {
-                defStore.updateCRL(crl);
-            } else {
-                // when the CRL large, the thread is terminiated by the
-                // servlet framework before it can finish its work
-                UpdateCRLThread uct = new UpdateCRLThread(defStore, crl);
+                logger.info("AddCRLServlet: Created CRL Repository " + Long.toString(crl.getThisUpdate().getTime()));
 
-                uct.start();
+                if (defStore.waitOnCRLUpdate()) {
+                    defStore.updateCRL(crl);
+                } else {
+                    // when the CRL large, the thread is terminiated by the
+                    // servlet framework before it can finish its work
+                    UpdateCRLThread uct = new UpdateCRLThread(defStore, crl);
+
+                    uct.start();
+                }
             }
 
             try {
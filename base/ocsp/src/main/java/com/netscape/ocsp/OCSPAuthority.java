@@ -38,6 +38,7 @@ import org.mozilla.jss.asn1.GeneralizedTime;
 import org.mozilla.jss.asn1.InvalidBERException;
 import org.mozilla.jss.asn1.OBJECT_IDENTIFIER;
 import org.mozilla.jss.asn1.OCTET_STRING;
+import org.mozilla.jss.asn1.SEQUENCE;
 import org.mozilla.jss.crypto.TokenException;
 import org.mozilla.jss.netscape.security.util.DerOutputStream;
 import org.mozilla.jss.netscape.security.util.DerValue;
@@ -61,6 +62,8 @@ import com.netscape.certsrv.security.SigningUnitConfig;
 import com.netscape.certsrv.util.IStatsSubsystem;
 import com.netscape.cms.logging.Logger;
 import com.netscape.cms.logging.SignedAuditLogger;
+import com.netscape.cms.ocsp.DefStore;
+import com.netscape.cms.ocsp.OCSPResponseCache;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.base.ConfigStore;
 import com.netscape.cmscore.dbs.DBSubsystem;
@@ -99,9 +102,11 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
     private String mId = "ocsp";
     private OCSPConfig mConfig;
     private OCSPSigningUnit mSigningUnit;
+    private OCSPSigner mSigner;
 
     private String[] mOCSPSigningAlgorithms = null;
     private IOCSPStore mDefStore = null;
+    private OCSPResponseCache mResponseCache;
 
     public long mNumOCSPRequest = 0;
     public long mTotalTime = 0;
@@ -170,6 +175,14 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
                     }
                 }
 
+                if (mDefStore instanceof DefStore) {
+                    mResponseCache = ((DefStore) mDefStore).getResponseCache();
+                }
+
+                if (mResponseCache != null) {
+                    mResponseCache.setResponseGenerator(this::generate);
+                }
+
             } catch (Exception e) {
                 logger.warn(CMS.getLogMessage("CMSCORE_OCSP_SIGNING_UNIT", e.toString()), e);
             }
@@ -316,6 +329,9 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
         mSigningUnit.init(ocspSigningConfig);
 
         getOCSPSigningAlgorithms();
+
+        mSigner = new OCSPSigner(mSigningUnit);
+        mSigner.init(mConfig.getSignerConfig());
     }
 
     /**
@@ -324,6 +340,11 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
     @Override
     public void startup() throws EBaseException {
         OCSPEngine engine = OCSPEngine.getInstance();
+
+        if (mSigner != null) {
+            mSigner.start();
+        }
+
         try {
             if (mDefStore != null)
                 mDefStore.startup();
@@ -364,13 +385,54 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
             throw new EBaseException("OCSP request is empty");
         }
 
-        OCSPEngine engine = OCSPEngine.getInstance();
-        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
-
         incNumOCSPRequest(1);
         long startTime = new Date().getTime();
 
-        OCSPResponse response;
+        // responses for a single certificate without a nonce can be cached
+        OCSPResponseCache.Generation generation = null;
+        if (mResponseCache != null && tbsReq.getRequestCount() == 1 && getNonce(tbsReq) == null) {
+
+            OCSPResponse response = mResponseCache.get(tbsReq.getRequestAt(0).getCertID());
+            if (response != null) {
+                logger.info("OCSPAuthority: Using cached OCSP response");
+
+                long endTime = new Date().getTime();
+                incTotalTime(endTime - startTime);
+                mServedTime = mServedTime + (endTime - startTime);
+
+                return response;
+            }
+
+            generation = mResponseCache.getGeneration();
+        }
+
+        OCSPResponse response = createResponse(tbsReq, true);
+
+        if (generation != null) {
+            mResponseCache.put(generation, tbsReq.getRequestAt(0), response);
+        }
+
+        logger.info("OCSPAuthority: Done validating OCSP request");
+
+        long endTime = new Date().getTime();
+        incTotalTime(endTime - startTime);
+
+        mServedTime = mServedTime + (endTime - startTime);
+
+        return response;
+    }
+
+    /**
+     * Looks up the certificate status and signs the response.
+     *
+     * @param recordStats true to record the request in the statistics
+     */
+    OCSPResponse createResponse(TBSRequest tbsReq, boolean recordStats) throws EBaseException {
+
+        OCSPEngine engine = OCSPEngine.getInstance();
+        IStatsSubsystem statsSub = recordStats
+                ? (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID)
+                : null;
 
         try {
             // (3) look into database to check the certificate's status
@@ -386,12 +448,19 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
                 logger.info("OCSPAuthority: Processing request #" + i);
 
                 Request req = tbsReq.getRequestAt(i);
-                SingleResponse sr = mDefStore.processRequest(req);
+                SingleResponse sr;
+                if (!recordStats && mDefStore instanceof DefStore defStore) {
+                    sr = defStore.processRequest(req, false);
+                } else {
+                    sr = mDefStore.processRequest(req);
+                }
                 singleResponses.addElement(sr);
             }
 
             long lookupEndTime = new Date().getTime();
-            incLookupTime(lookupEndTime - lookupStartTime);
+            if (recordStats) {
+                incLookupTime(lookupEndTime - lookupStartTime);
+            }
 
             if (statsSub != null) {
                 statsSub.endTiming("lookup");
@@ -412,16 +481,7 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
                 rid = getResponderIDByHash();
             }
 
-            Extension nonce[] = null;
-
-            for (int j = 0; j < tbsReq.getExtensionsCount(); j++) {
-                Extension thisExt = tbsReq.getRequestExtensionAt(j);
-
-                if (thisExt.getExtnId().equals(IOCSPAuthority.OCSP_NONCE)) {
-                    nonce = new Extension[1];
-                    nonce[0] = thisExt;
-                }
-            }
+            Extension nonce[] = getNonce(tbsReq);
 
             ResponseData rd = new ResponseData(rid,
                     new GeneralizedTime(new Date()), res, nonce);
@@ -436,16 +496,18 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
 
             long signStartTime = new Date().getTime();
 
-            BasicOCSPResponse basicRes = sign(rd);
+            BasicOCSPResponse basicRes = sign(rd, recordStats);
 
             long signEndTime = new Date().getTime();
-            incSignTime(signEndTime - signStartTime);
+            if (recordStats) {
+                incSignTime(signEndTime - signStartTime);
+            }
 
             if (statsSub != null) {
                 statsSub.endTiming("signing");
             }
 
-            response = new OCSPResponse(
+            return new OCSPResponse(
                     OCSPResponseStatus.SUCCESSFUL,
                     new ResponseBytes(ResponseBytes.OCSP_BASIC,
                             new OCTET_STRING(ASN1Util.encode(basicRes))));
@@ -458,15 +520,39 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
             logger.error(CMS.getLogMessage("OCSP_REQUEST_FAILURE", e.toString()), e);
             throw new EBaseException(e);
         }
+    }
 
-        logger.info("OCSPAuthority: Done validating OCSP request");
+    /**
+     * Returns the nonce extension of the request, or null if there is none.
+     */
+    Extension[] getNonce(TBSRequest tbsReq) {
 
-        long endTime = new Date().getTime();
-        incTotalTime(endTime - startTime);
+        Extension nonce[] = null;
 
-        mServedTime = mServedTime + (endTime - startTime);
+        for (int j = 0; j < tbsReq.getExtensionsCount(); j++) {
+            Extension thisExt = tbsReq.getRequestExtensionAt(j);
 
-        return response;
+            if (thisExt.getExtnId().equals(IOCSPAuthority.OCSP_NONCE)) {
+                nonce = new Extension[1];
+                nonce[0] = thisExt;
+            }
+        }
+
+        return nonce;
+    }
+
+    /**
+     * Generates a response for a single certificate for the response
+     * cache. The request is not recorded in the statistics since it
+     * was not sent by a client.
+     */
+    OCSPResponse generate(Request request) throws EBaseException {
+
+        SEQUENCE requestList = new SEQUENCE();
+        requestList.addElement(request);
+
+        TBSRequest tbsReq = new TBSRequest(null, null, requestList, null);
+        return createResponse(tbsReq, false);
     }
 
     /**
@@ -476,6 +562,9 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
      */
     @Override
     public void shutdown() {
+        if (mSigner != null) {
+            mSigner.shutdown();
+        }
     }
 
     /**
@@ -501,6 +590,10 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
     public void setDefaultAlgorithm(String algorithm)
             throws EBaseException {
         mSigningUnit.setDefaultAlgorithm(algorithm);
+
+        if (mResponseCache != null) {
+            mResponseCache.invalidate();
+        }
     }
 
     /**
@@ -509,6 +602,16 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
     @Override
     public BasicOCSPResponse sign(ResponseData rd)
             throws EBaseException {
+        return sign(rd, true);
+    }
+
+    /**
+     * Signs the Response Data.
+     *
+     * @param recordStats true to record the signed data in the statistics
+     */
+    BasicOCSPResponse sign(ResponseData rd, boolean recordStats)
+            throws EBaseException {
 
         OCSPEngine engine = OCSPEngine.getInstance();
 
@@ -518,7 +621,7 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
             String algname = mSigningUnit.getDefaultAlgorithm();
 
             byte rd_data[] = ASN1Util.encode(rd);
-            if (rd_data != null) {
+            if (rd_data != null && recordStats) {
                 mTotalData += rd_data.length;
             }
 
@@ -526,7 +629,7 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
             AlgorithmId.get(algname).encode(tmp);
 
             logger.debug("OCSPAuthority: adding signature");
-            byte[] signature = mSigningUnit.sign(rd_data, algname);
+            byte[] signature = mSigner.sign(rd_data, algname);
 
             tmp.putBitString(signature);
             // XXX - optional, put the certificate chains in also
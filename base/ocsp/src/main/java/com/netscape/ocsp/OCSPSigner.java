@@ -0,0 +1,230 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ocsp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dogtagpki.server.ocsp.OCSPSignerConfig;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.security.SigningUnit;
+import com.netscape.certsrv.util.IStatsSubsystem;
+import com.netscape.cmscore.util.Histogram;
+
+/**
+ * This class signs OCSP responses in batches.
+ *
+ * Responses to be signed are queued and picked up by a small pool of
+ * signer threads. Each thread waits up to a configurable micro-window
+ * for more responses after the first one, then signs the whole batch
+ * with the signing unit. If reusing signature contexts is enabled in the
+ * signing unit configuration, a signer thread will keep getting the same
+ * context from the pool and no new context is created per response.
+ *
+ * The queue depth and the batch sizes are published as histograms
+ * through the statistics subsystem.
+ */
+public class OCSPSigner {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(OCSPSigner.class);
+
+    static class Task {
+
+        final byte[] data;
+        final String algname;
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        Task(byte[] data, String algname) {
+            this.data = data;
+            this.algname = algname;
+        }
+    }
+
+    private SigningUnit signingUnit;
+
+    private int threads;
+    private long batchWindow;
+    private int maxBatchSize;
+
+    private LinkedBlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+    private List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    private Histogram queueDepths = new Histogram();
+    private Histogram batchSizes = new Histogram();
+    private AtomicLong lastStats = new AtomicLong();
+
+    public OCSPSigner(SigningUnit signingUnit) {
+        this.signingUnit = signingUnit;
+    }
+
+    public void init(OCSPSignerConfig config) throws EBaseException {
+
+        threads = config.getThreads();
+        batchWindow = TimeUnit.MICROSECONDS.toNanos(config.getBatchWindow());
+        maxBatchSize = config.getMaxBatchSize();
+
+        logger.info("OCSPSigner: threads: " + threads);
+        logger.info("OCSPSigner: batch window: " + config.getBatchWindow() + " us");
+        logger.info("OCSPSigner: max batch size: " + maxBatchSize);
+    }
+
+    public boolean isEnabled() {
+        return threads > 0;
+    }
+
+    public synchronized void start() {
+
+        if (running || !isEnabled()) {
+            return;
+        }
+
+        running = true;
+
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::run, "OCSPSigner-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(thread);
+        }
+    }
+
+    /**
+     * Signs the data with a signer thread. If the signer is not
+     * running the data is signed in the calling thread.
+     */
+    public byte[] sign(byte[] data, String algname) throws Exception {
+
+        if (!running) {
+            return signingUnit.sign(data, algname);
+        }
+
+        Task task = new Task(data, algname);
+        queue.add(task);
+
+        if (!running && queue.remove(task)) {
+            // stopped before the task was picked up
+            return signingUnit.sign(data, algname);
+        }
+
+        try {
+            return task.result.get();
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    void run() {
+
+        List<Task> batch = new ArrayList<>();
+
+        while (running) {
+            try {
+                Task first = queue.take();
+                queueDepths.record(queue.size() + 1);
+
+                batch.add(first);
+                long deadline = System.nanoTime() + batchWindow;
+
+                while (batch.size() < maxBatchSize) {
+
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    if (batch.size() >= maxBatchSize) {
+                        break;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+
+                    Task task = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (task == null) {
+                        break;
+                    }
+
+                    batch.add(task);
+                }
+
+                batchSizes.record(batch.size());
+                logger.debug("OCSPSigner: Signing " + batch.size() + " responses");
+
+                for (Task task : batch) {
+                    sign(task);
+                }
+
+                updateStats();
+
+            } catch (InterruptedException e) {
+                break;
+
+            } finally {
+                for (Task task : batch) {
+                    task.result.completeExceptionally(new EBaseException("OCSP signer stopped"));
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    void sign(Task task) {
+        try {
+            task.result.complete(signingUnit.sign(task.data, task.algname));
+        } catch (Exception e) {
+            task.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Publishes the signer statistics at most once per interval.
+     */
+    void updateStats() {
+
+        IStatsSubsystem statsSub = Histogram.getStatsSubsystem(lastStats, false);
+        if (statsSub == null) {
+            return;
+        }
+
+        statsSub.setGauge("ocsp.signer.queueDepth", queue.size());
+
+        queueDepths.setGauges(statsSub, "ocsp.signer.queueDepth", "");
+        batchSizes.setGauges(statsSub, "ocsp.signer.batchSize", "");
+    }
+
+    public long[] getQueueDepths() {
+        return queueDepths.getCounts();
+    }
+
+    public long[] getBatchSizes() {
+        return batchSizes.getCounts();
+    }
+
+    public synchronized void shutdown() {
+
+        running = false;
+
+        for (Thread thread : workers) {
+            thread.interrupt();
+        }
+        workers.clear();
+
+        Task task;
+        while ((task = queue.poll()) != null) {
+            task.result.completeExceptionally(new EBaseException("OCSP signer stopped"));
+        }
+    }
+}
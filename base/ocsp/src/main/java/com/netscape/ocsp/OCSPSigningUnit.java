@@ -31,6 +31,7 @@ import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.security.SigningUnitConfig;
 import com.netscape.certsrv.security.SigningUnit;
+import com.netscape.certsrv.security.TokenSignerPool;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmsutil.crypto.CryptoUtil;
 
@@ -93,6 +94,14 @@ public final class OCSPSigningUnit extends SigningUnit {
             mDefSigningAlgorithm = checkSigningAlgorithmFromName(mDefSigningAlgname);
             logger.debug("SigningUnit: signing algorithm: " + mDefSigningAlgorithm);
 
+            int signerPoolSize = config.getSignerPoolSize();
+            logger.debug("SigningUnit: signer pool size: " + signerPoolSize);
+
+            boolean reuseSigners = config.getReuseSigners();
+            logger.debug("SigningUnit: reuse signers: " + reuseSigners);
+
+            mSigners = new TokenSignerPool(mToken, mPrivk, signerPoolSize, reuseSigners);
+
             mInited = true;
 
         } catch (java.security.cert.CertificateException e) {
@@ -118,33 +127,18 @@ public final class OCSPSigningUnit extends SigningUnit {
     }
 
     /**
+     * Signs the data with a signature context from the pool.
+     * The context is returned into the pool after signing.
+     *
      * @param algname is expected to be one of JCA's algorithm names.
      */
     @Override
     public byte[] sign(byte[] data, String algname) throws Exception {
 
-        if (!mInited) {
-            throw new EBaseException("OCSPSigningUnit not initialized!");
-        }
-
-        // XXX for now do this mapping until James changes the names
-        // to match JCA names and provide a getAlgorithm method.
-        SignatureAlgorithm signAlg = mDefSigningAlgorithm;
-
-        if (algname != null) {
-            signAlg = checkSigningAlgorithmFromName(algname);
-        }
-
-        // XXX use a pool of signers based on alg ?
-        // XXX Map algor. name to id. hack: use hardcoded define for now.
-        logger.info("OCSPSigningUnit: Getting algorithm context for " + algname + " " + signAlg);
-        Signature signer = mToken.getSignatureContext(signAlg);
-
-        signer.initSign(mPrivk);
-        signer.update(data);
+        SignatureAlgorithm signAlg = getSigningAlgorithm(algname);
 
         logger.info("OCSPSigningUnit: Signing OCSP response");
-        return signer.sign();
+        return mSigners.sign(signAlg, data);
     }
 
     @Override
@@ -29,4 +29,11 @@ public class OCSPConfig extends ConfigStore {
     public SigningUnitConfig getSigningUnitConfig() {
         return getSubStore("signing", SigningUnitConfig.class);
     }
+
+    /**
+     * Returns ocsp.signer.* parameters.
+     */
+    public OCSPSignerConfig getSignerConfig() {
+        return getSubStore("signer", OCSPSignerConfig.class);
+    }
 }
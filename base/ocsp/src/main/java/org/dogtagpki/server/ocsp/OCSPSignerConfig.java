@@ -0,0 +1,57 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.ocsp;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cmscore.base.ConfigStorage;
+import com.netscape.cmscore.base.ConfigStore;
+import com.netscape.cmscore.base.SimpleProperties;
+
+/**
+ * Provides ocsp.signer.* parameters.
+ */
+public class OCSPSignerConfig extends ConfigStore {
+
+    public OCSPSignerConfig(ConfigStorage storage) {
+        super(storage);
+    }
+
+    public OCSPSignerConfig(String name, SimpleProperties source) {
+        super(name, source);
+    }
+
+    /**
+     * Returns the number of signer threads, or 0 to sign
+     * responses in the request threads.
+     */
+    public int getThreads() throws EBaseException {
+        return getInteger("threads", 0);
+    }
+
+    public void setThreads(int threads) {
+        putInteger("threads", threads);
+    }
+
+    /**
+     * Returns the time in microseconds to wait for
+     * more responses before signing a batch.
+     */
+    public int getBatchWindow() throws EBaseException {
+        return getInteger("batchWindow", 1000);
+    }
+
+    public void setBatchWindow(int batchWindow) {
+        putInteger("batchWindow", batchWindow);
+    }
+
+    public int getMaxBatchSize() throws EBaseException {
+        return getInteger("maxBatchSize", 64);
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        putInteger("maxBatchSize", maxBatchSize);
+    }
+}
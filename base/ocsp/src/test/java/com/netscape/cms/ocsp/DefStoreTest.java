@@ -0,0 +1,200 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLNumberExtension;
+import org.mozilla.jss.netscape.security.x509.CRLReasonExtension;
+import org.mozilla.jss.netscape.security.x509.DeltaCRLIndicatorExtension;
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.Modification;
+import com.netscape.certsrv.dbs.ModificationSet;
+import com.netscape.cmscore.dbs.CRLIssuingPointRecord;
+
+public class DefStoreTest {
+
+    static final String ISSUER = "CN=CA Signing Certificate,O=EXAMPLE";
+    static final Date REVOCATION_DATE = new Date(1600000000000L);
+
+    /**
+     * Default store that keeps the CRL issuing point in memory.
+     */
+    static class DefStoreStub extends DefStore {
+
+        CRLIssuingPointRecord record = new CRLIssuingPointRecord();
+
+        @Override
+        public CRLIssuingPointRecord readCRLIssuingPoint(String name) {
+            return record;
+        }
+
+        @Override
+        public synchronized void modifyCRLIssuingPointRecord(String name, ModificationSet mods)
+                throws EBaseException {
+
+            Enumeration<Modification> e = mods.getModifications();
+            while (e.hasMoreElements()) {
+                Modification mod = e.nextElement();
+                record.set(mod.getName(), mod.getValue());
+            }
+        }
+    }
+
+    DefStoreStub store;
+
+    @Before
+    public void setUp() {
+        store = new DefStoreStub();
+    }
+
+    RevokedCertificate createEntry(long serialNumber, boolean removed) throws Exception {
+
+        if (!removed) {
+            return new RevokedCertImpl(BigInteger.valueOf(serialNumber), REVOCATION_DATE);
+        }
+
+        CRLExtensions exts = new CRLExtensions();
+        exts.set(CRLReasonExtension.NAME, new CRLReasonExtension(RevocationReason.REMOVE_FROM_CRL));
+
+        return new RevokedCertImpl(BigInteger.valueOf(serialNumber), REVOCATION_DATE, exts);
+    }
+
+    X509CRLImpl createCRL(long crlNumber, Long baseCRLNumber, RevokedCertificate... entries) throws Exception {
+
+        CRLExtensions exts = new CRLExtensions();
+        exts.set(CRLNumberExtension.NAME,
+                new CRLNumberExtension(Boolean.FALSE, BigInteger.valueOf(crlNumber)));
+
+        if (baseCRLNumber != null) {
+            exts.set(DeltaCRLIndicatorExtension.NAME,
+                    new DeltaCRLIndicatorExtension(Boolean.TRUE, BigInteger.valueOf(baseCRLNumber)));
+        }
+
+        Hashtable<BigInteger, RevokedCertificate> revokedCerts = new Hashtable<>();
+        for (RevokedCertificate entry : entries) {
+            revokedCerts.put(entry.getSerialNumber(), entry);
+        }
+
+        // distinct update times for each CRL number
+        Date thisUpdate = new Date(1700000000000L + crlNumber * 1000);
+        Date nextUpdate = new Date(thisUpdate.getTime() + 86400000L);
+
+        return new X509CRLImpl(
+                new X500Name(ISSUER),
+                AlgorithmId.get("SHA256withRSA"),
+                thisUpdate,
+                nextUpdate,
+                revokedCerts,
+                exts);
+    }
+
+    Set<BigInteger> getRevokedSerialNumbers() {
+        return store.record.getCRLCache().keySet();
+    }
+
+    Set<BigInteger> serialNumbers(long... serialNumbers) {
+        Set<BigInteger> set = new HashSet<>();
+        for (long serialNumber : serialNumbers) {
+            set.add(BigInteger.valueOf(serialNumber));
+        }
+        return set;
+    }
+
+    @Test
+    public void testDeltaCRL() throws Exception {
+
+        store.updateCRL(createCRL(1, null, createEntry(1, false), createEntry(2, false)));
+
+        // cert 3 revoked, cert 2 taken off hold
+        assertTrue(store.updateDeltaCRL(createCRL(2, 1L, createEntry(3, false), createEntry(2, true))));
+
+        assertEquals(BigInteger.valueOf(2), store.record.getCRLNumber());
+        assertEquals(serialNumbers(1, 3), getRevokedSerialNumbers());
+    }
+
+    @Test
+    public void testFullCRLRemovesExpiredEntries() throws Exception {
+
+        store.updateCRL(createCRL(1, null, createEntry(1, false), createEntry(2, false)));
+        assertTrue(store.updateDeltaCRL(createCRL(2, 1L, createEntry(3, false))));
+
+        // cert 1 has expired so it is not included in the full CRL
+        // with the same number as the applied delta CRL
+        store.updateCRL(createCRL(2, null, createEntry(2, false), createEntry(3, false)));
+
+        assertEquals(BigInteger.valueOf(2), store.record.getCRLNumber());
+        assertEquals(Long.valueOf(2), store.record.getCRLSize());
+        assertEquals(serialNumbers(2, 3), getRevokedSerialNumbers());
+
+        // next delta CRL is applied to the replaced CRL
+        assertTrue(store.updateDeltaCRL(createCRL(3, 2L, createEntry(4, false))));
+        assertEquals(serialNumbers(2, 3, 4), getRevokedSerialNumbers());
+    }
+
+    @Test
+    public void testFilterRebuiltAfterCRLUpdate() throws Exception {
+
+        store.updateCRL(createCRL(1, null, createEntry(1, false), createEntry(2, false)));
+
+        RevokedSerialFilter filter = store.createRevokedSerialFilter(store.record, null);
+        assertTrue(filter.mightContain(BigInteger.valueOf(1)));
+        assertTrue(filter.mightContain(BigInteger.valueOf(2)));
+
+        // CRL issuing point looked up with the filter
+        store.mCacheCRLIssuingPoints.put("issuer", new CRLIPContainer(store.record, null, null, filter));
+
+        assertTrue(store.updateDeltaCRL(createCRL(2, 1L, createEntry(3, false))));
+
+        // the filter of the previous CRL is discarded
+        assertTrue(store.mCacheCRLIssuingPoints.isEmpty());
+
+        // the new filter includes the entries of the delta CRL
+        filter = store.createRevokedSerialFilter(store.record, null);
+        for (BigInteger serialNumber : getRevokedSerialNumbers()) {
+            assertTrue(filter.mightContain(serialNumber));
+        }
+        assertTrue(filter.mightContain(BigInteger.valueOf(3)));
+
+        store.mCacheCRLIssuingPoints.put("issuer", new CRLIPContainer(store.record, null, null, filter));
+
+        store.updateCRL(createCRL(3, null, createEntry(3, false), createEntry(4, false)));
+        assertTrue(store.mCacheCRLIssuingPoints.isEmpty());
+
+        filter = store.createRevokedSerialFilter(store.record, null);
+        assertTrue(filter.mightContain(BigInteger.valueOf(3)));
+        assertTrue(filter.mightContain(BigInteger.valueOf(4)));
+    }
+
+    @Test
+    public void testMissedCRL() throws Exception {
+
+        store.updateCRL(createCRL(1, null, createEntry(1, false)));
+
+        // delta CRL against a base CRL not received by the OCSP
+        assertFalse(store.updateDeltaCRL(createCRL(3, 2L, createEntry(2, false))));
+        assertEquals(BigInteger.valueOf(1), store.record.getCRLNumber());
+    }
+}
@@ -0,0 +1,189 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mozilla.jss.asn1.INTEGER;
+import org.mozilla.jss.asn1.OBJECT_IDENTIFIER;
+import org.mozilla.jss.asn1.OCTET_STRING;
+import org.mozilla.jss.pkix.primitive.AlgorithmIdentifier;
+
+import com.netscape.cmsutil.ocsp.CertID;
+import com.netscape.cmsutil.ocsp.OCSPResponse;
+import com.netscape.cmsutil.ocsp.OCSPResponseStatus;
+import com.netscape.cmsutil.ocsp.Request;
+import com.netscape.cmsutil.ocsp.ResponseBytes;
+
+public class OCSPResponseCacheTest {
+
+    static final OBJECT_IDENTIFIER SHA1_OID = new OBJECT_IDENTIFIER("1.3.14.3.2.26");
+
+    OCSPResponseCache cache;
+
+    @After
+    public void tearDown() {
+        if (cache != null) {
+            cache.shutdown();
+        }
+    }
+
+    Request createRequest(long serialNumber) {
+
+        CertID certID = new CertID(
+                new AlgorithmIdentifier(SHA1_OID),
+                new OCTET_STRING(new byte[20]),
+                new OCTET_STRING(new byte[20]),
+                new INTEGER(serialNumber));
+
+        return new Request(certID, null);
+    }
+
+    OCSPResponse createResponse(long serialNumber) {
+        return new OCSPResponse(
+                OCSPResponseStatus.SUCCESSFUL,
+                new ResponseBytes(ResponseBytes.OCSP_BASIC,
+                        new OCTET_STRING(new INTEGER(serialNumber).toByteArray())));
+    }
+
+    OCSPResponse put(long serialNumber) {
+        OCSPResponse response = createResponse(serialNumber);
+        cache.put(cache.getGeneration(), createRequest(serialNumber), response);
+        return response;
+    }
+
+    OCSPResponse get(long serialNumber) {
+        return cache.get(createRequest(serialNumber).getCertID());
+    }
+
+    @Test
+    public void testGet() throws Exception {
+
+        cache = new OCSPResponseCache(10, 0);
+
+        OCSPResponse response = put(1);
+
+        assertSame(response, get(1));
+        assertNull(get(2));
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+
+        cache = new OCSPResponseCache(4, 0);
+
+        put(1);
+        put(2);
+        put(3);
+        put(4);
+        assertEquals(4, cache.size());
+
+        // a requested response is kept
+        assertNotNull(get(1));
+
+        // the least recently requested responses are evicted
+        put(5);
+        put(6);
+
+        assertNotNull(get(1));
+        assertNull(get(2));
+        assertNull(get(3));
+        assertNull(get(4));
+        assertNotNull(get(5));
+        assertNotNull(get(6));
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+
+        cache = new OCSPResponseCache(10, 0);
+
+        for (int i = 1; i <= 100; i++) {
+            OCSPResponse response = put(i);
+
+            // new responses are still added when the cache is full
+            assertSame(response, get(i));
+            assertTrue(cache.size() <= 10);
+        }
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+
+        cache = new OCSPResponseCache(10, 0);
+
+        OCSPResponseCache.Generation generation = cache.getGeneration();
+        put(1);
+
+        cache.invalidate();
+        assertNull(get(1));
+
+        // a response built from the previous revocation information is not used
+        cache.put(generation, createRequest(2), createResponse(2));
+        assertNull(get(2));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPreGenerate() throws Exception {
+
+        cache = new OCSPResponseCache(10, 2);
+
+        List<Long> generated = new CopyOnWriteArrayList<>();
+        cache.setResponseGenerator(request -> {
+            long serialNumber = request.getCertID().getSerialNumber().longValue();
+            generated.add(serialNumber);
+            return createResponse(serialNumber);
+        });
+
+        put(1);
+        put(2);
+        put(3);
+        put(4);
+
+        get(1);
+        get(1);
+        get(1);
+        get(2);
+        get(2);
+        get(3);
+
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+
+        cache.invalidate();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (cache.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // only the most requested responses are generated again
+        assertEquals(List.of(1L, 2L), generated);
+        assertEquals(2, cache.size());
+
+        // the generated responses are not counted as requests
+        assertEquals(hits, cache.getHits());
+        assertEquals(misses, cache.getMisses());
+
+        assertNotNull(get(1));
+        assertNotNull(get(2));
+        assertNull(get(3));
+    }
+}
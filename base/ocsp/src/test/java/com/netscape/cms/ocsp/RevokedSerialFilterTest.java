@@ -0,0 +1,134 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class RevokedSerialFilterTest {
+
+    // fixed seed so the results are reproducible
+    Random random = new Random(1234);
+
+    Set<BigInteger> createSerialNumbers(int count, int bits) {
+        Set<BigInteger> serialNumbers = new HashSet<>();
+        while (serialNumbers.size() < count) {
+            serialNumbers.add(new BigInteger(bits, random));
+        }
+        return serialNumbers;
+    }
+
+    void assertContainsAll(RevokedSerialFilter filter, Set<BigInteger> serialNumbers) {
+        for (BigInteger serialNumber : serialNumbers) {
+            assertTrue("Missing serial number 0x" + serialNumber.toString(16),
+                    filter.mightContain(serialNumber));
+        }
+    }
+
+    @Test
+    public void testRandomSerialNumbers() throws Exception {
+
+        Set<BigInteger> serialNumbers = createSerialNumbers(10000, 128);
+        RevokedSerialFilter filter = new RevokedSerialFilter(serialNumbers, 10);
+
+        assertContainsAll(filter, serialNumbers);
+    }
+
+    @Test
+    public void testSequentialSerialNumbers() throws Exception {
+
+        Set<BigInteger> serialNumbers = new HashSet<>();
+        for (long i = 1; i <= 10000; i++) {
+            serialNumbers.add(BigInteger.valueOf(i));
+        }
+
+        RevokedSerialFilter filter = new RevokedSerialFilter(serialNumbers, 10);
+
+        assertContainsAll(filter, serialNumbers);
+    }
+
+    @Test
+    public void testSameLowBits() throws Exception {
+
+        // serial numbers that differ only above the lowest 64 bits
+        Set<BigInteger> serialNumbers = new HashSet<>();
+        for (int i = 1; i <= 1000; i++) {
+            serialNumbers.add(BigInteger.valueOf(i).shiftLeft(64).add(BigInteger.ONE));
+        }
+
+        RevokedSerialFilter filter = new RevokedSerialFilter(serialNumbers, 10);
+
+        assertContainsAll(filter, serialNumbers);
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws Exception {
+
+        Set<BigInteger> serialNumbers = createSerialNumbers(10000, 128);
+        RevokedSerialFilter filter = new RevokedSerialFilter(serialNumbers, 10);
+
+        int queries = 100000;
+        int falsePositives = 0;
+
+        for (BigInteger serialNumber : createSerialNumbers(queries, 127)) {
+            if (!serialNumbers.contains(serialNumber) && filter.mightContain(serialNumber)) {
+                falsePositives++;
+            }
+        }
+
+        // about 1% with 10 bits per entry
+        assertTrue("False positive rate: " + falsePositives * 100.0 / queries + "%",
+                falsePositives < queries * 3 / 100);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+
+        RevokedSerialFilter filter = new RevokedSerialFilter(new HashSet<>(), 10);
+
+        for (BigInteger serialNumber : createSerialNumbers(1000, 128)) {
+            assertFalse(filter.mightContain(serialNumber));
+        }
+    }
+
+    @Test
+    public void testSize() throws Exception {
+
+        RevokedSerialFilter filter = new RevokedSerialFilter(createSerialNumbers(1000, 128), 10);
+
+        // 10000 bits rounded up to 157 longs
+        assertEquals(157 * Long.BYTES, filter.getSize());
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+
+        List<BigInteger> serialNumbers = new ArrayList<>(createSerialNumbers(2000, 128));
+
+        Set<BigInteger> oldSerialNumbers = new HashSet<>(serialNumbers.subList(0, 1000));
+        RevokedSerialFilter oldFilter = new RevokedSerialFilter(oldSerialNumbers, 10);
+        assertContainsAll(oldFilter, oldSerialNumbers);
+
+        // new CRL with half of the old entries and new entries
+        Set<BigInteger> newSerialNumbers = new HashSet<>(serialNumbers.subList(500, 2000));
+        RevokedSerialFilter newFilter = new RevokedSerialFilter(newSerialNumbers, 10);
+
+        assertContainsAll(newFilter, newSerialNumbers);
+
+        // the filter is sized for the new number of entries
+        assertTrue(newFilter.getSize() > oldFilter.getSize());
+    }
+}
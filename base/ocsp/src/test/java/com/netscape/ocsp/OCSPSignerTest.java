@@ -0,0 +1,239 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dogtagpki.server.ocsp.OCSPSignerConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netscape.certsrv.security.SignerPool;
+import com.netscape.certsrv.security.SigningUnit;
+import com.netscape.cmscore.base.SimpleProperties;
+
+public class OCSPSignerTest {
+
+    /**
+     * Signature context that records the signing threads.
+     */
+    static class SignerStub {
+
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        byte[] sign(byte[] data) throws Exception {
+
+            String value = new String(data);
+            if (value.equals("fail")) {
+                throw new Exception("Signing failed");
+            }
+
+            threads.add(Thread.currentThread().getName());
+            return ("signed " + value).getBytes();
+        }
+    }
+
+    static class SignerPoolStub extends SignerPool<String, SignerStub> {
+
+        final List<SignerStub> created = new ArrayList<>();
+        boolean reusable = true;
+
+        SignerPoolStub() {
+            super(16);
+        }
+
+        @Override
+        protected synchronized SignerStub create(String alg) {
+            SignerStub signer = new SignerStub();
+            created.add(signer);
+            return signer;
+        }
+
+        @Override
+        protected boolean probe(String alg) {
+            return reusable;
+        }
+
+        @Override
+        protected byte[] signWith(SignerStub signer, byte[] data) throws Exception {
+            return signer.sign(data);
+        }
+
+        synchronized int getCreated() {
+            return created.size();
+        }
+    }
+
+    /**
+     * Signing unit that signs with the contexts from the pool
+     * like OCSPSigningUnit.
+     */
+    static class SigningUnitStub extends SigningUnit {
+
+        SignerPoolStub signers = new SignerPoolStub();
+
+        @Override
+        public byte[] sign(byte[] data, String algname) throws Exception {
+            return signers.sign(algname, data);
+        }
+
+        @Override
+        public boolean verify(byte[] data, byte[] signature, String algname) {
+            return false;
+        }
+
+        @Override
+        public void updateConfig(String nickname, String tokenname) {
+        }
+    }
+
+    SigningUnitStub signingUnit;
+    OCSPSigner signer;
+
+    @Before
+    public void setUp() {
+        signingUnit = new SigningUnitStub();
+        signer = new OCSPSigner(signingUnit);
+    }
+
+    @After
+    public void tearDown() {
+        signer.shutdown();
+    }
+
+    void init(int threads) throws Exception {
+
+        OCSPSignerConfig config = new OCSPSignerConfig("ocsp.signer", new SimpleProperties());
+        config.setThreads(threads);
+        config.setBatchWindow(100);
+        config.setMaxBatchSize(8);
+
+        signer.init(config);
+        signer.start();
+    }
+
+    /**
+     * Signs the responses concurrently from multiple request threads.
+     */
+    void signConcurrently(int clients, int responses) throws Exception {
+
+        AtomicInteger errors = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < clients; i++) {
+            int client = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < responses; j++) {
+                        String data = client + "-" + j;
+                        byte[] signature = signer.sign(data.getBytes(), "SHA256withRSA");
+                        if (!("signed " + data).equals(new String(signature))) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, errors.get());
+    }
+
+    @Test
+    public void testSignWithoutThreads() throws Exception {
+
+        init(0);
+
+        byte[] signature = signer.sign("data".getBytes(), "SHA256withRSA");
+        assertEquals("signed data", new String(signature));
+
+        // signed in the calling thread
+        SignerStub context = signingUnit.signers.created.get(0);
+        assertEquals(Set.of(Thread.currentThread().getName()), context.threads);
+    }
+
+    @Test
+    public void testContextReuse() throws Exception {
+
+        init(2);
+
+        signConcurrently(8, 50);
+
+        // each signer thread keeps reusing a context from the pool
+        assertTrue(signingUnit.signers.getCreated() <= 2);
+
+        for (SignerStub context : signingUnit.signers.created) {
+            for (String thread : context.threads) {
+                assertTrue(thread.startsWith("OCSPSigner-"));
+            }
+        }
+    }
+
+    @Test
+    public void testContextNotReusable() throws Exception {
+
+        signingUnit.signers.reusable = false;
+        init(2);
+
+        signConcurrently(4, 25);
+
+        // a new context is created for each response
+        assertEquals(100, signingUnit.signers.getCreated());
+    }
+
+    @Test
+    public void testSignFailure() throws Exception {
+
+        init(1);
+
+        signer.sign("data".getBytes(), "SHA256withRSA");
+        assertEquals(1, signingUnit.signers.getIdleSigners("SHA256withRSA"));
+
+        try {
+            signer.sign("fail".getBytes(), "SHA256withRSA");
+            fail("Signing should fail");
+        } catch (Exception e) {
+            assertEquals("Signing failed", e.getMessage());
+        }
+
+        // the failed context is not returned into the pool
+        assertEquals(0, signingUnit.signers.getIdleSigners("SHA256withRSA"));
+
+        byte[] signature = signer.sign("data".getBytes(), "SHA256withRSA");
+        assertEquals("signed data", new String(signature));
+        assertEquals(2, signingUnit.signers.getCreated());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+
+        init(2);
+        signer.shutdown();
+
+        // signed in the calling thread after shutdown
+        byte[] signature = signer.sign("data".getBytes(), "SHA256withRSA");
+        assertEquals("signed data", new String(signature));
+
+        SignerStub context = signingUnit.signers.created.get(0);
+        assertEquals(Set.of(Thread.currentThread().getName()), context.threads);
+    }
+}
@@ -0,0 +1,33 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+
+// Writes the gauges returned by the getStats servlet into a table.
+// The recordCount parameter is the index of the last record.
+function writeGauges(recordSet, recordCount) {
+
+    document.writeln('<table border="0" cellspacing="2" cellpadding="2" width="100%">');
+    document.writeln('<tr>');
+    document.writeln('<td width="40%">');
+    document.writeln('<font size=-1 face="PrimaSans BT, Verdana, sans-serif">');
+    document.writeln('<b>Gauge</b></font></td>');
+    document.writeln('<td align="left">');
+    document.writeln('<font size=-1 face="PrimaSans BT, Verdana, sans-serif">');
+    document.writeln('<b>Value</b></font></td>');
+    document.writeln('</tr>');
+    for (var i = 0; i <= recordCount; i++) {
+        if (recordSet[i].gauge == null) {
+            continue;
+        }
+        document.writeln('<tr bgcolor="#cccccc"><td>');
+        document.writeln('<font size=-1 face="PrimaSans BT, Verdana, sans-serif">');
+        document.writeln(recordSet[i].gauge + '</font></td>');
+        document.writeln('<td>');
+        document.writeln('<font size=-1 face="PrimaSans BT, Verdana, sans-serif">');
+        document.writeln(recordSet[i].value + '</font></td>');
+        document.writeln('</tr>');
+    }
+    document.writeln('</table><br>');
+}
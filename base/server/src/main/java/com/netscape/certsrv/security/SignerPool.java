@@ -0,0 +1,185 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * This class provides a pool of signature contexts for each algorithm.
+ *
+ * A context is returned into the pool after a successful signing
+ * operation only if the contexts of that algorithm can be reused,
+ * which is checked once per algorithm with probe(). Otherwise a new
+ * context is created for each signing operation.
+ *
+ * A context that failed to sign is not returned into the pool since
+ * it might be in an unknown state.
+ *
+ * The most recently returned context is reused first, so a thread
+ * that signs repeatedly will keep getting the same context.
+ *
+ * @param <A> signing algorithm
+ * @param <S> signature context
+ */
+public abstract class SignerPool<A, S> {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SignerPool.class);
+
+    private int poolSize;
+
+    // idle signature contexts for each algorithm
+    private Map<A, BlockingDeque<S>> signers = new ConcurrentHashMap<>();
+
+    // whether the signature contexts can be reused after signing
+    private Map<A, Boolean> reusable = new ConcurrentHashMap<>();
+
+    /**
+     * @param poolSize maximum number of idle contexts per algorithm,
+     *        or 0 to create a new context for each signing operation
+     */
+    public SignerPool(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Creates a new signature context initialized with the signing key.
+     */
+    protected abstract S create(A alg) throws Exception;
+
+    /**
+     * Checks whether a signature context returns to the initialized
+     * state after signing (as required by JCA), so it can be reused.
+     */
+    protected abstract boolean probe(A alg) throws Exception;
+
+    /**
+     * Signs the data with the signature context.
+     */
+    protected abstract byte[] signWith(S signer, byte[] data) throws Exception;
+
+    /**
+     * Returns whether the contexts of the algorithm can be reused.
+     * The result is checked once and cached.
+     */
+    public boolean isReusable(A alg) {
+        return reusable.computeIfAbsent(alg, a -> {
+            try {
+                boolean result = probe(a);
+                logger.info("SignerPool: Reusable " + a + " signature context: " + result);
+                return result;
+
+            } catch (Exception e) {
+                logger.warn("SignerPool: Unable to reuse " + a + " signature context: " + e.getMessage(), e);
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Returns an idle signature context, or creates a new one.
+     * The context should be returned with release() after a
+     * successful signing operation.
+     */
+    public S get(A alg) throws Exception {
+
+        BlockingDeque<S> deque = signers.get(alg);
+
+        if (deque != null) {
+            S signer = deque.pollFirst();
+            if (signer != null) {
+                return signer;
+            }
+        }
+
+        return create(alg);
+    }
+
+    /**
+     * Returns the signature context into the pool if it can be reused.
+     * A context that failed to sign should not be returned since it
+     * might be in an unknown state.
+     */
+    public void release(A alg, S signer) {
+
+        if (poolSize <= 0 || !isReusable(alg)) {
+            return;
+        }
+
+        BlockingDeque<S> deque = signers.computeIfAbsent(
+                alg,
+                a -> new LinkedBlockingDeque<>(poolSize));
+
+        // discard the context if the pool is full
+        deque.offerFirst(signer);
+    }
+
+    /**
+     * Signs the data with a context from the pool.
+     */
+    public byte[] sign(A alg, byte[] data) throws Exception {
+
+        S signer = get(alg);
+        byte[] signature = signWith(signer, data);
+
+        release(alg, signer);
+        return signature;
+    }
+
+    /**
+     * Signs multiple data with the same context if the contexts
+     * of the algorithm can be reused, otherwise with a new context
+     * for each data.
+     *
+     * @return signatures in the same order as the data
+     */
+    public List<byte[]> signAll(A alg, List<byte[]> data) throws Exception {
+
+        boolean reusable = isReusable(alg);
+
+        List<byte[]> signatures = new ArrayList<>(data.size());
+        S signer = null;
+
+        for (byte[] d : data) {
+
+            if (signer == null || !reusable) {
+                signer = get(alg);
+            }
+
+            signatures.add(signWith(signer, d));
+        }
+
+        if (signer != null) {
+            release(alg, signer);
+        }
+
+        return signatures;
+    }
+
+    /**
+     * Returns the number of idle contexts of the algorithm.
+     */
+    public int getIdleSigners(A alg) {
+        BlockingDeque<S> deque = signers.get(alg);
+        return deque == null ? 0 : deque.size();
+    }
+
+    /**
+     * Discards the idle contexts and the reusability checks.
+     */
+    public void clear() {
+        signers.clear();
+        reusable.clear();
+    }
+}
@@ -65,6 +65,9 @@ public abstract class SigningUnit {
     protected String mDefSigningAlgname;
     protected SignatureAlgorithm mDefSigningAlgorithm;
 
+    // signature contexts initialized with the signing key
+    protected SignerPool<SignatureAlgorithm, Signature> mSigners;
+
     /**
      * Retrieves the nickname of the signing certificate.
      */
@@ -130,6 +133,36 @@ public abstract class SigningUnit {
         return certChain;
     }
 
+    /**
+     * Returns the signature contexts of this unit.
+     */
+    public SignerPool<SignatureAlgorithm, Signature> getSigners() {
+        return mSigners;
+    }
+
+    /**
+     * Returns the signing algorithm for the algorithm name.
+     *
+     * @param algname JCA algorithm name, or null for the default algorithm
+     * @return JSS signing algorithm
+     * @exception EBaseException if the unit is not initialized or
+     *            the algorithm is not supported
+     */
+    public SignatureAlgorithm getSigningAlgorithm(String algname) throws EBaseException {
+
+        if (!mInited) {
+            throw new EBaseException(getClass().getSimpleName() + " not initialized");
+        }
+
+        // XXX for now do this mapping until James changes the names
+        // to match JCA names and provide a getAlgorithm method.
+        if (algname == null) {
+            return mDefSigningAlgorithm;
+        }
+
+        return checkSigningAlgorithmFromName(algname);
+    }
+
     /**
      * Signs the given data in specific algorithm.
      *
@@ -89,6 +89,24 @@ public class SigningUnitConfig extends ConfigStore {
         return fullName;
     }
 
+    /**
+     * Returns the maximum number of idle signature contexts
+     * kept for each algorithm (0 to disable).
+     */
+    public int getSignerPoolSize() throws EBaseException {
+        return getInteger("signerPoolSize", 16);
+    }
+
+    /**
+     * Returns whether the signature contexts can be reused after
+     * signing. This should only be enabled if the token returns the
+     * contexts to the initialized state after signing (as required
+     * by JCA). By default a new context is used for each signature.
+     */
+    public boolean getReuseSigners() throws EBaseException {
+        return getBoolean("reuseSigners", false);
+    }
+
     public boolean getTestSignatureFailure() throws EBaseException {
         return getBoolean("testSignatureFailure", false);
     }
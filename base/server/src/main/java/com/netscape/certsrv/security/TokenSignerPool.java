@@ -0,0 +1,62 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.security;
+
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.PrivateKey;
+import org.mozilla.jss.crypto.Signature;
+import org.mozilla.jss.crypto.SignatureAlgorithm;
+
+/**
+ * This class provides a pool of JSS signature contexts initialized
+ * with a signing key. Each context uses its own token session, so
+ * multiple threads can sign concurrently up to the pool size.
+ *
+ * JSS does not report whether a token returns a context to the
+ * initialized state after signing, and testing it would require
+ * signing arbitrary data with the signing key. So the contexts are
+ * reused only if it is enabled in the signing unit configuration.
+ */
+public class TokenSignerPool extends SignerPool<SignatureAlgorithm, Signature> {
+
+    private CryptoToken token;
+    private PrivateKey privateKey;
+    private boolean reusable;
+
+    public TokenSignerPool(
+            CryptoToken token,
+            PrivateKey privateKey,
+            int poolSize,
+            boolean reusable) {
+
+        super(poolSize);
+
+        this.token = token;
+        this.privateKey = privateKey;
+        this.reusable = reusable;
+    }
+
+    @Override
+    protected Signature create(SignatureAlgorithm alg) throws Exception {
+
+        logger.info("TokenSignerPool: Getting algorithm context for " + alg);
+        Signature signer = token.getSignatureContext(alg);
+
+        signer.initSign(privateKey);
+        return signer;
+    }
+
+    @Override
+    protected boolean probe(SignatureAlgorithm alg) {
+        return reusable;
+    }
+
+    @Override
+    protected byte[] signWith(Signature signer, byte[] data) throws Exception {
+        signer.update(data);
+        return signer.sign();
+    }
+}
@@ -18,6 +18,7 @@
 package com.netscape.certsrv.util;
 
 import java.util.Date;
+import java.util.Map;
 
 import com.netscape.certsrv.base.ISubsystem;
 
@@ -59,4 +60,15 @@ public interface IStatsSubsystem extends ISubsystem {
      * Resets all internal counters.
      */
     public StatsEvent getMainStatsEvent();
+
+    /**
+     * Sets the current value of a gauge (e.g. a cache size).
+     * Gauges are not affected by resetCounters().
+     */
+    public void setGauge(String id, long value);
+
+    /**
+     * Returns the current values of the gauges sorted by name.
+     */
+    public Map<String, Long> getGauges();
 }
@@ -17,10 +17,17 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.authorization;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.dogtagpki.server.authentication.AuthToken;
 import org.dogtagpki.server.authorization.AuthorizationConfig;
@@ -39,6 +46,7 @@ import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.apps.EngineConfig;
 import com.netscape.cmscore.base.ConfigStore;
+import com.netscape.cmscore.usrgrp.UGSubsystem;
 
 /**
  * An abstract class represents an authorization manager that governs the
@@ -77,6 +85,9 @@ public abstract class AAclAuthz implements IAuthzManager {
 
     protected static final String ACLS_ATTR = "aclResources";
 
+    public static final int DEFAULT_DECISION_CACHE_SIZE = 10000;
+    public static final int DEFAULT_DECISION_CACHE_TIMEOUT = 10;
+
     /* name of this authorization manager instance */
     private String mName = null;
 
@@ -88,6 +99,14 @@ public abstract class AAclAuthz implements IAuthzManager {
     private Hashtable<String, ACL> mACLs = new Hashtable<>();
     private Hashtable<String, IAccessEvaluator> mEvaluators = new Hashtable<>();
 
+    /* compiled ACLs, null if the ACLs or evaluators have changed */
+    private volatile Snapshot mSnapshot = null;
+
+    private int mDecisionCacheSize = DEFAULT_DECISION_CACHE_SIZE;
+
+    /* lifetime of cached decisions in nanoseconds */
+    long mDecisionCacheTimeout = TimeUnit.SECONDS.toNanos(DEFAULT_DECISION_CACHE_TIMEOUT);
+
     /* Vector of extendedPluginInfo strings */
     protected static Vector<String> mExtendedPluginInfo = null;
 
@@ -119,6 +138,15 @@ public abstract class AAclAuthz implements IAuthzManager {
         CMSEngine engine = CMS.getCMSEngine();
         EngineConfig mainConfig = engine.getConfig();
 
+        AuthorizationConfig authzConfig = mainConfig.getAuthorizationConfig();
+
+        mDecisionCacheSize = authzConfig.getDecisionCacheSize();
+        logger.debug("AAclAuthz: decision cache size: " + mDecisionCacheSize);
+
+        int decisionCacheTimeout = authzConfig.getDecisionCacheTimeout();
+        logger.debug("AAclAuthz: decision cache timeout: " + decisionCacheTimeout + " s");
+        mDecisionCacheTimeout = TimeUnit.SECONDS.toNanos(decisionCacheTimeout);
+
         ConfigStore evalConfig = mainConfig.getSubStore(PROP_EVAL, ConfigStore.class);
         ConfigStore i = evalConfig.getSubStore(PROP_IMPL, ConfigStore.class);
 
@@ -191,12 +219,15 @@ public abstract class AAclAuthz implements IAuthzManager {
         ACL acl = ACL.parseACL(resACLs);
 
         if (acl != null) {
-            ACL curACL = mACLs.get(acl.getName());
-            if (curACL == null) {
-                mACLs.put(acl.getName(), acl);
-            } else {
-                curACL.merge(acl);
+            synchronized (mACLs) {
+                ACL curACL = mACLs.get(acl.getName());
+                if (curACL == null) {
+                    mACLs.put(acl.getName(), acl);
+                } else {
+                    curACL.merge(acl);
+                }
             }
+            invalidateACLs();
         } else {
             logger.warn("AAclAuthz: parseACL failed");
         }
@@ -252,9 +283,251 @@ public abstract class AAclAuthz implements IAuthzManager {
     @Override
     public void registerEvaluator(String type, IAccessEvaluator evaluator) {
         mEvaluators.put(type, evaluator);
+        invalidateACLs();
         logger.info("AAclAuthz: " + type + " evaluator registered");
     }
 
+    /**
+     * Discards the compiled ACLs and the cached decisions.
+     * They will be compiled again on the next check.
+     */
+    public synchronized void invalidateACLs() {
+        mSnapshot = null;
+    }
+
+    Snapshot getSnapshot() {
+
+        Snapshot snapshot = mSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        synchronized (this) {
+            snapshot = mSnapshot;
+            if (snapshot == null) {
+                snapshot = new Snapshot(getOrder());
+                mSnapshot = snapshot;
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Compiled allow and deny expressions for a resource
+     * and an operation, including the parent nodes.
+     */
+    static class Rules {
+
+        final List<ACLExpression> allow = new ArrayList<>();
+        final List<ACLExpression> deny = new ArrayList<>();
+        boolean cacheable = true;
+
+        void add(ACLEntry.Type type, ACLExpression expression) {
+            if (type == ACLEntry.Type.ALLOW) {
+                allow.add(expression);
+            } else {
+                deny.add(expression);
+            }
+            cacheable &= expression.isCacheable();
+        }
+    }
+
+    /**
+     * Key of a cached decision. The groups are included since they
+     * might have been provided by the authentication manager.
+     */
+    static class DecisionKey {
+
+        final String uid;
+        final String userID;
+        final String groups;
+        final String resource;
+        final String operation;
+        final int hashCode;
+
+        DecisionKey(AuthToken authToken, String resource, String operation) {
+            this.uid = authToken.getInString(AuthToken.UID);
+            this.userID = authToken.getInString(AuthToken.USER_ID);
+
+            String[] groups = authToken.getInStringArray(AuthToken.GROUPS);
+            this.groups = groups == null ? null : String.join("\n", groups);
+
+            this.resource = resource;
+            this.operation = operation;
+            this.hashCode = Objects.hash(uid, userID, this.groups, resource, operation);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey other = (DecisionKey) obj;
+            return hashCode == other.hashCode
+                    && Objects.equals(uid, other.uid)
+                    && Objects.equals(userID, other.userID)
+                    && Objects.equals(groups, other.groups)
+                    && Objects.equals(resource, other.resource)
+                    && Objects.equals(operation, other.operation);
+        }
+    }
+
+    enum Decision { ALLOW, NOT_ALLOWED, DENY }
+
+    static class CachedDecision {
+
+        final Decision decision;
+
+        // group membership version used for the decision
+        final long groupsVersion;
+
+        // memberships changed in LDAP directly or by another clone
+        // do not change the version, so decisions also expire
+        final long expirationTime;
+
+        CachedDecision(Decision decision, long groupsVersion, long expirationTime) {
+            this.decision = decision;
+            this.groupsVersion = groupsVersion;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    /**
+     * Immutable compiled copy of the ACLs. It is replaced as a whole
+     * when the ACLs or the evaluators change, which also discards
+     * the cached decisions.
+     */
+    class Snapshot {
+
+        final EvaluationOrder order;
+        final Map<String, List<ACLEntry>> acls = new HashMap<>();
+        final Map<String, IAccessEvaluator> evaluators;
+
+        final Map<String, ACLExpression> expressions = new ConcurrentHashMap<>();
+        final Map<String, Rules> rules = new ConcurrentHashMap<>();
+        final Map<DecisionKey, CachedDecision> decisions = new ConcurrentHashMap<>();
+
+        Snapshot(EvaluationOrder order) {
+            this.order = order;
+
+            synchronized (mACLs) {
+                for (ACL acl : mACLs.values()) {
+                    List<ACLEntry> entries = new ArrayList<>();
+                    Enumeration<ACLEntry> e = acl.entries();
+                    while (e.hasMoreElements()) {
+                        entries.add(e.nextElement());
+                    }
+                    acls.put(acl.getName(), entries);
+                }
+            }
+
+            synchronized (mEvaluators) {
+                evaluators = new HashMap<>(mEvaluators);
+            }
+        }
+
+        ACLExpression getExpression(String expression) {
+            return expressions.computeIfAbsent(expression, e -> ACLExpression.parse(e, evaluators));
+        }
+
+        Rules getRules(String resource, String operation) {
+            return rules.computeIfAbsent(resource + ":" + operation, key -> {
+                Rules r = new Rules();
+                for (String node : getNodes(resource)) {
+                    List<ACLEntry> entries = acls.get(node);
+                    if (entries == null) {
+                        continue;
+                    }
+                    for (ACLEntry entry : entries) {
+                        if (entry.containPermission(operation)) {
+                            r.add(entry.getType(), getExpression(entry.getAttributeExpressions()));
+                        }
+                    }
+                }
+                return r;
+            });
+        }
+
+        Decision evaluate(AuthToken authToken, Rules r) {
+
+            if (order == EvaluationOrder.DENY_ALLOW) {
+                if (matches(authToken, r.deny)) {
+                    return Decision.DENY;
+                }
+                return matches(authToken, r.allow) ? Decision.ALLOW : Decision.NOT_ALLOWED;
+            }
+
+            boolean permitted = matches(authToken, r.allow);
+            if (matches(authToken, r.deny)) {
+                return Decision.DENY;
+            }
+            return permitted ? Decision.ALLOW : Decision.NOT_ALLOWED;
+        }
+
+        boolean matches(AuthToken authToken, List<ACLExpression> expressions) {
+            for (ACLExpression expression : expressions) {
+                if (expression.evaluate(authToken)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Decision getDecision(AuthToken authToken, String resource, String operation) {
+
+            Rules r = getRules(resource, operation);
+
+            // decisions that depend on the request are not cached
+            if (authToken == null || !r.cacheable
+                    || mDecisionCacheSize <= 0 || mDecisionCacheTimeout <= 0) {
+                return evaluate(authToken, r);
+            }
+
+            long groupsVersion = getGroupsVersion();
+            long now = System.nanoTime();
+            DecisionKey key = new DecisionKey(authToken, resource, operation);
+
+            CachedDecision cached = decisions.get(key);
+            if (cached != null && cached.groupsVersion == groupsVersion
+                    && now - cached.expirationTime < 0) {
+                return cached.decision;
+            }
+
+            Decision decision = evaluate(authToken, r);
+
+            if (decisions.size() >= mDecisionCacheSize) {
+                decisions.clear();
+            }
+            decisions.put(key, new CachedDecision(decision, groupsVersion, now + mDecisionCacheTimeout));
+
+            return decision;
+        }
+    }
+
+    /**
+     * Returns the version of the users and groups so that
+     * decisions made before a membership change are not used.
+     */
+    static long getGroupsVersion() {
+
+        CMSEngine engine = CMS.getCMSEngine();
+        if (engine == null) {
+            return 0;
+        }
+
+        UGSubsystem ug = engine.getUGSubsystem();
+        return ug == null ? 0 : ug.getVersion();
+    }
+
     /*******************************************************
      * with session context
      *******************************************************/
@@ -283,7 +556,7 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param perm permission requested
      * @exception EACLsException access permission denied
      */
-    protected synchronized void checkPermission(String name, String perm)
+    protected void checkPermission(String name, String perm)
             throws EACLsException {
 
         String resource = "";
@@ -499,25 +772,20 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param perm permission requested
      * @exception EACLsException access permission denied
      */
-    public synchronized void checkPermission(AuthToken authToken, String name,
+    public void checkPermission(AuthToken authToken, String name,
             String perm)
             throws EACLsException {
 
         logger.debug("AAclAuthz.checkPermission(" + name + ", " + perm + ")");
 
-        Vector<String> nodes = getNodes(name);
-        EvaluationOrder order = getOrder();
+        Decision decision = getSnapshot().getDecision(authToken, name, perm);
 
-        boolean permitted = false;
-        if (order == EvaluationOrder.DENY_ALLOW) {
-            checkDenyEntries(authToken, nodes, perm);
-            permitted = checkAllowEntries(authToken, nodes, perm);
-        } else if (order == EvaluationOrder.ALLOW_DENY) {
-            permitted = checkAllowEntries(authToken, nodes, perm);
-            checkDenyEntries(authToken, nodes, perm);
+        if (decision == Decision.DENY) {
+            logger.error("AAclAuthz: checkPermission(): permission denied");
+            throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
         }
 
-        if (!permitted) {
+        if (decision != Decision.ALLOW) {
             String[] params = new String[2];
             params[0] = name;
             params[1] = perm;
@@ -536,7 +804,7 @@ public abstract class AAclAuthz implements IAuthzManager {
             String perm) {
         for (ACLEntry entry : getEntries(ACLEntry.Type.ALLOW, nodes, perm)) {
             logger.debug("checkAllowEntries(): expressions: " + entry.getAttributeExpressions());
-            if (evaluateExpressions(authToken, entry.getAttributeExpressions())) {
+            if (evaluateACLs(authToken, entry.getAttributeExpressions())) {
                 return true;
             }
         }
@@ -551,7 +819,7 @@ public abstract class AAclAuthz implements IAuthzManager {
             throws EACLsException {
         for (ACLEntry entry : getEntries(ACLEntry.Type.DENY, nodes, perm)) {
             logger.debug("checkDenyEntries(): expressions: " + entry.getAttributeExpressions());
-            if (evaluateExpressions(authToken, entry.getAttributeExpressions())) {
+            if (evaluateACLs(authToken, entry.getAttributeExpressions())) {
                 logger.error("AAclAuthz: checkPermission(): permission denied");
                 throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
             }
@@ -583,77 +851,6 @@ public abstract class AAclAuthz implements IAuthzManager {
         return v;
     }
 
-    /**
-     * Resolves the given expressions.
-     * expression || expression || ...
-     * example:
-     * group="Administrators" || group="Operators"
-     */
-    private boolean evaluateExpressions(AuthToken authToken, String s) {
-        // XXX - just handle "||" (or) among multiple expressions for now
-        // XXX - could use some optimization ... later
-        logger.debug("evaluating expressions: " + s);
-
-        Vector<Object> v = new Vector<>();
-
-        while (s.length() > 0) {
-            int orIndex = s.indexOf("||");
-            int andIndex = s.indexOf("&&");
-
-            // this is the last expression
-            if (orIndex == -1 && andIndex == -1) {
-                boolean passed = evaluateExpression(authToken, s.trim());
-
-                logger.debug("evaluated expression: " + s.trim() + " to be " + passed);
-                v.addElement(Boolean.valueOf(passed));
-                break;
-
-                // || first
-            } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
-                String s1 = s.substring(0, orIndex);
-                boolean passed = evaluateExpression(authToken, s1.trim());
-
-                logger.debug("evaluated expression: " + s1.trim() + " to be " + passed);
-                v.addElement(Boolean.valueOf(passed));
-                v.addElement("||");
-                s = s.substring(orIndex + 2);
-                // && first
-            } else {
-                String s1 = s.substring(0, andIndex);
-                boolean passed = evaluateExpression(authToken, s1.trim());
-
-                logger.debug("evaluated expression: " + s1.trim() + " to be " + passed);
-                v.addElement(Boolean.valueOf(passed));
-                v.addElement("&&");
-                s = s.substring(andIndex + 2);
-            }
-        }
-
-        if (v.isEmpty()) {
-            return false;
-        }
-
-        if (v.size() == 1) {
-            Boolean bool = (Boolean) v.remove(0);
-
-            return bool.booleanValue();
-        }
-
-        boolean left = false;
-        String op = "";
-        boolean right = false;
-
-        while (!v.isEmpty()) {
-            if (op.equals(""))
-                left = ((Boolean) v.remove(0)).booleanValue();
-            op = (String) v.remove(0);
-            right = ((Boolean) v.remove(0)).booleanValue();
-            left = evaluateExp(left, op, right);
-        }
-
-        return left;
-    }
-
     public Vector<String> getNodes(String resourceID) {
         Vector<String> v = new Vector<>();
 
@@ -674,57 +871,6 @@ public abstract class AAclAuthz implements IAuthzManager {
         return v;
     }
 
-    /**
-     * Resolves the given expression.
-     */
-    private boolean evaluateExpression(AuthToken authToken, String expression) {
-        String op = getOp(expression);
-        String type = "";
-        String value = "";
-
-        if (!op.equals("")) {
-            int len = op.length();
-            int i = expression.indexOf(op);
-
-            type = expression.substring(0, i).trim();
-            value = expression.substring(i + len).trim();
-        }
-        IAccessEvaluator evaluator = mEvaluators.get(type);
-
-        if (evaluator == null) {
-            logger.warn("AAclAuthz: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", type));
-            return false;
-        }
-
-        return evaluator.evaluate(authToken, type, op, value);
-    }
-
-    private String getOp(String exp) {
-        int i = exp.indexOf("!=");
-
-        if (i == -1) {
-            i = exp.indexOf("=");
-            if (i == -1) {
-                i = exp.indexOf(">");
-                if (i == -1) {
-                    i = exp.indexOf("<");
-                    if (i == -1) {
-                        logger.warn("AAclAuthz: " + CMS.getLogMessage("AUTHZ_OP_NOT_SUPPORTED", exp));
-                    } else {
-                        return "<";
-                    }
-                } else {
-                    return ">";
-                }
-            } else {
-                return "=";
-            }
-        } else {
-            return "!=";
-        }
-        return "";
-    }
-
     private boolean evaluateExp(boolean left, String op, boolean right) {
         if (op.equals("||")) {
             return left || right;
@@ -760,6 +906,7 @@ public abstract class AAclAuthz implements IAuthzManager {
         }
 
         mACLs.put(ac.getName(), ac);
+        invalidateACLs();
     }
 
     /**
@@ -873,6 +1020,7 @@ public abstract class AAclAuthz implements IAuthzManager {
     }
 
     public boolean evaluateACLs(AuthToken authToken, String exp) {
-        return evaluateExpressions(authToken, exp);
+        logger.debug("evaluating expressions: " + exp);
+        return getSnapshot().getExpression(exp).evaluate(authToken);
     }
 }
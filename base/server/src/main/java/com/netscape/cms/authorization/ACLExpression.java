@@ -0,0 +1,198 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.authorization;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.dogtagpki.server.authentication.AuthToken;
+
+import com.netscape.certsrv.evaluators.IAccessEvaluator;
+import com.netscape.cms.evaluators.GroupAccessEvaluator;
+import com.netscape.cms.evaluators.UserAccessEvaluator;
+import com.netscape.cmscore.apps.CMS;
+
+/**
+ * This class is a parsed ACL expression, for example:
+ *
+ * group="Administrators" || group="Operators" && user!="admin"
+ *
+ * The terms are combined from left to right without operator
+ * precedence, like the original expression parser in AAclAuthz.
+ * The evaluators are resolved when the expression is parsed, so
+ * the evaluation does not parse strings or acquire any lock.
+ */
+public class ACLExpression {
+
+    public static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACLExpression.class);
+
+    static class Term {
+
+        final String type;
+        final String op;
+        final String value;
+        final IAccessEvaluator evaluator;
+
+        // whether the term is combined with && (or ||) with the previous terms
+        final boolean and;
+
+        Term(String type, String op, String value, IAccessEvaluator evaluator, boolean and) {
+            this.type = type;
+            this.op = op;
+            this.value = value;
+            this.evaluator = evaluator;
+            this.and = and;
+        }
+    }
+
+    private final String expression;
+    private final Term[] terms;
+    private final boolean cacheable;
+
+    ACLExpression(String expression, Term[] terms) {
+        this.expression = expression;
+        this.terms = terms;
+
+        boolean cacheable = true;
+        for (Term term : terms) {
+            if (!isCacheable(term.evaluator)) {
+                cacheable = false;
+                break;
+            }
+        }
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * Parses an expression with the given evaluators.
+     */
+    public static ACLExpression parse(String expression, Map<String, IAccessEvaluator> evaluators) {
+
+        List<Term> terms = new ArrayList<>();
+        String s = expression;
+        boolean and = false;
+
+        while (s.length() > 0) {
+            int orIndex = s.indexOf("||");
+            int andIndex = s.indexOf("&&");
+
+            if (orIndex == -1 && andIndex == -1) {
+                // this is the last term
+                terms.add(parseTerm(s.trim(), evaluators, and));
+                break;
+
+            } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
+                // || first
+                terms.add(parseTerm(s.substring(0, orIndex).trim(), evaluators, and));
+                and = false;
+                s = s.substring(orIndex + 2);
+
+            } else {
+                // && first
+                terms.add(parseTerm(s.substring(0, andIndex).trim(), evaluators, and));
+                and = true;
+                s = s.substring(andIndex + 2);
+            }
+        }
+
+        return new ACLExpression(expression, terms.toArray(new Term[terms.size()]));
+    }
+
+    static Term parseTerm(String expression, Map<String, IAccessEvaluator> evaluators, boolean and) {
+
+        String op = getOp(expression);
+        String type = "";
+        String value = "";
+
+        if (!op.equals("")) {
+            int i = expression.indexOf(op);
+            type = expression.substring(0, i).trim();
+            value = expression.substring(i + op.length()).trim();
+        }
+
+        return new Term(type, op, value, evaluators.get(type), and);
+    }
+
+    static String getOp(String expression) {
+
+        if (expression.indexOf("!=") != -1) {
+            return "!=";
+        }
+
+        if (expression.indexOf("=") != -1) {
+            return "=";
+        }
+
+        if (expression.indexOf(">") != -1) {
+            return ">";
+        }
+
+        if (expression.indexOf("<") != -1) {
+            return "<";
+        }
+
+        logger.warn("ACLExpression: " + CMS.getLogMessage("AUTHZ_OP_NOT_SUPPORTED", expression));
+        return "";
+    }
+
+    /**
+     * Whether the result only depends on the user ID and the groups,
+     * so it can be reused for the same user.
+     */
+    static boolean isCacheable(IAccessEvaluator evaluator) {
+        return evaluator instanceof UserAccessEvaluator
+                || evaluator instanceof GroupAccessEvaluator;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    public boolean evaluate(AuthToken authToken) {
+
+        if (terms.length == 0) {
+            return false;
+        }
+
+        boolean result = evaluate(authToken, terms[0]);
+
+        for (int i = 1; i < terms.length; i++) {
+            Term term = terms[i];
+
+            // the result is already known for this term
+            if (term.and ? !result : result) {
+                continue;
+            }
+
+            result = evaluate(authToken, term);
+        }
+
+        return result;
+    }
+
+    boolean evaluate(AuthToken authToken, Term term) {
+
+        if (term.evaluator == null) {
+            logger.warn("ACLExpression: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", term.type));
+            return false;
+        }
+
+        boolean passed = term.evaluator.evaluate(authToken, term.type, term.op, term.value);
+        logger.debug("ACLExpression: evaluated expression: " + term.type + term.op + term.value + " to be " + passed);
+
+        return passed;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -23,6 +23,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.CharArrayReader;
 import java.io.CharArrayWriter;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -51,6 +52,10 @@ import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.servlet.ServletException;
 
@@ -116,6 +121,8 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
     static final String PROP_LAST_HASH_FILE_NAME = "lastHashFileName";
     static final String PROP_BUFFER_SIZE = "bufferSize";
     static final String PROP_FLUSH_INTERVAL = "flushInterval";
+    static final String PROP_QUEUE_SIZE = "queueSize";
+    static final String PROP_SYNC_INTERVAL = "syncInterval";
 
     private final static String LOG_SIGNED_AUDIT_EXCEPTION =
                                "LOG_SIGNED_AUDIT_EXCEPTION_1";
@@ -140,6 +147,19 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      */
     static final int FLUSH_INTERVAL = 5;
 
+    /**
+     * The output stream buffer size in bytes when events are written
+     * by the writer thread, so that a batch is written at once
+     */
+    static final int QUEUE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum time in nanoseconds the writer thread or a producer
+     * waiting for space in the queue sleeps before checking again
+     */
+    static final long QUEUE_WAIT_TIME = TimeUnit.MILLISECONDS.toNanos(100);
+    static final long QUEUE_FULL_WAIT_TIME = TimeUnit.MICROSECONDS.toNanos(100);
+
     /**
      * The log file
      */
@@ -173,7 +193,7 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
     /**
      * The number of bytes written to the current log file
      */
-    protected int mBytesWritten = 0;
+    protected volatile int mBytesWritten = 0;
 
     /**
      * The output buffer size in bytes
@@ -195,6 +215,55 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      */
     private Thread mFlushThread = null;
 
+    /**
+     * The interval in milliseconds between file syncs, 0 to
+     * leave it to the operating system
+     */
+    protected int mSyncInterval = 0;
+
+    /**
+     * The time of the last file sync
+     */
+    private long mLastSync = 0;
+
+    /**
+     * The log file descriptor
+     */
+    private FileDescriptor mFileDescriptor = null;
+
+    /**
+     * The maximum number of events waiting to be written by the
+     * writer thread, 0 to write events in the calling thread
+     */
+    protected int mQueueSize = 0;
+
+    /**
+     * The events waiting to be written by the writer thread
+     */
+    private LogRingBuffer<PendingEvent> mQueue = null;
+
+    /**
+     * The writer thread
+     */
+    private volatile WriterThread mWriterThread = null;
+
+    /**
+     * Whether the writer thread is waiting for events
+     */
+    private volatile boolean mWriterWaiting = false;
+
+    /**
+     * The lock protecting the log file. A ReentrantLock is used instead
+     * of synchronized so that request threads blocked on the file I/O
+     * do not pin their carrier threads when running as virtual threads.
+     */
+    protected final ReentrantLock mLock = new ReentrantLock();
+
+    /**
+     * Signaled when the flush interval changes
+     */
+    private final Condition mFlushCondition = mLock.newCondition();
+
     /**
      * The mandatory log event types
      */
@@ -486,6 +555,9 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
             throw new ELogException(message, e);
         }
 
+        mQueueSize = config.getInteger(PROP_QUEUE_SIZE, 0);
+        mSyncInterval = config.getInteger(PROP_SYNC_INTERVAL, 0);
+
         if (mOn) {
             init(fileName, config.getInteger(PROP_BUFFER_SIZE, BUFFER_SIZE),
                     config.getInteger(PROP_FLUSH_INTERVAL, FLUSH_INTERVAL));
@@ -517,86 +589,95 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
         mBufferSize = bufferSize;
         setFlushInterval(flushInterval);
         open();
+
+        if (mQueueSize > 0) {
+            startWriter();
+        }
     }
 
     private PrivateKey mSigningKey = null;
     private Signature mSignature = null;
 
     private void setupSigning() throws EBaseException {
+        mLock.lock();
         try {
+            try {
 
-            Provider[] providers = java.security.Security.getProviders();
-            int ps = providers.length;
-            for (int i = 0; i < ps; i++) {
-                logger.debug("LogFile: provider " + i + "= " + providers[i].getName());
-            }
+                Provider[] providers = java.security.Security.getProviders();
+                int ps = providers.length;
+                for (int i = 0; i < ps; i++) {
+                    logger.debug("LogFile: provider " + i + "= " + providers[i].getName());
+                }
 
-            CryptoManager cm = CryptoManager.getInstance();
+                CryptoManager cm = CryptoManager.getInstance();
 
-            // find CertServer's private key
-            X509Certificate cert = cm.findCertByNickname(mSAuditCertNickName);
-            if (cert != null) {
-                logger.debug("LogFile: setupSignig(): found cert:" + mSAuditCertNickName);
-            } else {
-                logger.warn("LogFile: setupSignig(): cert not found:" + mSAuditCertNickName);
-            }
-            mSigningKey = cm.findPrivKeyByCert(cert);
+                // find CertServer's private key
+                X509Certificate cert = cm.findCertByNickname(mSAuditCertNickName);
+                if (cert != null) {
+                    logger.debug("LogFile: setupSignig(): found cert:" + mSAuditCertNickName);
+                } else {
+                    logger.warn("LogFile: setupSignig(): cert not found:" + mSAuditCertNickName);
+                }
+                mSigningKey = cm.findPrivKeyByCert(cert);
 
-            String sigAlgorithm;
-            if (mSigningKey.getAlgorithm().equalsIgnoreCase("RSA")) {
-                sigAlgorithm = "SHA-256/RSA";
-            } else if (mSigningKey.getAlgorithm().equalsIgnoreCase("EC")) {
-                sigAlgorithm = "SHA-256/EC";
-            } else {
-                throw new NoSuchAlgorithmException("Unknown private key type");
-            }
+                String sigAlgorithm;
+                if (mSigningKey.getAlgorithm().equalsIgnoreCase("RSA")) {
+                    sigAlgorithm = "SHA-256/RSA";
+                } else if (mSigningKey.getAlgorithm().equalsIgnoreCase("EC")) {
+                    sigAlgorithm = "SHA-256/EC";
+                } else {
+                    throw new NoSuchAlgorithmException("Unknown private key type");
+                }
 
-            CryptoToken savedToken = cm.getThreadToken();
-            try {
-                CryptoToken keyToken =
-                        ((org.mozilla.jss.pkcs11.PK11PrivKey) mSigningKey)
-                                .getOwningToken();
-                cm.setThreadToken(keyToken);
-                mSignature = java.security.Signature.getInstance(sigAlgorithm,
-                        CRYPTO_PROVIDER);
-            } finally {
-                cm.setThreadToken(savedToken);
-            }
+                CryptoToken savedToken = cm.getThreadToken();
+                try {
+                    CryptoToken keyToken =
+                            ((org.mozilla.jss.pkcs11.PK11PrivKey) mSigningKey)
+                                    .getOwningToken();
+                    cm.setThreadToken(keyToken);
+                    mSignature = java.security.Signature.getInstance(sigAlgorithm,
+                            CRYPTO_PROVIDER);
+                } finally {
+                    cm.setThreadToken(savedToken);
+                }
 
-            mSignature.initSign(mSigningKey);
+                mSignature.initSign(mSigningKey);
 
-            // get the last signature from the currently-opened file
-            String entry = getLastSignature(mFile);
-            if (entry != null) {
-                mSignature.update(entry.getBytes("UTF-8"));
-                mSignature.update(LINE_SEP_BYTE);
-            }
+                // get the last signature from the currently-opened file
+                String entry = getLastSignature(mFile);
+                if (entry != null) {
+                    mSignature.update(entry.getBytes("UTF-8"));
+                    mSignature.update(LINE_SEP_BYTE);
+                }
 
-            // Always start off with a signature. That way, even if there
-            // were problems with the log file we inherited, we will
-            // get a fresh start with this instance.
-            pushSignature();
-
-        } catch (NotInitializedException nie) {
-            setupSigningFailure("BASE_CRYPTOMANAGER_UNINITIALIZED", nie);
-        } catch (ObjectNotFoundException onfe) {
-            setupSigningFailure("LOG_SIGNING_CERT_NOT_FOUND", onfe);
-        } catch (TokenException te) {
-            setupSigningFailure("BASE_TOKEN_ERROR_0", te);
-        } catch (NoSuchAlgorithmException nsae) {
-            setupSigningFailure("LOG_NO_SUCH_ALGORITHM_0", nsae);
-        } catch (NoSuchProviderException nspe) {
-            setupSigningFailure("BASE_PROVIDER_NOT_SUPPORTED", nspe);
-        } catch (InvalidKeyException ike) {
-            setupSigningFailure("BASE_INVALID_KEY", ike);
-        } catch (SignatureException se) {
-            setupSigningFailure("LOG_SIGNING_OP_FAILED", se);
-        } catch (UnsupportedEncodingException uee) {
-            setupSigningFailure("LOG_UNEXPECTED_EXCEPTION", uee);
-        } catch (IOException ioe) {
-            setupSigningFailure("LOG_UNEXPECTED_EXCEPTION", ioe);
-        } catch (Exception e) {
-            setupSigningFailure("LOG_UNEXPECTED_EXCEPTION", e);
+                // Always start off with a signature. That way, even if there
+                // were problems with the log file we inherited, we will
+                // get a fresh start with this instance.
+                pushSignature();
+
+            } catch (NotInitializedException nie) {
+                setupSigningFailure("BASE_CRYPTOMANAGER_UNINITIALIZED", nie);
+            } catch (ObjectNotFoundException onfe) {
+                setupSigningFailure("LOG_SIGNING_CERT_NOT_FOUND", onfe);
+            } catch (TokenException te) {
+                setupSigningFailure("BASE_TOKEN_ERROR_0", te);
+            } catch (NoSuchAlgorithmException nsae) {
+                setupSigningFailure("LOG_NO_SUCH_ALGORITHM_0", nsae);
+            } catch (NoSuchProviderException nspe) {
+                setupSigningFailure("BASE_PROVIDER_NOT_SUPPORTED", nspe);
+            } catch (InvalidKeyException ike) {
+                setupSigningFailure("BASE_INVALID_KEY", ike);
+            } catch (SignatureException se) {
+                setupSigningFailure("LOG_SIGNING_OP_FAILED", se);
+            } catch (UnsupportedEncodingException uee) {
+                setupSigningFailure("LOG_UNEXPECTED_EXCEPTION", uee);
+            } catch (IOException ioe) {
+                setupSigningFailure("LOG_UNEXPECTED_EXCEPTION", ioe);
+            } catch (Exception e) {
+                setupSigningFailure("LOG_UNEXPECTED_EXCEPTION", e);
+            }
+        } finally {
+            mLock.unlock();
         }
     }
 
@@ -719,53 +800,62 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      * Open the log file. This creates the buffered FileWriter
      *
      */
-    protected synchronized void open() throws IOException {
-        RandomAccessFile out;
-
+    protected void open() throws IOException {
+        mLock.lock();
         try {
-            out = new RandomAccessFile(mFile, "rw");
-            out.seek(out.length());
-            //XXX int or long?
-            mBytesWritten = (int) out.length();
-            if (!Utils.isNT()) {
-                try {
-                    Utils.exec("chmod 00640 " + mFile.getCanonicalPath());
-                } catch (IOException e) {
-                    String message = "Unable to change file permissions on "
-                             + mFile + ": " + e.getMessage();
-                    logger.warn(message, e);
+            RandomAccessFile out;
+
+            try {
+                out = new RandomAccessFile(mFile, "rw");
+                out.seek(out.length());
+                //XXX int or long?
+                mBytesWritten = (int) out.length();
+                if (!Utils.isNT()) {
+                    try {
+                        Utils.exec("chmod 00640 " + mFile.getCanonicalPath());
+                    } catch (IOException e) {
+                        String message = "Unable to change file permissions on "
+                                 + mFile + ": " + e.getMessage();
+                        logger.warn(message, e);
+                    }
+                }
+                mFileDescriptor = out.getFD();
+
+                // with the writer thread a batch of events is written at once
+                int bufferSize = mQueueSize > 0 ? Math.max(mBufferSize, QUEUE_BUFFER_SIZE) : mBufferSize;
+                mLogWriter = new BufferedWriter(
+                            new FileWriter(mFileDescriptor), bufferSize);
+
+                // The first time we open, mSignature will not have been
+                // initialized yet. That's ok, we will push our first signature
+                // in setupSigning().
+                if (mLogSigning && (mSignature != null)) {
+                    pushSignature();
                 }
-            }
-            mLogWriter = new BufferedWriter(
-                        new FileWriter(out.getFD()), mBufferSize);
 
-            // The first time we open, mSignature will not have been
-            // initialized yet. That's ok, we will push our first signature
-            // in setupSigning().
-            if (mLogSigning && (mSignature != null)) {
-                pushSignature();
+            } catch (ELogException e) {
+                String message = CMS.getUserMessage("CMS_LOG_ILLEGALARGUMENT", mFileName);
+                logger.warn("LogFile: " + message + ": " + e.getMessage(), e);
+                System.err.println(message);
+
+            } catch (IllegalArgumentException iae) {
+                String message = CMS.getUserMessage("CMS_LOG_ILLEGALARGUMENT", mFileName);
+                logger.warn("LogFile: " + message + ": " + iae.getMessage(), iae);
+                System.err.println(message);
+
+            } catch (GeneralSecurityException gse) {
+                // error with signed audit log, shutdown CMS
+                String message = CMS.getUserMessage("CMS_LOG_OPEN_FAILED", mFileName, gse.getMessage());
+                logger.error("LogFile: " + message, gse);
+                System.err.println(message);
+                gse.printStackTrace();
+                shutdownCMS();
             }
 
-        } catch (ELogException e) {
-            String message = CMS.getUserMessage("CMS_LOG_ILLEGALARGUMENT", mFileName);
-            logger.warn("LogFile: " + message + ": " + e.getMessage(), e);
-            System.err.println(message);
-
-        } catch (IllegalArgumentException iae) {
-            String message = CMS.getUserMessage("CMS_LOG_ILLEGALARGUMENT", mFileName);
-            logger.warn("LogFile: " + message + ": " + iae.getMessage(), iae);
-            System.err.println(message);
-
-        } catch (GeneralSecurityException gse) {
-            // error with signed audit log, shutdown CMS
-            String message = CMS.getUserMessage("CMS_LOG_OPEN_FAILED", mFileName, gse.getMessage());
-            logger.error("LogFile: " + message, gse);
-            System.err.println(message);
-            gse.printStackTrace();
-            shutdownCMS();
+            mBytesUnflushed = 0;
+        } finally {
+            mLock.unlock();
         }
-
-        mBytesUnflushed = 0;
     }
 
     /**
@@ -773,43 +863,76 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      *
      */
     @Override
-    public synchronized void flush() {
+    public void flush() {
+        mLock.lock();
         try {
-            if (mLogSigning) {
-                pushSignature();
-            }
+            try {
+                // write the events queued so far before the signature
+                writeQueuedEvents();
 
-            if (mLogWriter != null) {
-                mLogWriter.flush();
-            }
+                if (mLogSigning) {
+                    pushSignature();
+                }
 
-        } catch (Exception e) {
-            String message = CMS.getUserMessage("CMS_LOG_FLUSH_LOG_FAILED", mFileName, e.getMessage());
-            logger.error("LogFile: " + message, e);
-            System.err.println(message);
-            if (mLogSigning) {
-                e.printStackTrace();
-                shutdownCMS();
+                if (mLogWriter != null) {
+                    mLogWriter.flush();
+                    sync();
+                }
+
+            } catch (Exception e) {
+                String message = CMS.getUserMessage("CMS_LOG_FLUSH_LOG_FAILED", mFileName, e.getMessage());
+                logger.error("LogFile: " + message, e);
+                System.err.println(message);
+                if (mLogSigning) {
+                    e.printStackTrace();
+                    shutdownCMS();
+                }
             }
-        }
 
-        mBytesUnflushed = 0;
+            mBytesUnflushed = 0;
+        } finally {
+            mLock.unlock();
+        }
     }
 
     /**
      * Close the log file
      *
      */
-    protected synchronized void close() {
+    protected void close() {
+        mLock.lock();
         try {
-            flush();
-            if (mLogWriter != null) {
-                mLogWriter.close();
+            try {
+                flush();
+                if (mLogWriter != null) {
+                    mLogWriter.close();
+                }
+            } catch (IOException e) {
+                System.err.println(CMS.getUserMessage("CMS_LOG_CLOSE_FAILED", mFileName, e.toString()));
             }
-        } catch (IOException e) {
-            System.err.println(CMS.getUserMessage("CMS_LOG_CLOSE_FAILED", mFileName, e.toString()));
+            mLogWriter = null;
+            mFileDescriptor = null;
+        } finally {
+            mLock.unlock();
         }
-        mLogWriter = null;
+    }
+
+    /**
+     * Sync the log file to the disk if the sync interval has elapsed.
+     */
+    private void sync() throws IOException {
+
+        if (mSyncInterval <= 0 || mFileDescriptor == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - mLastSync < mSyncInterval) {
+            return;
+        }
+
+        mFileDescriptor.sync();
+        mLastSync = now;
     }
 
     /**
@@ -821,23 +944,30 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      * </ul>
      */
     @Override
-    public synchronized void shutdown() {
+    public void shutdown() {
+        mLock.lock();
+        try {
+            logger.info("Destroying LogFile(" + mFileName + ")");
 
-        logger.info("Destroying LogFile(" + mFileName + ")");
+            String auditMessage = null;
 
-        String auditMessage = null;
+            setFlushInterval(0);
 
-        setFlushInterval(0);
+            // log signed audit shutdown success
+            auditMessage = CMS.getLogMessage(
+                               AuditEvent.AUDIT_LOG_SHUTDOWN,
+                               ILogger.SYSTEM_UID,
+                               ILogger.SUCCESS);
 
-        // log signed audit shutdown success
-        auditMessage = CMS.getLogMessage(
-                           AuditEvent.AUDIT_LOG_SHUTDOWN,
-                           ILogger.SYSTEM_UID,
-                           ILogger.SUCCESS);
+            signedAuditLogger.log(auditMessage);
 
-        signedAuditLogger.log(auditMessage);
+            // the remaining events are written by close()
+            stopWriter();
 
-        close();
+            close();
+        } finally {
+            mLock.unlock();
+        }
     }
 
     /**
@@ -848,19 +978,24 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      *            is flush. A value of 0 will disable autoflush. This will also set
      *            the update period for hash protected logs.
      **/
-    public synchronized void setFlushInterval(int flushInterval) {
-        mFlushInterval = flushInterval * 1000;
+    public void setFlushInterval(int flushInterval) {
+        mLock.lock();
+        try {
+            mFlushInterval = flushInterval * 1000;
 
-        if (mFlushThread == null && mFlushInterval > 0) {
-            mFlushThread = new FlushThread();
-            mFlushThread.setDaemon(true);
-            mFlushThread.start();
+            if (mFlushThread == null && mFlushInterval > 0) {
+                mFlushThread = new FlushThread();
+                mFlushThread.setDaemon(true);
+                mFlushThread.start();
 
-        } else if (mFlushThread != null && mFlushInterval == 0) {
-            mFlushThread.interrupt();
-        }
+            } else if (mFlushThread != null && mFlushInterval == 0) {
+                mFlushThread.interrupt();
+            }
 
-        this.notify();
+            mFlushCondition.signalAll();
+        } finally {
+            mLock.unlock();
+        }
     }
 
     /**
@@ -881,12 +1016,13 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
         public void run() {
             while (mFlushInterval > 0) {
                 // Sleep for the interval and then flush the log
-                synchronized (LogFile.this) {
-                    try {
-                        LogFile.this.wait(mFlushInterval);
-                    } catch (InterruptedException e) {
-                        // shutdown
-                    }
+                mLock.lock();
+                try {
+                    mFlushCondition.await(mFlushInterval, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // shutdown
+                } finally {
+                    mLock.unlock();
                 }
 
                 if (mFlushInterval == 0) {
@@ -902,140 +1038,328 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
     }
 
     /**
-     * Synchronized method to write an event to the log file.
+     * Write an event to the log file.
+     *
+     * If the writer thread is running the event is queued and written
+     * later by the writer thread. Write failures are then handled by
+     * the writer thread, including disabling the subsystem if the log
+     * is signed.
      *
      * @param event The log event
      */
-    protected synchronized void doLog(LogEvent event) throws ELogException {
-        doLog(event, false);
+    protected void doLog(LogEvent event) throws ELogException {
+
+        WriterThread writer = mWriterThread;
+
+        // the trace needs the stack of the calling thread
+        if (writer == null || mTrace) {
+            mLock.lock();
+            try {
+                writeQueuedEvents();
+                doLog(event, false);
+            } finally {
+                mLock.unlock();
+            }
+            return;
+        }
+
+        PendingEvent pending = new PendingEvent(event, Thread.currentThread().getName());
+
+        while (!mQueue.offer(pending)) {
+
+            writer = mWriterThread;
+            if (writer == null) {
+                // writer stopped while the queue is full
+                mLock.lock();
+                try {
+                    writeQueuedEvents();
+                    doLog(event, false);
+                } finally {
+                    mLock.unlock();
+                }
+                return;
+            }
+
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(QUEUE_FULL_WAIT_TIME);
+        }
+
+        if (mWriterWaiting) {
+            LockSupport.unpark(writer);
+        }
+
+        if (mWriterThread == null) {
+            // writer stopped before the event was written
+            mLock.lock();
+            try {
+                writeQueuedEvents();
+            } finally {
+                mLock.unlock();
+            }
+        }
     }
 
-    // Standard line separator byte. We always sign this line separator,
-    // regardless of what we actually write to the file, so that signature
-    // verification is platform-independent.
-    private static final byte LINE_SEP_BYTE = 0x0a;
+    /**
+     * Writes the queued events. Must be called while holding
+     * mLock, which makes the caller the only consumer.
+     *
+     * @return number of events written
+     */
+    private int writeQueuedEvents() {
+
+        if (mQueue == null) {
+            return 0;
+        }
+
+        // limit the batch so that flush() is not delayed indefinitely
+        int count = 0;
+        PendingEvent pending;
+
+        while (count < mQueue.capacity() && (pending = mQueue.poll()) != null) {
+            try {
+                doLog(pending.event, pending.threadName, true);
+            } catch (ELogException e) {
+                // already reported by doLog()
+            }
+            count++;
+        }
+
+        return count;
+    }
 
     /**
-     * This method actually does the logging, and is not overridden
-     * by subclasses, so you can call it and know that it will do exactly
-     * what you see below.
+     * Event waiting to be written by the writer thread.
      */
-    private synchronized void doLog(LogEvent event, boolean noFlush)
-            throws ELogException {
+    static class PendingEvent {
 
-        String entry = logEvt2String(event);
+        final LogEvent event;
+        final String threadName;
 
-        if (mLogWriter == null) {
-            String[] params = { mFileName, entry };
+        PendingEvent(LogEvent event, String threadName) {
+            this.event = event;
+            this.threadName = threadName;
+        }
+    }
 
-            String message = CMS.getUserMessage("CMS_LOG_LOGFILE_CLOSED", params);
-            logger.error("LogFile: " + message);
-            System.err.println(message);
-            if (mLogSigning) {
-                // Failed to write to audit log, shut down CMS
-                shutdownCMS();
+    private void startWriter() {
+        mLock.lock();
+        try {
+            if (mWriterThread != null) {
+                return;
             }
-            throw new ELogException(message);
 
-        } else {
-            try {
-                mLogWriter.write(entry, 0/*offset*/, entry.length());
-
-                if (mLogSigning == true) {
-                    if (mSignature != null) {
-                        // include newline for calculating MAC
-                        mSignature.update(entry.getBytes("UTF-8"));
-                    } else {
-                        logger.warn("LogFile: missing audit log signature");
+            logger.info("LogFile: Writing " + mFileName + " with queue size " + mQueueSize);
+
+            mQueue = new LogRingBuffer<>(mQueueSize);
+
+            mWriterThread = new WriterThread();
+            mWriterThread.setDaemon(true);
+            mWriterThread.start();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void stopWriter() {
+
+        WriterThread writer = mWriterThread;
+        if (writer == null) {
+            return;
+        }
+
+        mWriterThread = null;
+        writer.running = false;
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Log writer thread. Waits for queued events and writes all
+     * of them at once, so the signature and the buffer flush are
+     * shared by the batch instead of being done in every request
+     * thread.
+     */
+    final class WriterThread extends Thread {
+
+        volatile boolean running = true;
+
+        public WriterThread() {
+            super();
+            super.setName(mFileName + ".writer-" + (Thread.activeCount() + 1));
+        }
+
+        @Override
+        public void run() {
+            while (running || !mQueue.isEmpty()) {
+
+                if (mQueue.isEmpty()) {
+                    mWriterWaiting = true;
+                    // check again to not miss an event queued in the meantime
+                    if (running && mQueue.isEmpty()) {
+                        LockSupport.parkNanos(QUEUE_WAIT_TIME);
                     }
+                    mWriterWaiting = false;
+                    continue;
                 }
-                if (mTrace) {
-                    CharArrayWriter cw = new CharArrayWriter(200);
-                    PrintWriter pw = new PrintWriter(cw);
-                    Exception e = new Exception();
-                    e.printStackTrace(pw);
-                    char[] c = cw.toCharArray();
-                    cw.close();
-                    pw.close();
-
-                    CharArrayReader cr = new CharArrayReader(c);
-                    LineNumberReader lr = new LineNumberReader(cr);
-
-                    String text = null;
-                    String method = null;
-                    String fileAndLine = null;
-                    if (lr.ready()) {
-                        text = lr.readLine();
-                        do {
-                            text = lr.readLine();
-                        } while (text.indexOf("logging") != -1);
-                        int p = text.indexOf("(");
-                        fileAndLine = text.substring(p);
-
-                        String classandmethod = text.substring(0, p);
-                        int q = classandmethod.lastIndexOf(".");
-                        method = classandmethod.substring(q + 1);
-                        mLogWriter.write(fileAndLine, 0/*offset*/, fileAndLine.length());
-                        mLogWriter.write(" ", 0/*offset*/, " ".length());
-                        mLogWriter.write(method, 0/*offset*/, method.length());
+
+                try {
+                    mLock.lock();
+                    try {
+                        int count = writeQueuedEvents();
+                        if (count > 0 && mBufferSize > 0 && mBytesUnflushed > mBufferSize) {
+                            flush();
+                        }
+                    } finally {
+                        mLock.unlock();
                     }
-                }
-                mLogWriter.newLine();
 
-                if (mLogSigning == true) {
-                    if (mSignature != null) {
-                        mSignature.update(LINE_SEP_BYTE);
-                    } else {
-                        logger.warn("LogFile: missing audit log signature");
+                } catch (Throwable e) {
+                    String message = "Unable to write " + mFileName + ": " + e.getMessage();
+                    logger.error("LogFile: " + message, e);
+                    System.err.println(message);
+                    if (mLogSigning) {
+                        // Failed to write to audit log, shut down CMS
+                        shutdownCMS();
                     }
                 }
+            }
+        }
+    }
 
-            } catch (IOException e) {
-                String message = CMS.getUserMessage("CMS_LOG_WRITE_FAILED", mFileName, entry, e.getMessage());
+    // Standard line separator byte. We always sign this line separator,
+    // regardless of what we actually write to the file, so that signature
+    // verification is platform-independent.
+    private static final byte LINE_SEP_BYTE = 0x0a;
+
+    /**
+     * This method actually does the logging, and is not overridden
+     * by subclasses, so you can call it and know that it will do exactly
+     * what you see below.
+     */
+    private void doLog(LogEvent event, boolean noFlush)
+            throws ELogException {
+        doLog(event, Thread.currentThread().getName(), noFlush);
+    }
+
+    private void doLog(LogEvent event, String threadName, boolean noFlush)
+            throws ELogException {
+        mLock.lock();
+        try {
+            String entry = logEvt2String(event, threadName);
+
+            if (mLogWriter == null) {
+                String[] params = { mFileName, entry };
+
+                String message = CMS.getUserMessage("CMS_LOG_LOGFILE_CLOSED", params);
                 logger.error("LogFile: " + message);
                 System.err.println(message);
                 if (mLogSigning) {
                     // Failed to write to audit log, shut down CMS
-                    e.printStackTrace();
                     shutdownCMS();
                 }
+                throw new ELogException(message);
 
-            } catch (IllegalStateException e) {
-                String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, e.getMessage());
-                logger.error("LogFile: " + message, e);
-                System.err.println(Thread.currentThread().getName() + ": " + message);
+            } else {
+                try {
+                    mLogWriter.write(entry, 0/*offset*/, entry.length());
 
-            } catch (GeneralSecurityException gse) {
-                // DJN: handle error
-                String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, gse.getMessage());
-                logger.error("LogFile: " + message, gse);
-                System.err.println(Thread.currentThread().getName() + ": " + message);
+                    if (mLogSigning == true) {
+                        if (mSignature != null) {
+                            // include newline for calculating MAC
+                            mSignature.update(entry.getBytes("UTF-8"));
+                        } else {
+                            logger.warn("LogFile: missing audit log signature");
+                        }
+                    }
+                    if (mTrace) {
+                        CharArrayWriter cw = new CharArrayWriter(200);
+                        PrintWriter pw = new PrintWriter(cw);
+                        Exception e = new Exception();
+                        e.printStackTrace(pw);
+                        char[] c = cw.toCharArray();
+                        cw.close();
+                        pw.close();
+
+                        CharArrayReader cr = new CharArrayReader(c);
+                        LineNumberReader lr = new LineNumberReader(cr);
+
+                        String text = null;
+                        String method = null;
+                        String fileAndLine = null;
+                        if (lr.ready()) {
+                            text = lr.readLine();
+                            do {
+                                text = lr.readLine();
+                            } while (text.indexOf("logging") != -1);
+                            int p = text.indexOf("(");
+                            fileAndLine = text.substring(p);
+
+                            String classandmethod = text.substring(0, p);
+                            int q = classandmethod.lastIndexOf(".");
+                            method = classandmethod.substring(q + 1);
+                            mLogWriter.write(fileAndLine, 0/*offset*/, fileAndLine.length());
+                            mLogWriter.write(" ", 0/*offset*/, " ".length());
+                            mLogWriter.write(method, 0/*offset*/, method.length());
+                        }
+                    }
+                    mLogWriter.newLine();
 
-            } catch (Exception ee) { // Make darn sure we got everything
-                String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, ee.getMessage());
-                logger.error("LogFile: " + message, ee);
-                System.err.println(Thread.currentThread().getName() + ": " + message);
+                    if (mLogSigning == true) {
+                        if (mSignature != null) {
+                            mSignature.update(LINE_SEP_BYTE);
+                        } else {
+                            logger.warn("LogFile: missing audit log signature");
+                        }
+                    }
 
-                if (mLogSigning) {
-                    // Failed to write to audit log, shut down CMS
-                    ee.printStackTrace();
-                    shutdownCMS();
+                } catch (IOException e) {
+                    String message = CMS.getUserMessage("CMS_LOG_WRITE_FAILED", mFileName, entry, e.getMessage());
+                    logger.error("LogFile: " + message);
+                    System.err.println(message);
+                    if (mLogSigning) {
+                        // Failed to write to audit log, shut down CMS
+                        e.printStackTrace();
+                        shutdownCMS();
+                    }
+
+                } catch (IllegalStateException e) {
+                    String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, e.getMessage());
+                    logger.error("LogFile: " + message, e);
+                    System.err.println(Thread.currentThread().getName() + ": " + message);
+
+                } catch (GeneralSecurityException gse) {
+                    // DJN: handle error
+                    String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, gse.getMessage());
+                    logger.error("LogFile: " + message, gse);
+                    System.err.println(Thread.currentThread().getName() + ": " + message);
+
+                } catch (Exception ee) { // Make darn sure we got everything
+                    String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, ee.getMessage());
+                    logger.error("LogFile: " + message, ee);
+                    System.err.println(Thread.currentThread().getName() + ": " + message);
+
+                    if (mLogSigning) {
+                        // Failed to write to audit log, shut down CMS
+                        ee.printStackTrace();
+                        shutdownCMS();
+                    }
                 }
-            }
 
-            // XXX
-            // Although length will be in Unicode dual-bytes, the PrintWriter
-            // will only print out 1 byte per character.  I suppose this could
-            // be dependent on the encoding of your log file, but it ain't that
-            // smart yet.  Also, add one for the newline. (hmm, on NT, CR+LF)
-            int nBytes = entry.length() + 1;
+                // XXX
+                // Although length will be in Unicode dual-bytes, the PrintWriter
+                // will only print out 1 byte per character.  I suppose this could
+                // be dependent on the encoding of your log file, but it ain't that
+                // smart yet.  Also, add one for the newline. (hmm, on NT, CR+LF)
+                int nBytes = entry.length() + 1;
 
-            mBytesWritten += nBytes;
-            mBytesUnflushed += nBytes;
+                mBytesWritten += nBytes;
+                mBytesUnflushed += nBytes;
 
-            if (mBufferSize > 0 && mBytesUnflushed > mBufferSize && !noFlush) {
-                flush();
+                if (mBufferSize > 0 && mBytesUnflushed > mBufferSize && !noFlush) {
+                    flush();
+                }
             }
+        } finally {
+            mLock.unlock();
         }
     }
 
@@ -1225,6 +1549,13 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
     }
 
     public String logEvt2String(LogEvent ev) {
+        return logEvt2String(ev, Thread.currentThread().getName());
+    }
+
+    /**
+     * Formats an event logged by the given thread.
+     */
+    public String logEvt2String(LogEvent ev, String threadName) {
         String entry = null;
 
         // Hmm.. multiple threads could hit this and reset the time.
@@ -1237,12 +1568,12 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
         // This should follow the Common Log Format which still needs
         // some work.
         if (ev.getMultiline() == ILogger.L_MULTILINE) {
-            entry = engine.getPID() + "." + Thread.currentThread().getName() + " - ["
+            entry = engine.getPID() + "." + threadName + " - ["
                     + mLogDateFormat.format(mDate) + "] [" +
                     ev.getSource().value() + "] [" + Integer.toString(ev.getLevel())
                     + "] " + prepareMultiline(ev.toString());
         } else {
-            entry = engine.getPID() + "." + Thread.currentThread().getName() + " - ["
+            entry = engine.getPID() + "." + threadName + " - ["
                     + mLogDateFormat.format(mDate) + "] [" +
                     ev.getSource().value() + "] [" + Integer.toString(ev.getLevel())
                     + "] " + ev.toString();
@@ -1445,47 +1776,52 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      * are sent back.
      */
     @Override
-    public synchronized NameValuePairs retrieveLogContent(Hashtable<String, String> req) throws ServletException,
+    public NameValuePairs retrieveLogContent(Hashtable<String, String> req) throws ServletException,
             IOException, EBaseException {
-        NameValuePairs params = new NameValuePairs();
-        String tmp, fName = null;
-        int maxLine = -1, level = -1;
-        LogSource source = null;
-        Vector<LogEntry> entries = null;
-
-        if ((tmp = req.get(Constants.PR_LOG_ENTRY)) != null) {
-            maxLine = Integer.parseInt(tmp);
-        }
-        if ((tmp = req.get(Constants.PR_LOG_LEVEL)) != null) {
-            level = Integer.parseInt(tmp);
-        }
-        if ((tmp = req.get(Constants.PR_LOG_SOURCE)) != null) {
-            source = LogSource.valueOf(Integer.parseInt(tmp));
-        }
-        tmp = req.get(Constants.PR_LOG_NAME);
-        if (!(tmp.equals(Constants.PR_CURRENT_LOG))) {
-            fName = tmp;
-        } else {
-            flush();
-        }
-
+        mLock.lock();
         try {
-            entries = readEntry(maxLine, level, source, fName);
-            for (int i = 0; i < entries.size(); i++) {
-                params.put(Integer.toString(i) +
-                        entries.elementAt(i).getEntry(), "");
+            NameValuePairs params = new NameValuePairs();
+            String tmp, fName = null;
+            int maxLine = -1, level = -1;
+            LogSource source = null;
+            Vector<LogEntry> entries = null;
+
+            if ((tmp = req.get(Constants.PR_LOG_ENTRY)) != null) {
+                maxLine = Integer.parseInt(tmp);
             }
-        } catch (Exception e) {
-            logger.warn("System log parse error: " + e.getMessage(), e);
+            if ((tmp = req.get(Constants.PR_LOG_LEVEL)) != null) {
+                level = Integer.parseInt(tmp);
+            }
+            if ((tmp = req.get(Constants.PR_LOG_SOURCE)) != null) {
+                source = LogSource.valueOf(Integer.parseInt(tmp));
+            }
+            tmp = req.get(Constants.PR_LOG_NAME);
+            if (!(tmp.equals(Constants.PR_CURRENT_LOG))) {
+                fName = tmp;
+            } else {
+                flush();
+            }
+
+            try {
+                entries = readEntry(maxLine, level, source, fName);
+                for (int i = 0; i < entries.size(); i++) {
+                    params.put(Integer.toString(i) +
+                            entries.elementAt(i).getEntry(), "");
+                }
+            } catch (Exception e) {
+                logger.warn("System log parse error: " + e.getMessage(), e);
+            }
+            return params;
+        } finally {
+            mLock.unlock();
         }
-        return params;
     }
 
     /**
      * Retrieve log file list.
      */
     @Override
-    public synchronized NameValuePairs retrieveLogList(Hashtable<String, String> req) throws ServletException,
+    public NameValuePairs retrieveLogList(Hashtable<String, String> req) throws ServletException,
             IOException, EBaseException {
         return null;
     }
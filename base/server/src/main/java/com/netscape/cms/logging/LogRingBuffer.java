@@ -0,0 +1,132 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class is a bounded lock-free queue for multiple producers
+ * and a single consumer.
+ *
+ * Each slot has a sequence number which tells whether the slot is
+ * free for the producer at a given position or holds an element for
+ * the consumer. Producers claim a position with a CAS on the tail,
+ * so they never block each other. The consumer does not need any
+ * atomic operation other than reading and publishing the slot.
+ *
+ * The consumer methods must only be called by one thread at a time.
+ */
+public class LogRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    // only modified by the consumer
+    private volatile long head;
+
+    public LogRingBuffer(int capacity) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        // round up to a power of two
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds an element to the queue.
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(E element) {
+
+        long position = tail.get();
+
+        while (true) {
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+
+            if (diff == 0) {
+                // slot is free for this position
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+
+            } else if (diff < 0) {
+                // slot still holds an element from the previous round
+                return false;
+
+            } else {
+                // another producer has claimed this position
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the next element from the queue. Consumer only.
+     *
+     * @return the element, or null if the queue is empty
+     */
+    public E poll() {
+
+        long position = head;
+        int index = (int) (position & mask);
+
+        if (sequences.get(index) != position + 1) {
+            // empty, or the producer has not finished publishing
+            return null;
+        }
+
+        E element = elements.get(index);
+        elements.set(index, null);
+
+        // release the slot for the next round
+        sequences.set(index, position + mask + 1);
+        head = position + 1;
+
+        return element;
+    }
+
+    /**
+     * Returns true if there is no element in the queue.
+     */
+    public boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    /**
+     * Returns the approximate number of elements in the queue.
+     */
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+}
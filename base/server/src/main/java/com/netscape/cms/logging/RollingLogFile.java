@@ -137,11 +137,16 @@ public class RollingLogFile extends LogFile {
      * Shutdown this log file.
      */
     @Override
-    public synchronized void shutdown() {
-        logger.debug("Destroying RollingLogFile(" + mFileName + ")");
-        setRolloverTime("0");
-        setExpirationTime("0");
-        super.shutdown();
+    public void shutdown() {
+        mLock.lock();
+        try {
+            logger.debug("Destroying RollingLogFile(" + mFileName + ")");
+            setRolloverTime("0");
+            setExpirationTime("0");
+            super.shutdown();
+        } finally {
+            mLock.unlock();
+        }
     }
 
     /**
@@ -215,59 +220,63 @@ public class RollingLogFile extends LogFile {
     /**
      * Rotate the log file to a backup file with timestamp
      **/
-    public synchronized void rotate()
+    public void rotate()
             throws IOException {
-
-        File backupFile = new File(mFileName + "." + mLogFileDateFormat.format(mDate));
-
-        // close, backup, and reopen the log file zeroizing its contents
-        super.close();
+        mLock.lock();
         try {
-            if (Utils.isNT()) {
-                // NT is very picky on the path
-                Utils.exec("copy " +
-                            mFile.getCanonicalPath().replace('/', '\\') +
-                            " " +
-                            backupFile.getCanonicalPath().replace('/',
-                                                                   '\\'));
-            } else {
-                // Create a copy of the original file which
-                // preserves the original file permissions.
-                Utils.exec("cp -p " + mFile.getCanonicalPath() + " " +
-                             backupFile.getCanonicalPath());
-            }
+            File backupFile = new File(mFileName + "." + mLogFileDateFormat.format(mDate));
 
-            // Zeroize the original file if and only if
-            // the backup copy was successful.
-            if (backupFile.exists()) {
-
-                // Make certain that the backup file has
-                // the correct permissions.
-                if (!Utils.isNT()) {
-                    Utils.exec("chmod 00640 " + backupFile.getCanonicalPath());
+            // close, backup, and reopen the log file zeroizing its contents
+            super.close();
+            try {
+                if (Utils.isNT()) {
+                    // NT is very picky on the path
+                    Utils.exec("copy " +
+                                mFile.getCanonicalPath().replace('/', '\\') +
+                                " " +
+                                backupFile.getCanonicalPath().replace('/',
+                                                                       '\\'));
+                } else {
+                    // Create a copy of the original file which
+                    // preserves the original file permissions.
+                    Utils.exec("cp -p " + mFile.getCanonicalPath() + " " +
+                                 backupFile.getCanonicalPath());
                 }
 
-                try {
-                    // Open and close the original file
-                    // to zeroize its contents.
-                    PrintWriter pw = new PrintWriter(mFile);
-                    pw.close();
+                // Zeroize the original file if and only if
+                // the backup copy was successful.
+                if (backupFile.exists()) {
 
-                    // Make certain that the original file retains
+                    // Make certain that the backup file has
                     // the correct permissions.
                     if (!Utils.isNT()) {
-                        Utils.exec("chmod 00640 " + mFile.getCanonicalPath());
+                        Utils.exec("chmod 00640 " + backupFile.getCanonicalPath());
                     }
-                } catch (FileNotFoundException e) {
-                    logger.warn("Unable to zeroize " + mFile + ": " + e.getMessage(), e);
+
+                    try {
+                        // Open and close the original file
+                        // to zeroize its contents.
+                        PrintWriter pw = new PrintWriter(mFile);
+                        pw.close();
+
+                        // Make certain that the original file retains
+                        // the correct permissions.
+                        if (!Utils.isNT()) {
+                            Utils.exec("chmod 00640 " + mFile.getCanonicalPath());
+                        }
+                    } catch (FileNotFoundException e) {
+                        logger.warn("Unable to zeroize " + mFile + ": " + e.getMessage(), e);
+                    }
+                } else {
+                    logger.warn("Unable to backup " + mFile + " to " + backupFile);
                 }
-            } else {
-                logger.warn("Unable to backup " + mFile + " to " + backupFile);
+            } catch (Exception e) {
+                logger.warn("Unable to backup " + mFile + " to " + backupFile + ": " + e.getMessage(), e);
             }
-        } catch (Exception e) {
-            logger.warn("Unable to backup " + mFile + " to " + backupFile + ": " + e.getMessage(), e);
+            super.open(); // will reset mBytesWritten
+        } finally {
+            mLock.unlock();
         }
-        super.open(); // will reset mBytesWritten
     }
 
     /**
@@ -492,17 +501,31 @@ public class RollingLogFile extends LogFile {
      * @param ev The event to be logged.
      **/
     @Override
-    public synchronized void log(LogEvent ev) throws ELogException {
+    public void log(LogEvent ev) throws ELogException {
         //xxx, Shall we log first without checking if it exceed the maximum?
         super.log(ev); // Will increment mBytesWritten
 
-        if ((0 != mMaxFileSize) && (mBytesWritten > mMaxFileSize)) {
+        // the event might still be queued for the writer thread,
+        // in which case the size is checked again by the next event
+        if ((0 == mMaxFileSize) || (mBytesWritten <= mMaxFileSize)) {
+            return;
+        }
+
+        mLock.lock();
+        try {
+            if (mBytesWritten <= mMaxFileSize) {
+                // already rotated by another thread
+                return;
+            }
+
             flush();
             try {
                 rotate();
             } catch (IOException e) {
                 throw new ELogException(CMS.getUserMessage("CMS_LOG_ROTATE_LOG_FAILED", mFile.getName(), e.toString()));
             }
+        } finally {
+            mLock.unlock();
         }
     }
 
@@ -510,7 +533,7 @@ public class RollingLogFile extends LogFile {
      * Retrieve log file list.
      */
     @Override
-    public synchronized NameValuePairs retrieveLogList(Hashtable<String, String> req
+    public NameValuePairs retrieveLogList(Hashtable<String, String> req
             ) throws ServletException,
                     IOException, EBaseException {
         NameValuePairs params = new NameValuePairs();
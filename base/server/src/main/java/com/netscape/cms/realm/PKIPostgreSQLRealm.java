@@ -12,19 +12,19 @@ import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.cert.X509Certificate;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.realm.MessageDigestCredentialHandler;
 import org.apache.commons.lang3.StringUtils;
+import org.dogtagpki.server.database.JDBCConnectionPool;
 import org.mozilla.jss.netscape.security.util.Cert;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 
@@ -41,7 +41,10 @@ public class PKIPostgreSQLRealm extends RealmCommon {
     String url;
 
     Properties statements;
-    Connection connection;
+    JDBCConnectionPool pool;
+
+    volatile boolean initialized;
+    ReentrantLock setupLock = new ReentrantLock();
 
     MessageDigestCredentialHandler handler;
 
@@ -62,6 +65,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
         }
 
         url = (String) info.remove("url");
+        pool = new JDBCConnectionPool(url, info);
 
         String statementsFilename = info.getProperty(
                 "statements");
@@ -124,7 +128,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
     /**
      * This method will create the tables if they do not exist.
      */
-    public void setup() throws Exception {
+    public void setup(Connection connection) throws Exception {
 
         logger.info("Setting up PostgreSQL realm");
 
@@ -158,40 +162,35 @@ public class PKIPostgreSQLRealm extends RealmCommon {
     }
 
     /**
-     * This method will create the initial connection, validate
-     * the current connection, or reestablish the connection if
-     * it's closed.
+     * This method will return a connection from the connection pool,
+     * and create the tables on the first call.
      *
-     * TODO: Use connection pool.
+     * The connection must be closed to return it into the pool.
      */
-    public void connect() throws Exception {
-
-        if (connection == null) { // create the initial connection
-            logger.info("Connecting to " + url);
-            connection = DriverManager.getConnection(url, info);
-            setup();
-            return;
-        }
+    public Connection getConnection() throws Exception {
 
-        // validate the current connection
-        try (Statement st = connection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT 1")) {
+        Connection connection = pool.getConnection();
 
-        } catch (SQLException e) {
+        if (initialized) {
+            return connection;
+        }
 
-            if (connection.isClosed()) { // reestablish the connection
-                logger.info("Reconnecting to " + url);
-                connection = DriverManager.getConnection(url, info);
-                return;
+        setupLock.lock();
+        try {
+            if (!initialized) {
+                setup(connection);
+                initialized = true;
             }
 
-            logger.error("Unable to access database: " + e.getMessage());
-
-            // https://www.postgresql.org/docs/current/errcodes-appendix.html
-            logger.error("SQL state: " + e.getSQLState());
-
+        } catch (Exception e) {
+            connection.close();
             throw e;
+
+        } finally {
+            setupLock.unlock();
         }
+
+        return connection;
     }
 
     public User createUser(ResultSet rs) throws Exception {
@@ -209,7 +208,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
         return user;
     }
 
-    public User getUserByID(String userID) throws Exception {
+    public User getUserByID(Connection connection, String userID) throws Exception {
 
         logger.info("Getting user " + userID);
 
@@ -237,7 +236,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
                 + cert.getSubjectDN();
     }
 
-    public User getUserByCertID(String certID) throws Exception {
+    public User getUserByCertID(Connection connection, String certID) throws Exception {
 
         logger.info("Getting user for cert " + certID);
 
@@ -258,7 +257,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
         }
     }
 
-    public List<X509Certificate> getUserCerts(String userID) throws Exception {
+    public List<X509Certificate> getUserCerts(Connection connection, String userID) throws Exception {
 
         logger.info("Getting certs for user " + userID);
 
@@ -281,7 +280,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
         return results;
     }
 
-    public List<String> getUserRoles(String userID) throws Exception {
+    public List<String> getUserRoles(Connection connection, String userID) throws Exception {
 
         logger.info("Getting roles for user " + userID);
 
@@ -310,11 +309,10 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
         logger.info("Authenticating user " + username + " with password");
 
-        try {
-            connect();
+        try (Connection connection = getConnection()) {
 
             logger.info("Searching for user " + username);
-            User user = getUserByID(username);
+            User user = getUserByID(connection, username);
 
             if (user == null) {
                 logger.warn("Unable to authenticate user " + username + ": User not found");
@@ -331,7 +329,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
             logger.info("User " + username + " authenticated");
 
-            List<String> roles = getUserRoles(username);
+            List<String> roles = getUserRoles(connection, username);
             return new PKIPrincipal(user, null, roles);
         } catch (Exception e) {
             logger.error("Problem to verify user credentials: "+ e.getMessage(), e);
@@ -341,7 +339,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
     @Override
     public Principal authenticate(X509Certificate[] certChain) {
-        try {
+        try (Connection connection = getConnection()) {
             // sort cert chain from leaf to root
             certChain = Cert.sortCertificateChain(certChain, true);
 
@@ -351,12 +349,10 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
             logger.info("Authenticating user with certificate " + certID);
 
-            connect();
-
             // cert already validated during SSL handshake
 
             logger.info("Searching for user with certificate " + certID);
-            User user = getUserByCertID(certID);
+            User user = getUserByCertID(connection, certID);
 
             if (user == null) {
                 logger.warn("Unable to authenticate user with certificate " + certID + ": User not found");
@@ -364,7 +360,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
             }
 
             logger.info("Searching for matching certificates in user " + user.getUserID());
-            List<X509Certificate> certs = getUserCerts(user.getUserID());
+            List<X509Certificate> certs = getUserCerts(connection, user.getUserID());
 
             if (certs == null || certs.isEmpty()) {
                 logger.warn("Unable to authenticate user " + user.getUserID() + ": User has no certificates");
@@ -388,7 +384,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
             logger.info("User " + user.getUserID() + " authenticated");
 
-            List<String> roles = getUserRoles(user.getUserID());
+            List<String> roles = getUserRoles(connection, user.getUserID());
             return new PKIPrincipal(user, null, roles);
         } catch(Exception e) {
             logger.error("Problem to verify the certificate", e);
@@ -401,12 +397,8 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
         logger.info("Shutting down PostgreSQL realm");
 
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch(Exception e) {
-                throw new LifecycleException("Cannot close the DB connection: " + e.getMessage(), e);
-            }
+        if (pool != null) {
+            pool.close();
         }
     }
 }
@@ -17,31 +17,246 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.request;
 
-import java.util.Vector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.ServiceUnavailableException;
+import com.netscape.certsrv.util.IStatsSubsystem;
+import com.netscape.cmscore.base.ConfigStore;
 import com.netscape.cmscore.request.Request;
+import com.netscape.cmscore.util.Histogram;
 
 /**
- * This class represents a request scheduler that prioritizes
- * the threads based on the request processing order.
- * The request that enters the request queue first should
- * be processed first.
+ * This class represents a request scheduler that limits the number
+ * of requests processed concurrently by the request queue.
+ *
+ * The requests are assigned to a stage based on the request type
+ * (enrollment, renewal, revocation, or other). Each stage has a
+ * fixed number of workers and a bounded number of waiting requests.
+ * The waiting requests are admitted in arrival order. A request is
+ * rejected with ServiceUnavailableException if the stage is full
+ * or if it cannot be admitted within the timeout, so the caller
+ * can retry later instead of holding a connector thread.
+ *
+ * The requests are still processed by the calling thread, since the
+ * request processing depends on the SessionContext of that thread.
+ * Nested requests (e.g. a request processed by another request)
+ * are not subject to admission.
  */
 public class RequestScheduler {
-    private Vector<Thread> mRequestThreads = new Vector<>();
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestScheduler.class);
+
+    public static final String ENROLLMENT = "enrollment";
+    public static final String RENEWAL = "renewal";
+    public static final String REVOCATION = "revocation";
+    public static final String OTHER = "other";
+
+    public static final int DEFAULT_WORKERS = 16;
+    public static final int DEFAULT_QUEUE_SIZE = 100;
+    public static final int DEFAULT_TIMEOUT = 30; // seconds
+    public static final int DEFAULT_RETRY_AFTER = 10; // seconds
+
+    static class Stage {
+
+        final String name;
+        final int workers;
+        final int queueSize;
+        final long timeout; // milliseconds
+
+        // fair semaphore so waiting requests are admitted in order
+        final Semaphore permits;
+        final AtomicInteger waiting = new AtomicInteger();
+
+        final LongAdder admitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final Histogram waitTimes = new Histogram();
+        final Histogram serviceTimes = new Histogram();
+
+        Stage(String name, int workers, int queueSize, long timeout) {
+            this.name = name;
+            this.workers = workers;
+            this.queueSize = queueSize;
+            this.timeout = timeout;
+
+            permits = new Semaphore(workers, true);
+        }
+
+        int getActive() {
+            return workers - permits.availablePermits();
+        }
+    }
+
+    static class Admission {
+
+        final Stage stage;
+        final long startTime;
+
+        // number of nested requests on the same thread
+        int depth;
+
+        Admission(Stage stage, long startTime) {
+            this.stage = stage;
+            this.startTime = startTime;
+        }
+    }
+
+    private Map<String, Stage> mStages = new LinkedHashMap<>();
+    private int mRetryAfter = DEFAULT_RETRY_AFTER;
+
+    private ThreadLocal<Admission> mAdmission = new ThreadLocal<>();
+    private AtomicLong mLastStats = new AtomicLong();
+
+    public RequestScheduler() {
+        for (String name : new String[] { ENROLLMENT, RENEWAL, REVOCATION, OTHER }) {
+            mStages.put(name, new Stage(
+                    name,
+                    DEFAULT_WORKERS,
+                    DEFAULT_QUEUE_SIZE,
+                    TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT)));
+        }
+    }
+
+    /**
+     * Initializes the stages with the following parameters:
+     *
+     * <pre>
+     * retryAfter=10
+     * &lt;stage&gt;.workers=16
+     * &lt;stage&gt;.queueSize=100
+     * &lt;stage&gt;.timeout=30
+     * </pre>
+     *
+     * @param config scheduler configuration
+     */
+    public void init(ConfigStore config) throws EBaseException {
+
+        mRetryAfter = config.getInteger("retryAfter", DEFAULT_RETRY_AFTER);
+        logger.info("RequestScheduler: - retry after: " + mRetryAfter + " s");
+
+        Map<String, Stage> stages = new LinkedHashMap<>();
+
+        for (String name : mStages.keySet()) {
+            ConfigStore stageConfig = config.getSubStore(name, ConfigStore.class);
+
+            int workers = stageConfig.getInteger("workers", DEFAULT_WORKERS);
+            int queueSize = stageConfig.getInteger("queueSize", DEFAULT_QUEUE_SIZE);
+            int timeout = stageConfig.getInteger("timeout", DEFAULT_TIMEOUT);
+
+            if (workers <= 0) {
+                throw new EBaseException("Invalid number of " + name + " workers: " + workers);
+            }
+
+            logger.info("RequestScheduler: - " + name + ": workers: " + workers
+                    + ", queue size: " + queueSize + ", timeout: " + timeout + " s");
+
+            stages.put(name, new Stage(name, workers, queueSize, TimeUnit.SECONDS.toMillis(timeout)));
+        }
+
+        mStages = stages;
+    }
+
+    /**
+     * Returns the stage name for the request type.
+     */
+    public static String getStageName(String requestType) {
+
+        if (Request.ENROLLMENT_REQUEST.equals(requestType)) {
+            return ENROLLMENT;
+        }
+
+        if (Request.RENEWAL_REQUEST.equals(requestType)) {
+            return RENEWAL;
+        }
+
+        if (Request.REVOCATION_REQUEST.equals(requestType)
+                || Request.UNREVOCATION_REQUEST.equals(requestType)
+                || Request.CMCREVOKE_REQUEST.equals(requestType)) {
+            return REVOCATION;
+        }
+
+        return OTHER;
+    }
+
+    Stage getStage(Request r) {
+        String requestType = r == null ? null : r.getRequestType();
+        return mStages.get(getStageName(requestType));
+    }
 
     /**
      * Request entered the request queue processing.
      *
+     * Blocks until the request can be processed. Each successful call
+     * must be followed by a call to requestOut().
+     *
      * @param r request
+     * @exception ServiceUnavailableException if the request was not admitted
      */
-    public synchronized void requestIn(Request r) {
-        Thread current = Thread.currentThread();
+    public void requestIn(Request r) {
+
+        Admission admission = mAdmission.get();
+        if (admission != null) {
+            // nested request, already admitted
+            admission.depth++;
+            return;
+        }
+
+        Stage stage = getStage(r);
+        long startTime = System.nanoTime();
+
+        // do not overtake the waiting requests
+        if (stage.permits.hasQueuedThreads() || !stage.permits.tryAcquire()) {
+            acquire(stage, r);
+        }
+
+        long now = System.nanoTime();
+        stage.waitTimes.record(TimeUnit.NANOSECONDS.toMillis(now - startTime));
+        stage.admitted.increment();
+
+        mAdmission.set(new Admission(stage, now));
+    }
+
+    void acquire(Stage stage, Request r) {
+
+        if (stage.waiting.incrementAndGet() > stage.queueSize) {
+            stage.waiting.decrementAndGet();
+            reject(stage, r, "queue is full");
+        }
+
+        boolean acquired = false;
+
+        try {
+            acquired = stage.permits.tryAcquire(stage.timeout, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+        } finally {
+            stage.waiting.decrementAndGet();
+        }
 
-        if (mRequestThreads.size() == 0) {
-            current.setPriority(Thread.MAX_PRIORITY);
+        if (!acquired) {
+            reject(stage, r, "timed out waiting for a worker");
         }
-        mRequestThreads.addElement(current);
+    }
+
+    void reject(Stage stage, Request r, String reason) {
+
+        stage.rejected.increment();
+        updateStats(false);
+
+        String requestID = r == null || r.getRequestId() == null ? "" : " " + r.getRequestId();
+        logger.warn("RequestScheduler: Unable to process " + stage.name + " request" + requestID + ": " + reason);
+
+        throw new ServiceUnavailableException(
+                "Server is too busy to process " + stage.name + " request, please retry later",
+                mRetryAfter);
     }
 
     /**
@@ -49,20 +264,50 @@ public class RequestScheduler {
      *
      * @param r request
      */
-    public synchronized void requestOut(Request r) {
-        Thread current = Thread.currentThread();
-        Thread first = mRequestThreads.elementAt(0);
-
-        if (current.equals(first)) {
-            // reprioritize
-            try {
-                Thread second = mRequestThreads.elementAt(1);
-
-                second.setPriority(Thread.MAX_PRIORITY);
-            } catch (Exception e) {
-                // no second element; nothing to do
-            }
+    public void requestOut(Request r) {
+
+        Admission admission = mAdmission.get();
+        if (admission == null) {
+            logger.warn("RequestScheduler: Request was not admitted");
+            return;
+        }
+
+        if (admission.depth > 0) {
+            admission.depth--;
+            return;
+        }
+
+        mAdmission.remove();
+
+        Stage stage = admission.stage;
+        stage.serviceTimes.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - admission.startTime));
+        stage.permits.release();
+
+        updateStats(false);
+    }
+
+    /**
+     * Publishes the scheduler statistics at most once per interval
+     * unless forced.
+     */
+    public void updateStats(boolean force) {
+
+        IStatsSubsystem statsSub = Histogram.getStatsSubsystem(mLastStats, force);
+        if (statsSub == null) {
+            return;
+        }
+
+        for (Stage stage : mStages.values()) {
+
+            String prefix = "requestScheduler." + stage.name + ".";
+
+            statsSub.setGauge(prefix + "active", stage.getActive());
+            statsSub.setGauge(prefix + "waiting", stage.waiting.get());
+            statsSub.setGauge(prefix + "admitted", stage.admitted.sum());
+            statsSub.setGauge(prefix + "rejected", stage.rejected.sum());
+
+            stage.waitTimes.setGauges(statsSub, prefix + "waitTime", "ms");
+            stage.serviceTimes.setGauges(statsSub, prefix + "serviceTime", "ms");
         }
-        mRequestThreads.removeElement(current);
     }
 }
@@ -66,6 +66,7 @@ import com.netscape.certsrv.authentication.AuthCredentials;
 import com.netscape.certsrv.authority.IAuthority;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IArgBlock;
+import com.netscape.certsrv.base.ServiceUnavailableException;
 import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.kra.IKeyRecoveryAuthority;
 import com.netscape.certsrv.logging.ILogger;
@@ -498,6 +499,13 @@ public abstract class CMSServlet extends HttpServlet {
             //e.printStackTrace(ps);
             log(e.toString());
             renderException(cmsRequest, e);
+        } catch (ServiceUnavailableException e) {
+            iCommandQueue.unRegisterProccess(cmsRequest, this);
+            logger.warn("CMSServlet: " + e.getMessage());
+            if (e.getRetryAfter() != null) {
+                httpResp.setHeader("Retry-After", e.getRetryAfter().toString());
+            }
+            httpResp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
         } catch (Exception ex) {
             iCommandQueue.unRegisterProccess(cmsRequest, this);
             ByteArrayOutputStream os = new ByteArrayOutputStream();
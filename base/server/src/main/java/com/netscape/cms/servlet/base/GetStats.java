@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -137,6 +138,13 @@ public class GetStats extends CMSServlet {
         header.addStringValue("curTime", (new Date()).toString());
         parse(argSet, st, 0);
 
+        for (Map.Entry<String, Long> gauge : statsSub.getGauges().entrySet()) {
+            ArgBlock rarg = new ArgBlock();
+            rarg.addStringValue("gauge", gauge.getKey());
+            rarg.addLongValue("value", gauge.getValue());
+            argSet.addRepeatRecord(rarg);
+        }
+
         try {
             ServletOutputStream out = httpResp.getOutputStream();
 
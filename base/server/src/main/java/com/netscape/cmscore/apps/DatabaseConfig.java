@@ -118,6 +118,17 @@ public class DatabaseConfig extends ConfigStore {
         putString(DBSubsystem.PROP_SERIAL_INCREMENT, serialIncrement);
     }
 
+    /**
+     * Returns the number of serial numbers reserved in memory at a time.
+     */
+    public int getSerialBlockSize() throws EBaseException {
+        return getInteger(DBSubsystem.PROP_SERIAL_BLOCK_SIZE, 1);
+    }
+
+    public void setSerialBlockSize(int serialBlockSize) {
+        putInteger(DBSubsystem.PROP_SERIAL_BLOCK_SIZE, serialBlockSize);
+    }
+
     public String getRequestDN() throws EBaseException {
         return getString(DBSubsystem.PROP_REQUEST_BASEDN, "");
     }
@@ -182,6 +193,17 @@ public class DatabaseConfig extends ConfigStore {
         putString(DBSubsystem.PROP_REQUEST_INCREMENT, requestIncrement);
     }
 
+    /**
+     * Returns the number of request IDs reserved in memory at a time.
+     */
+    public int getRequestBlockSize() throws EBaseException {
+        return getInteger(DBSubsystem.PROP_REQUEST_BLOCK_SIZE, 1);
+    }
+
+    public void setRequestBlockSize(int requestBlockSize) {
+        putInteger(DBSubsystem.PROP_REQUEST_BLOCK_SIZE, requestBlockSize);
+    }
+
     public String getReplicaDN() throws EBaseException {
         return getString(DBSubsystem.PROP_REPLICA_BASEDN, "");
     }
@@ -17,31 +17,61 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.connector;
 
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.dogtagpki.server.PKIClientSocketListener;
 
 import com.netscape.certsrv.base.EBaseException;
-import com.netscape.certsrv.ldap.ELdapException;
+import com.netscape.certsrv.util.IStatsSubsystem;
+import com.netscape.cmscore.util.Histogram;
 import com.netscape.cmsutil.http.JssSSLSocketFactory;
 import com.netscape.cmsutil.net.ISocketFactory;
 
 /**
  * Factory for getting HTTP Connections to a HTTPO server
+ *
+ * The connections are kept open (keep-alive) and reused by
+ * the next request, most recently used first. The number of
+ * connections in use is limited by a semaphore instead of a
+ * monitor, so the requests to the remote authority can run
+ * concurrently and the connections are created outside of
+ * any lock.
  */
 public class HttpConnFactory {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HttpConnFactory.class);
 
-    protected int mMinConns = 1;
     protected int mMaxConns = 30;
 
-    private int mNumConns = 0; // number of available conns in array
-    private int mTotal = 0; // total num conns
-    private HttpConnection mConns[];
+    // idle connections, most recently used first
+    private Deque<HttpConnection> mIdleConns = new ConcurrentLinkedDeque<>();
+
+    // connections in use
+    private Set<HttpConnection> mActiveConns = ConcurrentHashMap.newKeySet();
+
+    // limits the number of connections in use
+    private Semaphore mPermits;
+
     private RemoteAuthority mDest;
     private String mNickname = "";
     private String mClientCiphers = null;
     private int mTimeout = 0;
 
+    final LongAdder mCreated = new LongAdder();
+    final LongAdder mWaits = new LongAdder();
+    final LongAdder mTimeouts = new LongAdder();
+    final Histogram mWaitTimes = new Histogram();
+    final Histogram mLatencies = new Histogram();
+
+    private AtomicLong mLastStats = new AtomicLong();
+
     /**
      * Constructor for initializing from the config store.
      * must be followed by init(ConfigStore)
@@ -52,8 +82,10 @@ public class HttpConnFactory {
     /**
      * Constructor for HttpConnFactory
      *
-     * @param minConns minimum number of connections to have available
+     * @param minConns not used, the connections are created on demand
      * @param maxConns max number of connections to have available. This is
+     * @param timeout timeout in seconds to connect, send a request,
+     *            or wait for an available connection (0 for no timeout)
      */
     public HttpConnFactory(
             int minConns,
@@ -73,52 +105,36 @@ public class HttpConnFactory {
         mNickname = nickname;
         mTimeout = timeout;
 
-        init(minConns, maxConns);
+        init(maxConns);
     }
 
     /**
      * initialize parameters obtained from either constructor or
      * config store
      *
-     * @param minConns minimum number of connection handles to have available.
      * @param maxConns maximum total number of connections to ever have.
-     * @param connInfo ldap connection info.
-     * @param authInfo ldap authentication info.
-     * @exception ELdapException if any error occurs.
+     * @exception EBaseException if any error occurs.
      */
-    private void init(int minConns, int maxConns
-            )
-                    throws EBaseException {
+    private void init(int maxConns) throws EBaseException {
 
-        logger.debug("min conns " + minConns + " maxConns " + maxConns);
-        if (minConns <= 0 || maxConns <= 0 || minConns > maxConns) {
+        logger.debug("maxConns " + maxConns);
+        if (maxConns <= 0) {
             logger.warn("bad values from CMS.cfg");
 
         } else {
-
-            mMinConns = minConns;
             mMaxConns = maxConns;
         }
 
-        logger.debug("before creating httpconn array");
-
-        mConns = new HttpConnection[mMaxConns];
-
-        // Create connection handle and make initial connection
-
-        logger.debug("before makeConnection");
+        mPermits = new Semaphore(mMaxConns, true);
 
         logger.debug(
-                "initializing HttpConnFactory with mininum " + mMinConns + " and maximum " + mMaxConns +
+                "initializing HttpConnFactory with maximum " + mMaxConns +
                         " connections to ");
 
-        // initalize minimum number of connection handles available.
-        //makeMinimum();
-
         logger.debug("leaving HttpConnFactory init.");
     }
 
-    private HttpConnection createConnection() throws EBaseException {
+    HttpConnection createConnection() throws EBaseException {
 
         HttpConnection retConn = null;
 
@@ -145,32 +161,6 @@ public class HttpConnFactory {
         return retConn;
     }
 
-    /**
-     * makes the minumum number of connections
-     */
-    private void makeMinimum() throws EBaseException {
-
-        logger.debug("In HttpConnFactory.makeMinimum.");
-        int increment;
-
-        if (mNumConns < mMinConns && mTotal <= mMaxConns) {
-
-            increment = Math.min(mMinConns - mNumConns, mMaxConns - mTotal);
-
-            if (increment == 0)
-                return;
-
-            logger.debug("increasing minimum connections by " + increment);
-            for (int i = increment - 1; i >= 0; i--) {
-                mConns[i] = createConnection();
-            }
-            mTotal += increment;
-            mNumConns += increment;
-            logger.debug("new total available http connections " + mTotal);
-            logger.debug("new number of http connections " + mNumConns);
-        }
-    }
-
     /**
      * gets a conenction from this factory.
      * All connections obtained from the factory must be returned by
@@ -216,38 +206,64 @@ public class HttpConnFactory {
      *     factory.returnConn(c);
      * }
      * </pre>
+     *
+     * @exception EBaseException if no connection is available within the timeout
      */
-    public synchronized HttpConnection getConn(boolean waitForConn)
+    public HttpConnection getConn(boolean waitForConn)
             throws EBaseException {
-        boolean waited = false;
 
         logger.debug("In HttpConnFactory.getConn");
-        if (mNumConns == 0)
-            makeMinimum();
-        if (mNumConns == 0) {
+        long startTime = System.nanoTime();
+
+        if (!mPermits.tryAcquire()) {
+
             if (!waitForConn)
                 return null;
+
+            logger.warn("HttpConnFactory: Ran out of HTTP connections");
+            mWaits.increment();
+
+            boolean acquired = false;
+
             try {
-                logger.warn("HttpConnFactory: Ran out of HTTP connections");
-                waited = true;
-                logger.debug("HttpConn:about to wait for a new http connection");
-                while (mNumConns == 0)
-                    wait();
+                if (mTimeout > 0) {
+                    acquired = mPermits.tryAcquire(mTimeout, TimeUnit.SECONDS);
+                } else {
+                    mPermits.acquire();
+                    acquired = true;
+                }
 
-                logger.debug("HttpConn:done waiting for new http connection");
             } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        }
-        mNumConns--;
-        HttpConnection conn = mConns[mNumConns];
 
-        mConns[mNumConns] = null;
+            if (!acquired) {
+                mTimeouts.increment();
+                updateStats(false);
+                throw new EBaseException("No HTTP connection available to "
+                        + mDest.getHost() + ":" + mDest.getPort());
+            }
 
-        if (waited) {
-            logger.warn("HttpConn:had to wait for an available connection from pool");
             logger.warn("Http connections are available again in http connection pool");
         }
-        logger.debug("HttpgetConn: mNumConns now " + mNumConns);
+
+        mWaitTimes.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
+        HttpConnection conn = mIdleConns.pollFirst();
+
+        if (conn == null) {
+            try {
+                conn = createConnection();
+                mCreated.increment();
+
+            } catch (EBaseException e) {
+                mPermits.release();
+                throw e;
+            }
+        }
+
+        mActiveConns.add(conn);
+        logger.debug("HttpgetConn: active connections now " + mActiveConns.size());
 
         return conn;
     }
@@ -255,6 +271,8 @@ public class HttpConnFactory {
     /**
      * Return connection to the factory.
      * This is mandatory after a getConn().
+     * A connection that has been closed with disconnect(),
+     * e.g. after a failed request, is not reused.
      * The best thing to do is to put returnConn in a finally clause so it
      * always gets called. For example,
      *
@@ -270,22 +288,72 @@ public class HttpConnFactory {
      * }
      * </pre>
      */
-    public synchronized void returnConn(HttpConnection conn) {
+    public void returnConn(HttpConnection conn) {
 
         logger.debug("In HttpConnFactory.returnConn");
         if (conn == null) {
             return;
         }
-        HttpConnection boundconn = conn;
 
-        for (int i = 0; i < mNumConns; i++) {
-            if (mConns[i] == conn) {
-                logger.debug("returnConn: previously returned connection. " + conn);
+        if (!mActiveConns.remove(conn)) {
+            logger.debug("returnConn: previously returned connection. " + conn);
+            return;
+        }
+
+        if (conn.isConnected()) {
+            // keep the connection open for the next request
+            mIdleConns.offerFirst(conn);
 
-            }
+        } else {
+            // the connection was closed after a failure, the next
+            // request will use another connection or create a new one
+            logger.debug("returnConn: discarding closed connection " + conn);
+        }
+
+        mPermits.release();
+
+        logger.debug("HttpreturnConn: active connections now " + mActiveConns.size());
+        updateStats(false);
+    }
+
+    /**
+     * Records the time to send a request and receive the response
+     * from the remote authority.
+     *
+     * @param millis latency in milliseconds
+     */
+    public void recordLatency(long millis) {
+        mLatencies.record(millis);
+    }
+
+    public int getActiveConns() {
+        return mActiveConns.size();
+    }
+
+    public int getIdleConns() {
+        return mIdleConns.size();
+    }
+
+    /**
+     * Publishes the connection statistics at most once per interval
+     * unless forced.
+     */
+    public void updateStats(boolean force) {
+
+        IStatsSubsystem statsSub = Histogram.getStatsSubsystem(mLastStats, force);
+        if (statsSub == null) {
+            return;
         }
-        mConns[mNumConns++] = boundconn;
-        logger.debug("HttpreturnConn: mNumConns now " + mNumConns);
-        notify();
+
+        String prefix = "httpConnector." + mDest.getHost() + ":" + mDest.getPort() + ".";
+
+        statsSub.setGauge(prefix + "active", mActiveConns.size());
+        statsSub.setGauge(prefix + "idle", mIdleConns.size());
+        statsSub.setGauge(prefix + "created", mCreated.sum());
+        statsSub.setGauge(prefix + "waits", mWaits.sum());
+        statsSub.setGauge(prefix + "timeouts", mTimeouts.sum());
+
+        mWaitTimes.setGauges(statsSub, prefix + "waitTime", "ms");
+        mLatencies.setGauges(statsSub, prefix + "latency", "ms");
     }
 }
@@ -106,6 +106,12 @@ public class HttpConnection {
         this(dest, factory, 0);
     }
 
+    /**
+     * Creates a connection without a remote authority.
+     */
+    HttpConnection() {
+    }
+
     List<InetSocketAddress> parseTarget(String target, int port) {
 
         List<InetSocketAddress> results = new ArrayList<>();
@@ -173,6 +179,30 @@ public class HttpConnection {
         throw exception;
     }
 
+    /**
+     * Returns true if the connection to the remote authority is open.
+     */
+    public boolean isConnected() {
+        return mHttpClient.connected();
+    }
+
+    /**
+     * Closes the connection to the remote authority. The connection
+     * will be opened again by the next request.
+     */
+    public void disconnect() {
+
+        if (!mHttpClient.connected()) {
+            return;
+        }
+
+        try {
+            mHttpClient.disconnect();
+        } catch (IOException e) {
+            logger.warn("HttpConnection: Unable to disconnect: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Sets the HttpRequest URI before send
      *
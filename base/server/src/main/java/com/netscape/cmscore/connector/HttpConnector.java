@@ -18,6 +18,7 @@
 package com.netscape.cmscore.connector;
 
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 
 import org.dogtagpki.server.PKIClientSocketListener;
 
@@ -79,6 +80,8 @@ public class HttpConnector extends Connector {
         // this will start resending past requests in parallel.
         if (resendInterval >= 0) {
             mResender = new Resender(nickName, clientCiphers, dest, resendInterval);
+            mResender.setConnFactory(mConnFactory);
+            mResender.setMaxRequests(config.getInteger("maxResendRequests", Resender.DEFAULT_MAX_REQUESTS));
         }
     }
 
@@ -113,6 +116,8 @@ public class HttpConnector extends Connector {
         // this will start resending past requests in parallel.
         if (resendInterval >= 0) {
             mResender = new Resender(nickName, clientCiphers, dest, resendInterval);
+            mResender.setConnFactory(mConnFactory);
+            mResender.setMaxRequests(config.getInteger("maxResendRequests", Resender.DEFAULT_MAX_REQUESTS));
         }
     }
 
@@ -139,11 +144,19 @@ public class HttpConnector extends Connector {
         try {
             curConn = mConnFactory.getConn();
             curConn.setRequestURI(uri);
+
+            long startTime = System.nanoTime();
             resp = curConn.send(msg);
+            mConnFactory.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
 
         } catch (EBaseException e) {
             logger.warn("HttpConnector: send(): "+ e.getMessage(), e);
 
+            if (curConn != null) {
+                // the connection might have an incomplete response pending
+                curConn.disconnect();
+            }
+
         } finally {
             if (curConn != null) {
                 mConnFactory.returnConn(curConn);
@@ -166,9 +179,16 @@ public class HttpConnector extends Connector {
 
             curConn = mConnFactory.getConn();
 
+            // the pooled connection may have been used for another URI
+            if (mDest.getURI() != null) {
+                curConn.setRequestURI(mDest.getURI());
+            }
+
             logger.debug("HttpConnector.send " + curConn);
 
+            long startTime = System.nanoTime();
             replymsg = (HttpPKIMessage) curConn.send(tomsg);
+            mConnFactory.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
 
             if (replymsg == null) {
                 logger.warn("HttpConncter. replymsg is null");
@@ -236,6 +256,11 @@ public class HttpConnector extends Connector {
         } catch (EBaseException e) {
             logger.error("HttpConn: error sending request to cert: " + e.getMessage(), e);
 
+            if (curConn != null) {
+                // the connection might have an incomplete response pending
+                curConn.disconnect();
+            }
+
             if (!r.getRequestType().equals(Request.GETREVOCATIONINFO_REQUEST)) {
                 if (mResender != null)
                     mResender.addRequest(r);
@@ -266,6 +291,9 @@ public class HttpConnector extends Connector {
         logger.debug("Stopping HttpConnector resender thread");
         if (mResender != null)
             mResender.stop();
+
+        if (mConnFactory != null)
+            mConnFactory.updateStats(true);
     }
 
 }
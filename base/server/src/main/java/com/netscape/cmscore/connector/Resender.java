@@ -18,8 +18,10 @@
 package com.netscape.cmscore.connector;
 
 import java.io.IOException;
-import java.util.Enumeration;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -49,16 +51,19 @@ public class Resender implements Runnable {
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Resender.class);
 
     public static final int MINUTE = 60;
+    public static final int DEFAULT_MAX_REQUESTS = 10000;
 
     protected RequestRepository requestRepository;
     RequestQueue mQueue;
     protected RemoteAuthority mDest;
     ScheduledExecutorService executorService;
 
-    /* Vector of Request Id *Strings* */
-    protected Vector<String> mRequestIds = new Vector<>();
+    /* Set of Request Id *Strings* in the order they were added */
+    protected Set<String> mRequestIds = new LinkedHashSet<>();
+    protected int mMaxRequests = DEFAULT_MAX_REQUESTS;
 
     protected HttpConnection mConn = null;
+    protected HttpConnFactory mConnFactory = null;
 
     protected String mNickName = null;
     protected String mClientCiphers = null;
@@ -96,6 +101,21 @@ public class Resender implements Runnable {
             mInterval = interval; // interval specified in seconds.
     }
 
+    /**
+     * Sets the connection factory shared with the connector. If not set,
+     * the resender uses its own connection.
+     */
+    public void setConnFactory(HttpConnFactory connFactory) {
+        mConnFactory = connFactory;
+    }
+
+    /**
+     * Sets the maximum number of requests in the resend queue.
+     */
+    public void setMaxRequests(int maxRequests) {
+        mMaxRequests = maxRequests;
+    }
+
     // must be done after a subsystem 'start' so queue is initialized.
     private void initRequests() {
         // get all requests in mAuthority that are still pending.
@@ -106,7 +126,7 @@ public class Resender implements Runnable {
             RequestId rid = list.nextRequestId();
             logger.debug("added request Id " + rid + " in init to resend queue.");
             // note these are added as strings
-            mRequestIds.addElement(rid.toString());
+            addRequestId(rid);
         }
     }
 
@@ -116,11 +136,30 @@ public class Resender implements Runnable {
      * @param r Request to be placed on the resend queue.
      */
     public void addRequest(Request r) {
+        if (addRequestId(r.getRequestId())) {
+            logger.debug("added " + r.getRequestId() + " to resend queue");
+        }
+    }
+
+    boolean addRequestId(RequestId rid) {
         synchronized (mRequestIds) {
             // note the request ids are added as strings.
-            mRequestIds.addElement(r.getRequestId().toString());
+            String ridString = rid.toString();
+
+            if (mRequestIds.contains(ridString)) {
+                return false;
+            }
+
+            // the request stays pending in the database and will be
+            // resent after restart
+            if (mMaxRequests > 0 && mRequestIds.size() >= mMaxRequests) {
+                logger.warn("Resender: Resend queue is full, unable to add request " + rid);
+                return false;
+            }
+
+            mRequestIds.add(ridString);
+            return true;
         }
-        logger.debug("added " + r.getRequestId() + " to resend queue");
     }
 
     public void start(final String name) {
@@ -144,12 +183,14 @@ public class Resender implements Runnable {
             return;
 
         if (! connected) {
-            logger.debug("Connecting ...");
-            PKIClientSocketListener sockListener = new PKIClientSocketListener();
-            JssSSLSocketFactory factory = new JssSSLSocketFactory(mNickName, mClientCiphers);
-            factory.addSocketListener(sockListener);
+            if (mConnFactory == null) {
+                logger.debug("Connecting ...");
+                PKIClientSocketListener sockListener = new PKIClientSocketListener();
+                JssSSLSocketFactory factory = new JssSSLSocketFactory(mNickName, mClientCiphers);
+                factory.addSocketListener(sockListener);
 
-            mConn = new HttpConnection(mDest, factory);
+                mConn = new HttpConnection(mDest, factory);
+            }
             initRequests();
             connected = true;
         }
@@ -163,16 +204,15 @@ public class Resender implements Runnable {
 
     private void resend() {
         // clone a seperate list so mRequestIds can be modified
-        @SuppressWarnings("unchecked")
-        Vector<String> rids = (Vector<String>) mRequestIds.clone();
-        Vector<RequestId> completedRids = new Vector<>();
+        List<String> rids;
+        synchronized (mRequestIds) {
+            rids = new ArrayList<>(mRequestIds);
+        }
+        List<RequestId> completedRids = new ArrayList<>();
 
         // resend each request to CA to ping for status.
-        Enumeration<String> enum1 = rids.elements();
-
-        while (enum1.hasMoreElements()) {
+        for (String ridString : rids) {
             // request ids are added as strings.
-            String ridString = enum1.nextElement();
             RequestId rid = new RequestId(ridString);
             Request r = null;
 
@@ -188,13 +228,13 @@ public class Resender implements Runnable {
             try {
                 if (r.getRequestStatus() != RequestStatus.SVC_PENDING) {
                     // request not pending anymore - aborted or cancelled.
-                    completedRids.addElement(rid);
+                    completedRids.add(rid);
                     logger.debug("request id " + rid + " no longer service pending");
                 } else {
                     boolean completed = send(r);
 
                     if (completed) {
-                        completedRids.addElement(rid);
+                        completedRids.add(rid);
                         logger.info(CMS.getLogMessage("CMSCORE_CONNECTOR_REQUEST_COMPLETED", rid.toString()));
                     }
                 }
@@ -210,14 +250,11 @@ public class Resender implements Runnable {
         }
 
         // remove completed ones from list so they won't be resent.
-        Enumeration<RequestId> en = completedRids.elements();
-
         synchronized (mRequestIds) {
-            while (en.hasMoreElements()) {
-                RequestId id = en.nextElement();
+            for (RequestId id : completedRids) {
 
                 logger.debug("Connector: Removed request " + id + " from re-send queue");
-                mRequestIds.removeElement(id.toString());
+                mRequestIds.remove(id.toString());
                 logger.debug("Connector: mRequestIds now has " +
                                 mRequestIds.size() + " elements.");
             }
@@ -228,12 +265,28 @@ public class Resender implements Runnable {
     private boolean send(Request r)
             throws IOException, EBaseException {
 
+        HttpConnection conn = null;
+
         try {
             HttpPKIMessage tomsg = new HttpPKIMessage();
             HttpPKIMessage replymsg = null;
 
             tomsg.fromRequest(r);
-            replymsg = (HttpPKIMessage) mConn.send(tomsg);
+
+            if (mConnFactory == null) {
+                replymsg = (HttpPKIMessage) mConn.send(tomsg);
+
+            } else {
+                conn = mConnFactory.getConn();
+
+                // the pooled connection may have been used for another URI
+                if (mDest.getURI() != null) {
+                    conn.setRequestURI(mDest.getURI());
+                }
+
+                replymsg = (HttpPKIMessage) conn.send(tomsg);
+            }
+
             if (replymsg == null)
                 return false;
             logger.debug(r.getRequestId() + " resent to CA");
@@ -261,8 +314,19 @@ public class Resender implements Runnable {
         } catch (EBaseException e) {
             // same as not having sent it, so still want to resend.
             logger.warn(CMS.getLogMessage("CMSCORE_CONNECTOR_RESEND_ERROR", r.getRequestId().toString(), e.toString()), e);
+
+            if (conn != null) {
+                // the connection might have an incomplete response pending
+                conn.disconnect();
+            }
+
             if (e.toString().indexOf("Connection refused by peer") > 0)
                 throw new EBaseException("connection not available");
+
+        } finally {
+            if (conn != null) {
+                mConnFactory.returnConn(conn);
+            }
         }
         return false;
 
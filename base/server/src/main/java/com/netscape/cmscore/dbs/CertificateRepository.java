@@ -86,7 +86,7 @@ public class CertificateRepository extends Repository {
 
     private boolean mConsistencyCheck = false;
 
-    private boolean mEnableRandomSerialNumbers;
+    private volatile boolean mEnableRandomSerialNumbers;
     private int mBitLength = 0;
     private BigInteger mRangeSize = null;
     private int mMinRandomBitLength = 4;
@@ -174,6 +174,9 @@ public class CertificateRepository extends Repository {
         if (incrementNo != null) {
             mIncrementNo = new BigInteger(incrementNo, mRadix);
         }
+
+        mBlockSize = Math.max(mDBConfig.getSerialBlockSize(), 1);
+        logger.debug("CertificateRepository: - block size: " + mBlockSize);
     }
 
     /**
@@ -201,6 +204,7 @@ public class CertificateRepository extends Repository {
         EngineConfig cs = engine.getConfig();
 
         if (mEnableRandomSerialNumbers ^ random || forceModeChange) {
+            releaseSerialNumbers();
             mEnableRandomSerialNumbers = random;
             logger.debug("CertificateRepository:  setEnableRandomSerialNumbers   switching to " +
                       ((random)?PROP_RANDOM_MODE:PROP_SEQUENTIAL_MODE) + " mode");
@@ -323,56 +327,69 @@ public class CertificateRepository extends Repository {
      * Retrieves the next certificate serial number, and also increases
      * the serial number by one.
      *
+     * Sequential serial numbers are handed out from the reserved block
+     * without acquiring the repository lock.
+     *
      * @return serial number
      * @exception EBaseException failed to retrieve next serial number
      */
     @Override
-    public synchronized BigInteger getNextSerialNumber()
+    public BigInteger getNextSerialNumber()
             throws EBaseException {
 
-        if (idGenerator == IDGenerator.RANDOM) {
+        if (idGenerator == IDGenerator.RANDOM || !mEnableRandomSerialNumbers) {
             return super.getNextSerialNumber();
         }
 
-        BigInteger nextSerialNumber = null;
-        BigInteger randomNumber = null;
+        return getNextRandomSerialNumber();
+    }
 
-        initCache();
-        logger.debug("CertificateRepository: getNextSerialNumber  mEnableRandomSerialNumbers="+mEnableRandomSerialNumbers);
+    private BigInteger getNextRandomSerialNumber()
+            throws EBaseException {
+        lock.lock();
+        try {
+            BigInteger nextSerialNumber = null;
+            BigInteger randomNumber = null;
+
+            initCache();
+            logger.debug("CertificateRepository: getNextSerialNumber  mEnableRandomSerialNumbers="+mEnableRandomSerialNumbers);
 
-        if (mEnableRandomSerialNumbers) {
-            int i = 0;
-            do {
-                if (i > 0) {
-                    logger.debug("CertificateRepository: getNextSerialNumber  regenerating serial number");
+            if (mEnableRandomSerialNumbers) {
+                int i = 0;
+                do {
+                    if (i > 0) {
+                        logger.debug("CertificateRepository: getNextSerialNumber  regenerating serial number");
+                    }
+                    randomNumber = getRandomNumber();
+                    nextSerialNumber = getRandomSerialNumber(randomNumber);
+                    nextSerialNumber = checkSerialNumbers(randomNumber, nextSerialNumber);
+                    i++;
+                } while (nextSerialNumber == null && i < mMaxCollisionRecoveryRegenerations);
+
+                if (nextSerialNumber == null) {
+                    logger.error("CertificateRepository: in getNextSerialNumber  nextSerialNumber is null");
+                    throw new EBaseException( "nextSerialNumber is null" );
                 }
-                randomNumber = getRandomNumber();
-                nextSerialNumber = getRandomSerialNumber(randomNumber);
-                nextSerialNumber = checkSerialNumbers(randomNumber, nextSerialNumber);
-                i++;
-            } while (nextSerialNumber == null && i < mMaxCollisionRecoveryRegenerations);
 
-            if (nextSerialNumber == null) {
-                logger.error("CertificateRepository: in getNextSerialNumber  nextSerialNumber is null");
-                throw new EBaseException( "nextSerialNumber is null" );
-            }
+                if (mCounter.compareTo(BigInteger.ZERO) >= 0 &&
+                    mMinSerialNo != null && mMaxSerialNo != null &&
+                    nextSerialNumber != null &&
+                    nextSerialNumber.compareTo(mMinSerialNo) >= 0 &&
+                    nextSerialNumber.compareTo(mMaxSerialNo) <= 0) {
+                    mCounter = mCounter.add(BigInteger.ONE);
+                }
+                logger.debug("CertificateRepository: getNextSerialNumber  nextSerialNumber="+
+                          nextSerialNumber+"  mCounter="+mCounter);
 
-            if (mCounter.compareTo(BigInteger.ZERO) >= 0 &&
-                mMinSerialNo != null && mMaxSerialNo != null &&
-                nextSerialNumber != null &&
-                nextSerialNumber.compareTo(mMinSerialNo) >= 0 &&
-                nextSerialNumber.compareTo(mMaxSerialNo) <= 0) {
-                mCounter = mCounter.add(BigInteger.ONE);
+                super.checkRange();
+            } else {
+                nextSerialNumber = super.getNextSerialNumber();
             }
-            logger.debug("CertificateRepository: getNextSerialNumber  nextSerialNumber="+
-                      nextSerialNumber+"  mCounter="+mCounter);
 
-            super.checkRange();
-        } else {
-            nextSerialNumber = super.getNextSerialNumber();
+            return nextSerialNumber;
+        } finally {
+            lock.unlock();
         }
-
-        return nextSerialNumber;
     }
 
     @Override
@@ -873,15 +890,19 @@ public class CertificateRepository extends Repository {
      * @param mods modifications
      * @exception EBaseException failed to modify
      */
-    public synchronized void modifyCertificateRecord(BigInteger serialNo,
+    public void modifyCertificateRecord(BigInteger serialNo,
             ModificationSet mods) throws EBaseException {
+        lock.lock();
+        try {
+            try (DBSSession s = dbSubsystem.createSession()) {
+                String name = "cn=" + serialNo + "," + mBaseDN;
 
-        try (DBSSession s = dbSubsystem.createSession()) {
-            String name = "cn=" + serialNo + "," + mBaseDN;
-
-            mods.add(CertRecord.ATTR_MODIFY_TIME, Modification.MOD_REPLACE,
-                    new Date());
-            s.modify(name, mods);
+                mods.add(CertRecord.ATTR_MODIFY_TIME, Modification.MOD_REPLACE,
+                        new Date());
+                s.modify(name, mods);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -1262,6 +1283,38 @@ public class CertificateRepository extends Repository {
         }
     }
 
+    /**
+     * Processes certificate records that satisfy the filter.
+     * The database session is kept open until all records have
+     * been processed, so concurrent callers use separate LDAP
+     * connections.
+     *
+     * @param filter search filter
+     * @param attrs selected attribute
+     * @param sortKey key to use for sorting the returned elements
+     * @param pageSize page size
+     * @param ep certificate record processor
+     * @exception EBaseException failed to search or process
+     */
+    public void processCertRecords(String filter,
+            String attrs[], String sortKey, int pageSize, ElementProcessor ep)
+            throws EBaseException {
+
+        logger.debug("CertificateRepository.processCertRecords()");
+
+        try (DBSSession session = dbSubsystem.createSession()) {
+            DBVirtualList<CertRecord> list = session.<CertRecord>createVirtualList(
+                    mBaseDN,
+                    filter,
+                    attrs,
+                    sortKey,
+                    pageSize);
+
+            CertRecordList recordList = new CertRecordList(list);
+            recordList.processCertRecords(0, recordList.getSize() - 1, ep);
+        }
+    }
+
     /**
      * Finds a list of certificate records that satisifies
      * the filter.
@@ -85,6 +85,7 @@ public class DBSubsystem {
     public static final String PROP_NEXT_MAX_SERIAL_NUMBER = "nextEndSerialNumber";
     public static final String PROP_SERIAL_LOW_WATER_MARK = "serialLowWaterMark";
     public static final String PROP_SERIAL_INCREMENT = "serialIncrement";
+    public static final String PROP_SERIAL_BLOCK_SIZE = "serialBlockSize";
     public static final String PROP_SERIAL_BASEDN = "serialDN";
     public static final String PROP_SERIAL_RANGE_DN = "serialRangeDN";
 
@@ -94,6 +95,7 @@ public class DBSubsystem {
     public static final String PROP_NEXT_MAX_REQUEST_NUMBER = "nextEndRequestNumber";
     public static final String PROP_REQUEST_LOW_WATER_MARK = "requestLowWaterMark";
     public static final String PROP_REQUEST_INCREMENT = "requestIncrement";
+    public static final String PROP_REQUEST_BLOCK_SIZE = "requestBlockSize";
     public static final String PROP_REQUEST_BASEDN = "requestDN";
     public static final String PROP_REQUEST_RANGE_DN = "requestRangeDN";
 
@@ -20,6 +20,8 @@ package com.netscape.cmscore.dbs;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.dbs.EDBException;
@@ -42,6 +44,15 @@ import netscape.ldap.LDAPv3;
  *
  * To build domain specific repository, subclass should be created.
  *
+ * With the legacy ID generator the serial numbers can be reserved
+ * in blocks. The numbers in a block are handed out without acquiring
+ * the repository lock. The block never extends past the current range,
+ * and the numbers that have not been handed out are returned to the
+ * range before the range is changed, so range transfers to clones are
+ * not affected. Nothing is persisted for a block: after a restart the
+ * last serial number is recovered from the database as before, so the
+ * numbers that were reserved but not used are reused.
+ *
  * @author galperin
  * @author thomask
  */
@@ -73,6 +84,38 @@ public abstract class Repository {
         }
     }
 
+    /**
+     * Serial numbers reserved in memory.
+     */
+    static class SerialNumberBlock {
+
+        final BigInteger start;
+        final long size;
+        final AtomicLong next = new AtomicLong();
+
+        SerialNumberBlock(BigInteger start, long size) {
+            this.start = start;
+            this.size = size;
+        }
+
+        /**
+         * Returns the next serial number in the block,
+         * or null if the block has been used up.
+         */
+        BigInteger next() {
+            long i = next.getAndIncrement();
+            return i < size ? start.add(BigInteger.valueOf(i)) : null;
+        }
+
+        /**
+         * Stops handing out serial numbers and returns the
+         * number of serial numbers that have been handed out.
+         */
+        long close() {
+            return Math.min(next.getAndSet(size), size);
+        }
+    }
+
     // (the next serialNo to be issued) - 1
     private BigInteger mSerialNo = null;
 
@@ -102,11 +145,21 @@ public abstract class Repository {
 
     private BigInteger mLastSerialNo = null;
 
+    protected int mBlockSize = 1;
+    private volatile SerialNumberBlock mBlock;
+
     protected IDGenerator idGenerator = IDGenerator.LEGACY;
     protected int idLength;
 
     protected SecureRandom secureRandom;
 
+    /**
+     * Lock for the serial number range. The range updates read and
+     * write the database, so a ReentrantLock is used instead of
+     * synchronized to not pin the carrier threads of virtual threads.
+     */
+    protected final ReentrantLock lock = new ReentrantLock();
+
     /**
      * Constructs a repository.
      * <P>
@@ -150,9 +203,15 @@ public abstract class Repository {
      * @param serial maximum number
      * @exception EBaseException failed to set maximum serial number
      */
-    public synchronized void setMaxSerial(BigInteger serial) throws EBaseException {
-        logger.debug("Repository: Setting max serial to " + serial);
-        mMaxSerialNo = serial;
+    public void setMaxSerial(BigInteger serial) throws EBaseException {
+        lock.lock();
+        try {
+            logger.debug("Repository: Setting max serial to " + serial);
+            releaseSerialNumbers();
+            mMaxSerialNo = serial;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -170,9 +229,14 @@ public abstract class Repository {
      * @param serial maximum number in next range
      * @exception EBaseException failed to set maximum serial number in next range
      */
-    public synchronized void setNextMaxSerial(BigInteger serial) throws EBaseException {
-        logger.debug("Repository: Setting next max serial to " + serial);
-        mNextMaxSerialNo = serial;
+    public void setNextMaxSerial(BigInteger serial) throws EBaseException {
+        lock.lock();
+        try {
+            logger.debug("Repository: Setting next max serial to " + serial);
+            mNextMaxSerialNo = serial;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -185,7 +249,17 @@ public abstract class Repository {
     }
 
     protected void setLastSerialNo(BigInteger lastSN) {
-        mLastSerialNo = lastSN;
+        lock.lock();
+        try {
+            releaseSerialNumbers();
+            mLastSerialNo = lastSN;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
     }
 
     public IDGenerator getIDGenerator() {
@@ -259,18 +333,23 @@ public abstract class Repository {
      * @return serial number
      * @exception EBaseException failed to retrieve next serial number
      */
-    public synchronized BigInteger peekNextSerialNumber() throws EBaseException {
-
-        logger.debug("Repository:In getTheSerialNumber ");
+    public BigInteger peekNextSerialNumber() throws EBaseException {
+        lock.lock();
+        try {
+            logger.debug("Repository:In getTheSerialNumber ");
 
-        initCache();
+            initCache();
+            releaseSerialNumbers();
 
-        BigInteger serial = mLastSerialNo.add(BigInteger.ONE);
+            BigInteger serial = mLastSerialNo.add(BigInteger.ONE);
 
-        if (mMaxSerialNo != null && serial.compareTo(mMaxSerialNo) > 0)
-            return hasNextRange() ? mNextMinSerialNo : null;
-        else
-            return serial;
+            if (mMaxSerialNo != null && serial.compareTo(mMaxSerialNo) > 0)
+                return hasNextRange() ? mNextMinSerialNo : null;
+            else
+                return serial;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -304,7 +383,7 @@ public abstract class Repository {
      * @return serial number
      * @exception EBaseException failed to retrieve next serial number
      */
-    public synchronized BigInteger getNextSerialNumber() throws
+    public BigInteger getNextSerialNumber() throws
             EBaseException {
 
         if (idGenerator == IDGenerator.RANDOM) {
@@ -320,27 +399,99 @@ public abstract class Repository {
             return id;
         }
 
-        logger.debug("Repository: in getNextSerialNumber. ");
+        SerialNumberBlock block = mBlock;
+        if (block != null) {
+            BigInteger serial = block.next();
+            if (serial != null) {
+                return serial;
+            }
+        }
 
-        initCache();
+        return reserveSerialNumbers();
+    }
+
+    /**
+     * Reserves a block of serial numbers and returns the first one.
+     * The rest of the block will be returned by getNextSerialNumber()
+     * without acquiring the repository lock.
+     */
+    protected BigInteger reserveSerialNumbers() throws EBaseException {
+        lock.lock();
+        try {
+            // another thread might have reserved a new block already
+            SerialNumberBlock block = mBlock;
+            if (block != null) {
+                BigInteger serial = block.next();
+                if (serial != null) {
+                    return serial;
+                }
+            }
+
+            logger.debug("Repository: in getNextSerialNumber. ");
+
+            initCache();
+
+            if (mLastSerialNo == null) {
+                logger.error("Repository::getNextSerialNumber() " +
+                           "- mLastSerialNo is null!");
+                throw new EBaseException("mLastSerialNo is null");
+            }
+
+            /* Advance the serial number.  checkRange() will check if it exceeds
+             * the current range and, if so, rolls to the next range and resets
+             * mLastSerialNo to the start of the new range.  Hence we return
+             * mLastSerialNo below, after the call to checkRange().
+             */
+            mLastSerialNo = mLastSerialNo.add(BigInteger.ONE);
+
+            checkRange();
 
-        if (mLastSerialNo == null) {
-            logger.error("Repository::getNextSerialNumber() " +
-                       "- mLastSerialNo is null!");
-            throw new EBaseException("mLastSerialNo is null");
+            BigInteger serial = mLastSerialNo;
+
+            if (mBlockSize > 1) {
+                // reserve the following numbers up to the end of the current range
+                BigInteger end = serial.add(BigInteger.valueOf(mBlockSize - 1));
+                if (mMaxSerialNo != null) {
+                    end = end.min(mMaxSerialNo);
+                }
+                long size = end.subtract(serial).longValue();
+
+                if (size > 0) {
+                    logger.debug("Repository: Reserving serial numbers " + serial.add(BigInteger.ONE) + ".." + end);
+                    mBlock = new SerialNumberBlock(serial.add(BigInteger.ONE), size);
+                    mLastSerialNo = end;
+                }
+            }
+
+            logger.debug("Repository: getNextSerialNumber: returning " + serial);
+            return serial;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        /* Advance the serial number.  checkRange() will check if it exceeds
-         * the current range and, if so, rolls to the next range and resets
-         * mLastSerialNo to the start of the new range.  Hence we return
-         * mLastSerialNo below, after the call to checkRange().
-         */
-        mLastSerialNo = mLastSerialNo.add(BigInteger.ONE);
+    /**
+     * Returns the reserved serial numbers that have not been
+     * handed out to the current range.
+     */
+    protected void releaseSerialNumbers() {
+        lock.lock();
+        try {
+            SerialNumberBlock block = mBlock;
+            if (block == null) {
+                return;
+            }
 
-        checkRange();
+            mBlock = null;
 
-        logger.debug("Repository: getNextSerialNumber: returning " + mLastSerialNo);
-        return mLastSerialNo;
+            long used = block.close();
+            if (used < block.size) {
+                mLastSerialNo = block.start.add(BigInteger.valueOf(used)).subtract(BigInteger.ONE);
+                logger.debug("Repository: Released serial numbers after " + mLastSerialNo);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     public BigInteger getRangeLength() {
@@ -382,7 +533,7 @@ public abstract class Repository {
         logger.debug("Repository: random limit: " + randomLimit);
 
         logger.debug("Repository: checkRange  mLastSerialNo="+mLastSerialNo);
-        if (mLastSerialNo.compareTo( mMaxSerialNo ) > 0 ||
+        if (mMaxSerialNo != null && mLastSerialNo.compareTo( mMaxSerialNo ) > 0 ||
             ((!engine.isPreOpMode()) && randomLimit != null && mCounter.compareTo(randomLimit) > 0)) {
 
             if (dbSubsystem.getEnableSerialMgmt()) {
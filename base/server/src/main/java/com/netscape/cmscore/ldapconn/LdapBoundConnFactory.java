@@ -17,10 +17,26 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.ldapconn;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.ldap.ELdapException;
 import com.netscape.certsrv.ldap.ELdapServerDownException;
 import com.netscape.certsrv.ldap.ILdapConnFactory;
+import com.netscape.certsrv.util.IStatsSubsystem;
+import com.netscape.cmscore.util.Histogram;
 import com.netscape.cmsutil.password.IPasswordStore;
 
 import netscape.ldap.LDAPConnection;
@@ -39,6 +55,14 @@ import netscape.ldap.LDAPv3;
  * the maximum limit of connections is exceeded, the factory
  * should provide proper synchronization to resolve contention issues.
  *
+ * The pool does not use a global lock. The number of connections in
+ * use is limited by a fair semaphore so threads waiting for a
+ * connection are served in FIFO order, optionally with a timeout.
+ * The idle connections are kept in a lock-free deque. A background
+ * task checks the idle connections, reconnects the master connection,
+ * and reports connections that have been held for too long together
+ * with the stack trace of the caller that obtained them.
+ *
  * XXX not sure how useful this is given that LDAPConnection itself can
  * be shared by multiple threads and cloned.
  */
@@ -54,6 +78,23 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
     protected int mMaxConns = 1000;
     protected int mMaxResults = 0;
 
+    /**
+     * Maximum time to wait for a connection in milliseconds,
+     * or 0 to wait indefinitely.
+     */
+    protected long mAcquireTimeout = 0;
+
+    /**
+     * Interval between health checks in seconds, or 0 to disable.
+     */
+    protected int mHealthCheckInterval = 0;
+
+    /**
+     * Time after which a connection that has not been returned is
+     * reported as a possible leak in seconds, or 0 to disable.
+     */
+    protected int mLeakDetectionThreshold = 0;
+
     protected LdapConnInfo mConnInfo = null;
     protected LdapAuthInfo mAuthInfo = null;
     IPasswordStore passwordStore;
@@ -61,17 +102,47 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
     public static final String PROP_MINCONNS = "minConns";
     public static final String PROP_MAXCONNS = "maxConns";
     public static final String PROP_MAXRESULTS = "maxResults";
+    public static final String PROP_ACQUIRE_TIMEOUT = "acquireTimeout";
+    public static final String PROP_HEALTH_CHECK_INTERVAL = "healthCheckInterval";
+    public static final String PROP_LEAK_DETECTION_THRESHOLD = "leakDetectionThreshold";
     public static final String PROP_LDAPCONNINFO = "ldapconn";
     public static final String PROP_LDAPAUTHINFO = "ldapauth";
 
     public static final String PROP_ERROR_IF_DOWN = "errorIfDown";
 
-    private int mNumConns = 0; // number of available conns in array
-    private int mTotal = 0; // total num conns
+    /**
+     * Connection obtained from the pool and not yet returned.
+     */
+    static class Lease {
+
+        final String threadName = Thread.currentThread().getName();
+        final long startTime = System.nanoTime();
+
+        /**
+         * Stack trace of the caller if leak detection is enabled.
+         */
+        Throwable caller;
+
+        volatile boolean reported;
+    }
+
+    private ConcurrentLinkedDeque<LdapBoundConnection> mConns = new ConcurrentLinkedDeque<>();
+    private AtomicInteger mNumConns = new AtomicInteger(); // number of available conns in pool
+    private AtomicInteger mTotal = new AtomicInteger(); // total num conns
+
+    private Map<LdapBoundConnection, Lease> mLeases = new ConcurrentHashMap<>();
+    private Semaphore mPermits;
+
+    private AtomicInteger mWaiters = new AtomicInteger();
+    private Histogram mWaitTimes = new Histogram();
+    private LongAdder mTimeouts = new LongAdder();
+    private AtomicLong mLastStats = new AtomicLong();
 
     private boolean doCloning = true;
-    private LdapBoundConnection mMasterConn = null; // master connection object.
-    private LdapBoundConnection[] mConns;
+    private volatile LdapBoundConnection mMasterConn = null; // master connection object.
+    private final ReentrantLock mMasterLock = new ReentrantLock();
+
+    private ScheduledExecutorService mHealthChecker;
 
     /**
      * return error if server is down at creation time.
@@ -100,12 +171,12 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
 
     @Override
     public int totalConn() {
-        return mTotal;
+        return mTotal.get();
     }
 
     @Override
-    public synchronized int freeConn() {
-        return mNumConns;
+    public int freeConn() {
+        return mNumConns.get();
     }
 
     @Override
@@ -113,6 +184,35 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
         return mMaxConns;
     }
 
+    /**
+     * Returns the number of connections in use.
+     */
+    public int inUseConn() {
+        return mLeases.size();
+    }
+
+    /**
+     * Returns the number of threads waiting for a connection.
+     */
+    public int waitingThreads() {
+        return mWaiters.get();
+    }
+
+    /**
+     * Returns the number of requests that timed out waiting for a connection.
+     */
+    public long getTimeouts() {
+        return mTimeouts.sum();
+    }
+
+    /**
+     * Returns the wait time histogram. Bucket i counts the
+     * connections obtained within 2^i milliseconds.
+     */
+    public long[] getWaitTimes() {
+        return mWaitTimes.getCounts();
+    }
+
     /**
      * Constructor for LdapBoundConnFactory
      *
@@ -203,6 +303,10 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
         this.mMaxConns = dbConfig.getInteger(PROP_MAXCONNS, mMaxConns);
         this.mMaxResults = dbConfig.getInteger(PROP_MAXRESULTS, mMaxResults);
 
+        this.mAcquireTimeout = dbConfig.getInteger(PROP_ACQUIRE_TIMEOUT, (int) mAcquireTimeout);
+        this.mHealthCheckInterval = dbConfig.getInteger(PROP_HEALTH_CHECK_INTERVAL, mHealthCheckInterval);
+        this.mLeakDetectionThreshold = dbConfig.getInteger(PROP_LEAK_DETECTION_THRESHOLD, mLeakDetectionThreshold);
+
         LDAPConnectionConfig connConfig = dbConfig.getConnectionConfig();
         this.mConnInfo = new LdapConnInfo(connConfig);
 
@@ -242,6 +346,9 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
         if (mMaxResults < 0)
             throw new ELdapException("Invalid maximum number of results: " + mMaxResults);
 
+        if (mAcquireTimeout < 0)
+            throw new ELdapException("Invalid connection acquire timeout: " + mAcquireTimeout);
+
         if (mConnInfo == null)
             throw new IllegalArgumentException("Missing connection info");
 
@@ -250,12 +357,16 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
 
         logger.debug("LdapBoundConnFactory: mininum: " + mMinConns);
         logger.debug("LdapBoundConnFactory: maximum: " + mMaxConns);
+        logger.debug("LdapBoundConnFactory: acquire timeout: " + mAcquireTimeout + " ms");
+        logger.debug("LdapBoundConnFactory: health check interval: " + mHealthCheckInterval + " s");
+        logger.debug("LdapBoundConnFactory: leak detection threshold: " + mLeakDetectionThreshold + " s");
         logger.debug("LdapBoundConnFactory: host: " + mConnInfo.getHost());
         logger.debug("LdapBoundConnFactory: port: " + mConnInfo.getPort());
         logger.debug("LdapBoundConnFactory: secure: " + mConnInfo.getSecure());
         logger.debug("LdapBoundConnFactory: authentication: " + mAuthInfo.getAuthType());
 
-        mConns = new LdapBoundConnection[mMaxConns];
+        // FIFO ordering for threads waiting for a connection
+        mPermits = new Semaphore(mMaxConns, true);
 
         if (mMinConns > 0) {
             // Create connection handle and make initial connection
@@ -264,6 +375,8 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
             // initalize minimum number of connection handles available.
             makeMinimum();
         }
+
+        startHealthCheck();
     }
 
     /**
@@ -325,38 +438,134 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
         return conn;
     }
 
+    /**
+     * Makes sure the master connection is connected. Only one thread
+     * reconnects, the others wait for it.
+     */
+    private void checkMasterConnection() throws ELdapException {
+
+        LdapBoundConnection masterConn = mMasterConn;
+        if (mMinConns == 0 || masterConn != null && masterConn.isConnected()) {
+            return;
+        }
+
+        // not synchronized to not pin a virtual thread during the reconnect
+        mMasterLock.lock();
+        try {
+            masterConn = mMasterConn;
+            if (masterConn != null && masterConn.isConnected()) {
+                return;
+            }
+
+            logger.info("LdapBoundConnFactory (" + id + "): reconnecting master connection");
+
+            try {
+                makeConnection(true);
+            } catch (ELdapException e) {
+                mMasterConn = null;
+                throw new ELdapException("LdapBoundConnFactory: Unable to create master connection. " + e.getMessage(), e);
+            }
+        } finally {
+            mMasterLock.unlock();
+        }
+    }
+
+    /**
+     * Creates a connection, cloned from the master connection if possible.
+     */
+    LdapBoundConnection createConnection() throws ELdapException {
+
+        LdapBoundConnection masterConn = mMasterConn;
+
+        if (mMinConns > 0 && doCloning && masterConn != null && masterConn.isConnected()) {
+            return (LdapBoundConnection) masterConn.clone();
+        }
+
+        return makeNewConnection(true);
+    }
+
+    /**
+     * Adds a connection to the available connections unless there
+     * are already enough of them.
+     */
+    private boolean addAvailable(LdapBoundConnection conn) {
+
+        while (true) {
+            int n = mNumConns.get();
+            if (n >= mMinConns) {
+                return false;
+            }
+            if (mNumConns.compareAndSet(n, n + 1)) {
+                // most recently used connections are reused first
+                mConns.offerFirst(conn);
+                return true;
+            }
+        }
+    }
+
+    private LdapBoundConnection pollAvailable() {
+
+        LdapBoundConnection conn = mConns.pollFirst();
+        if (conn != null) {
+            mNumConns.decrementAndGet();
+        }
+
+        return conn;
+    }
+
+    private void disconnect(LdapBoundConnection conn) {
+
+        try {
+            conn.disconnect();
+        } catch (LDAPException e) {
+            logger.warn("LdapBoundConnFactory: Unable to disconnect: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * makes the minumum number of connections
      */
     private void makeMinimum() throws ELdapException {
         String method = "LdapBoundConnFactory.makeMinimum: ";
-        boolean cloning = false;
-        int realMin = Math.max(mMinConns, 1);
-        if (mMasterConn != null && mMasterConn.isConnected() && doCloning) {
+        LdapBoundConnection masterConn = mMasterConn;
+        if (masterConn != null && masterConn.isConnected() && doCloning) {
             logger.debug(method + "connections will be cloned from the master");
-            cloning = true;
         } else {
             logger.debug(method + "master conn not available.");
         }
 
-        int increment;
         logger.debug(method + "begins: total connections: " + mTotal);
         logger.debug(method + "begins: available connections: " + mNumConns);
 
-        if (mNumConns < realMin && mTotal <= mMaxConns) {
-            increment = Math.min(realMin - mNumConns, mMaxConns - mTotal);
-            logger.debug(method + "increasing minimum connections by " + increment);
+        while (mNumConns.get() < mMinConns) {
+
+            int total = mTotal.get();
+            if (total >= mMaxConns) {
+                break;
+            }
 
-            for (int i = increment - 1; i >= 0; i--) {
-                mConns[i] = cloning ? (LdapBoundConnection) mMasterConn.clone() : makeNewConnection(true);
+            if (!mTotal.compareAndSet(total, total + 1)) {
+                continue;
             }
 
-            mTotal += increment;
-            mNumConns += increment;
+            LdapBoundConnection conn;
+            try {
+                conn = createConnection();
+            } catch (ELdapException e) {
+                mTotal.decrementAndGet();
+                throw e;
+            }
 
-            logger.debug(method + "ends: total connections: " + mTotal);
-            logger.debug(method + "ends: number of connections: " + mNumConns);
+            if (!addAvailable(conn)) {
+                // filled by returned connections in the meantime
+                mTotal.decrementAndGet();
+                disconnect(conn);
+                break;
+            }
         }
+
+        logger.debug(method + "ends: total connections: " + mTotal);
+        logger.debug(method + "ends: number of connections: " + mNumConns);
     }
 
     /**
@@ -390,7 +599,9 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
      * to recycle connection objects.
      * If not returned the limited max number is affected but if that
      * number is large not much harm is done.
-     * Returns null if maximum number of connections reached.
+     * Returns null if maximum number of connections reached and
+     * waitForConn is false, or if the wait is interrupted.
+     * Throws an exception if the wait exceeds the acquire timeout.
      * The best thing to do is to put returnConn in a finally clause so it
      * always gets called. For example,
      *
@@ -406,88 +617,142 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
      * }
      * </pre>
      */
-    public synchronized LdapBoundConnection getConn(boolean waitForConn)
+    public LdapBoundConnection getConn(boolean waitForConn)
             throws ELdapException {
-        LdapBoundConnection conn = null;
         String method = "LdapBoundConnFactory (" + id + ").getConn: ";
         logger.debug(method + "initial values. Total: " + mTotal + ", pool: " + mNumConns);
 
-        if (mMasterConn != null)
-            logger.debug(method + "master connection is connected: " + mMasterConn.isConnected());
-        else
-            logger.debug(method + "master connection is null");
+        if (!acquirePermit(waitForConn)) {
+            return null;
+        }
 
-        if ((mMasterConn == null || !mMasterConn.isConnected()) && mMinConns > 0) {
-            try {
-                makeConnection(true);
-            } catch (ELdapException e) {
-                mMasterConn = null;
-                throw new ELdapException("LdapBoundConnFactory: Unable to create master connection. " + e.getMessage(), e);
-            }
+        LdapBoundConnection conn;
+        try {
+            checkMasterConnection();
+            conn = getAvailableConn();
+
+        } catch (ELdapException e) {
+            mPermits.release();
+            throw e;
         }
 
-        if (mNumConns == 0) {
-            makeMinimum();
+        try {
+            // Before returning the connection, set the SIZELIMIT option; this
+            // ensures that if the connection is recycled and the previous owner
+            // changed the SIZELIMIT option to a different value, the next owner
+            // always starts with the default.
+            conn.setOption(LDAPv3.SIZELIMIT, mMaxResults);
+        } catch (LDAPException e) {
+            mTotal.decrementAndGet();
+            mPermits.release();
+            disconnect(conn);
+            throw new ELdapException("Unable to set LDAP size limit: " + e.getMessage(), e);
         }
 
+        Lease lease = new Lease();
+        if (mLeakDetectionThreshold > 0) {
+            lease.caller = new Throwable("Connection obtained by " + lease.threadName);
+        }
+        mLeases.put(conn, lease);
+        updateStats(false);
 
-        while (mNumConns == 0) {
-            logger.warn("LdapBoundConnFactory: waiting connections for " + mConnInfo.getHost() + ":" + mConnInfo.getPort());
-            if (!waitForConn) {
-                logger.warn("LdapBoundConnFactory: out of LDAP connections");
-                return null;
-            }
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                logger.warn("LdapBoundConnFactory: connection wait interrupted");
-                return null;
-            }
-            if (mMinConns == 0) {
-                makeMinimum();
+        logger.debug(method + " final values. Total: " + mTotal + ", pool: " + mNumConns);
+        return conn;
+    }
+
+    /**
+     * Waits for a connection to be available.
+     */
+    private boolean acquirePermit(boolean waitForConn) throws ELdapException {
+
+        try {
+            // unlike tryAcquire() this does not barge ahead of waiting threads
+            if (mPermits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                recordWaitTime(0);
+                return true;
             }
+
+        } catch (InterruptedException e) {
+            logger.warn("LdapBoundConnFactory: connection wait interrupted");
+            Thread.currentThread().interrupt();
+            return false;
         }
 
-        mNumConns--;
-        conn = mConns[mNumConns];
-        mConns[mNumConns] = null;
-        logger.debug("LdapBoundConnFactory: number of connections: " + mNumConns);
+        logger.warn("LdapBoundConnFactory: waiting connections for " + mConnInfo.getHost() + ":" + mConnInfo.getPort());
+        if (!waitForConn) {
+            logger.warn("LdapBoundConnFactory: out of LDAP connections");
+            return false;
+        }
 
+        long startTime = System.nanoTime();
+        mWaiters.incrementAndGet();
 
-        if (conn == null || !conn.isConnected()) {
-            logger.debug("LdapBoundConnFactory: reestablishing connection");
-            try {
-                if (mMinConns > 0 &&
-                        doCloning &&
-                        mMasterConn != null) {
-                    conn = (LdapBoundConnection) mMasterConn.clone();
-                } else {
-                    conn = makeNewConnection(true);
-                }
-            } catch (ELdapException e) {
-                mTotal--;
-                String message = "Unable to reestablish LDAP connection: " + e.getMessage();
-                logger.error("LdapBoundConnFactory: " + message, e);
-                throw new ELdapException(message, e);
+        try {
+            if (mAcquireTimeout == 0) {
+                mPermits.acquire();
+
+            } else if (!mPermits.tryAcquire(mAcquireTimeout, TimeUnit.MILLISECONDS)) {
+                mTimeouts.increment();
+                updateStats(false);
+                String message = "Timed out waiting for LDAP connection to "
+                        + mConnInfo.getHost() + ":" + mConnInfo.getPort()
+                        + " after " + mAcquireTimeout + " ms";
+                logger.error("LdapBoundConnFactory: " + message);
+                throw new ELdapException(message);
             }
-            logger.debug("LdapBoundConnFactory: connection reestablished");
+
+        } catch (InterruptedException e) {
+            logger.warn("LdapBoundConnFactory: connection wait interrupted");
+            Thread.currentThread().interrupt();
+            return false;
+
+        } finally {
+            mWaiters.decrementAndGet();
         }
 
+        recordWaitTime(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        return true;
+    }
 
+    /**
+     * Returns an available connection or creates a new one.
+     * The caller must hold a permit.
+     */
+    private LdapBoundConnection getAvailableConn() throws ELdapException {
+
+        LdapBoundConnection conn = pollAvailable();
+
+        if (conn == null) {
+            // no available connection but the number of connections
+            // in use is below the maximum
+            mTotal.incrementAndGet();
+
+        } else if (conn.isConnected()) {
+            logger.debug("LdapBoundConnFactory: number of connections: " + mNumConns);
+            return conn;
+
+        } else {
+            logger.debug("LdapBoundConnFactory: reestablishing connection");
+        }
 
         try {
-            // Before returning the connection, set the SIZELIMIT option; this
-            // ensures that if the connection is recycled and the previous owner
-            // changed the SIZELIMIT option to a different value, the next owner
-            // always starts with the default.
-            conn.setOption(LDAPv3.SIZELIMIT, mMaxResults);
-        } catch (LDAPException e) {
-            throw new ELdapException("Unable to set LDAP size limit: " + e.getMessage(), e);
+            conn = createConnection();
+
+        } catch (ELdapException e) {
+            mTotal.decrementAndGet();
+            String message = "Unable to reestablish LDAP connection: " + e.getMessage();
+            logger.error("LdapBoundConnFactory: " + message, e);
+            throw new ELdapException(message, e);
         }
-        logger.debug(method + " final values. Total: " + mTotal + ", pool: " + mNumConns);
+
+        logger.debug("LdapBoundConnFactory: connection established");
         return conn;
     }
 
+    private void recordWaitTime(long millis) {
+        mWaitTimes.record(millis);
+    }
+
     /**
      * Teturn connection to the factory.
      * This is mandatory after a getConn().
@@ -507,7 +772,7 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
      * </pre>
      */
     @Override
-    public synchronized void returnConn(LDAPConnection conn) {
+    public void returnConn(LDAPConnection conn) {
         String method = "LdapBoundConnFactory (" + id + ").returnConn: ";
         logger.debug(method + "initial values. Total: " + mTotal + ", pool: " + mNumConns);
 
@@ -525,37 +790,182 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
 
         if (boundconn.connectionFactory != this) {
             logger.warn("LdapBoundConnFactory: Unknown connection");
-            try {
-                boundconn.disconnect();
-            } catch(LDAPException e) {
-                logger.warn("LdapBoundConnFactory: Unable to disconnect: " + e.getMessage(), e);
-            }
+            disconnect(boundconn);
             return;
+        }
 
+        Lease lease = mLeases.remove(boundconn);
+        if (lease == null) {
+            logger.warn("LdapBoundConnFactory: Connection already returned");
+            return;
         }
 
-        for (int i = 0; i < mNumConns; i++) {
-            if (mConns[i] == conn) {
-                logger.warn("LdapBoundConnFactory: Connection already returned");
-                --mTotal;
-                notifyAll();
-                return;
+        if (lease.reported) {
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - lease.startTime);
+            logger.info("LdapBoundConnFactory (" + id + "): Connection obtained by " + lease.threadName
+                    + " returned after " + seconds + " s");
+        }
+
+        if (!boundconn.isConnected() || !addAvailable(boundconn)) {
+            disconnect(boundconn);
+            mTotal.decrementAndGet();
+        }
+
+        mPermits.release();
+        updateStats(false);
+
+        logger.debug(method + " final values. Total: " + mTotal + ", pool: " + mNumConns);
+
+    }
+
+    private synchronized void startHealthCheck() {
+
+        if (mHealthCheckInterval <= 0 || mHealthChecker != null) {
+            return;
+        }
+
+        mHealthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LdapBoundConnFactory-" + id);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        mHealthChecker.scheduleWithFixedDelay(
+                this::checkHealth,
+                mHealthCheckInterval,
+                mHealthCheckInterval,
+                TimeUnit.SECONDS);
+    }
+
+    private synchronized void stopHealthCheck() {
+
+        if (mHealthChecker == null) {
+            return;
+        }
+
+        mHealthChecker.shutdownNow();
+        mHealthChecker = null;
+    }
+
+    /**
+     * Reconnects the master connection, replaces broken available
+     * connections, and reports possible connection leaks. The pool
+     * statistics are published here and at most once per interval
+     * when a connection is obtained or returned.
+     */
+    void checkHealth() {
+
+        try {
+            checkMasterConnection();
+        } catch (ELdapException e) {
+            logger.warn("LdapBoundConnFactory (" + id + "): " + e.getMessage());
+        }
+
+        checkAvailableConns();
+
+        try {
+            makeMinimum();
+        } catch (ELdapException e) {
+            logger.warn("LdapBoundConnFactory (" + id + "): Unable to create connections: " + e.getMessage());
+        }
+
+        checkLeases();
+
+        updateStats(true);
+    }
+
+    /**
+     * Checks the connections that are currently available. The
+     * connections are taken out of the pool while they are checked
+     * and the healthy ones are put back even if the pool has been
+     * refilled by returned connections in the meantime.
+     */
+    private void checkAvailableConns() {
+
+        List<LdapBoundConnection> conns = new ArrayList<>();
+
+        for (int i = mNumConns.get(); i > 0; i--) {
+            LdapBoundConnection conn = pollAvailable();
+            if (conn == null) {
+                break;
             }
+            conns.add(conn);
         }
 
-        if (mNumConns < mMinConns) {
-            mConns[mNumConns++] = boundconn;
-        } else {
-            try {
-                boundconn.disconnect();
-            } catch(LDAPException e) {
-                logger.warn("LdapBoundConnFactory: Unable to disconnect: " + e.getMessage(), e);
+        for (LdapBoundConnection conn : conns) {
+
+            if (isHealthy(conn)) {
+                // least recently used connections are reused last
+                mNumConns.incrementAndGet();
+                mConns.offerLast(conn);
+                continue;
             }
-            --mTotal;
+
+            disconnect(conn);
+            mTotal.decrementAndGet();
         }
-        notifyAll();
-        logger.debug(method + " final values. Total: " + mTotal + ", pool: " + mNumConns);
+    }
+
+    private boolean isHealthy(LdapBoundConnection conn) {
+
+        if (!conn.isConnected()) {
+            return false;
+        }
+
+        try {
+            // read the root DSE without attributes
+            conn.read("", new String[] { LDAPv3.NO_ATTRS });
+            return true;
 
+        } catch (LDAPException e) {
+            logger.warn("LdapBoundConnFactory (" + id + "): Broken connection: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void checkLeases() {
+
+        if (mLeakDetectionThreshold <= 0) {
+            return;
+        }
+
+        long threshold = TimeUnit.SECONDS.toNanos(mLeakDetectionThreshold);
+        long now = System.nanoTime();
+
+        for (Lease lease : mLeases.values()) {
+
+            if (lease.reported || now - lease.startTime < threshold) {
+                continue;
+            }
+
+            lease.reported = true;
+
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(now - lease.startTime);
+            logger.warn("LdapBoundConnFactory (" + id + "): Connection obtained by " + lease.threadName
+                    + " has not been returned after " + seconds + " s", lease.caller);
+        }
+    }
+
+    /**
+     * Publishes the pool statistics at most once per interval
+     * unless forced.
+     */
+    void updateStats(boolean force) {
+
+        IStatsSubsystem statsSub = Histogram.getStatsSubsystem(mLastStats, force);
+        if (statsSub == null) {
+            return;
+        }
+
+        String prefix = "ldap." + id + ".";
+
+        statsSub.setGauge(prefix + "total", mTotal.get());
+        statsSub.setGauge(prefix + "free", mNumConns.get());
+        statsSub.setGauge(prefix + "inUse", mLeases.size());
+        statsSub.setGauge(prefix + "waiters", mWaiters.get());
+        statsSub.setGauge(prefix + "timeouts", mTimeouts.sum());
+
+        mWaitTimes.setGauges(statsSub, prefix + "waitTime", "ms");
     }
 
     @Override
@@ -574,28 +984,26 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
     public synchronized void reset()
             throws ELdapException {
         logger.debug("Destroying LdapBoundConnFactory(" + id + ")");
-        if (mNumConns == mTotal) {
-            for (int i = 0; i < mNumConns; i++) {
-                try {
-                    mConns[i].disconnect();
-                } catch (LDAPException e) {
-                    logger.warn("LdapBoundConnFactory: Unable to disconnect: " + e.getMessage(), e);
-                }
-                mConns[i] = null;
+        if (mLeases.isEmpty()) {
+            stopHealthCheck();
+
+            LdapBoundConnection conn;
+            while ((conn = pollAvailable()) != null) {
+                disconnect(conn);
             }
-            if (mMasterConn != null) {
+            LdapBoundConnection masterConn = mMasterConn;
+            if (masterConn != null) {
                 try {
                     logger.debug("LdapBoundConnFactory: disconnecting master connection");
-                    mMasterConn.disconnect();
+                    masterConn.disconnect();
                 } catch (LDAPException e) {
                     String message = "Unable to disconnect master connection: " + e.getMessage();
                     logger.warn("LdapBoundConnFactory: " + message, e);
                 }
             }
             mMasterConn = null;
-            mTotal = 0;
-            mNumConns = 0;
-            mConns = new LdapBoundConnection[mMaxConns];
+            mTotal.set(0);
+            mNumConns.set(0);
         } else {
             String message = "Unable to reset LDAP connection factory due to outstanding connections";
             logger.error("LdapBoundConnFactory: " + message);
@@ -611,21 +1019,22 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
 
         logger.debug("Destroying LdapBoundConnFactory(" + id + ")");
 
-        for (int i = 0; i < mNumConns; i++) {
-            if (mConns[i] != null) {
-                mConns[i].close();
-                mConns[i] = null;
-            }
+        stopHealthCheck();
+
+        LdapBoundConnection conn;
+        while ((conn = pollAvailable()) != null) {
+            conn.close();
         }
 
-        if (mMasterConn != null) {
+        LdapBoundConnection masterConn = mMasterConn;
+        if (masterConn != null) {
             logger.debug("LdapBoundConnFactory: disconnecting master connection");
-            mMasterConn.close();
+            masterConn.close();
             mMasterConn = null;
         }
 
-        mTotal = 0;
-        mNumConns = 0;
+        mTotal.set(0);
+        mNumConns.set(0);
 
         if (mAuthInfo != null) {
             mAuthInfo.reset();
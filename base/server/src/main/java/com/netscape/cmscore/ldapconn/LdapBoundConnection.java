@@ -46,6 +46,12 @@ public class LdapBoundConnection extends LDAPConnection {
     private boolean mAuthenticated;
     LdapBoundConnFactory connectionFactory;
 
+    /**
+     * Creates a connection that is not connected.
+     */
+    LdapBoundConnection() {
+    }
+
     /**
      * Instantiates a connection to a ldap server, secure or non-secure
      * connection with LDAP basic bind DN and password authentication.
@@ -18,8 +18,15 @@
 package com.netscape.cmscore.request;
 
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.Vector;
 
 import com.netscape.certsrv.base.EBaseException;
@@ -34,20 +41,85 @@ import com.netscape.cmscore.apps.CMSEngine;
  * so it will be invoked when a request is completely serviced
  * by the IService object, then it will notify all registered
  * request listeners.
+ *
+ * If the publishing queue is enabled, the completed requests are
+ * queued in memory and processed in batches by the publishing
+ * threads. If the queue is full, the new requests are not queued.
+ * Instead they are loaded later from the request repository one
+ * page at a time, since the completed requests are stored in the
+ * repository in request ID order.
+ *
+ * If a listener fails, the request is retried for that listener
+ * with exponential backoff. The publishing status stored in the
+ * request repository is the lowest request ID that has not been
+ * processed completely, so after a restart the queue can be
+ * recovered from that request without missing any request.
+ *
+ * The requests that still failed after the last retry do not hold
+ * back the publishing status. They are logged and left to the
+ * unpublished certificates job (PublishCertsJob).
  */
 public class RequestNotifier {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestNotifier.class);
 
+    public static final String COMPLETE_REQUEST_FILTER = "(requeststate=complete)";
+
+    /**
+     * This class represents a request in the publishing queue.
+     */
+    static class PublishingTask {
+
+        final Request request;
+        final BigInteger id;
+
+        // names of listeners that still need to process the request,
+        // or null for all listeners
+        Set<String> listeners;
+
+        int attempts;
+        long notBefore;
+
+        PublishingTask(Request request) {
+            this.request = request;
+            this.id = request.getRequestId().toBigInteger();
+        }
+    }
+
     private Hashtable<String, IRequestListener> mListeners = new Hashtable<>();
     private Vector<Thread> mNotifierThreads = new Vector<>();
-    private Vector<String> mRequests = new Vector<>();
     private int mMaxRequests = 100;
-    private boolean mSearchForRequests = false;
     private int mMaxThreads = 1;
 
+    // requests ready to be processed
+    private ArrayDeque<PublishingTask> mQueue = new ArrayDeque<>();
+
+    // failed requests waiting to be retried
+    private PriorityQueue<PublishingTask> mRetryQueue =
+            new PriorityQueue<>(Comparator.comparingLong((PublishingTask t) -> t.notBefore));
+
+    // IDs of requests that have not been processed completely
+    private TreeSet<BigInteger> mPendingRequests = new TreeSet<>();
+
+    // IDs of the most recent requests that still failed after the
+    // last retry (up to the page size) so they are not queued again
+    // when the same requests are loaded from the request repository
+    private TreeSet<BigInteger> mFailedRequests = new TreeSet<>();
+
+    // range of request IDs to load from the request repository,
+    // mSearchFrom is null if all requests have been queued
+    private BigInteger mSearchFrom;
+    private BigInteger mSearchTo;
+
+    // true while a publishing thread searches the request repository
+    private boolean mLoading;
+
     private boolean mIsPublishingQueueEnabled = false;
     private int mPublishingQueuePriority = 0;
+    private int mBatchSize = 1;
+    private int mMaxRetries = 8;
+    private long mRetryDelay = 1000; // milliseconds
+    private long mMaxRetryDelay = 60000; // milliseconds
 
     private String mPublishingStatus = null;
     private int mSavePublishingStatus = 0;
@@ -92,8 +164,7 @@ public class RequestNotifier {
             mPublishingQueuePriority = Thread.currentThread().getPriority();
         }
 
-        CMSEngine engine = CMS.getCMSEngine();
-        RequestRepository requestRepository = engine.getRequestRepository();
+        RequestRepository requestRepository = getRequestRepository();
 
         if (mIsPublishingQueueEnabled && mSavePublishingStatus > 0 && requestRepository != null) {
             mPublishingStatus = requestRepository.getPublishingStatus();
@@ -109,6 +180,40 @@ public class RequestNotifier {
 
     }
 
+    /**
+     * Sets the number of requests processed by a publishing thread
+     * at a time.
+     *
+     * @param batchSize batch size
+     */
+    public void setPublishingBatchSize(int batchSize) {
+        logger.debug("setPublishingBatchSize:  Batch Size: " + batchSize);
+        mBatchSize = Math.max(batchSize, 1);
+    }
+
+    /**
+     * Sets the retry parameters for requests that failed to be
+     * processed by a listener. The delay is doubled after each
+     * attempt up to the maximum delay.
+     *
+     * @param maxRetries maximum number of retries
+     * @param retryDelay initial retry delay in seconds
+     * @param maxRetryDelay maximum retry delay in seconds
+     */
+    public void setPublishingRetries(int maxRetries, int retryDelay, int maxRetryDelay) {
+        logger.debug("setPublishingRetries:  Max Retries: " + maxRetries +
+                  "  Retry Delay: " + retryDelay +
+                  "  Max Retry Delay: " + maxRetryDelay);
+        mMaxRetries = maxRetries;
+        mRetryDelay = retryDelay * 1000L;
+        mMaxRetryDelay = Math.max(maxRetryDelay, retryDelay) * 1000L;
+    }
+
+    RequestRepository getRequestRepository() {
+        CMSEngine engine = CMS.getCMSEngine();
+        return engine == null ? null : engine.getRequestRepository();
+    }
+
     /**
      * Registers a request listener.
      *
@@ -178,134 +283,338 @@ public class RequestNotifier {
         return mListeners.elements();
     }
 
-    private Object publishingCounterMonitor = new Object();
+    /**
+     * Gets a batch of requests from the publishing queue.
+     *
+     * If there is no request in the queue, the requests will be
+     * loaded from the request repository if necessary. The search
+     * runs without holding the lock of the notifier so new requests
+     * can be added in the meantime. If there are only requests
+     * waiting to be retried, this method will wait until the first
+     * one is due.
+     *
+     * @param maxTasks maximum number of requests
+     * @return requests, or null if the publishing queue is empty
+     *         in which case the publishing thread is removed
+     * @throws EBaseException if the requests cannot be loaded
+     */
+    List<PublishingTask> getTasks(int maxTasks) throws EBaseException {
 
-    public void updatePublishingStatus(String id) {
+        while (true) {
 
-        CMSEngine engine = CMS.getCMSEngine();
-        RequestRepository requestRepository = engine.getRequestRepository();
+            BigInteger from;
 
-        if (requestRepository != null) {
-            synchronized (publishingCounterMonitor) {
-                if (mSavePublishingCounter == 0) {
-                    logger.debug("updatePublishingStatus  requestId: " + id);
-                    requestRepository.setPublishingStatus(id);
+            synchronized (this) {
+                List<PublishingTask> tasks = pollTasks(maxTasks);
+                if (tasks == null || !tasks.isEmpty()) {
+                    return tasks;
                 }
-                mSavePublishingCounter++;
-                logger.debug("updatePublishingStatus  mSavePublishingCounter: " + mSavePublishingCounter +
-                          " mSavePublishingStatus: " + mSavePublishingStatus);
-                if (mSavePublishingCounter >= mSavePublishingStatus) {
-                    mSavePublishingCounter = 0;
+
+                // another thread is loading or the retries are not due yet
+                if (mLoading || mSearchFrom == null) {
+                    long now = System.currentTimeMillis();
+                    long timeout = mRetryQueue.isEmpty() ? 0 : Math.max(mRetryQueue.peek().notBefore - now, 1);
+                    try {
+                        wait(timeout);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        mNotifierThreads.remove(Thread.currentThread());
+                        return null;
+                    }
+                    continue;
+                }
+
+                mLoading = true;
+                from = mSearchFrom;
+            }
+
+            RequestPage page = null;
+            boolean searched = false;
+
+            try {
+                page = searchRequests(from);
+                searched = true;
+
+            } finally {
+                synchronized (this) {
+                    mLoading = false;
+                    // on failure the search will be repeated
+                    if (searched) {
+                        addRequests(from, page);
+                    }
+                    notifyAll();
                 }
             }
-        } else {
-            logger.warn("updatePublishingStatus  requestQueue == null");
         }
     }
 
     /**
-     * Gets request from publishing queue.
+     * Takes a batch of requests from the publishing queue.
      *
-     * @return request
+     * @param maxTasks maximum number of requests
+     * @return requests, an empty list if the requests need to be
+     *         loaded or retried later, or null if there is nothing
+     *         else to do in which case the publishing thread is removed
      */
-    public synchronized Request getRequest() {
-        Request r = null;
-        String id = null;
+    private List<PublishingTask> pollTasks(int maxTasks) {
 
-        CMSEngine engine = CMS.getCMSEngine();
+        List<PublishingTask> tasks = new ArrayList<>();
+        long now = System.currentTimeMillis();
 
-        logger.debug("getRequest  mRequests=" + mRequests.size() + "  mSearchForRequests=" + mSearchForRequests);
-        if (mSearchForRequests && mRequests.size() == 1) {
+        // move the retries that are due into the queue
+        while (!mRetryQueue.isEmpty() && mRetryQueue.peek().notBefore <= now) {
+            mQueue.addLast(mRetryQueue.poll());
+        }
 
-            id = mRequests.elementAt(0);
-            RequestRepository requestRepository = engine.getRequestRepository();
+        while (tasks.size() < maxTasks && !mQueue.isEmpty()) {
+            tasks.add(mQueue.pollFirst());
+        }
 
-            if (id != null && requestRepository != null) {
-                logger.debug("getRequest  request id=" + id);
+        if (!tasks.isEmpty()) {
+            logger.debug("getTasks  tasks: " + tasks.size() + "  queue: " + mQueue.size() +
+                      "  retries: " + mRetryQueue.size() + "  pending: " + mPendingRequests.size());
+            return tasks;
+        }
 
-                IRequestVirtualList list;
-                try {
-                    list = requestRepository.getPagedRequestsByFilter(
-                            new RequestId(id),
-                            false,
-                            "(requeststate=complete)",
-                            mMaxRequests,
-                            "requestId");
+        if (mRetryQueue.isEmpty() && mSearchFrom == null && !mLoading) {
+            // nothing else to do, remove the thread while holding the
+            // lock so addToNotify() will start a new one if needed
+            mNotifierThreads.remove(Thread.currentThread());
+            return null;
+        }
 
-                } catch (EBaseException e) {
-                    throw new RuntimeException(e);
-                }
+        return tasks;
+    }
 
-                int s = list.getSize() - list.getCurrentIndex();
-                logger.debug("getRequest  list size: " + s);
-                for (int i = 0; i < s; i++) {
-                    r = null;
-                    try {
-                        r = list.getElementAt(i);
-                    } catch (Exception e) {
-                        // handled below
-                    }
-                    if (r == null) {
-                        continue;
-                    }
-                    String requestType = r.getRequestType();
-                    if (requestType == null) {
-                        continue;
-                    }
-                    if (!(requestType.equals(Request.ENROLLMENT_REQUEST) ||
-                            requestType.equals(Request.RENEWAL_REQUEST) ||
-                            requestType.equals(Request.REVOCATION_REQUEST) ||
-                            requestType.equals(Request.CMCREVOKE_REQUEST) ||
-                            requestType.equals(Request.UNREVOCATION_REQUEST))) {
-                        continue;
-                    }
-                    if (i == 0 && id.equals(r.getRequestId().toString())) {
-                        if (s == 1) {
-                            break;
-                        } else {
-                            continue;
-                        }
-                    }
-                    if (mRequests.size() < mMaxRequests) {
-                        mRequests.addElement(r.getRequestId().toString());
-                        logger.debug("getRequest  added "
-                                + r.getRequestType() + " request " + r.getRequestId().toString() +
-                                  " to mRequests: " + mRequests.size() + " (" + mMaxRequests + ")");
-                    } else {
-                        break;
-                    }
-                }
-                logger.debug("getRequest  done with adding requests to mRequests: " + mRequests.size());
-            } else {
-                logger.warn("getRequest  has no access to the request queue");
+    /**
+     * Page of completed requests loaded from the request repository.
+     */
+    static class RequestPage {
+
+        final List<Request> requests = new ArrayList<>();
+
+        // true if there are no more requests after this page
+        boolean last;
+    }
+
+    /**
+     * Searches the next page of completed requests in the request
+     * repository. This method does not hold the lock of the notifier.
+     *
+     * @param from lowest request ID
+     * @return requests, or null if there is no request repository
+     * @throws EBaseException if the search fails
+     */
+    RequestPage searchRequests(BigInteger from) throws EBaseException {
+
+        RequestRepository requestRepository = getRequestRepository();
+
+        if (requestRepository == null) {
+            logger.warn("loadRequests  has no access to the request queue");
+            return null;
+        }
+
+        logger.debug("loadRequests  from: " + from);
+
+        IRequestVirtualList list = requestRepository.getPagedRequestsByFilter(
+                new RequestId(from),
+                false,
+                COMPLETE_REQUEST_FILTER,
+                mMaxRequests,
+                "requestId");
+
+        int size = list.getSize() - list.getCurrentIndex();
+        int count = Math.min(size, mMaxRequests);
+
+        RequestPage page = new RequestPage();
+        page.last = size <= mMaxRequests;
+
+        for (int i = 0; i < count; i++) {
+            Request r = null;
+            try {
+                r = list.getElementAt(i);
+            } catch (Exception e) {
+                // handled below
+            }
+            if (r == null) {
+                continue;
             }
+
+            if (r.getRequestId().toBigInteger().compareTo(from) < 0) {
+                continue;
+            }
+
+            page.requests.add(r);
         }
-        if (mRequests.size() > 0) {
-            id = mRequests.elementAt(0);
-            if (id != null) {
-                logger.debug("getRequest  getting request: " + id);
-                RequestRepository requestRepository = engine.getRequestRepository();
 
-                if (requestRepository != null) {
-                    try {
-                        r = requestRepository.readRequest(new RequestId(id));
-                        mRequests.remove(0);
-                        logger.debug("getRequest  request " + id + ((r != null) ? " found" : " not found"));
-                        //updatePublishingStatus(id);
-                    } catch (EBaseException e) {
-                        logger.warn("getRequest  Exception: " + e.getMessage(), e);
-                    }
-                } else {
-                    logger.warn("getRequest  has no access to the request queue");
+        return page;
+    }
+
+    /**
+     * Adds a page of completed requests into the publishing queue.
+     * The caller must hold the lock of the notifier.
+     *
+     * @param from lowest request ID of the search
+     * @param page requests, or null if there is no request repository
+     */
+    void addRequests(BigInteger from, RequestPage page) {
+
+        if (page == null) {
+            mSearchFrom = null;
+            mSearchTo = null;
+            return;
+        }
+
+        BigInteger last = null;
+        int added = 0;
+
+        for (Request r : page.requests) {
+
+            BigInteger id = r.getRequestId().toBigInteger();
+            last = id;
+
+            if (!isPublishingRequest(r) || mPendingRequests.contains(id) || mFailedRequests.contains(id)) {
+                continue;
+            }
+
+            addTask(new PublishingTask(r));
+            added++;
+        }
+
+        logger.debug("loadRequests  added " + added + " request(s) to the publishing queue: " + mQueue.size());
+
+        // a lower request might have been notified during the search
+        if (mSearchFrom.compareTo(from) < 0) {
+            return;
+        }
+
+        if (last != null) {
+            mSearchFrom = last.add(BigInteger.ONE);
+        }
+
+        boolean searchDone = mSearchTo == null || mSearchFrom.compareTo(mSearchTo) > 0;
+
+        // stop at the last page, unless some notified requests
+        // were not found yet but the search is still progressing
+        if (page.last && (searchDone || added == 0)) {
+            if (!searchDone) {
+                logger.warn("loadRequests  unable to find completed requests up to " + mSearchTo);
+            }
+            mSearchFrom = null;
+            mSearchTo = null;
+        }
+    }
+
+    static boolean isPublishingRequest(Request r) {
+        String requestType = r.getRequestType();
+        if (requestType == null) {
+            return false;
+        }
+        return requestType.equals(Request.ENROLLMENT_REQUEST) ||
+                requestType.equals(Request.RENEWAL_REQUEST) ||
+                requestType.equals(Request.REVOCATION_REQUEST) ||
+                requestType.equals(Request.CMCREVOKE_REQUEST) ||
+                requestType.equals(Request.UNREVOCATION_REQUEST);
+    }
+
+    private void addTask(PublishingTask task) {
+        mPendingRequests.add(task.id);
+        mQueue.addLast(task);
+    }
+
+    /**
+     * Marks a request as processed by all listeners.
+     *
+     * @param task request
+     */
+    void completeTask(PublishingTask task) {
+
+        String status = null;
+
+        synchronized (this) {
+            mPendingRequests.remove(task.id);
+
+            if (mSavePublishingStatus > 0) {
+                mSavePublishingCounter++;
+                if (mSavePublishingCounter >= mSavePublishingStatus) {
+                    mSavePublishingCounter = 0;
+                    status = getLowestPendingRequest(task.id).toString();
                 }
             }
-            if (mRequests.size() == 0) {
-                mSearchForRequests = false;
+        }
+
+        if (status != null) {
+            updatePublishingStatus(status);
+        }
+    }
+
+    /**
+     * Schedules a request to be retried by the listeners that failed
+     * to process it.
+     *
+     * @param task request
+     * @param listeners names of failed listeners
+     */
+    void retryTask(PublishingTask task, Set<String> listeners) {
+
+        synchronized (this) {
+            task.attempts++;
+
+            if (task.attempts <= mMaxRetries) {
+                long delay = mRetryDelay << Math.min(task.attempts - 1, 30);
+                delay = Math.min(delay, mMaxRetryDelay);
+
+                logger.info("RequestNotifier: Retrying request " + task.request.getRequestId().toHexString()
+                        + " with " + listeners + " in " + delay + " ms");
+
+                task.listeners = listeners;
+                task.notBefore = System.currentTimeMillis() + delay;
+
+                mRetryQueue.add(task);
+                notifyAll();
+                return;
+            }
+
+            logger.error("RequestNotifier: Unable to process request " + task.request.getRequestId().toHexString()
+                    + " with " + listeners + " after " + mMaxRetries + " retries");
+
+            mFailedRequests.add(task.id);
+            if (mFailedRequests.size() > mMaxRequests) {
+                mFailedRequests.pollFirst();
             }
         }
-        logger.debug("getRequest  mRequests=" + mRequests.size() + "  mSearchForRequests=" + mSearchForRequests + " done");
 
-        return r;
+        // the request will be published by the unpublished
+        // certificates job, so it does not hold back the
+        // publishing status
+        completeTask(task);
+    }
+
+    /**
+     * Returns the lowest request ID that has not been processed
+     * completely, or the given request ID if there is none.
+     */
+    private BigInteger getLowestPendingRequest(BigInteger id) {
+
+        BigInteger lowest = mPendingRequests.isEmpty() ? id : mPendingRequests.first();
+
+        if (mSearchFrom != null && mSearchFrom.compareTo(lowest) < 0) {
+            lowest = mSearchFrom;
+        }
+
+        return lowest;
+    }
+
+    public void updatePublishingStatus(String id) {
+
+        RequestRepository requestRepository = getRequestRepository();
+
+        if (requestRepository != null) {
+            logger.debug("updatePublishingStatus  requestId: " + id);
+            requestRepository.setPublishingStatus(id);
+        } else {
+            logger.warn("updatePublishingStatus  requestQueue == null");
+        }
     }
 
     /**
@@ -313,8 +622,17 @@ public class RequestNotifier {
      *
      * @return number of requests in publishing queue
      */
-    public int getNumberOfRequests() {
-        return mRequests.size();
+    public synchronized int getNumberOfRequests() {
+        return mPendingRequests.size();
+    }
+
+    /**
+     * Gets number of requests that still failed after the last retry.
+     *
+     * @return number of failed requests
+     */
+    public synchronized int getNumberOfFailedRequests() {
+        return mFailedRequests.size();
     }
 
     /**
@@ -332,14 +650,18 @@ public class RequestNotifier {
      * @param notifierThread Thread
      */
     public void removeNotifierThread(Thread notifierThread) {
-        if (mNotifierThreads.size() > 0) {
+
+        boolean done;
+
+        synchronized (this) {
             mNotifierThreads.remove(notifierThread);
-            if (mNotifierThreads.size() == 0) {
-                CMSEngine engine = CMS.getCMSEngine();
-                RequestRepository requestRepository = engine.getRequestRepository();
-                if (requestRepository != null) {
-                    requestRepository.setPublishingStatus("-1");
-                }
+            done = mNotifierThreads.size() == 0 && mPendingRequests.isEmpty() && mSearchFrom == null;
+        }
+
+        if (done) {
+            RequestRepository requestRepository = getRequestRepository();
+            if (requestRepository != null) {
+                requestRepository.setPublishingStatus("-1");
             }
         }
         logger.debug("Number of publishing threads: " + mNotifierThreads.size());
@@ -403,11 +725,11 @@ public class RequestNotifier {
         if (mNotifierThreads.size() == 0) {
             moreThreads = true;
         } else if (mNotifierThreads.size() < mMaxThreads) {
-            logger.debug("morePublishingThreads  (" + mRequests.size() + ">" +
+            logger.debug("morePublishingThreads  (" + mQueue.size() + ">" +
                       ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads) +
                       " " + "(" + mMaxRequests + "*" + mNotifierThreads.size() + "):" + mMaxThreads);
             // gradually add new publishing threads
-            if (mRequests.size() > ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads)) {
+            if (mQueue.size() > ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads)) {
                 // check for available publishing connections
                 if (checkAvailablePublishingConnections()) {
                     moreThreads = true;
@@ -419,6 +741,26 @@ public class RequestNotifier {
         return moreThreads;
     }
 
+    private void startPublishingThread(String name) {
+
+        if (!morePublishingThreads()) {
+            return;
+        }
+
+        try {
+            Thread notifierThread = new Thread(new RunListeners(this, mBatchSize), name);
+            mNotifierThreads.addElement(notifierThread);
+            logger.info("RequestNotifier: - publishing threads: " + mNotifierThreads.size());
+            if (mPublishingQueuePriority > 0) {
+                notifierThread.setPriority(mPublishingQueuePriority);
+            }
+            notifierThread.start();
+
+        } catch (Throwable e) {
+            logger.warn("Unable to notify listeners: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Notifies all registered listeners about request.
      *
@@ -427,37 +769,32 @@ public class RequestNotifier {
     public synchronized void addToNotify(Request r) {
 
         logger.info("RequestNotifier: Notifying all listeners for request " + r.getRequestId().toHexString());
+        logger.info("RequestNotifier: - max requests: " + mMaxRequests);
+        logger.info("RequestNotifier: - buffer size: " + mQueue.size());
 
-        if (!mSearchForRequests) {
-
-            logger.info("RequestNotifier: - max requests: " + mMaxRequests);
-            logger.info("RequestNotifier: - buffer size: " + mRequests.size());
+        BigInteger id = r.getRequestId().toBigInteger();
 
-            if (mRequests.size() < mMaxRequests) {
-                logger.info("RequestNotifier: Extending buffer");
-                mRequests.addElement(r.getRequestId().toString());
+        if (mSearchFrom != null) {
+            // the request will be loaded from the request repository
+            if (id.compareTo(mSearchFrom) < 0) {
+                mSearchFrom = id;
+            }
+            if (mSearchTo == null || id.compareTo(mSearchTo) > 0) {
+                mSearchTo = id;
+            }
 
-                if (morePublishingThreads()) {
-                    try {
-                        Thread notifierThread = new Thread(new RunListeners(this), "RequestNotifier-addToNotify");
-                        if (notifierThread != null) {
-                            mNotifierThreads.addElement(notifierThread);
-                            logger.info("RequestNotifier: - publishing threads: " + mNotifierThreads.size());
-                            if (mPublishingQueuePriority > 0) {
-                                notifierThread.setPriority(mPublishingQueuePriority);
-                            }
-                            notifierThread.start();
-                        }
-
-                    } catch (Throwable e) {
-                        logger.warn("Unable to notify listeners: " + e.getMessage(), e);
-                    }
-                }
+        } else if (mQueue.size() < mMaxRequests) {
+            logger.info("RequestNotifier: Extending buffer");
+            addTask(new PublishingTask(r));
 
-            } else {
-                mSearchForRequests = true;
-            }
+        } else {
+            logger.info("RequestNotifier: Buffer is full, loading requests from repository");
+            mSearchFrom = id;
+            mSearchTo = id;
         }
+
+        notifyAll();
+        startPublishingThread("RequestNotifier-addToNotify");
     }
 
     /**
@@ -465,36 +802,18 @@ public class RequestNotifier {
      *
      * @param id request request
      */
-    public void recoverPublishingQueue(String id) {
+    public synchronized void recoverPublishingQueue(String id) {
 
         logger.info("RequestNotifier: Recovering publishing queue for request " + id);
-        logger.info("RequestNotifier: - requests: " + mRequests.size());
+        logger.info("RequestNotifier: - requests: " + mPendingRequests.size());
         logger.info("RequestNotifier: - max requests: " + mMaxRequests);
 
-        if (mRequests.size() == 0) {
-            logger.info("RequestNotifier: Extending buffer");
-            mRequests.addElement(id);
-
-            if (morePublishingThreads()) {
-                synchronized (this) {
-                    mSearchForRequests = true;
-                }
-
-                try {
-                    Thread notifierThread = new Thread(new RunListeners(this), "RequestNotifier-recoverPublishingQueue");
-                    if (notifierThread != null) {
-                        mNotifierThreads.addElement(notifierThread);
-                        logger.info("RequestNotifier: - publishing threads: " + mNotifierThreads.size());
-                        if (mPublishingQueuePriority > 0) {
-                            notifierThread.setPriority(mPublishingQueuePriority);
-                        }
-                        notifierThread.start();
-                    }
+        BigInteger from = new BigInteger(id);
 
-                } catch (Throwable e) {
-                    logger.warn("Unable to recover publishing queue: " + e.getMessage(), e);
-                }
-            }
+        if (mSearchFrom == null || from.compareTo(mSearchFrom) < 0) {
+            mSearchFrom = from;
         }
+
+        startPublishingThread("RequestNotifier-recoverPublishingQueue");
     }
 }
@@ -151,6 +151,9 @@ public class RequestRepository extends Repository {
         if (incrementNo != null) {
             mIncrementNo = new BigInteger(incrementNo, mRadix);
         }
+
+        mBlockSize = Math.max(dbConfig.getRequestBlockSize(), 1);
+        logger.debug("RequestRepository: - block size: " + mBlockSize);
     }
 
     public void init(Hashtable<String, String> repositoryConfig) throws Exception {
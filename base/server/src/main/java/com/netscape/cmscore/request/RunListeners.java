@@ -18,7 +18,11 @@
 package com.netscape.cmscore.request;
 
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
+import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.request.IRequestListener;
 
 /**
@@ -29,9 +33,16 @@ public class RunListeners implements Runnable {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RunListeners.class);
 
+    /**
+     * Result of the publishing listeners. The listeners report
+     * publishing failures with this result instead of an exception.
+     */
+    public static final String PUBLISH_STATUS = "ldapPublishOverAllStatus";
+
     Request mRequest = null;
     Enumeration<IRequestListener> mListeners = null;
     RequestNotifier mRequestNotifier;
+    int mBatchSize = 1;
 
     /**
      * RunListeners class constructor.
@@ -50,8 +61,18 @@ public class RunListeners implements Runnable {
      * @param requestNotifier request
      */
     public RunListeners(RequestNotifier requestNotifier) {
+        this(requestNotifier, 1);
+    }
+
+    /**
+     * RunListeners class constructor.
+     *
+     * @param requestNotifier request notifier
+     * @param batchSize number of requests to process at a time
+     */
+    public RunListeners(RequestNotifier requestNotifier, int batchSize) {
         mRequestNotifier = requestNotifier;
-        mListeners = mRequestNotifier.getListeners();
+        mBatchSize = batchSize;
     }
 
     /**
@@ -60,42 +81,100 @@ public class RunListeners implements Runnable {
     @Override
     public void run() {
 
+        if (mRequestNotifier == null) {
+            runListeners();
+            return;
+        }
+
+        logger.info("RunListeners: Running publishing queue:");
+        logger.info("RunListeners: - queue: " + mRequestNotifier.getNumberOfRequests());
+        logger.info("RunListeners: - batch size: " + mBatchSize);
+
+        try {
+            List<RequestNotifier.PublishingTask> tasks;
+
+            while ((tasks = mRequestNotifier.getTasks(mBatchSize)) != null) {
+                for (RequestNotifier.PublishingTask task : tasks) {
+                    runListeners(task);
+                }
+            }
+
+        } catch (EBaseException e) {
+            // the requests will be loaded again by the next publishing thread
+            logger.error("RunListeners: Unable to load requests: " + e.getMessage(), e);
+
+        } finally {
+            mRequestNotifier.removeNotifierThread(Thread.currentThread());
+        }
+    }
+
+    void runListeners() {
+
         logger.info("RunListeners: Running listeners:");
-        logger.info("RunListeners: - queue: " + (mRequestNotifier != null ? mRequestNotifier.getNumberOfRequests() : null));
         logger.info("RunListeners: - request: " + (mRequest != null ? mRequest.getRequestId().toHexString() : null));
 
-        do {
-            if (mRequestNotifier != null) {
-                mRequest = mRequestNotifier.getRequest();
+        if (mListeners != null && mRequest != null) {
+            while (mListeners.hasMoreElements()) {
+                IRequestListener l = mListeners.nextElement();
+                logger.info("RunListeners: Processing request " + mRequest.getRequestId().toHexString() + " with " + l.getClass().getSimpleName());
+                l.accept(mRequest);
             }
+        }
+    }
 
-            if (mListeners != null && mRequest != null) {
-                logger.info("RunListeners: Processing request " + mRequest.getRequestId().toHexString());
+    void runListeners(RequestNotifier.PublishingTask task) {
 
-                while (mListeners.hasMoreElements()) {
-                    IRequestListener l = mListeners.nextElement();
-                    logger.info("RunListeners: Processing request " + mRequest.getRequestId().toHexString() + " with " + l.getClass().getSimpleName());
-                    l.accept(mRequest);
-                }
+        Request request = task.request;
+        logger.info("RunListeners: Processing request " + request.getRequestId().toHexString());
 
-                if (mRequestNotifier != null) {
-                    logger.info("RunListeners: Updating publishing status for request " + mRequest.getRequestId().toHexString());
-                    mRequestNotifier.updatePublishingStatus(mRequest.getRequestId().toString());
-                }
+        Set<String> names = task.listeners;
+        if (names == null) {
+            names = new TreeSet<>();
+            Enumeration<String> e = mRequestNotifier.getListenerNames();
+            while (e.hasMoreElements()) {
+                names.add(e.nextElement());
             }
+        }
 
-            logger.info("RunListeners: Running listeners:");
-            logger.info("RunListeners: - queue: " + (mRequestNotifier != null ? mRequestNotifier.getNumberOfRequests() : null));
-            logger.info("RunListeners: - request: " + (mRequest != null ? mRequest.getRequestId().toHexString() : null));
+        Set<String> failed = new TreeSet<>();
 
-            if (mRequestNotifier != null) {
-                mListeners = mRequestNotifier.getListeners();
+        for (String name : names) {
+            IRequestListener l = mRequestNotifier.getListener(name);
+            if (l == null) {
+                continue;
             }
 
-        } while (mRequestNotifier != null && mRequestNotifier.getNumberOfRequests() > 0);
+            logger.info("RunListeners: Processing request " + request.getRequestId().toHexString() + " with " + l.getClass().getSimpleName());
 
-        if (mRequestNotifier != null) {
-            mRequestNotifier.removeNotifierThread(Thread.currentThread());
+            Integer previousStatus = request.getExtDataInInteger(PUBLISH_STATUS);
+            request.deleteExtData(PUBLISH_STATUS);
+
+            try {
+                l.accept(request);
+
+                Integer status = request.getExtDataInInteger(PUBLISH_STATUS);
+
+                if (Request.RES_ERROR.equals(status)) {
+                    logger.warn("RunListeners: Unable to process request " + request.getRequestId().toHexString()
+                            + " with " + l.getClass().getSimpleName());
+                    failed.add(name);
+
+                } else if (status == null && previousStatus != null) {
+                    // keep the result of the previous listener
+                    request.setExtData(PUBLISH_STATUS, previousStatus);
+                }
+
+            } catch (Exception e) {
+                logger.warn("RunListeners: Unable to process request " + request.getRequestId().toHexString()
+                        + " with " + l.getClass().getSimpleName() + ": " + e.getMessage(), e);
+                failed.add(name);
+            }
+        }
+
+        if (failed.isEmpty()) {
+            mRequestNotifier.completeTask(task);
+        } else {
+            mRequestNotifier.retryTask(task, failed);
         }
     }
 }
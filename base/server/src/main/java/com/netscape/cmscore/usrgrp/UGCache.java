@@ -0,0 +1,616 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.usrgrp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.netscape.certsrv.ldap.ELdapException;
+import com.netscape.cmscore.ldapconn.LDAPConfig;
+import com.netscape.cmscore.ldapconn.LdapBoundConnFactory;
+import com.netscape.cmscore.ldapconn.PKISocketConfig;
+import com.netscape.cmsutil.ldap.LDAPUtil;
+import com.netscape.cmsutil.password.IPasswordStore;
+
+import netscape.ldap.LDAPAttribute;
+import netscape.ldap.LDAPAttributeSet;
+import netscape.ldap.LDAPConnection;
+import netscape.ldap.LDAPDN;
+import netscape.ldap.LDAPEntry;
+import netscape.ldap.LDAPException;
+import netscape.ldap.LDAPSearchConstraints;
+import netscape.ldap.LDAPSearchResults;
+import netscape.ldap.LDAPv3;
+import netscape.ldap.controls.LDAPEntryChangeControl;
+import netscape.ldap.controls.LDAPPersistSearchControl;
+
+/**
+ * This class keeps the LDAP entries of users, the users of
+ * certificates, and the groups of users in memory so that
+ * authentication and authorization do not need to search the
+ * database for every request.
+ *
+ * The cache is loaded at startup and kept up to date with persistent
+ * searches on the user and group containers, like the profile change
+ * monitor. Since changes might be missed while the persistent search
+ * is not connected, the cache is reloaded when the search reconnects
+ * and every entry expires after a configurable time anyway.
+ *
+ * The entries are returned as LDAP entries, so the callers build new
+ * User and Group objects which can be modified without affecting the
+ * cache.
+ */
+public class UGCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(UGCache.class);
+
+    public static final int DEFAULT_TTL = 300;
+    public static final int DEFAULT_SIZE = 10000;
+
+    static final String[] GROUP_ATTRS = { "cn", "description" };
+
+    static class Entry<V> {
+
+        final V value;
+        final long expires;
+
+        Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Groups of a user.
+     */
+    static class Membership {
+
+        // lowercase group names
+        final Set<String> names = new HashSet<>();
+
+        // group entries with name and description only
+        final List<LDAPEntry> groups = new ArrayList<>();
+
+        void add(LDAPEntry group) {
+            LDAPAttribute cn = group.getAttribute("cn");
+            if (cn == null) {
+                return;
+            }
+            names.add(cn.getStringValueArray()[0].toLowerCase());
+            groups.add(group);
+        }
+    }
+
+    private UGSubsystem ug;
+    private String userBaseDN;
+    private String groupBaseDN;
+
+    private long ttl;
+    private int size;
+
+    // user DN -> user entry, or null if the user does not exist
+    Map<String, Entry<LDAPEntry>> users = new ConcurrentHashMap<>();
+
+    // certificate string -> user DN, or null if no user has the certificate
+    Map<String, Entry<String>> certUsers = new ConcurrentHashMap<>();
+
+    // user DN -> groups
+    Map<String, Entry<Membership>> memberships = new ConcurrentHashMap<>();
+
+    // incremented when users or groups are invalidated
+    AtomicLong userGeneration = new AtomicLong();
+    AtomicLong groupGeneration = new AtomicLong();
+
+    private LdapBoundConnFactory monitorConnFactory;
+    private List<ChangeMonitor> monitors = new ArrayList<>();
+
+    /**
+     * @param ttl time in seconds before an entry is looked up again
+     * @param size maximum number of entries in each map
+     */
+    public UGCache(UGSubsystem ug, String userBaseDN, String groupBaseDN, int ttl, int size) {
+        this.ug = ug;
+        this.userBaseDN = userBaseDN;
+        this.groupBaseDN = groupBaseDN;
+        this.ttl = ttl * 1000L;
+        this.size = size;
+    }
+
+    public void start(
+            LDAPConfig ldapConfig,
+            PKISocketConfig socketConfig,
+            IPasswordStore passwordStore) throws Exception {
+
+        logger.info("UGCache: Starting cache with TTL " + ttl / 1000 + " s");
+
+        // the persistent searches hold their connections
+        monitorConnFactory = new LdapBoundConnFactory("UGCache");
+        monitorConnFactory.init(socketConfig, ldapConfig, passwordStore);
+
+        monitors.add(new ChangeMonitor("userChangeMonitor", userBaseDN, false));
+        monitors.add(new ChangeMonitor("groupChangeMonitor", groupBaseDN, true));
+
+        for (ChangeMonitor monitor : monitors) {
+            monitor.start();
+        }
+    }
+
+    public void shutdown() {
+
+        for (ChangeMonitor monitor : monitors) {
+            monitor.shutdown();
+        }
+        monitors.clear();
+
+        if (monitorConnFactory != null) {
+            try {
+                monitorConnFactory.reset();
+            } catch (ELdapException e) {
+                logger.warn("UGCache: Unable to shutdown connection: " + e.getMessage(), e);
+            }
+            monitorConnFactory = null;
+        }
+
+        invalidate();
+    }
+
+    static String normalize(String dn) {
+        return LDAPDN.normalize(dn).toLowerCase();
+    }
+
+    <V> V get(Map<String, Entry<V>> map, String key, boolean[] found) {
+
+        Entry<V> entry = map.get(key);
+
+        if (entry == null || entry.expires < System.currentTimeMillis()) {
+            found[0] = false;
+            return null;
+        }
+
+        found[0] = true;
+        return entry.value;
+    }
+
+    /**
+     * Adds an entry unless the cache was invalidated after
+     * the value was read from the database.
+     */
+    <V> void put(Map<String, Entry<V>> map, String key, V value, AtomicLong generation, long gen) {
+
+        if (map.size() >= size) {
+            map.clear();
+        }
+
+        map.put(key, new Entry<>(value, System.currentTimeMillis() + ttl));
+
+        if (generation.get() != gen) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * Discards all entries.
+     */
+    public void invalidate() {
+        userGeneration.incrementAndGet();
+        groupGeneration.incrementAndGet();
+        users.clear();
+        certUsers.clear();
+        memberships.clear();
+    }
+
+    void invalidateUser(String dn) {
+
+        userGeneration.incrementAndGet();
+        groupGeneration.incrementAndGet();
+
+        String key = normalize(dn);
+        users.remove(key);
+        memberships.remove(key);
+
+        // the certificates of the user might have changed
+        certUsers.values().removeIf(e -> e.value == null || e.value.equals(key));
+    }
+
+    void invalidateGroups() {
+        groupGeneration.incrementAndGet();
+        memberships.clear();
+    }
+
+    /**
+     * Discards the entries that might have been changed while the
+     * changes were not monitored, and the authorization decisions
+     * based on them.
+     */
+    void invalidateMissedChanges(boolean groupsOnly) {
+
+        if (groupsOnly) {
+            invalidateGroups();
+        } else {
+            invalidate();
+        }
+
+        ug.updateVersion();
+    }
+
+    /**
+     * Returns the entry of a user, or null if the user does not exist.
+     */
+    public LDAPEntry getUser(String userDN) throws LDAPException, ELdapException {
+
+        String key = normalize(userDN);
+        boolean[] found = new boolean[1];
+
+        LDAPEntry entry = get(users, key, found);
+        if (found[0]) {
+            return entry;
+        }
+
+        long gen = userGeneration.get();
+        LDAPConnection conn = ug.getConn();
+
+        try {
+            LDAPSearchResults results = conn.search(
+                    userDN,
+                    LDAPv3.SCOPE_BASE,
+                    "(objectclass=*)",
+                    null,
+                    false);
+
+            entry = results.hasMoreElements() ? results.next() : null;
+
+        } catch (LDAPException e) {
+            if (e.getLDAPResultCode() != LDAPException.NO_SUCH_OBJECT) {
+                throw e;
+            }
+            entry = null;
+
+        } finally {
+            ug.returnConn(conn);
+        }
+
+        put(users, key, entry, userGeneration, gen);
+        return entry;
+    }
+
+    /**
+     * Returns the entry of the user that has the certificate,
+     * or null if there is none.
+     */
+    public LDAPEntry findUser(String certString) throws LDAPException, ELdapException {
+
+        boolean[] found = new boolean[1];
+
+        String userDN = get(certUsers, certString, found);
+        if (found[0]) {
+            return userDN == null ? null : getUser(userDN);
+        }
+
+        long gen = userGeneration.get();
+        LDAPConnection conn = ug.getConn();
+        LDAPEntry entry;
+
+        try {
+            String filter = UGSubsystem.LDAP_ATTR_USER_CERT_STRING + "=" + LDAPUtil.escapeFilter(certString);
+            LDAPSearchResults results = conn.search(
+                    userBaseDN,
+                    LDAPConnection.SCOPE_SUB,
+                    filter,
+                    null,
+                    false);
+
+            entry = results.hasMoreElements() ? results.next() : null;
+
+        } finally {
+            ug.returnConn(conn);
+        }
+
+        if (entry == null) {
+            put(certUsers, certString, null, userGeneration, gen);
+            return null;
+        }
+
+        String key = normalize(entry.getDN());
+        put(users, key, entry, userGeneration, gen);
+        put(certUsers, certString, key, userGeneration, gen);
+
+        return entry;
+    }
+
+    Membership getMembership(String userDN) throws LDAPException, ELdapException {
+
+        String key = normalize(userDN);
+        boolean[] found = new boolean[1];
+
+        Membership membership = get(memberships, key, found);
+        if (found[0]) {
+            return membership;
+        }
+
+        long gen = groupGeneration.get();
+        LDAPConnection conn = ug.getConn();
+        membership = new Membership();
+
+        try {
+            String filter = "(&(objectclass=groupofuniquenames)(uniqueMember=" + LDAPUtil.escapeFilter(userDN) + "))";
+            LDAPSearchResults results = conn.search(
+                    groupBaseDN,
+                    LDAPv3.SCOPE_ONE,
+                    filter,
+                    GROUP_ATTRS,
+                    false);
+
+            while (results.hasMoreElements()) {
+                membership.add(results.next());
+            }
+
+        } finally {
+            ug.returnConn(conn);
+        }
+
+        put(memberships, key, membership, groupGeneration, gen);
+        return membership;
+    }
+
+    /**
+     * Checks whether a user is a member of a group.
+     */
+    public boolean isMemberOf(String userDN, String groupName) throws LDAPException, ELdapException {
+        return getMembership(userDN).names.contains(groupName.toLowerCase());
+    }
+
+    /**
+     * Returns the groups of a user with name and description only.
+     */
+    public List<LDAPEntry> getGroups(String userDN) throws LDAPException, ELdapException {
+        return Collections.unmodifiableList(getMembership(userDN).groups);
+    }
+
+    /**
+     * Loads all users and their groups.
+     */
+    void loadUsers(LDAPConnection conn) throws LDAPException {
+
+        long gen = userGeneration.get();
+        int count = 0;
+
+        LDAPSearchResults results = conn.search(
+                userBaseDN,
+                LDAPv3.SCOPE_ONE,
+                "(objectclass=*)",
+                null,
+                false);
+
+        while (results.hasMoreElements() && count < size) {
+            LDAPEntry entry = results.next();
+            String key = normalize(entry.getDN());
+            put(users, key, entry, userGeneration, gen);
+
+            LDAPAttribute certStrings = entry.getAttribute(UGSubsystem.LDAP_ATTR_USER_CERT_STRING);
+            if (certStrings != null) {
+                for (String certString : certStrings.getStringValueArray()) {
+                    put(certUsers, certString, key, userGeneration, gen);
+                }
+            }
+
+            count++;
+        }
+
+        logger.info("UGCache: Loaded " + count + " users");
+    }
+
+    void loadGroups(LDAPConnection conn) throws LDAPException {
+
+        long gen = groupGeneration.get();
+        Map<String, Membership> loaded = new HashMap<>();
+
+        // every loaded user is a member of no group unless found below
+        for (String userDN : users.keySet()) {
+            loaded.put(userDN, new Membership());
+        }
+
+        String[] attrs = { "cn", "description", "uniquemember" };
+        LDAPSearchResults results = conn.search(
+                groupBaseDN,
+                LDAPv3.SCOPE_ONE,
+                "(objectclass=groupofuniquenames)",
+                attrs,
+                false);
+
+        int count = 0;
+        while (results.hasMoreElements()) {
+            LDAPEntry entry = results.next();
+            count++;
+
+            LDAPAttribute members = entry.getAttribute("uniquemember");
+            if (members == null) {
+                continue;
+            }
+
+            // keep name and description like the search by member
+            LDAPAttributeSet groupAttrs = new LDAPAttributeSet();
+            for (String name : GROUP_ATTRS) {
+                LDAPAttribute attr = entry.getAttribute(name);
+                if (attr != null) {
+                    groupAttrs.add(attr);
+                }
+            }
+            LDAPEntry group = new LDAPEntry(entry.getDN(), groupAttrs);
+
+            for (String member : members.getStringValueArray()) {
+                Membership membership = loaded.get(normalize(member));
+                if (membership != null) {
+                    membership.add(group);
+                }
+            }
+        }
+
+        for (Map.Entry<String, Membership> entry : loaded.entrySet()) {
+            put(memberships, entry.getKey(), entry.getValue(), groupGeneration, gen);
+        }
+
+        logger.info("UGCache: Loaded " + count + " groups");
+    }
+
+    /**
+     * Persistent search on the user or group container. The changes
+     * are only used to discard cached entries.
+     */
+    class ChangeMonitor implements Runnable {
+
+        String name;
+        String baseDN;
+        boolean groups;
+
+        volatile boolean stopped;
+        Thread thread;
+
+        LDAPConnection conn;
+        LDAPSearchResults results;
+
+        ChangeMonitor(String name, String baseDN, boolean groups) {
+            this.name = name;
+            this.baseDN = baseDN;
+            this.groups = groups;
+        }
+
+        void start() {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        synchronized void shutdown() {
+
+            stopped = true;
+
+            if (conn != null && results != null) {
+                try {
+                    conn.abandon(results);
+                } catch (LDAPException e) {
+                    logger.warn("UGCache: Unable to stop " + name + ": " + e.getMessage(), e);
+                }
+            }
+        }
+
+        void load(LDAPConnection conn) throws LDAPException {
+
+            // changes might have been missed while disconnected
+            invalidateMissedChanges(groups);
+
+            if (groups) {
+                loadGroups(conn);
+            } else {
+                loadUsers(conn);
+                // memberships of the loaded users
+                loadGroups(conn);
+            }
+        }
+
+        @Override
+        public void run() {
+
+            int op = LDAPPersistSearchControl.ADD
+                | LDAPPersistSearchControl.MODIFY
+                | LDAPPersistSearchControl.DELETE
+                | LDAPPersistSearchControl.MODDN;
+            LDAPPersistSearchControl persistCtrl =
+                new LDAPPersistSearchControl(op, true, true, true);
+
+            logger.info("UGCache: " + name + ": starting");
+
+            while (!stopped) {
+                LDAPConnection c = null;
+
+                try {
+                    c = monitorConnFactory.getConn();
+
+                    LDAPSearchConstraints cons = c.getSearchConstraints();
+                    cons.setServerControls(persistCtrl);
+                    cons.setBatchSize(1);
+                    cons.setServerTimeLimit(0 /* seconds */);
+
+                    String[] attrs = { "objectclass" };
+                    LDAPSearchResults r = c.search(
+                        baseDN, LDAPConnection.SCOPE_ONE,
+                        "(objectclass=*)", attrs, false, cons);
+
+                    synchronized (this) {
+                        conn = c;
+                        results = r;
+                    }
+
+                    // load after the search has started to not miss changes
+                    load(c);
+
+                    while (!stopped && r.hasMoreElements()) {
+                        LDAPEntry entry = r.next();
+
+                        LDAPEntryChangeControl changeControl = (LDAPEntryChangeControl)
+                            LDAPUtil.getControl(
+                                LDAPEntryChangeControl.class, r.getResponseControls());
+
+                        logger.debug("UGCache: " + name + ": changed: " + entry.getDN());
+
+                        if (groups) {
+                            invalidateGroups();
+
+                        } else {
+                            invalidateUser(entry.getDN());
+                            if (changeControl != null
+                                    && changeControl.getChangeType() == LDAPPersistSearchControl.MODDN
+                                    && changeControl.getPreviousDN() != null) {
+                                invalidateUser(changeControl.getPreviousDN());
+                            }
+                        }
+
+                        // discard authorization decisions
+                        ug.updateVersion();
+                    }
+
+                } catch (ELdapException e) {
+                    logger.warn("UGCache: " + name + ": failed to get LDAPConnection. Retrying in 1 second.");
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+
+                } catch (LDAPException e) {
+                    if (!stopped) {
+                        logger.warn("UGCache: " + name + ": " + e.getMessage() + ". Retrying in 1 second.", e);
+                        invalidateMissedChanges(false);
+                        try {
+                            Thread.sleep(1000);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+
+                } finally {
+                    synchronized (this) {
+                        conn = null;
+                        results = null;
+                    }
+                    if (c != null) {
+                        monitorConnFactory.returnConn(c);
+                    }
+                }
+            }
+
+            logger.info("UGCache: " + name + ": stopping");
+        }
+    }
+}
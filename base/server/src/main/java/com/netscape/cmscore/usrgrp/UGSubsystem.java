@@ -25,6 +25,7 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
@@ -81,6 +82,12 @@ public class UGSubsystem {
     protected transient LdapBoundConnFactory mLdapConnFactory = null;
     protected String mBaseDN = null;
 
+    /* incremented when users or group memberships change */
+    private final AtomicLong mVersion = new AtomicLong();
+
+    /* users and groups in memory, null if disabled */
+    protected volatile UGCache mCache = null;
+
     /**
      * Constructs LDAP based usr/grp management
      */
@@ -98,10 +105,63 @@ public class UGSubsystem {
         mLdapConnFactory.init(socketConfig, ldapConfig, passwordStore);
     }
 
+    /**
+     * Returns a number that changes whenever a user or a group
+     * membership is modified, so results derived from them can
+     * be discarded.
+     */
+    public long getVersion() {
+        return mVersion.get();
+    }
+
+    /**
+     * Invalidates results derived from users and groups.
+     */
+    public void changed() {
+        if (mCache != null) {
+            mCache.invalidate();
+        }
+        updateVersion();
+    }
+
+    void updateVersion() {
+        mVersion.incrementAndGet();
+    }
+
+    /**
+     * Keeps users and groups in memory. The cache is kept up to
+     * date with persistent searches on the user and group entries.
+     */
+    public void initCache(
+            UGSubsystemConfig config,
+            PKISocketConfig socketConfig,
+            IPasswordStore passwordStore) throws Exception {
+
+        if (!config.getCacheEnabled()) {
+            logger.info("UGSubsystem: Cache disabled");
+            return;
+        }
+
+        mCache = new UGCache(
+                this,
+                getUserBaseDN(),
+                getGroupBaseDN(),
+                config.getCacheTTL(),
+                config.getCacheSize());
+
+        mCache.start(config.getLDAPConfig(), socketConfig, passwordStore);
+    }
+
     /**
      * Disconnects usr/grp manager from the LDAP
      */
     public void shutdown() {
+
+        if (mCache != null) {
+            mCache.shutdown();
+            mCache = null;
+        }
+
         try {
             if (mLdapConnFactory != null) {
                 mLdapConnFactory.reset();
@@ -140,6 +200,23 @@ public class UGSubsystem {
             userDN = userID;
         }
 
+        UGCache cache = mCache;
+        if (cache != null) {
+            try {
+                LDAPEntry entry = cache.getUser(userDN);
+
+                if (entry == null) {
+                    logger.info("UGSubsystem: User not found: " + userID);
+                    return null;
+                }
+
+                return buildUser(entry);
+
+            } catch (LDAPException | ELdapException e) {
+                throw new EUsrGrpException("Unable to retrieve user: " + userID + ": " + e.getMessage(), e);
+            }
+        }
+
         LDAPConnection ldapconn = null;
 
         try {
@@ -185,6 +262,21 @@ public class UGSubsystem {
             return null;
         }
 
+        UGCache cache = mCache;
+        if (cache != null) {
+            try {
+                LDAPEntry entry = cache.findUser(getCertificateString(cert));
+                return entry == null ? null : buildUser(entry);
+
+            } catch (LDAPException e) {
+                logger.warn("Unable to find user: " + e.getMessage(), e);
+
+            } catch (ELdapException e) {
+                logger.warn("Unable to connect to internal database: " + e.getMessage(), e);
+            }
+            return null;
+        }
+
         LDAPConnection ldapconn = null;
 
         try {
@@ -725,6 +817,7 @@ public class UGSubsystem {
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
+            changed();
         }
     }
 
@@ -776,6 +869,7 @@ public class UGSubsystem {
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
+            changed();
         }
     }
 
@@ -818,6 +912,7 @@ public class UGSubsystem {
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
+            changed();
         }
     }
 
@@ -860,6 +955,7 @@ public class UGSubsystem {
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
+            changed();
         }
     }
 
@@ -971,6 +1067,7 @@ public class UGSubsystem {
             } finally {
                 if (ldapconn != null)
                     returnConn(ldapconn);
+                changed();
             }
         }
 
@@ -1004,6 +1101,7 @@ public class UGSubsystem {
         } finally {
             if (ldapconn != null)
                 returnConn(ldapconn);
+            changed();
         }
     }
 
@@ -1032,6 +1130,7 @@ public class UGSubsystem {
         } finally {
             if (ldapconn != null)
                 returnConn(ldapconn);
+            changed();
         }
     }
 
@@ -1067,6 +1166,7 @@ public class UGSubsystem {
         } finally {
             if (ldapconn != null)
                 returnConn(ldapconn);
+            changed();
         }
     }
 
@@ -1203,6 +1303,7 @@ public class UGSubsystem {
         } finally {
             if (ldapconn != null)
                 returnConn(ldapconn);
+            changed();
         }
     }
 
@@ -1319,6 +1420,24 @@ public class UGSubsystem {
             return null;
         }
 
+        UGCache cache = mCache;
+        if (cache != null && StringUtils.isEmpty(filter)) {
+            try {
+                Vector<Group> groups = new Vector<>();
+                for (LDAPEntry entry : cache.getGroups(userDn)) {
+                    groups.add(buildGroup(entry));
+                }
+                return groups.elements();
+
+            } catch (LDAPException e) {
+                logger.warn("Unable to find groups by user: " + e.getMessage(), e);
+
+            } catch (ELdapException e) {
+                logger.warn("Unable to find groups by user: " + e.getMessage(), e);
+            }
+            return null;
+        }
+
         // search groups where the user is a member
         String ldapFilter = "(&(objectclass=groupofuniquenames)(uniqueMember=" + LDAPUtil.escapeFilter(userDn) + ")";
 
@@ -1551,6 +1670,23 @@ public class UGSubsystem {
      * by running an ldap search for the user in the group
      */
     protected boolean isMemberOfLdapGroup(String userid, String groupname) {
+
+        UGCache cache = mCache;
+        if (cache != null) {
+            try {
+                boolean member = cache.isMemberOf(userid, groupname);
+                logger.trace("authorization result: " + member);
+                return member;
+
+            } catch (LDAPException e) {
+                logger.warn("UGSubsystem: authorization exception: isMemberOfLdapGroup: " + e);
+
+            } catch (ELdapException e) {
+                logger.warn("UGSubsystem: authorization exception: isMemberOfLdapGroup: " + e);
+            }
+            return false;
+        }
+
         String basedn = "cn=" + LDAPUtil.escapeRDNValue(groupname) + ",ou=groups," + mBaseDN;
         LDAPConnection ldapconn = null;
         boolean founduser = false;
@@ -1660,6 +1796,7 @@ public class UGSubsystem {
         } finally {
             if (ldapconn != null)
                 returnConn(ldapconn);
+            changed();
         }
     }
 
@@ -1688,6 +1825,7 @@ public class UGSubsystem {
         } finally {
             if (ldapconn != null)
                 returnConn(ldapconn);
+            changed();
         }
     }
 
@@ -1748,6 +1886,7 @@ public class UGSubsystem {
         } finally {
             if (ldapconn != null)
                 returnConn(ldapconn);
+            changed();
         }
     }
 
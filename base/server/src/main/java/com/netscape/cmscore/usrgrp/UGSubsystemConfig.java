@@ -27,4 +27,25 @@ public class UGSubsystemConfig extends ConfigStore {
     public LDAPConfig getLDAPConfig() throws EBaseException {
         return getSubStore("ldap", LDAPConfig.class);
     }
+
+    /**
+     * Returns usrgrp.cache.enable parameter.
+     */
+    public boolean getCacheEnabled() throws EBaseException {
+        return getBoolean("cache.enable", false);
+    }
+
+    /**
+     * Returns usrgrp.cache.ttl parameter in seconds.
+     */
+    public int getCacheTTL() throws EBaseException {
+        return getInteger("cache.ttl", UGCache.DEFAULT_TTL);
+    }
+
+    /**
+     * Returns usrgrp.cache.size parameter.
+     */
+    public int getCacheSize() throws EBaseException {
+        return getInteger("cache.size", UGCache.DEFAULT_SIZE);
+    }
 }
@@ -0,0 +1,94 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.netscape.certsrv.util.IStatsSubsystem;
+import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.CMSEngine;
+
+/**
+ * This class counts values (e.g. latencies in milliseconds or queue
+ * depths) in power-of-two buckets and publishes the counts as gauges
+ * in the statistics subsystem. Bucket i counts the values up to 2^i,
+ * the last bucket also counts the larger values.
+ */
+public class Histogram {
+
+    public static final int BUCKETS = 16;
+    public static final long STATS_INTERVAL = 1000; // milliseconds
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public static int getBucket(long value) {
+        int bucket = 64 - Long.numberOfLeadingZeros(Math.max(value, 1) - 1);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    public void record(long value) {
+        counts[getBucket(value)].increment();
+    }
+
+    public long[] getCounts() {
+        long[] values = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            values[i] = counts[i].sum();
+        }
+        return values;
+    }
+
+    /**
+     * Publishes the non-empty buckets as gauges named
+     * &lt;name&gt;.le&lt;2^i&gt;&lt;unit&gt;.
+     */
+    public void setGauges(IStatsSubsystem statsSub, String name, String unit) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts[i].sum();
+            if (count > 0) {
+                statsSub.setGauge(name + ".le" + (1 << i) + unit, count);
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics subsystem if the statistics last published
+     * at the given time should be published again, i.e. at most once per
+     * STATS_INTERVAL unless forced, and by a single thread at a time.
+     *
+     * @param lastStats time the statistics were last published
+     * @param force true to publish regardless of the interval
+     * @return statistics subsystem, or null if not available or not due
+     */
+    public static IStatsSubsystem getStatsSubsystem(AtomicLong lastStats, boolean force) {
+
+        long now = System.currentTimeMillis();
+        long last = lastStats.get();
+
+        if (!force && now - last < STATS_INTERVAL) {
+            return null;
+        }
+
+        if (!lastStats.compareAndSet(last, now)) {
+            // another thread is publishing
+            return null;
+        }
+
+        CMSEngine engine = CMS.getCMSEngine();
+        if (engine == null) {
+            return null;
+        }
+
+        return (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+    }
+}
@@ -19,7 +19,10 @@ package com.netscape.cmscore.util;
 
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.util.IStatsSubsystem;
@@ -40,6 +43,7 @@ public class StatsSubsystem implements IStatsSubsystem {
     private StatsEvent mAllTrans = new StatsEvent(null);
     private Date mStartTime = new Date();
     private Hashtable<String, Vector<StatsMilestone>> mHashtable = new Hashtable<>();
+    private Map<String, Long> mGauges = new ConcurrentHashMap<>();
 
     /**
      * Constructs a certificate server.
@@ -154,6 +158,16 @@ public class StatsSubsystem implements IStatsSubsystem {
         return mAllTrans;
     }
 
+    @Override
+    public void setGauge(String id, long value) {
+        mGauges.put(id, value);
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        return new TreeMap<>(mGauges);
+    }
+
     @Override
     public void startup() throws EBaseException {
     }
@@ -5,6 +5,8 @@
 //
 package org.dogtagpki.server.authorization;
 
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cms.authorization.AAclAuthz;
 import com.netscape.cmscore.base.ConfigStorage;
 import com.netscape.cmscore.base.ConfigStore;
 import com.netscape.cmscore.base.SimpleProperties;
@@ -22,6 +24,20 @@ public class AuthorizationConfig extends ConfigStore {
         super(name, source);
     }
 
+    /**
+     * Returns authz.decisionCacheSize parameter.
+     */
+    public int getDecisionCacheSize() throws EBaseException {
+        return getInteger("decisionCacheSize", AAclAuthz.DEFAULT_DECISION_CACHE_SIZE);
+    }
+
+    /**
+     * Returns authz.decisionCacheTimeout parameter.
+     */
+    public int getDecisionCacheTimeout() throws EBaseException {
+        return getInteger("decisionCacheTimeout", AAclAuthz.DEFAULT_DECISION_CACHE_TIMEOUT);
+    }
+
     /**
      * Returns authz.instance.* parameters.
      */
@@ -0,0 +1,459 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class provides a bounded pool of JDBC connections.
+ *
+ * The connections returned by getConnection() are returned into the pool
+ * when they are closed. A connection that has been idle for longer than
+ * the validation interval is validated before it is reused, so the
+ * connections that are in use do not need to be validated on each call.
+ *
+ * Each connection keeps a cache of prepared statements by SQL. The cached
+ * statements are not closed when the caller closes them, so they can be
+ * reused by the next call with the same SQL on the same connection.
+ *
+ * If the caller disables auto-commit, the transaction is rolled back and
+ * auto-commit is enabled again when the connection is returned into the
+ * pool without a commit.
+ */
+public class JDBCConnectionPool {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JDBCConnectionPool.class);
+
+    public static final String PREFIX = "pool.";
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 10;
+    public static final int DEFAULT_VALIDATION_INTERVAL = 30; // seconds
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+    // timeout for the validation query
+    public static final int VALIDATION_TIMEOUT = 5; // seconds
+
+    String url;
+    Properties info;
+
+    int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    long validationInterval = TimeUnit.SECONDS.toMillis(DEFAULT_VALIDATION_INTERVAL);
+    int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+
+    Semaphore permits;
+    ConcurrentLinkedDeque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+
+    volatile boolean closed;
+
+    /**
+     * Creates a connection pool. The pool parameters (with pool. prefix)
+     * are removed from the connection properties.
+     *
+     * @param url JDBC URL
+     * @param info connection properties
+     */
+    public JDBCConnectionPool(String url, Properties info) {
+
+        this.url = url;
+        this.info = info;
+
+        String value = (String) info.remove(PREFIX + "maxConnections");
+        if (value != null) {
+            maxConnections = Integer.parseInt(value);
+        }
+
+        value = (String) info.remove(PREFIX + "validationInterval");
+        if (value != null) {
+            validationInterval = TimeUnit.SECONDS.toMillis(Integer.parseInt(value));
+        }
+
+        value = (String) info.remove(PREFIX + "statementCacheSize");
+        if (value != null) {
+            statementCacheSize = Integer.parseInt(value);
+        }
+
+        logger.info("JDBCConnectionPool: max connections: " + maxConnections);
+        logger.info("JDBCConnectionPool: validation interval (ms): " + validationInterval);
+        logger.info("JDBCConnectionPool: statement cache size: " + statementCacheSize);
+
+        permits = new Semaphore(maxConnections, true);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    /**
+     * Returns a connection from the pool, or creates a new one if there
+     * are no idle connections. If the maximum number of connections are
+     * in use, waits until one of them is returned.
+     *
+     * The connection must be closed to return it into the pool.
+     */
+    public Connection getConnection() throws SQLException {
+
+        if (closed) {
+            throw new SQLException("Connection pool closed");
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for connection", e);
+        }
+
+        try {
+            PooledConnection pooledConnection;
+
+            while ((pooledConnection = idleConnections.pollFirst()) != null) {
+
+                if (pooledConnection.validate()) {
+                    return pooledConnection.open();
+                }
+
+                pooledConnection.destroy();
+            }
+
+            pooledConnection = new PooledConnection(connect());
+
+            return pooledConnection.open();
+
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a physical connection.
+     */
+    Connection connect() throws SQLException {
+        logger.info("JDBCConnectionPool: Connecting to " + url);
+        return DriverManager.getConnection(url, info);
+    }
+
+    void release(PooledConnection pooledConnection) {
+
+        try {
+            if (closed || !pooledConnection.reset()) {
+                pooledConnection.destroy();
+                return;
+            }
+
+            // reuse the most recently used connections first
+            // so the others can expire
+            idleConnections.offerFirst(pooledConnection);
+
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the idle connections. The connections that are in use
+     * will be closed when they are returned into the pool.
+     */
+    public void close() {
+
+        closed = true;
+
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            pooledConnection.destroy();
+        }
+    }
+
+    /**
+     * Physical connection in the pool.
+     */
+    class PooledConnection {
+
+        final Connection connection;
+
+        // prepared statements by SQL in LRU order
+        final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Validates the connection if it has been idle
+         * for longer than the validation interval.
+         */
+        boolean validate() {
+
+            if (System.currentTimeMillis() - lastUsed < validationInterval) {
+                return true;
+            }
+
+            try {
+                return connection.isValid(VALIDATION_TIMEOUT);
+
+            } catch (SQLException e) {
+                logger.warn("JDBCConnectionPool: Invalid connection: " + e.getMessage());
+                return false;
+            }
+        }
+
+        /**
+         * Returns a new handle for the caller. The handle
+         * cannot be used anymore once it has been closed.
+         */
+        Connection open() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new ConnectionHandler(this));
+        }
+
+        /**
+         * Prepares the connection for the next caller.
+         *
+         * @return false if the connection cannot be reused
+         */
+        boolean reset() {
+
+            lastUsed = System.currentTimeMillis();
+
+            try {
+                if (connection.isClosed()) {
+                    return false;
+                }
+
+                if (!connection.getAutoCommit()) {
+                    // discard uncommitted changes
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+
+                // release the statements that were not closed by the caller
+                for (CachedStatement statement : statements.values()) {
+                    if (statement.handler != null) {
+                        statement.handler.close();
+                    }
+                }
+
+                return true;
+
+            } catch (SQLException e) {
+                logger.warn("JDBCConnectionPool: Unable to reset connection: " + e.getMessage());
+                return false;
+            }
+        }
+
+        void destroy() {
+
+            for (CachedStatement statement : statements.values()) {
+                statement.destroy();
+            }
+            statements.clear();
+
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("JDBCConnectionPool: Unable to close connection: " + e.getMessage());
+            }
+        }
+
+        PreparedStatement prepareStatement(String sql) throws SQLException {
+
+            if (statementCacheSize <= 0) {
+                return connection.prepareStatement(sql);
+            }
+
+            CachedStatement statement = statements.get(sql);
+
+            if (statement == null) {
+                statement = new CachedStatement(connection.prepareStatement(sql));
+                statements.put(sql, statement);
+
+                if (statements.size() > statementCacheSize) {
+                    // remove the least recently used statement that is not in use
+                    Iterator<CachedStatement> i = statements.values().iterator();
+                    while (i.hasNext()) {
+                        CachedStatement eldest = i.next();
+                        if (eldest != statement && eldest.handler == null) {
+                            i.remove();
+                            eldest.destroy();
+                            break;
+                        }
+                    }
+                }
+
+            } else if (statement.handler != null) {
+                // the same SQL is used again before the statement is closed
+                return connection.prepareStatement(sql);
+            }
+
+            return statement.open();
+        }
+    }
+
+    /**
+     * Connection handle returned to the caller.
+     */
+    class ConnectionHandler implements InvocationHandler {
+
+        final PooledConnection pooledConnection;
+        boolean closed;
+
+        ConnectionHandler(PooledConnection pooledConnection) {
+            this.pooledConnection = pooledConnection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            switch (method.getName()) {
+            case "close":
+                if (!closed) {
+                    closed = true;
+                    release(pooledConnection);
+                }
+                return null;
+
+            case "isClosed":
+                return closed || pooledConnection.connection.isClosed();
+
+            case "equals":
+                return proxy == args[0];
+
+            case "hashCode":
+                return System.identityHashCode(proxy);
+
+            case "toString":
+                return "PooledConnection[" + pooledConnection.connection + "]";
+            }
+
+            if (closed) {
+                throw new SQLException("Connection closed");
+            }
+
+            if ("prepareStatement".equals(method.getName()) && args.length == 1) {
+                return pooledConnection.prepareStatement((String) args[0]);
+            }
+
+            try {
+                return method.invoke(pooledConnection.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Prepared statement in the statement cache.
+     */
+    static class CachedStatement {
+
+        final PreparedStatement statement;
+
+        // handle of the current caller, null if not in use
+        StatementHandler handler;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement open() {
+            handler = new StatementHandler(this);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    handler);
+        }
+
+        void destroy() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.warn("JDBCConnectionPool: Unable to close statement: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Statement handle returned to the caller. Closing the handle
+     * keeps the statement open for the next caller.
+     */
+    static class StatementHandler implements InvocationHandler {
+
+        final CachedStatement cachedStatement;
+        boolean closed;
+
+        StatementHandler(CachedStatement cachedStatement) {
+            this.cachedStatement = cachedStatement;
+        }
+
+        void close() throws SQLException {
+
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            cachedStatement.handler = null;
+
+            PreparedStatement statement = cachedStatement.statement;
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            switch (method.getName()) {
+            case "close":
+                close();
+                return null;
+
+            case "isClosed":
+                return closed || cachedStatement.statement.isClosed();
+
+            case "equals":
+                return proxy == args[0];
+
+            case "hashCode":
+                return System.identityHashCode(proxy);
+
+            case "toString":
+                return "CachedStatement[" + cachedStatement.statement + "]";
+            }
+
+            if (closed) {
+                throw new SQLException("Statement closed");
+            }
+
+            try {
+                return method.invoke(cachedStatement.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
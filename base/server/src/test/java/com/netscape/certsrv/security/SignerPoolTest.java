@@ -0,0 +1,321 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SignerPoolTest {
+
+    /**
+     * Signature context that detects concurrent use.
+     */
+    static class SignerStub {
+
+        final String alg;
+        final AtomicBoolean inUse = new AtomicBoolean();
+        int signatures;
+
+        SignerStub(String alg) {
+            this.alg = alg;
+        }
+    }
+
+    static class SignerPoolStub extends SignerPool<String, SignerStub> {
+
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger probes = new AtomicInteger();
+
+        boolean reusable = true;
+        boolean probeFailure;
+
+        SignerPoolStub(int poolSize) {
+            super(poolSize);
+        }
+
+        @Override
+        protected SignerStub create(String alg) {
+            created.incrementAndGet();
+            return new SignerStub(alg);
+        }
+
+        @Override
+        protected boolean probe(String alg) throws Exception {
+            probes.incrementAndGet();
+            if (probeFailure) {
+                throw new Exception("Probe failed");
+            }
+            return reusable;
+        }
+
+        @Override
+        protected byte[] signWith(SignerStub signer, byte[] data) throws Exception {
+
+            String value = new String(data);
+            if (value.equals("fail")) {
+                throw new Exception("Signing failed");
+            }
+
+            signer.signatures++;
+            return ("signed " + value).getBytes();
+        }
+    }
+
+    List<byte[]> toBytes(String... values) {
+        List<byte[]> data = new ArrayList<>();
+        for (String value : values) {
+            data.add(value.getBytes());
+        }
+        return data;
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+
+        SignerStub signer1 = pool.get("SHA256withRSA");
+        pool.release("SHA256withRSA", signer1);
+
+        SignerStub signer2 = pool.get("SHA256withRSA");
+        pool.release("SHA256withRSA", signer2);
+
+        assertSame(signer1, signer2);
+        assertEquals(1, pool.created.get());
+        assertEquals(1, pool.getIdleSigners("SHA256withRSA"));
+
+        // the token is checked only once
+        assertEquals(1, pool.probes.get());
+    }
+
+    @Test
+    public void testAlgorithms() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+
+        pool.release("SHA256withRSA", pool.get("SHA256withRSA"));
+
+        SignerStub signer = pool.get("SHA512withRSA");
+        assertEquals("SHA512withRSA", signer.alg);
+        assertEquals(2, pool.created.get());
+    }
+
+    @Test
+    public void testNotReusable() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+        pool.reusable = false;
+
+        SignerStub signer1 = pool.get("SHA256withRSA");
+        pool.release("SHA256withRSA", signer1);
+
+        SignerStub signer2 = pool.get("SHA256withRSA");
+        pool.release("SHA256withRSA", signer2);
+
+        // a new context is created for each signature
+        assertNotSame(signer1, signer2);
+        assertEquals(2, pool.created.get());
+        assertEquals(0, pool.getIdleSigners("SHA256withRSA"));
+        assertFalse(pool.isReusable("SHA256withRSA"));
+        assertEquals(1, pool.probes.get());
+    }
+
+    @Test
+    public void testProbeFailure() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+        pool.probeFailure = true;
+
+        assertFalse(pool.isReusable("SHA256withRSA"));
+
+        pool.release("SHA256withRSA", pool.get("SHA256withRSA"));
+        assertEquals(0, pool.getIdleSigners("SHA256withRSA"));
+    }
+
+    @Test
+    public void testPoolSize() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(2);
+
+        List<SignerStub> signers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            signers.add(pool.get("SHA256withRSA"));
+        }
+
+        for (SignerStub signer : signers) {
+            pool.release("SHA256withRSA", signer);
+        }
+
+        // the extra context is discarded
+        assertEquals(2, pool.getIdleSigners("SHA256withRSA"));
+    }
+
+    @Test
+    public void testPoolDisabled() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(0);
+
+        pool.release("SHA256withRSA", pool.get("SHA256withRSA"));
+        pool.release("SHA256withRSA", pool.get("SHA256withRSA"));
+
+        assertEquals(2, pool.created.get());
+        assertEquals(0, pool.probes.get());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+
+        pool.release("SHA256withRSA", pool.get("SHA256withRSA"));
+        pool.clear();
+
+        assertEquals(0, pool.getIdleSigners("SHA256withRSA"));
+
+        // the token is checked again
+        pool.isReusable("SHA256withRSA");
+        assertEquals(2, pool.probes.get());
+    }
+
+    @Test
+    public void testSign() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+
+        assertEquals("signed a", new String(pool.sign("SHA256withRSA", "a".getBytes())));
+        assertEquals("signed b", new String(pool.sign("SHA256withRSA", "b".getBytes())));
+
+        assertEquals(1, pool.created.get());
+        assertEquals(1, pool.getIdleSigners("SHA256withRSA"));
+    }
+
+    @Test
+    public void testSignFailure() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+        pool.sign("SHA256withRSA", "a".getBytes());
+
+        try {
+            pool.sign("SHA256withRSA", "fail".getBytes());
+            fail("Signing should fail");
+        } catch (Exception e) {
+            assertEquals("Signing failed", e.getMessage());
+        }
+
+        // the failed context is discarded
+        assertEquals(0, pool.getIdleSigners("SHA256withRSA"));
+    }
+
+    @Test
+    public void testSignAll() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+
+        List<byte[]> signatures = pool.signAll("SHA256withRSA", toBytes("a", "b", "c"));
+
+        assertEquals(3, signatures.size());
+        assertEquals("signed a", new String(signatures.get(0)));
+        assertEquals("signed b", new String(signatures.get(1)));
+        assertEquals("signed c", new String(signatures.get(2)));
+
+        // all data is signed with one context
+        assertEquals(1, pool.created.get());
+        assertEquals(1, pool.getIdleSigners("SHA256withRSA"));
+
+        SignerStub signer = pool.get("SHA256withRSA");
+        assertEquals(3, signer.signatures);
+    }
+
+    @Test
+    public void testSignAllNotReusable() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+        pool.reusable = false;
+
+        List<byte[]> signatures = pool.signAll("SHA256withRSA", toBytes("a", "b", "c"));
+
+        // each data is signed with a new context
+        assertEquals(3, signatures.size());
+        assertEquals("signed c", new String(signatures.get(2)));
+        assertEquals(3, pool.created.get());
+        assertEquals(0, pool.getIdleSigners("SHA256withRSA"));
+    }
+
+    @Test
+    public void testSignAllEmpty() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+
+        assertTrue(pool.signAll("SHA256withRSA", toBytes()).isEmpty());
+        assertEquals(0, pool.created.get());
+    }
+
+    @Test
+    public void testSignAllFailure() throws Exception {
+
+        SignerPoolStub pool = new SignerPoolStub(16);
+
+        try {
+            pool.signAll("SHA256withRSA", toBytes("a", "fail", "c"));
+            fail("Signing should fail");
+        } catch (Exception e) {
+            assertEquals("Signing failed", e.getMessage());
+        }
+
+        // the failed context is discarded
+        assertEquals(1, pool.created.get());
+        assertEquals(0, pool.getIdleSigners("SHA256withRSA"));
+    }
+
+    @Test
+    public void testConcurrentThreads() throws Exception {
+
+        int threads = 4;
+        SignerPoolStub pool = new SignerPoolStub(16);
+        AtomicBoolean shared = new AtomicBoolean();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 1000; j++) {
+                        SignerStub signer = pool.get("SHA256withRSA");
+                        if (!signer.inUse.compareAndSet(false, true)) {
+                            shared.set(true);
+                        }
+                        signer.inUse.set(false);
+                        pool.release("SHA256withRSA", signer);
+                    }
+                } catch (Exception e) {
+                    shared.set(true);
+                }
+            });
+            thread.start();
+            workers.add(thread);
+        }
+
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        // each context is used by one thread at a time
+        // and at most one context is created per thread
+        assertFalse(shared.get());
+        assertTrue(pool.created.get() <= threads);
+        assertEquals(pool.created.get(), pool.getIdleSigners("SHA256withRSA"));
+    }
+}
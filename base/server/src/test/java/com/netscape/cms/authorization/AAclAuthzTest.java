@@ -0,0 +1,120 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.authorization;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.dogtagpki.server.authentication.AuthToken;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netscape.cms.authorization.AAclAuthz.Decision;
+import com.netscape.cms.authorization.AAclAuthz.EvaluationOrder;
+import com.netscape.cms.evaluators.GroupAccessEvaluator;
+import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.CMSEngine;
+
+public class AAclAuthzTest {
+
+    static final String RESOURCE = "certServer.ca.certs";
+    static final String OPERATION = "list";
+
+    /**
+     * Group evaluator with memberships that can be changed
+     * without updating the users and groups version, like
+     * memberships changed by another clone.
+     */
+    static class MembershipEvaluator extends GroupAccessEvaluator {
+
+        Set<String> members = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean evaluate(AuthToken authToken, String type, String op, String value) {
+            boolean matched = members.contains(authToken.getInString(AuthToken.UID));
+            return op.equals("=") ? matched : !matched;
+        }
+    }
+
+    CMSEngine engine;
+    BasicAclAuthz authz;
+    MembershipEvaluator evaluator;
+    AuthToken authToken;
+
+    @Before
+    public void setUp() throws Exception {
+
+        engine = new CMSEngine("CA");
+
+        evaluator = new MembershipEvaluator();
+
+        authz = new BasicAclAuthz();
+        authz.registerEvaluator("group", evaluator);
+        authz.addACLs(RESOURCE + ":" + OPERATION + ":allow (" + OPERATION + ") group=\"Agents\":Agents may list certs");
+
+        authToken = new AuthToken(null);
+        authToken.set(AuthToken.UID, "agent");
+    }
+
+    @After
+    public void tearDown() {
+        CMS.setCMSEngine(null);
+    }
+
+    Decision getDecision(AAclAuthz.Snapshot snapshot) {
+        return snapshot.getDecision(authToken, RESOURCE, OPERATION);
+    }
+
+    @Test
+    public void testRevokedMembershipExpires() throws Exception {
+
+        authz.mDecisionCacheTimeout = TimeUnit.MILLISECONDS.toNanos(100);
+        AAclAuthz.Snapshot snapshot = authz.new Snapshot(EvaluationOrder.DENY_ALLOW);
+
+        evaluator.members.add("agent");
+        assertEquals(Decision.ALLOW, getDecision(snapshot));
+
+        // membership revoked without a version change
+        evaluator.members.remove("agent");
+        assertEquals(Decision.ALLOW, getDecision(snapshot));
+
+        Thread.sleep(200);
+        assertEquals(Decision.NOT_ALLOWED, getDecision(snapshot));
+    }
+
+    @Test
+    public void testRevokedMembershipChangesVersion() throws Exception {
+
+        authz.mDecisionCacheTimeout = TimeUnit.HOURS.toNanos(1);
+        AAclAuthz.Snapshot snapshot = authz.new Snapshot(EvaluationOrder.DENY_ALLOW);
+
+        evaluator.members.add("agent");
+        assertEquals(Decision.ALLOW, getDecision(snapshot));
+
+        // membership revoked through the users and groups subsystem
+        evaluator.members.remove("agent");
+        engine.getUGSubsystem().changed();
+
+        assertEquals(Decision.NOT_ALLOWED, getDecision(snapshot));
+    }
+
+    @Test
+    public void testCacheDisabled() throws Exception {
+
+        authz.mDecisionCacheTimeout = 0;
+        AAclAuthz.Snapshot snapshot = authz.new Snapshot(EvaluationOrder.DENY_ALLOW);
+
+        evaluator.members.add("agent");
+        assertEquals(Decision.ALLOW, getDecision(snapshot));
+
+        evaluator.members.remove("agent");
+        assertEquals(Decision.NOT_ALLOWED, getDecision(snapshot));
+    }
+}
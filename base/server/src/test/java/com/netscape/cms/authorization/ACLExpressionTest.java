@@ -0,0 +1,98 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.authorization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.dogtagpki.server.authentication.AuthToken;
+import org.junit.Test;
+
+import com.netscape.certsrv.evaluators.IAccessEvaluator;
+
+public class ACLExpressionTest {
+
+    /**
+     * Evaluates flag="true" and flag="false", and counts the calls.
+     */
+    static class FlagEvaluator implements IAccessEvaluator {
+
+        int calls;
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public String getType() {
+            return "flag";
+        }
+
+        @Override
+        public String getDescription() {
+            return "flag";
+        }
+
+        @Override
+        public boolean evaluate(String type, String op, String value) {
+            return evaluate(null, type, op, value);
+        }
+
+        @Override
+        public boolean evaluate(AuthToken authToken, String type, String op, String value) {
+            calls++;
+            boolean result = Boolean.parseBoolean(value.replace("\"", ""));
+            return op.equals("=") ? result : !result;
+        }
+
+        @Override
+        public String[] getSupportedOperators() {
+            return new String[] { "=", "!=" };
+        }
+    }
+
+    FlagEvaluator evaluator = new FlagEvaluator();
+    Map<String, IAccessEvaluator> evaluators = new HashMap<>();
+
+    {
+        evaluators.put("flag", evaluator);
+    }
+
+    boolean evaluate(String expression) {
+        return ACLExpression.parse(expression, evaluators).evaluate(null);
+    }
+
+    @Test
+    public void testSingleTerm() {
+        assertTrue(evaluate("flag=\"true\""));
+        assertFalse(evaluate("flag=\"false\""));
+        assertTrue(evaluate(" flag != \"false\" "));
+    }
+
+    @Test
+    public void testLeftToRight() {
+        // evaluated as (true || false) && false
+        assertFalse(evaluate("flag=\"true\" || flag=\"false\" && flag=\"false\""));
+        // evaluated as (false && true) || true
+        assertTrue(evaluate("flag=\"false\" && flag=\"true\" || flag=\"true\""));
+    }
+
+    @Test
+    public void testSkipTerms() {
+        assertTrue(evaluate("flag=\"true\" || flag=\"false\" || flag=\"false\""));
+        assertEquals(1, evaluator.calls);
+    }
+
+    @Test
+    public void testUnknownType() {
+        assertFalse(evaluate("group=\"Administrators\""));
+        assertFalse(ACLExpression.parse("user=\"admin\"", evaluators).isCacheable());
+    }
+}
@@ -0,0 +1,94 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LogRingBufferTest {
+
+    @Test
+    public void testCapacity() {
+        assertEquals(1, new LogRingBuffer<String>(1).capacity());
+        assertEquals(8, new LogRingBuffer<String>(5).capacity());
+        assertEquals(1024, new LogRingBuffer<String>(1024).capacity());
+    }
+
+    @Test
+    public void testOfferPoll() {
+
+        LogRingBuffer<Integer> queue = new LogRingBuffer<>(4);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(4));
+
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentOffer() throws Exception {
+
+        int producers = 4;
+        int events = 10000;
+        LogRingBuffer<int[]> queue = new LogRingBuffer<>(64);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < events; i++) {
+                    while (!queue.offer(new int[] { producer, i })) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // events of each producer are received in order
+        int[] next = new int[producers];
+        int received = 0;
+
+        while (received < producers * events) {
+            int[] event = queue.poll();
+            if (event == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(next[event[0]], event[1]);
+            next[event[0]]++;
+            received++;
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,133 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.netscape.certsrv.base.ServiceUnavailableException;
+import com.netscape.cmscore.base.ConfigStore;
+
+public class RequestSchedulerTest {
+
+    RequestScheduler createScheduler(int workers, int queueSize, int timeout) throws Exception {
+
+        ConfigStore config = new ConfigStore();
+        config.putInteger("retryAfter", 5);
+        config.putInteger("other.workers", workers);
+        config.putInteger("other.queueSize", queueSize);
+        config.putInteger("other.timeout", timeout);
+
+        RequestScheduler scheduler = new RequestScheduler();
+        scheduler.init(config);
+
+        return scheduler;
+    }
+
+    @Test
+    public void testNestedRequests() throws Exception {
+
+        RequestScheduler scheduler = createScheduler(1, 0, 0);
+        RequestScheduler.Stage stage = scheduler.getStage(null);
+
+        scheduler.requestIn(null);
+        scheduler.requestIn(null);
+        assertEquals(1, stage.getActive());
+
+        scheduler.requestOut(null);
+        assertEquals(1, stage.getActive());
+
+        scheduler.requestOut(null);
+        assertEquals(0, stage.getActive());
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+
+        RequestScheduler scheduler = createScheduler(1, 0, 10);
+        RequestScheduler.Stage stage = scheduler.getStage(null);
+
+        CountDownLatch admitted = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread thread = new Thread(() -> {
+            scheduler.requestIn(null);
+            admitted.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            scheduler.requestOut(null);
+        });
+        thread.start();
+
+        assertTrue(admitted.await(10, TimeUnit.SECONDS));
+
+        boolean rejected = false;
+        try {
+            scheduler.requestIn(null);
+        } catch (ServiceUnavailableException e) {
+            rejected = true;
+            assertEquals(Integer.valueOf(5), e.getRetryAfter());
+        }
+
+        assertTrue(rejected);
+        assertEquals(1, stage.rejected.sum());
+
+        done.countDown();
+        thread.join();
+
+        // the worker is available again
+        scheduler.requestIn(null);
+        scheduler.requestOut(null);
+
+        assertEquals(2, stage.admitted.sum());
+        assertEquals(0, stage.getActive());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+
+        RequestScheduler scheduler = createScheduler(1, 1, 1);
+        RequestScheduler.Stage stage = scheduler.getStage(null);
+
+        CountDownLatch admitted = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread thread = new Thread(() -> {
+            scheduler.requestIn(null);
+            admitted.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            scheduler.requestOut(null);
+        });
+        thread.start();
+
+        assertTrue(admitted.await(10, TimeUnit.SECONDS));
+
+        boolean rejected = false;
+        try {
+            scheduler.requestIn(null);
+        } catch (ServiceUnavailableException e) {
+            rejected = true;
+        }
+
+        assertTrue(rejected);
+        assertEquals(0, stage.waiting.get());
+
+        done.countDown();
+        thread.join();
+    }
+}
@@ -0,0 +1,239 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.netscape.certsrv.base.EBaseException;
+
+public class HttpConnFactoryTest {
+
+    /**
+     * Connection that is not connected to a remote authority.
+     */
+    static class HttpConnectionStub extends HttpConnection {
+
+        volatile boolean connected = true;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public void disconnect() {
+            connected = false;
+        }
+    }
+
+    /**
+     * Connection factory that creates connection stubs.
+     */
+    static class HttpConnFactoryStub extends HttpConnFactory {
+
+        HttpConnFactoryStub(int maxConns, int timeout) throws EBaseException {
+            super(0, maxConns, new RemoteAuthority("localhost", 8443, "/ca/connector", timeout),
+                    "", null, timeout);
+        }
+
+        @Override
+        HttpConnection createConnection() {
+            return new HttpConnectionStub();
+        }
+    }
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+
+        HttpConnFactoryStub factory = new HttpConnFactoryStub(2, 0);
+
+        HttpConnection conn = factory.getConn();
+        assertEquals(1, factory.getActiveConns());
+
+        factory.returnConn(conn);
+        assertEquals(0, factory.getActiveConns());
+        assertEquals(1, factory.getIdleConns());
+
+        // the connection is kept open for the next request
+        assertSame(conn, factory.getConn());
+        assertEquals(1, factory.mCreated.sum());
+    }
+
+    @Test
+    public void testExhaustedWithoutWait() throws Exception {
+
+        HttpConnFactoryStub factory = new HttpConnFactoryStub(1, 0);
+
+        HttpConnection conn = factory.getConn(false);
+        assertNotNull(conn);
+
+        assertNull(factory.getConn(false));
+
+        factory.returnConn(conn);
+        assertSame(conn, factory.getConn(false));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+
+        HttpConnFactoryStub factory = new HttpConnFactoryStub(1, 1);
+
+        HttpConnection conn = factory.getConn();
+
+        long startTime = System.nanoTime();
+
+        try {
+            factory.getConn();
+            fail("EBaseException expected");
+
+        } catch (EBaseException e) {
+            // expected
+        }
+
+        assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(1, factory.mWaits.sum());
+        assertEquals(1, factory.mTimeouts.sum());
+
+        // the permit is not lost after a timeout
+        factory.returnConn(conn);
+        assertSame(conn, factory.getConn(false));
+    }
+
+    @Test
+    public void testWaitForReturnedConnection() throws Exception {
+
+        HttpConnFactoryStub factory = new HttpConnFactoryStub(1, 0);
+
+        HttpConnection conn = factory.getConn();
+
+        Future<HttpConnection> future = executor.submit(() -> factory.getConn());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (factory.mWaits.sum() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, factory.mWaits.sum());
+
+        factory.returnConn(conn);
+
+        assertSame(conn, future.get(10, TimeUnit.SECONDS));
+        assertEquals(1, factory.getActiveConns());
+        assertEquals(0, factory.mTimeouts.sum());
+    }
+
+    @Test
+    public void testReturnBrokenConnection() throws Exception {
+
+        HttpConnFactoryStub factory = new HttpConnFactoryStub(1, 0);
+
+        HttpConnection conn = factory.getConn();
+
+        // request failed
+        conn.disconnect();
+        factory.returnConn(conn);
+
+        // the closed connection is not reused
+        assertEquals(0, factory.getActiveConns());
+        assertEquals(0, factory.getIdleConns());
+
+        HttpConnection newConn = factory.getConn(false);
+        assertNotSame(conn, newConn);
+        assertEquals(2, factory.mCreated.sum());
+    }
+
+    @Test
+    public void testReturnTwice() throws Exception {
+
+        HttpConnFactoryStub factory = new HttpConnFactoryStub(1, 0);
+
+        HttpConnection conn = factory.getConn();
+
+        factory.returnConn(conn);
+        factory.returnConn(conn);
+
+        // the second return does not release another permit
+        assertEquals(1, factory.getIdleConns());
+        assertNotNull(factory.getConn(false));
+        assertNull(factory.getConn(false));
+    }
+
+    @Test
+    public void testConcurrentCheckout() throws Exception {
+
+        int maxConns = 4;
+        int threads = 16;
+        int iterations = 200;
+
+        HttpConnFactoryStub factory = new HttpConnFactoryStub(maxConns, 0);
+
+        Set<HttpConnection> inUse = ConcurrentHashMap.newKeySet();
+        AtomicInteger maxInUse = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+
+                for (int j = 0; j < iterations; j++) {
+                    HttpConnection conn = factory.getConn();
+                    try {
+                        // a connection is never given to two threads at once
+                        assertTrue(inUse.add(conn));
+                        maxInUse.accumulateAndGet(inUse.size(), Math::max);
+                        Thread.yield();
+                        assertTrue(inUse.remove(conn));
+
+                    } finally {
+                        factory.returnConn(conn);
+                    }
+                }
+
+                return null;
+            }));
+        }
+
+        start.countDown();
+
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+
+        assertTrue(maxInUse.get() <= maxConns);
+        assertEquals(0, factory.getActiveConns());
+
+        // connections are only created when no idle connection is available
+        assertTrue(factory.mCreated.sum() <= maxConns);
+        assertEquals(factory.mCreated.sum(), factory.getIdleConns());
+    }
+}
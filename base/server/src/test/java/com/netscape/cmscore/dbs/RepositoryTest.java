@@ -0,0 +1,86 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class RepositoryTest {
+
+    /**
+     * Repository that counts the serial number reservations
+     * without checking the ranges in the database.
+     */
+    static class RepositoryStub extends Repository {
+
+        int reservations;
+
+        RepositoryStub(BigInteger maxSerialNo, int blockSize) {
+            super(null, 16);
+            mMaxSerialNo = maxSerialNo;
+            mBlockSize = blockSize;
+            setLastSerialNo(BigInteger.ZERO);
+        }
+
+        @Override
+        protected void checkRange() {
+            reservations++;
+        }
+
+        @Override
+        public BigInteger getLastSerialNumberInRange(
+                BigInteger serial_low_bound,
+                BigInteger serial_upper_bound) {
+            return BigInteger.ZERO;
+        }
+    }
+
+    @Test
+    public void testUnboundedRepository() throws Exception {
+
+        RepositoryStub repository = new RepositoryStub(null, 10);
+
+        for (int i = 1; i <= 25; i++) {
+            assertEquals(BigInteger.valueOf(i), repository.getNextSerialNumber());
+        }
+
+        // serial numbers are reserved in blocks
+        assertEquals(3, repository.reservations);
+    }
+
+    @Test
+    public void testBoundedRepository() throws Exception {
+
+        RepositoryStub repository = new RepositoryStub(BigInteger.valueOf(5), 10);
+
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(BigInteger.valueOf(i), repository.getNextSerialNumber());
+        }
+        assertEquals(1, repository.reservations);
+
+        // block does not extend past the end of the range
+        repository.getNextSerialNumber();
+        assertEquals(2, repository.reservations);
+    }
+
+    @Test
+    public void testReleaseSerialNumbers() throws Exception {
+
+        RepositoryStub repository = new RepositoryStub(null, 10);
+
+        assertEquals(BigInteger.ONE, repository.getNextSerialNumber());
+        assertEquals(BigInteger.TWO, repository.getNextSerialNumber());
+
+        // unused serial numbers in the block are handed out again
+        repository.releaseSerialNumbers();
+
+        assertEquals(BigInteger.valueOf(3), repository.getNextSerialNumber());
+        assertEquals(2, repository.reservations);
+    }
+}
@@ -0,0 +1,75 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class SerialNumberBlockTest {
+
+    @Test
+    public void testNext() {
+
+        Repository.SerialNumberBlock block = new Repository.SerialNumberBlock(BigInteger.valueOf(100), 3);
+
+        assertEquals(BigInteger.valueOf(100), block.next());
+        assertEquals(BigInteger.valueOf(101), block.next());
+        assertEquals(BigInteger.valueOf(102), block.next());
+        assertNull(block.next());
+        assertNull(block.next());
+
+        assertEquals(3, block.close());
+    }
+
+    @Test
+    public void testClose() {
+
+        Repository.SerialNumberBlock block = new Repository.SerialNumberBlock(BigInteger.valueOf(100), 10);
+
+        block.next();
+        block.next();
+
+        assertEquals(2, block.close());
+        assertNull(block.next());
+        assertEquals(10, block.close());
+    }
+
+    @Test
+    public void testConcurrentNext() throws Exception {
+
+        int size = 10000;
+        Repository.SerialNumberBlock block = new Repository.SerialNumberBlock(BigInteger.ONE, size);
+        Set<BigInteger> serialNumbers = ConcurrentHashMap.newKeySet();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                BigInteger serialNumber;
+                while ((serialNumber = block.next()) != null) {
+                    assertTrue(serialNumbers.add(serialNumber));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(size, serialNumbers.size());
+        assertEquals(size, block.close());
+    }
+}
@@ -0,0 +1,241 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.ldapconn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.netscape.certsrv.ldap.ELdapException;
+
+public class LdapBoundConnFactoryTest {
+
+    /**
+     * Connection that is not connected to a server.
+     */
+    static class LdapBoundConnectionStub extends LdapBoundConnection {
+
+        private static final long serialVersionUID = 1L;
+
+        volatile boolean connected = true;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public void setOption(int option, Object value) {
+        }
+
+        @Override
+        public void disconnect() {
+            connected = false;
+        }
+    }
+
+    /**
+     * Connection factory that creates connection stubs.
+     */
+    static class LdapBoundConnFactoryStub extends LdapBoundConnFactory {
+
+        AtomicInteger created = new AtomicInteger();
+
+        LdapBoundConnFactoryStub(int minConns, int maxConns, long acquireTimeout) throws Exception {
+            super("test", minConns, maxConns, new LdapConnInfo("localhost", 389), new LdapAuthInfo());
+            mAcquireTimeout = acquireTimeout;
+            init(new PKISocketConfig(), null);
+        }
+
+        @Override
+        protected void makeConnection(boolean errorIfDown) {
+            // no master connection
+        }
+
+        @Override
+        LdapBoundConnection createConnection() {
+            created.incrementAndGet();
+            LdapBoundConnectionStub conn = new LdapBoundConnectionStub();
+            conn.connectionFactory = this;
+            return conn;
+        }
+    }
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentCheckout() throws Exception {
+
+        int maxConns = 4;
+        int threads = 16;
+        int iterations = 200;
+
+        LdapBoundConnFactoryStub factory = new LdapBoundConnFactoryStub(2, maxConns, 0);
+
+        Set<LdapBoundConnection> inUse = ConcurrentHashMap.newKeySet();
+        AtomicInteger maxInUse = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+
+                for (int j = 0; j < iterations; j++) {
+                    LdapBoundConnection conn = factory.getConn(true);
+                    try {
+                        // a connection is never given to two threads at once
+                        assertTrue(inUse.add(conn));
+                        maxInUse.accumulateAndGet(inUse.size(), Math::max);
+                        Thread.yield();
+                        assertTrue(inUse.remove(conn));
+
+                    } finally {
+                        factory.returnConn(conn);
+                    }
+                }
+
+                return null;
+            }));
+        }
+
+        start.countDown();
+
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+
+        assertTrue(maxInUse.get() <= maxConns);
+        assertTrue(factory.totalConn() <= maxConns);
+        assertEquals(0, factory.inUseConn());
+        assertEquals(0, factory.waitingThreads());
+        assertEquals(0, factory.getTimeouts());
+
+        // the connections beyond the minimum are closed when returned
+        assertEquals(factory.totalConn(), factory.freeConn());
+        assertTrue(factory.freeConn() <= 2);
+    }
+
+    @Test
+    public void testExhaustedWithoutWait() throws Exception {
+
+        LdapBoundConnFactoryStub factory = new LdapBoundConnFactoryStub(1, 1, 0);
+
+        LdapBoundConnection conn = factory.getConn(true);
+        assertNotNull(conn);
+
+        assertNull(factory.getConn(false));
+
+        factory.returnConn(conn);
+
+        // the returned connection is reused
+        assertSame(conn, factory.getConn(false));
+    }
+
+    @Test
+    public void testAcquireTimeout() throws Exception {
+
+        LdapBoundConnFactoryStub factory = new LdapBoundConnFactoryStub(1, 1, 100);
+
+        LdapBoundConnection conn = factory.getConn(true);
+
+        try {
+            factory.getConn(true);
+            fail("ELdapException expected");
+
+        } catch (ELdapException e) {
+            // expected
+        }
+
+        assertEquals(1, factory.getTimeouts());
+        assertEquals(0, factory.waitingThreads());
+        assertEquals(1, factory.inUseConn());
+
+        // the pool is still usable after a timeout
+        factory.returnConn(conn);
+        assertSame(conn, factory.getConn(true));
+    }
+
+    @Test
+    public void testWaitForReturnedConnection() throws Exception {
+
+        LdapBoundConnFactoryStub factory = new LdapBoundConnFactoryStub(1, 1, 0);
+
+        LdapBoundConnection conn = factory.getConn(true);
+
+        Future<LdapBoundConnection> future = executor.submit(() -> factory.getConn(true));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (factory.waitingThreads() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, factory.waitingThreads());
+
+        factory.returnConn(conn);
+
+        assertSame(conn, future.get(10, TimeUnit.SECONDS));
+        assertEquals(0, factory.waitingThreads());
+        assertEquals(1, factory.inUseConn());
+    }
+
+    @Test
+    public void testReturnBrokenConnection() throws Exception {
+
+        LdapBoundConnFactoryStub factory = new LdapBoundConnFactoryStub(1, 1, 0);
+
+        LdapBoundConnectionStub conn = (LdapBoundConnectionStub) factory.getConn(true);
+        int created = factory.created.get();
+
+        conn.connected = false;
+        factory.returnConn(conn);
+
+        // the broken connection is not put back into the pool
+        assertEquals(0, factory.totalConn());
+        assertEquals(0, factory.freeConn());
+
+        LdapBoundConnection newConn = factory.getConn(false);
+        assertNotSame(conn, newConn);
+        assertEquals(created + 1, factory.created.get());
+    }
+
+    @Test
+    public void testReturnTwice() throws Exception {
+
+        LdapBoundConnFactoryStub factory = new LdapBoundConnFactoryStub(1, 1, 0);
+
+        LdapBoundConnection conn = factory.getConn(true);
+
+        factory.returnConn(conn);
+        factory.returnConn(conn);
+
+        // the second return does not release another permit
+        assertNotNull(factory.getConn(false));
+        assertNull(factory.getConn(false));
+    }
+}
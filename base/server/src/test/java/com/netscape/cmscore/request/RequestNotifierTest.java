@@ -0,0 +1,241 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.netscape.certsrv.base.ISubsystem;
+import com.netscape.certsrv.request.IRequestListener;
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.cmscore.base.ConfigStore;
+
+public class RequestNotifierTest {
+
+    static class TestListener implements IRequestListener {
+
+        final Map<RequestId, AtomicInteger> accepted = new ConcurrentHashMap<>();
+        final AtomicInteger failures = new AtomicInteger();
+
+        // requests that always fail
+        final Set<RequestId> failing = ConcurrentHashMap.newKeySet();
+
+        // report failures with the publishing status instead of an exception
+        boolean reportStatus;
+
+        @Override
+        public void init(ISubsystem sub, ConfigStore config) {
+        }
+
+        @Override
+        public void accept(Request request) {
+            if (failing.contains(request.getRequestId())
+                    || failures.getAndUpdate(i -> i > 0 ? i - 1 : 0) > 0) {
+
+                if (reportStatus) {
+                    request.setExtData(RunListeners.PUBLISH_STATUS, Request.RES_ERROR);
+                    return;
+                }
+
+                throw new RuntimeException("Publishing failed");
+            }
+
+            if (reportStatus) {
+                request.setExtData(RunListeners.PUBLISH_STATUS, Request.RES_SUCCESS);
+            }
+            accepted.computeIfAbsent(request.getRequestId(), id -> new AtomicInteger()).incrementAndGet();
+        }
+
+        @Override
+        public void set(String name, String val) {
+        }
+    }
+
+    RequestNotifier createNotifier(int maxThreads, int maxRetries) {
+        RequestNotifier notifier = new RequestNotifier();
+        notifier.setPublishingBatchSize(10);
+        notifier.setPublishingRetries(maxRetries, 0, 0);
+        notifier.setPublishingQueue(true, 0, maxThreads, 1000, 0);
+        return notifier;
+    }
+
+    void waitForQueue(RequestNotifier notifier) throws Exception {
+        for (int i = 0; i < 1000 && notifier.getNumberOfRequests() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, notifier.getNumberOfRequests());
+    }
+
+    @Test
+    public void testPublishingQueue() throws Exception {
+
+        RequestNotifier notifier = createNotifier(1, 0);
+        TestListener listener = new TestListener();
+        notifier.registerListener("test", listener);
+
+        for (int i = 1; i <= 100; i++) {
+            notifier.notify(new Request(new RequestId(i)));
+        }
+
+        waitForQueue(notifier);
+
+        assertEquals(100, listener.accepted.size());
+        for (AtomicInteger count : listener.accepted.values()) {
+            assertEquals(1, count.get());
+        }
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+
+        RequestNotifier notifier = createNotifier(1, 5);
+
+        TestListener listener1 = new TestListener();
+        notifier.registerListener("listener1", listener1);
+
+        TestListener listener2 = new TestListener();
+        listener2.failures.set(2);
+        notifier.registerListener("listener2", listener2);
+
+        RequestId requestID = new RequestId(1);
+        notifier.notify(new Request(requestID));
+
+        waitForQueue(notifier);
+
+        // only the failed listener should process the request again
+        assertEquals(1, listener1.accepted.get(requestID).get());
+        assertEquals(1, listener2.accepted.get(requestID).get());
+        assertEquals(0, listener2.failures.get());
+    }
+
+    @Test
+    public void testMaxRetries() throws Exception {
+
+        RequestNotifier notifier = createNotifier(1, 2);
+
+        TestListener listener = new TestListener();
+        listener.failures.set(10);
+        notifier.registerListener("test", listener);
+
+        notifier.notify(new Request(new RequestId(1)));
+
+        waitForQueue(notifier);
+
+        // the request fails after the initial attempt and two retries
+        assertTrue(listener.accepted.isEmpty());
+        assertEquals(7, listener.failures.get());
+        assertEquals(1, notifier.getNumberOfFailedRequests());
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+
+        RequestNotifier notifier = createNotifier(1, 5);
+
+        TestListener listener = new TestListener();
+        listener.reportStatus = true;
+        listener.failures.set(2);
+        notifier.registerListener("test", listener);
+
+        RequestId requestID = new RequestId(1);
+        notifier.notify(new Request(requestID));
+
+        waitForQueue(notifier);
+
+        // the request is retried until the listener reports success
+        assertEquals(1, listener.accepted.get(requestID).get());
+        assertEquals(0, listener.failures.get());
+        assertEquals(0, notifier.getNumberOfFailedRequests());
+    }
+
+    @Test
+    public void testPublishingStatus() throws Exception {
+
+        List<String> statuses = new CopyOnWriteArrayList<>();
+
+        RequestNotifier notifier = new RequestNotifier() {
+            @Override
+            public void updatePublishingStatus(String id) {
+                statuses.add(id);
+            }
+        };
+        notifier.setPublishingBatchSize(10);
+        notifier.setPublishingRetries(1, 0, 0);
+        notifier.setPublishingQueue(true, 0, 1, 1000, 1);
+
+        TestListener listener = new TestListener();
+        listener.reportStatus = true;
+        listener.failing.add(new RequestId(3));
+        notifier.registerListener("test", listener);
+
+        for (int i = 1; i <= 10; i++) {
+            notifier.notify(new Request(new RequestId(i)));
+        }
+
+        waitForQueue(notifier);
+
+        assertEquals(9, listener.accepted.size());
+        assertEquals(1, notifier.getNumberOfFailedRequests());
+
+        // the failed request is also counted as done, the status
+        // is saved after the request is removed from the queue
+        for (int i = 0; i < 1000 && statuses.size() < 10; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(10, statuses.size());
+
+        statuses.clear();
+
+        for (int i = 11; i <= 20; i++) {
+            notifier.notify(new Request(new RequestId(i)));
+        }
+
+        waitForQueue(notifier);
+
+        for (int i = 0; i < 1000 && statuses.size() < 10; i++) {
+            Thread.sleep(10);
+        }
+
+        // the publishing status is not held back by the failed request
+        assertEquals(10, statuses.size());
+        for (String status : statuses) {
+            assertTrue(new BigInteger(status).compareTo(BigInteger.TEN) > 0);
+        }
+    }
+
+    @Test
+    public void testFailedRequestsLimit() throws Exception {
+
+        RequestNotifier notifier = new RequestNotifier();
+        notifier.setPublishingBatchSize(10);
+        notifier.setPublishingRetries(0, 0, 0);
+        notifier.setPublishingQueue(true, 0, 1, 5, 0);
+
+        TestListener listener = new TestListener();
+        notifier.registerListener("test", listener);
+
+        for (int i = 1; i <= 10; i++) {
+            RequestId requestID = new RequestId(i);
+            listener.failing.add(requestID);
+            notifier.notify(new Request(requestID));
+            waitForQueue(notifier);
+        }
+
+        // only the most recent failed requests are kept
+        assertTrue(listener.accepted.isEmpty());
+        assertEquals(5, notifier.getNumberOfFailedRequests());
+    }
+}
@@ -0,0 +1,133 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.usrgrp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netscape.cmscore.usrgrp.UGCache.Entry;
+import com.netscape.cmscore.usrgrp.UGCache.Membership;
+
+import netscape.ldap.LDAPEntry;
+
+public class UGCacheTest {
+
+    static final String USER_BASE_DN = "ou=people,dc=example,dc=com";
+    static final String GROUP_BASE_DN = "ou=groups,dc=example,dc=com";
+
+    static final String ADMIN_DN = "uid=admin," + USER_BASE_DN;
+    static final String AGENT_DN = "uid=agent," + USER_BASE_DN;
+
+    UGSubsystem ug;
+    UGCache cache;
+
+    @Before
+    public void setUp() {
+        ug = new UGSubsystem();
+        cache = new UGCache(ug, USER_BASE_DN, GROUP_BASE_DN, 300, 100);
+        ug.mCache = cache;
+    }
+
+    void addUser(String dn, String certString) {
+
+        String key = UGCache.normalize(dn);
+
+        cache.put(cache.users, key, new LDAPEntry(dn), cache.userGeneration, cache.userGeneration.get());
+        cache.put(cache.certUsers, certString, key, cache.userGeneration, cache.userGeneration.get());
+        cache.put(cache.memberships, key, new Membership(), cache.groupGeneration, cache.groupGeneration.get());
+    }
+
+    <V> boolean contains(Map<String, Entry<V>> map, String key) {
+        boolean[] found = new boolean[1];
+        cache.get(map, key, found);
+        return found[0];
+    }
+
+    @Test
+    public void testInvalidateUser() {
+
+        addUser(ADMIN_DN, "admin-cert");
+        addUser(AGENT_DN, "agent-cert");
+
+        cache.invalidateUser(AGENT_DN);
+
+        assertTrue(contains(cache.users, UGCache.normalize(ADMIN_DN)));
+        assertTrue(contains(cache.certUsers, "admin-cert"));
+        assertTrue(contains(cache.memberships, UGCache.normalize(ADMIN_DN)));
+
+        assertFalse(contains(cache.users, UGCache.normalize(AGENT_DN)));
+        assertFalse(contains(cache.certUsers, "agent-cert"));
+        assertFalse(contains(cache.memberships, UGCache.normalize(AGENT_DN)));
+    }
+
+    @Test
+    public void testStaleEntry() {
+
+        String key = UGCache.normalize(AGENT_DN);
+
+        // user read from the database before a change was reported
+        long gen = cache.userGeneration.get();
+        cache.invalidateUser(AGENT_DN);
+        cache.put(cache.users, key, new LDAPEntry(AGENT_DN), cache.userGeneration, gen);
+
+        assertFalse(contains(cache.users, key));
+
+        // memberships read from the database before a group changed
+        gen = cache.groupGeneration.get();
+        cache.invalidateGroups();
+        cache.put(cache.memberships, key, new Membership(), cache.groupGeneration, gen);
+
+        assertFalse(contains(cache.memberships, key));
+    }
+
+    @Test
+    public void testMissedGroupChanges() {
+
+        addUser(AGENT_DN, "agent-cert");
+        long version = ug.getVersion();
+
+        // group monitor reconnected
+        cache.invalidateMissedChanges(true);
+
+        assertTrue(contains(cache.users, UGCache.normalize(AGENT_DN)));
+        assertFalse(contains(cache.memberships, UGCache.normalize(AGENT_DN)));
+        assertEquals(version + 1, ug.getVersion());
+    }
+
+    @Test
+    public void testMissedUserChanges() {
+
+        addUser(AGENT_DN, "agent-cert");
+        long version = ug.getVersion();
+
+        // user monitor reconnected or failed
+        cache.invalidateMissedChanges(false);
+
+        assertFalse(contains(cache.users, UGCache.normalize(AGENT_DN)));
+        assertFalse(contains(cache.certUsers, "agent-cert"));
+        assertFalse(contains(cache.memberships, UGCache.normalize(AGENT_DN)));
+        assertEquals(version + 1, ug.getVersion());
+    }
+
+    @Test
+    public void testChanged() {
+
+        addUser(AGENT_DN, "agent-cert");
+        long version = ug.getVersion();
+
+        // user or group modified through this subsystem
+        ug.changed();
+
+        assertFalse(contains(cache.users, UGCache.normalize(AGENT_DN)));
+        assertEquals(version + 1, ug.getVersion());
+    }
+}
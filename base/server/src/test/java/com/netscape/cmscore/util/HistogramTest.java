@@ -0,0 +1,49 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testGetBucket() {
+
+        assertEquals(0, Histogram.getBucket(0));
+        assertEquals(0, Histogram.getBucket(1));
+        assertEquals(1, Histogram.getBucket(2));
+        assertEquals(2, Histogram.getBucket(3));
+        assertEquals(2, Histogram.getBucket(4));
+        assertEquals(3, Histogram.getBucket(5));
+        assertEquals(10, Histogram.getBucket(1024));
+        assertEquals(11, Histogram.getBucket(1025));
+
+        // larger values are counted in the last bucket
+        assertEquals(Histogram.BUCKETS - 1, Histogram.getBucket(1L << Histogram.BUCKETS));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRecord() {
+
+        Histogram histogram = new Histogram();
+
+        histogram.record(1);
+        histogram.record(3);
+        histogram.record(4);
+        histogram.record(100);
+
+        long[] expected = new long[Histogram.BUCKETS];
+        expected[0] = 1;
+        expected[2] = 2;
+        expected[7] = 1;
+
+        assertArrayEquals(expected, histogram.getCounts());
+    }
+}
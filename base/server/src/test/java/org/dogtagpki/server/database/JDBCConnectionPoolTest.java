@@ -0,0 +1,373 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class JDBCConnectionPoolTest {
+
+    /**
+     * Physical statement that records the calls.
+     */
+    static class StatementStub implements InvocationHandler {
+
+        String sql;
+        boolean closed;
+        int clearParameters;
+
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                this);
+
+        StatementStub(String sql) {
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+
+            switch (method.getName()) {
+            case "close":
+                closed = true;
+                return null;
+            case "isClosed":
+                return closed;
+            case "clearParameters":
+                clearParameters++;
+                return null;
+            case "clearBatch":
+            case "setString":
+                return null;
+            case "executeUpdate":
+                return 1;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "StatementStub[" + sql + "]";
+            }
+
+            throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    /**
+     * Physical connection that records the calls.
+     */
+    static class ConnectionStub implements InvocationHandler {
+
+        boolean closed;
+        boolean autoCommit = true;
+        int rollbacks;
+        List<StatementStub> statements = new ArrayList<>();
+
+        Connection connection = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                this);
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+
+            switch (method.getName()) {
+            case "close":
+                closed = true;
+                return null;
+            case "isClosed":
+                return closed;
+            case "isValid":
+                return !closed;
+            case "getAutoCommit":
+                return autoCommit;
+            case "setAutoCommit":
+                autoCommit = (Boolean) args[0];
+                return null;
+            case "rollback":
+                rollbacks++;
+                return null;
+            case "prepareStatement":
+                StatementStub statement = new StatementStub((String) args[0]);
+                statements.add(statement);
+                return statement.statement;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "ConnectionStub";
+            }
+
+            throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    /**
+     * Connection pool that creates stub connections.
+     */
+    static class JDBCConnectionPoolStub extends JDBCConnectionPool {
+
+        List<ConnectionStub> connections = new ArrayList<>();
+
+        JDBCConnectionPoolStub(int maxConnections, int statementCacheSize) {
+            super("jdbc:test", createProperties(maxConnections, statementCacheSize));
+        }
+
+        static Properties createProperties(int maxConnections, int statementCacheSize) {
+            Properties info = new Properties();
+            info.setProperty(PREFIX + "maxConnections", Integer.toString(maxConnections));
+            info.setProperty(PREFIX + "statementCacheSize", Integer.toString(statementCacheSize));
+            info.setProperty("user", "acme");
+            return info;
+        }
+
+        @Override
+        synchronized Connection connect() {
+            ConnectionStub connection = new ConnectionStub();
+            connections.add(connection);
+            return connection.connection;
+        }
+    }
+
+    @Test
+    public void testPoolParameters() {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(5, 16);
+
+        assertEquals(5, pool.getMaxConnections());
+        assertEquals(16, pool.statementCacheSize);
+
+        // pool parameters are not passed to the driver
+        assertFalse(pool.info.containsKey(JDBCConnectionPool.PREFIX + "maxConnections"));
+        assertEquals("acme", pool.info.getProperty("user"));
+    }
+
+    @Test
+    public void testReuseConnection() throws Exception {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(2, 16);
+
+        Connection c1 = pool.getConnection();
+        c1.close();
+        assertEquals(1, pool.getIdleConnections());
+
+        Connection c2 = pool.getConnection();
+        c2.close();
+
+        // a new handle for the same physical connection
+        assertNotSame(c1, c2);
+        assertEquals(1, pool.connections.size());
+        assertFalse(pool.connections.get(0).closed);
+    }
+
+    @Test
+    public void testClosedHandle() throws Exception {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(1, 16);
+
+        Connection c1 = pool.getConnection();
+        c1.close();
+        assertTrue(c1.isClosed());
+
+        try {
+            c1.prepareStatement("SELECT 1");
+            fail("Closed handle should not be usable");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        // closing the handle again does not return the connection twice
+        c1.close();
+        assertEquals(1, pool.permits.availablePermits());
+    }
+
+    @Test
+    public void testMaxConnections() throws Exception {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(1, 16);
+
+        Connection c1 = pool.getConnection();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try (Connection c2 = pool.getConnection()) {
+                acquired.countDown();
+            } catch (SQLException e) {
+                // the latch will not be released
+            }
+        });
+        thread.start();
+
+        // the second caller waits until the connection is returned
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        c1.close();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        thread.join();
+
+        assertEquals(1, pool.connections.size());
+    }
+
+    @Test
+    public void testRollbackOnReturn() throws Exception {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(1, 16);
+
+        Connection c = pool.getConnection();
+        c.setAutoCommit(false);
+        c.close();
+
+        ConnectionStub connection = pool.connections.get(0);
+        assertEquals(1, connection.rollbacks);
+        assertTrue(connection.autoCommit);
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    public void testBrokenConnection() throws Exception {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(1, 16);
+
+        Connection c = pool.getConnection();
+        ConnectionStub connection = pool.connections.get(0);
+        connection.closed = true;
+        c.close();
+
+        // broken connection is not reused
+        assertEquals(0, pool.getIdleConnections());
+
+        pool.getConnection().close();
+        assertEquals(2, pool.connections.size());
+    }
+
+    @Test
+    public void testStatementCache() throws Exception {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(1, 16);
+
+        try (Connection c = pool.getConnection()) {
+            PreparedStatement ps1 = c.prepareStatement("SELECT 1");
+            ps1.setString(1, "a");
+            ps1.close();
+
+            PreparedStatement ps2 = c.prepareStatement("SELECT 1");
+            ps2.close();
+        }
+
+        // statement is prepared once and reused by the next caller
+        try (Connection c = pool.getConnection()) {
+            c.prepareStatement("SELECT 1").close();
+        }
+
+        ConnectionStub connection = pool.connections.get(0);
+        assertEquals(1, connection.statements.size());
+
+        StatementStub statement = connection.statements.get(0);
+        assertFalse(statement.closed);
+        assertEquals(3, statement.clearParameters);
+    }
+
+    @Test
+    public void testStatementInUse() throws Exception {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(1, 16);
+
+        try (Connection c = pool.getConnection()) {
+            PreparedStatement ps1 = c.prepareStatement("SELECT 1");
+
+            // same SQL while the cached statement is still open
+            PreparedStatement ps2 = c.prepareStatement("SELECT 1");
+            ps2.close();
+            ps1.close();
+        }
+
+        ConnectionStub connection = pool.connections.get(0);
+        assertEquals(2, connection.statements.size());
+        assertEquals(connection.statements.get(0).sql, connection.statements.get(1).sql);
+    }
+
+    @Test
+    public void testStatementNotClosedByCaller() throws Exception {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(1, 16);
+
+        try (Connection c = pool.getConnection()) {
+            c.prepareStatement("SELECT 1");
+        }
+
+        // statement is released when the connection is returned
+        try (Connection c = pool.getConnection()) {
+            c.prepareStatement("SELECT 1").close();
+        }
+
+        ConnectionStub connection = pool.connections.get(0);
+        assertEquals(1, connection.statements.size());
+    }
+
+    @Test
+    public void testStatementCacheSize() throws Exception {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(1, 2);
+
+        try (Connection c = pool.getConnection()) {
+            c.prepareStatement("SELECT 1").close();
+            c.prepareStatement("SELECT 2").close();
+            c.prepareStatement("SELECT 3").close();
+        }
+
+        // least recently used statement is closed
+        ConnectionStub connection = pool.connections.get(0);
+        assertTrue(connection.statements.get(0).closed);
+        assertFalse(connection.statements.get(1).closed);
+        assertFalse(connection.statements.get(2).closed);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+
+        JDBCConnectionPoolStub pool = new JDBCConnectionPoolStub(2, 16);
+
+        Connection c1 = pool.getConnection();
+        Connection c2 = pool.getConnection();
+        c1.close();
+
+        pool.close();
+
+        // idle connection is closed immediately
+        assertTrue(pool.connections.get(0).closed);
+
+        // connection in use is closed when it is returned
+        assertFalse(pool.connections.get(1).closed);
+        c2.close();
+        assertTrue(pool.connections.get(1).closed);
+
+        try {
+            pool.getConnection();
+            fail("Closed pool should not return connections");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+}
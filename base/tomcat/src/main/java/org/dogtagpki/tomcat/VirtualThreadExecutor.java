@@ -0,0 +1,195 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.tomcat;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.catalina.Executor;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.util.LifecycleMBeanBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class provides a Tomcat executor that runs each request in
+ * a new virtual thread, so the number of concurrent requests blocked
+ * on LDAP, HSM, or other subsystems is not limited by maxThreads.
+ *
+ * Virtual threads are created with reflection since the code is built
+ * for Java 17. If the JVM does not support virtual threads, the requests
+ * are executed by a pool of platform threads limited by maxThreads.
+ *
+ * The executor can be enabled in server.xml:
+ *
+ * <pre>
+ * &lt;Executor name="virtualThreadExecutor"
+ *     className="org.dogtagpki.tomcat.VirtualThreadExecutor"/&gt;
+ *
+ * &lt;Connector name="Secure" executor="virtualThreadExecutor" .../&gt;
+ * </pre>
+ */
+public class VirtualThreadExecutor extends LifecycleMBeanBase implements Executor {
+
+    final static Logger logger = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+    private String name;
+    private String namePrefix = "pki-exec-";
+    private int maxThreads = 200;
+
+    private volatile ExecutorService executor;
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    /**
+     * Returns the size of the platform thread pool used
+     * if virtual threads are not supported.
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    public boolean isVirtual() {
+        return executor != null && !(executor instanceof ThreadPoolExecutor);
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for
+     * each task, or returns null if virtual threads are not
+     * supported by the JVM.
+     */
+    public static ExecutorService createVirtualThreadExecutor(String namePrefix) {
+
+        try {
+            // Thread.ofVirtual().name(namePrefix, 0).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            // Executors.newThreadPerTaskExecutor(factory)
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, factory);
+
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+
+        } catch (ReflectiveOperationException e) {
+            // virtual threads are a preview feature that is not enabled
+            logger.debug("VirtualThreadExecutor: Unable to create virtual threads: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates a pool of platform threads.
+     */
+    public static ThreadPoolExecutor createPlatformThreadExecutor(String namePrefix, int maxThreads) {
+
+        AtomicInteger counter = new AtomicInteger();
+
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                maxThreads,
+                maxThreads,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                factory);
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
+
+    @Override
+    protected void startInternal() throws LifecycleException {
+
+        executor = createVirtualThreadExecutor(namePrefix);
+
+        if (executor != null) {
+            logger.info("VirtualThreadExecutor: Executing requests in virtual threads");
+
+        } else {
+            logger.warn("VirtualThreadExecutor: Virtual threads not supported, executing requests in up to "
+                    + maxThreads + " platform threads");
+            executor = createPlatformThreadExecutor(namePrefix, maxThreads);
+        }
+
+        setState(LifecycleState.STARTING);
+    }
+
+    @Override
+    protected void stopInternal() throws LifecycleException {
+
+        setState(LifecycleState.STOPPING);
+
+        if (executor != null) {
+            executor.shutdown();
+        }
+
+        executor = null;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+
+        ExecutorService executor = this.executor;
+
+        if (executor == null) {
+            throw new IllegalStateException("VirtualThreadExecutor not started");
+        }
+
+        executor.execute(command);
+    }
+
+    @Override
+    public void execute(Runnable command, long timeout, TimeUnit unit) {
+        // the tasks are never rejected, so the timeout is not used
+        execute(command);
+    }
+
+    @Override
+    protected String getDomainInternal() {
+        // use the same domain as the service
+        return null;
+    }
+
+    @Override
+    protected String getObjectNameKeyProperties() {
+        return "type=Executor,name=" + getName();
+    }
+}